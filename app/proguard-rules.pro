@@ -46,3 +46,5 @@
 -keep class com.android.** { *; }
 -keep class libcore.util.** { *; }
 -keep class org.xmlpull.v1.** { *; }
+# Don't minify zstd-jni (accessed from JNI)
+-keep class com.github.luben.zstd.** { *; }
@@ -5,6 +5,7 @@ package io.github.muntashirakon.AppManager;
 import android.content.res.Resources;
 import android.util.DisplayMetrics;
 
+import androidx.annotation.NonNull;
 import androidx.collection.ArrayMap;
 import androidx.core.os.ConfigurationCompat;
 import androidx.core.os.LocaleListCompat;
@@ -13,10 +14,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 import io.github.muntashirakon.AppManager.misc.VMRuntime;
+import io.github.muntashirakon.AppManager.utils.MultiPatternMatcher;
 
 public class StaticDataset {
     private static String[] trackerCodeSignatures;
     private static String[] trackerNames;
+    private static MultiPatternMatcher trackerSignatureMatcher;
+    private static MultiPatternMatcher librarySignatureMatcher;
 
     public static final String ARMEABI_V7A = "armeabi_v7a";
     public static final String ARM64_V8A = "arm64_v8a";
@@ -80,4 +84,27 @@ public class StaticDataset {
         }
         return trackerNames;
     }
+
+    /**
+     * Matcher for {@link #getTrackerCodeSignatures()}. Pattern indices are the same as the signature indices.
+     */
+    @NonNull
+    public static synchronized MultiPatternMatcher getTrackerSignatureMatcher() {
+        if (trackerSignatureMatcher == null) {
+            trackerSignatureMatcher = new MultiPatternMatcher(getTrackerCodeSignatures());
+        }
+        return trackerSignatureMatcher;
+    }
+
+    /**
+     * Matcher for {@code R.array.lib_signatures}. Pattern indices are the same as the signature indices.
+     */
+    @NonNull
+    public static synchronized MultiPatternMatcher getLibrarySignatureMatcher() {
+        if (librarySignatureMatcher == null) {
+            librarySignatureMatcher = new MultiPatternMatcher(AppManager.getContext().getResources()
+                    .getStringArray(R.array.lib_signatures));
+        }
+        return librarySignatureMatcher;
+    }
 }
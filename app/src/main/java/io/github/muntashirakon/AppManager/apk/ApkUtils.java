@@ -38,6 +38,7 @@ import io.github.muntashirakon.AppManager.apk.parser.AndroidBinXmlParser;
 import io.github.muntashirakon.AppManager.apk.splitapk.SplitApkExporter;
 import io.github.muntashirakon.AppManager.backup.BackupFiles;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
+import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.misc.OsEnvironment;
 import io.github.muntashirakon.AppManager.self.filecache.FileCache;
 import io.github.muntashirakon.AppManager.utils.AppPref;
@@ -49,6 +50,8 @@ import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
 
 public final class ApkUtils {
+    public static final String TAG = ApkUtils.class.getSimpleName();
+
     public static final String EXT_APK = ".apk";
     public static final String EXT_APKS = ".apks";
 
@@ -123,8 +126,28 @@ public final class ApkUtils {
         return info.splitPublicSourceDirs != null && info.splitPublicSourceDirs.length > 0;
     }
 
+    /**
+     * Get the raw AndroidManifest.xml of the given APK file. The manifest is read directly using the central directory
+     * and cached on the disk, so that the same APK file does not have to be read again.
+     */
     @NonNull
     public static ByteBuffer getManifestFromApk(File apkFile) throws IOException {
+        ManifestCache manifestCache = ManifestCache.getInstance();
+        byte[] manifest = manifestCache.get(apkFile);
+        if (manifest == null) {
+            manifest = readManifestFromApk(apkFile);
+            manifestCache.put(apkFile, manifest);
+        }
+        return ByteBuffer.wrap(manifest);
+    }
+
+    @NonNull
+    private static byte[] readManifestFromApk(File apkFile) throws IOException {
+        try {
+            return ZipManifestReader.readEntry(apkFile, MANIFEST_FILE);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the manifest directly from " + apkFile + ", reading all entries.", e);
+        }
         try (ZipFile zipFile = new ZipFile(apkFile)) {
             Enumeration<? extends ZipEntry> archiveEntries = zipFile.entries();
             ZipEntry zipEntry;
@@ -140,7 +163,7 @@ public final class ApkUtils {
                     while (-1 != (n = zipInputStream.read(buf))) {
                         buffer.write(buf, 0, n);
                     }
-                    return ByteBuffer.wrap(buffer.toByteArray());
+                    return buffer.toByteArray();
                 }
             }
         }
@@ -166,13 +189,12 @@ public final class ApkUtils {
         }
         // This could be due to a Zip error, try caching the APK
         File cachedApk = FileCache.getGlobalFileCache().getCachedFile(apkInputStream, "apk");
-        ByteBuffer byteBuffer;
         try {
-            byteBuffer = getManifestFromApk(cachedApk);
+            // The cached file is deleted right away, so there's no point in caching its manifest
+            return ByteBuffer.wrap(readManifestFromApk(cachedApk));
         } finally {
             FileCache.getGlobalFileCache().delete(cachedApk);
         }
-        return byteBuffer;
     }
 
     @NonNull
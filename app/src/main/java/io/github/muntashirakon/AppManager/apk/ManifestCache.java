@@ -0,0 +1,114 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.apk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.utils.ContextUtils;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.FileUtils;
+import io.github.muntashirakon.io.IoUtils;
+
+/**
+ * On-disk cache of the raw AndroidManifest.xml of APK files. An APK file is identified by its path, size and
+ * modification time, so a replaced or updated APK file is never matched with a stale manifest.
+ */
+@WorkerThread
+class ManifestCache {
+    public static final String TAG = ManifestCache.class.getSimpleName();
+    public static final String CACHE_DIR_NAME = "manifests";
+
+    @Nullable
+    private static ManifestCache sInstance;
+
+    @NonNull
+    public static synchronized ManifestCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new ManifestCache();
+        }
+        return sInstance;
+    }
+
+    private final File mCacheDir;
+    @NonNull
+    private final String[] mAppCachePaths;
+
+    private ManifestCache() {
+        File appCacheDir = FileUtils.getCachePath();
+        mCacheDir = new File(appCacheDir, CACHE_DIR_NAME);
+        // The external cache directory is used if available, but temporary files may also be in the internal one
+        mAppCachePaths = new String[]{appCacheDir.getAbsolutePath() + File.separator,
+                ContextUtils.getContext().getCacheDir().getAbsolutePath() + File.separator};
+    }
+
+    @Nullable
+    public byte[] get(@NonNull File apkFile) {
+        File manifestFile = getManifestFile(apkFile);
+        if (manifestFile == null || !manifestFile.exists()) {
+            return null;
+        }
+        try (InputStream is = new FileInputStream(manifestFile)) {
+            return IoUtils.readFully(is, -1, true);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read cached manifest of " + apkFile, e);
+            return null;
+        }
+    }
+
+    public void put(@NonNull File apkFile, @NonNull byte[] manifest) {
+        File manifestFile = getManifestFile(apkFile);
+        if (manifestFile == null) {
+            return;
+        }
+        if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+            return;
+        }
+        // Write to a temporary file first so that a partially written manifest is never read
+        File tmpFile = new File(mCacheDir, manifestFile.getName() + ".tmp" + Thread.currentThread().getId());
+        try (OutputStream os = new FileOutputStream(tmpFile)) {
+            os.write(manifest);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache manifest of " + apkFile, e);
+            FileUtils.deleteSilently(tmpFile);
+            return;
+        }
+        if (!tmpFile.renameTo(manifestFile)) {
+            FileUtils.deleteSilently(tmpFile);
+        }
+    }
+
+    @Nullable
+    private File getManifestFile(@NonNull File apkFile) {
+        String path = apkFile.getAbsolutePath();
+        if (path.startsWith("/proc/")) {
+            // File descriptors are reused for different files
+            return null;
+        }
+        for (String appCachePath : mAppCachePaths) {
+            if (path.startsWith(appCachePath)) {
+                // Temporary files, e.g. extracted or downloaded APK files, are reused for different APK files
+                return null;
+            }
+        }
+        long length = apkFile.length();
+        long lastModified = apkFile.lastModified();
+        if (length == 0 || lastModified == 0) {
+            // Inaccessible file
+            return null;
+        }
+        String key = path + "\u0000" + length + "\u0000" + lastModified;
+        return new File(mCacheDir, DigestUtils.getHexDigest(DigestUtils.SHA_256,
+                key.getBytes(StandardCharsets.UTF_8)));
+    }
+}
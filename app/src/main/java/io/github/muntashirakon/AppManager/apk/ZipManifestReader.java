@@ -0,0 +1,175 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.apk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A minimal zip reader that reads a single entry of an APK file without going through all the entries. It locates the
+ * central directory using the end of central directory record, finds the entry there, and inflates only that entry
+ * from the memory-mapped file. ZIP64 archives are not supported, but APK files never use them.
+ */
+final class ZipManifestReader {
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_MIN_SIZE = 22;
+    private static final int EOCD_MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int CD_ENTRY_SIGNATURE = 0x02014b50;
+    private static final int CD_ENTRY_MIN_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_MIN_SIZE = 30;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    // The manifest is a few hundred KB at most, anything larger is certainly corrupted
+    private static final int MAX_ENTRY_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Read the contents of the given entry.
+     *
+     * @param entryName Name of the entry, e.g. AndroidManifest.xml
+     * @throws IOException If the entry does not exist, or the file is not a zip file or is not supported
+     */
+    @WorkerThread
+    @NonNull
+    public static byte[] readEntry(@NonNull File file, @NonNull String entryName) throws IOException {
+        byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long fileSize = channel.size();
+            // Find the end of central directory record
+            int tailSize = (int) Math.min(fileSize, EOCD_MIN_SIZE + EOCD_MAX_COMMENT_SIZE);
+            ByteBuffer tail = map(channel, fileSize - tailSize, tailSize);
+            int eocd = findEocd(tail);
+            if (eocd == -1) {
+                throw new IOException("Not a zip file: " + file);
+            }
+            long cdSize = getUnsignedInt(tail, eocd + 12);
+            long cdOffset = getUnsignedInt(tail, eocd + 16);
+            if (cdOffset + cdSize > fileSize - tailSize + eocd) {
+                throw new IOException("Invalid or ZIP64 central directory in " + file);
+            }
+            // Find the entry in the central directory
+            ByteBuffer cd = map(channel, cdOffset, cdSize);
+            int pos = 0;
+            while (pos + CD_ENTRY_MIN_SIZE <= cd.limit()) {
+                if (cd.getInt(pos) != CD_ENTRY_SIGNATURE) {
+                    throw new IOException("Invalid central directory entry in " + file);
+                }
+                int nameLength = getUnsignedShort(cd, pos + 28);
+                int extraLength = getUnsignedShort(cd, pos + 30);
+                int commentLength = getUnsignedShort(cd, pos + 32);
+                if (nameEquals(cd, pos + CD_ENTRY_MIN_SIZE, nameLength, name)) {
+                    int method = getUnsignedShort(cd, pos + 10);
+                    long compressedSize = getUnsignedInt(cd, pos + 20);
+                    long size = getUnsignedInt(cd, pos + 24);
+                    long localHeaderOffset = getUnsignedInt(cd, pos + 42);
+                    return readData(channel, localHeaderOffset, method, compressedSize, size, cdOffset);
+                }
+                pos += CD_ENTRY_MIN_SIZE + nameLength + extraLength + commentLength;
+            }
+        }
+        throw new IOException(entryName + " not found in " + file);
+    }
+
+    @NonNull
+    private static byte[] readData(@NonNull FileChannel channel, long localHeaderOffset, int method,
+                                   long compressedSize, long size, long cdOffset) throws IOException {
+        if (compressedSize > MAX_ENTRY_SIZE || size > MAX_ENTRY_SIZE) {
+            throw new IOException("Entry too large: " + size);
+        }
+        if (localHeaderOffset + LOCAL_HEADER_MIN_SIZE > cdOffset) {
+            throw new IOException("Invalid local header offset " + localHeaderOffset);
+        }
+        // The lengths in the local header may differ from the central directory
+        ByteBuffer header = map(channel, localHeaderOffset, LOCAL_HEADER_MIN_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header at " + localHeaderOffset);
+        }
+        long dataOffset = localHeaderOffset + LOCAL_HEADER_MIN_SIZE + getUnsignedShort(header, 26)
+                + getUnsignedShort(header, 28);
+        if (dataOffset + compressedSize > cdOffset) {
+            throw new IOException("Invalid entry data at " + dataOffset);
+        }
+        ByteBuffer data = map(channel, dataOffset, compressedSize);
+        byte[] compressed = new byte[(int) compressedSize];
+        data.get(compressed);
+        switch (method) {
+            case METHOD_STORED:
+                return compressed;
+            case METHOD_DEFLATED: {
+                byte[] uncompressed = new byte[(int) size];
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(compressed);
+                    int count = 0;
+                    while (count < uncompressed.length && !inflater.finished()) {
+                        int n = inflater.inflate(uncompressed, count, uncompressed.length - count);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        count += n;
+                    }
+                    if (count != uncompressed.length) {
+                        throw new IOException("Expected " + uncompressed.length + " bytes, found " + count);
+                    }
+                    return uncompressed;
+                } catch (DataFormatException e) {
+                    throw new IOException(e);
+                } finally {
+                    inflater.end();
+                }
+            }
+            default:
+                throw new IOException("Unsupported compression method " + method);
+        }
+    }
+
+    private static int findEocd(@NonNull ByteBuffer tail) {
+        // The comment is at the end of the record, so the record with a matching comment length is the right one
+        for (int pos = tail.limit() - EOCD_MIN_SIZE; pos >= 0; --pos) {
+            if (tail.getInt(pos) == EOCD_SIGNATURE
+                    && getUnsignedShort(tail, pos + 20) == tail.limit() - EOCD_MIN_SIZE - pos) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean nameEquals(@NonNull ByteBuffer cd, int offset, int length, @NonNull byte[] name) {
+        if (length != name.length || offset + length > cd.limit()) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (cd.get(offset + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    private static ByteBuffer map(@NonNull FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int getUnsignedShort(@NonNull ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    private static long getUnsignedInt(@NonNull ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset) & 0xFFFFFFFFL;
+    }
+}
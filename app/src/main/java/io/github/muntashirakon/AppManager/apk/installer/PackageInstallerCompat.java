@@ -24,6 +24,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.UserHandleHidden;
 
 import androidx.annotation.IntDef;
@@ -32,15 +33,25 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.annotation.WorkerThread;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -62,6 +73,8 @@ import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.BroadcastUtils;
 import io.github.muntashirakon.AppManager.utils.ContextUtils;
 import io.github.muntashirakon.AppManager.utils.MiuiUtils;
+import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
+import io.github.muntashirakon.AppManager.utils.TarUtils;
 import io.github.muntashirakon.AppManager.utils.UIUtils;
 import io.github.muntashirakon.AppManager.utils.UiThreadHandler;
 import io.github.muntashirakon.io.IoUtils;
@@ -434,6 +447,16 @@ public final class PackageInstallerCompat {
         }
         // MIUI-end
 
+        /**
+         * Called when all the apk files are written to the session, right before it is committed.
+         *
+         * @param bytes         Total number of bytes written
+         * @param elapsedMillis Time taken to write the apk files
+         */
+        @WorkerThread
+        default void onFinishedWriting(int sessionId, String packageName, long bytes, long elapsedMillis) {
+        }
+
         @WorkerThread
         void onFinishedInstall(int sessionId, String packageName, int result, @Nullable String blockingPackage,
                                @Nullable String statusMessage);
@@ -569,22 +592,29 @@ public final class PackageInstallerCompat {
             if (!openSession(userId, installFlags)) return false;
             List<ApkFile.Entry> selectedEntries = apkFile.getSelectedEntries();
             Log.d(TAG, "Install: selected entries: " + selectedEntries.size());
-            // Write apk files
-            for (ApkFile.Entry entry : selectedEntries) {
-                try (InputStream apkInputStream = entry.getSignedInputStream();
-                     OutputStream apkOutputStream = session.openWrite(entry.getFileName(), 0, entry.getFileSize())) {
-                    IoUtils.copy(apkInputStream, apkOutputStream);
-                    session.fsync(apkOutputStream);
-                    Log.d(TAG, "Install: copied entry " + entry.name);
-                } catch (IOException e) {
-                    callFinish(STATUS_FAILURE_SESSION_WRITE);
-                    Log.e(TAG, "Install: Cannot copy files to session.", e);
-                    return abandon();
-                } catch (SecurityException e) {
-                    callFinish(STATUS_FAILURE_SECURITY);
-                    Log.e(TAG, "Install: Cannot access apk files.", e);
-                    return abandon();
+            // Write apk files. Signing and caching modify the shared state of the ApkFile (e.g. its file cache), and
+            // so they are done here one by one. Only the copying is done in parallel.
+            List<SessionEntry> sessionEntries = new ArrayList<>(selectedEntries.size());
+            try {
+                for (ApkFile.Entry entry : selectedEntries) {
+                    if (apkFile.needSigning()) {
+                        File signedFile = entry.getSignedFile();
+                        sessionEntries.add(new SessionEntry(entry.getFileName(), signedFile.length(),
+                                () -> new FileInputStream(signedFile)));
+                    } else {
+                        sessionEntries.add(new SessionEntry(entry.getFileName(), entry.getFileSize(),
+                                entry::getRealInputStream));
+                    }
                 }
+            } catch (IOException e) {
+                callFinish(STATUS_FAILURE_SESSION_WRITE);
+                Log.e(TAG, "Install: Cannot sign apk files.", e);
+                return abandon();
+            }
+            int writeStatus = writeApkFiles(sessionEntries);
+            if (writeStatus != STATUS_SUCCESS) {
+                callFinish(writeStatus);
+                return abandon();
             }
             Log.d(TAG, "Install: Running installation...");
             // Commit
@@ -609,28 +639,159 @@ public final class PackageInstallerCompat {
             userId = allRequestedUsers[0];
             if (!openSession(userId, installFlags)) return false;
             // Write apk files
+            List<SessionEntry> sessionEntries = new ArrayList<>(apkFiles.length);
             for (Path apkFile : apkFiles) {
-                try (InputStream apkInputStream = apkFile.openInputStream();
-                     OutputStream apkOutputStream = session.openWrite(apkFile.getName(), 0, apkFile.length())) {
-                    IoUtils.copy(apkInputStream, apkOutputStream);
-                    session.fsync(apkOutputStream);
-                } catch (IOException e) {
-                    callFinish(STATUS_FAILURE_SESSION_WRITE);
-                    Log.e(TAG, "Install: Cannot copy files to session.", e);
-                    return abandon();
-                } catch (SecurityException e) {
-                    callFinish(STATUS_FAILURE_SECURITY);
-                    Log.e(TAG, "Install: Cannot access apk files.", e);
-                    return abandon();
+                sessionEntries.add(new SessionEntry(apkFile.getName(), apkFile.length(), apkFile::openInputStream));
+            }
+            int writeStatus = writeApkFiles(sessionEntries);
+            if (writeStatus != STATUS_SUCCESS) {
+                callFinish(writeStatus);
+                return abandon();
+            }
+            // Commit
+            return commit(userId);
+        } finally {
+            unregisterReceiver();
+        }
+    }
+
+    /**
+     * Install the apk files stored in a tar file without extracting them first. Each apk file is written to the
+     * session as soon as it is read from the tar file using the size stored in its header, and the other entries are
+     * skipped. The stream is read until the end before committing so that the errors detected at the end of the
+     * stream (e.g. a checksum mismatch) abandon the session instead of installing a broken package.
+     *
+     * @param tarType   Compression type of the tar file
+     * @param tarStream Stream of the tar file, closed when the apk files are written
+     * @param apkNames  Names of the apk files in the tar file, all of them must be present
+     */
+    public boolean install(@NonNull @TarUtils.TarType String tarType, @NonNull InputStream tarStream,
+                           @NonNull String[] apkNames, @NonNull String packageName, @UserIdInt int userId) {
+        try {
+            this.apkFile = null;
+            this.packageName = packageName;
+            initBroadcastReceiver();
+            int installFlags = getInstallFlags(userId);
+            int[] allRequestedUsers = getAllRequestedUsers(userId);
+            if (allRequestedUsers.length == 0) {
+                Log.d(TAG, "Install: no users.");
+                callFinish(STATUS_FAILURE_INVALID);
+                return false;
+            }
+            userId = allRequestedUsers[0];
+            if (!openSession(userId, installFlags)) return false;
+            // Write apk files
+            try (BufferedInputStream bis = new BufferedInputStream(tarStream);
+                 TarArchiveInputStream tis = new TarArchiveInputStream(TarUtils.createCompressorInputStream(tarType, bis))) {
+                long startTime = SystemClock.elapsedRealtime();
+                long totalBytes = 0;
+                List<String> remainingApkNames = new ArrayList<>(Arrays.asList(apkNames));
+                TarArchiveEntry entry;
+                while ((entry = tis.getNextEntry()) != null) {
+                    if (!entry.isFile()) continue;
+                    String name = getTarEntryName(entry);
+                    if (!remainingApkNames.remove(name)) continue;
+                    try (OutputStream apkOutputStream = session.openWrite(name, 0, entry.getSize())) {
+                        totalBytes += IoUtils.copy(tis, apkOutputStream, entry.getSize());
+                        session.fsync(apkOutputStream);
+                    }
+                }
+                if (!remainingApkNames.isEmpty()) {
+                    throw new FileNotFoundException("Missing apk files " + remainingApkNames);
                 }
+                // Read the rest, e.g. the padding at the end of the tar file
+                byte[] buffer = new byte[IoUtils.DEFAULT_BUFFER_SIZE];
+                //noinspection StatementWithEmptyBody
+                while (bis.read(buffer) != -1) {
+                }
+                onFinishedWriting(totalBytes, SystemClock.elapsedRealtime() - startTime);
+            } catch (IOException e) {
+                callFinish(STATUS_FAILURE_SESSION_WRITE);
+                Log.e(TAG, "Install: Cannot copy files to session.", e);
+                return abandon();
+            } catch (SecurityException e) {
+                callFinish(STATUS_FAILURE_SECURITY);
+                Log.e(TAG, "Install: Cannot access apk files.", e);
+                return abandon();
             }
             // Commit
             return commit(userId);
         } finally {
+            IoUtils.closeQuietly(tarStream);
             unregisterReceiver();
         }
     }
 
+    /**
+     * Write the apk files to the session. The session accepts concurrent writes to different names, and so the apk
+     * files are written in parallel, which is particularly useful for apps with a lot of splits.
+     *
+     * @return {@link #STATUS_SUCCESS} if all the apk files are written, a failure status otherwise
+     */
+    @WorkerThread
+    @Status
+    private int writeApkFiles(@NonNull List<SessionEntry> sessionEntries) {
+        long startTime = SystemClock.elapsedRealtime();
+        MultithreadedExecutor executor = MultithreadedExecutor.getNewInstance();
+        try {
+            List<Future<Long>> futures = new ArrayList<>(sessionEntries.size());
+            for (SessionEntry sessionEntry : sessionEntries) {
+                futures.add(executor.submit(() -> writeApkFile(sessionEntry)));
+            }
+            long totalBytes = 0;
+            for (Future<Long> future : futures) {
+                totalBytes += future.get();
+            }
+            onFinishedWriting(totalBytes, SystemClock.elapsedRealtime() - startTime);
+            return STATUS_SUCCESS;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SecurityException) {
+                Log.e(TAG, "Install: Cannot access apk files.", cause);
+                return STATUS_FAILURE_SECURITY;
+            }
+            Log.e(TAG, "Install: Cannot copy files to session.", cause);
+            return STATUS_FAILURE_SESSION_WRITE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.e(TAG, "Install: Interrupted while copying files to session.", e);
+            return STATUS_FAILURE_SESSION_WRITE;
+        } finally {
+            // Stop the remaining writes if one of them has failed, the executor can be reused once they're stopped
+            executor.shutdownNow();
+        }
+    }
+
+    @WorkerThread
+    private long writeApkFile(@NonNull SessionEntry sessionEntry) throws IOException {
+        try (InputStream apkInputStream = sessionEntry.opener.open();
+             OutputStream apkOutputStream = session.openWrite(sessionEntry.name, 0, sessionEntry.size)) {
+            long count = IoUtils.copy(apkInputStream, apkOutputStream, sessionEntry.size);
+            session.fsync(apkOutputStream);
+            Log.d(TAG, "Install: copied entry " + sessionEntry.name);
+            return count;
+        }
+    }
+
+    private void onFinishedWriting(long bytes, long elapsedMillis) {
+        Log.d(TAG, "Install: copied " + bytes + " bytes in " + elapsedMillis + " ms");
+        if (onInstallListener != null) {
+            onInstallListener.onFinishedWriting(sessionId, packageName, bytes, elapsedMillis);
+        }
+    }
+
+    @NonNull
+    private static String getTarEntryName(@NonNull TarArchiveEntry entry) {
+        String name = entry.getName();
+        if (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        if (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return name;
+    }
+
     private boolean commit(int userId) {
         IntentSender sender;
         LocalIntentReceiver intentReceiver;
@@ -1050,6 +1211,25 @@ public final class PackageInstallerCompat {
         return userId;
     }
 
+    private static class SessionEntry {
+        interface InputStreamOpener {
+            @NonNull
+            InputStream open() throws IOException;
+        }
+
+        @NonNull
+        public final String name;
+        public final long size;
+        @NonNull
+        public final InputStreamOpener opener;
+
+        public SessionEntry(@NonNull String name, long size, @NonNull InputStreamOpener opener) {
+            this.name = name;
+            this.size = size;
+            this.opener = opener;
+        }
+    }
+
     // https://cs.android.com/android/platform/superproject/+/master:frameworks/base/services/core/java/com/android/server/pm/PackageManagerShellCommand.java;l=3855;drc=d31ee388115d17c2fd337f2806b37390c7d29834
     private static class LocalIntentReceiver {
         private final LinkedBlockingQueue<Intent> mResult = new LinkedBlockingQueue<>();
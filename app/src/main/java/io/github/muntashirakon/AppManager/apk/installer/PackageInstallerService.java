@@ -21,6 +21,7 @@ import android.app.Notification;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.text.format.Formatter;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -97,6 +98,11 @@ public class PackageInstallerService extends ForegroundService {
             return;
         }
         // Install package
+        if (notificationManager != null) {
+            // Clear the stats of the previous package
+            builder.setContentText(getString(R.string.install_in_progress));
+            notificationManager.notify(NOTIFICATION_ID, builder.build());
+        }
         PackageInstallerCompat installer = PackageInstallerCompat.getNewInstance();
         installer.setAppLabel(apkQueueItem.getAppLabel());
         installer.setOnInstallListener(new PackageInstallerCompat.OnInstallListener() {
@@ -115,6 +121,15 @@ public class PackageInstallerService extends ForegroundService {
             }
             // MIUI-end
 
+            @Override
+            public void onFinishedWriting(int sessionId, String packageName, long bytes, long elapsedMillis) {
+                if (notificationManager == null) return;
+                Context context = PackageInstallerService.this;
+                builder.setContentText(context.getString(R.string.installer_apk_files_written,
+                        Formatter.formatShortFileSize(context, bytes), elapsedMillis / 1000f));
+                notificationManager.notify(NOTIFICATION_ID, builder.build());
+            }
+
             @Override
             public void onFinishedInstall(int sessionId, String packageName, int result,
                                           @Nullable String blockingPackage, @Nullable String statusMessage) {
@@ -0,0 +1,64 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.apk.splitapk;
+
+import androidx.annotation.NonNull;
+
+import org.apache.commons.compress.utils.CountingOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A {@link ZipOutputStream} that aligns the data of the stored (uncompressed) entries the same way zipalign does, i.e.
+ * by padding the extra field of the local file header. This allows the stored files to be read (or mapped) directly
+ * from the archive.
+ */
+class AlignedZipOutputStream extends ZipOutputStream {
+    public static final int ALIGNMENT = 4;
+
+    // Header ID of the extra field used by zipalign and apksigner for alignment
+    private static final short ALIGNMENT_EXTRA_ID = (short) 0xD935;
+    private static final int ALIGNMENT_EXTRA_MIN_SIZE = 6;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+    @NonNull
+    private final CountingOutputStream mCountingOutputStream;
+
+    public AlignedZipOutputStream(@NonNull OutputStream out) {
+        this(new CountingOutputStream(out));
+    }
+
+    private AlignedZipOutputStream(@NonNull CountingOutputStream out) {
+        super(out);
+        mCountingOutputStream = out;
+    }
+
+    @Override
+    public void putNextEntry(@NonNull ZipEntry e) throws IOException {
+        if (e.getMethod() == STORED && e.getExtra() == null) {
+            // Write the previous entry completely so that the offset of the local file header is known
+            closeEntry();
+            e.setExtra(getAlignmentExtra(mCountingOutputStream.getBytesWritten(), e.getName()));
+        }
+        super.putNextEntry(e);
+    }
+
+    @NonNull
+    private static byte[] getAlignmentExtra(long headerOffset, @NonNull String name) {
+        long dataOffset = headerOffset + LOCAL_FILE_HEADER_SIZE + name.getBytes(StandardCharsets.UTF_8).length
+                + ALIGNMENT_EXTRA_MIN_SIZE;
+        int padding = (int) ((ALIGNMENT - dataOffset % ALIGNMENT) % ALIGNMENT);
+        ByteBuffer extra = ByteBuffer.allocate(ALIGNMENT_EXTRA_MIN_SIZE + padding).order(ByteOrder.LITTLE_ENDIAN);
+        extra.putShort(ALIGNMENT_EXTRA_ID);
+        extra.putShort((short) (2 + padding));
+        extra.putShort((short) ALIGNMENT);
+        // The rest is zero-filled
+        return extra.array();
+    }
+}
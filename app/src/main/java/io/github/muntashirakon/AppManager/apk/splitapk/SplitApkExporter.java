@@ -24,6 +24,7 @@ import java.util.zip.ZipOutputStream;
 import io.github.muntashirakon.AppManager.AppManager;
 import io.github.muntashirakon.AppManager.apk.ApkUtils;
 import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.ParallelDigester;
 import io.github.muntashirakon.AppManager.utils.UIUtils;
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
@@ -42,7 +43,7 @@ public final class SplitApkExporter {
     @WorkerThread
     public static void saveApks(@NonNull PackageInfo packageInfo, @NonNull Path apksFile) throws IOException {
         try (OutputStream outputStream = apksFile.openOutputStream();
-             ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+             ZipOutputStream zipOutputStream = new AlignedZipOutputStream(outputStream)) {
             zipOutputStream.setMethod(ZipOutputStream.DEFLATED);
             zipOutputStream.setLevel(Deflater.BEST_COMPRESSION);
 
@@ -65,35 +66,46 @@ public final class SplitApkExporter {
         bitmap.compress(Bitmap.CompressFormat.PNG, 100, pngOutputStream);
         addBytes(zipOutputStream, pngOutputStream.toByteArray(), ApksMetadata.ICON_FILE, apksMetadata.exportTimestamp);
 
-        // Add apk files
-        for (Path apkFile : apkFiles) {
-            addFile(zipOutputStream, apkFile, apkFile.getName(), apksMetadata.exportTimestamp);
-        }
-
         // Add OBB files if possible
+        List<Path> files = new ArrayList<>(apkFiles);
         Path obbDir = null;
         try {
             obbDir = ApkUtils.getObbDir(packageInfo.packageName, UserHandleHidden.getUserId(applicationInfo.uid));
         } catch (IOException ignore) {
         }
         if (obbDir != null) {
-            Path[] obbFiles = obbDir.listFiles();
-            for (Path obbFile : obbFiles) {
-                addFile(zipOutputStream, obbFile, obbFile.getName(), apksMetadata.exportTimestamp);
-            }
+            Collections.addAll(files, obbDir.listFiles());
+        }
+
+        // Add apk and OBB files
+        long[] crcs = calculateCrc32s(files);
+        for (int i = 0; i < files.size(); ++i) {
+            Path file = files.get(i);
+            addFile(zipOutputStream, file, file.getName(), apksMetadata.exportTimestamp, crcs[i]);
         }
     }
 
     static void addFile(@NonNull ZipOutputStream zipOutputStream, @NonNull Path filePath, @NonNull String name,
                                long timestamp) throws IOException {
+        addFile(zipOutputStream, filePath, name, timestamp, DigestUtils.calculateCrc32(filePath));
+    }
+
+    /**
+     * Add a file without compression. APK and OBB files are already compressed, and deflating them again costs a lot
+     * of CPU time while saving almost no space.
+     */
+    static void addFile(@NonNull ZipOutputStream zipOutputStream, @NonNull Path filePath, @NonNull String name,
+                        long timestamp, long crc) throws IOException {
+        long size = filePath.length();
         ZipEntry zipEntry = new ZipEntry(name);
-        zipEntry.setMethod(ZipEntry.DEFLATED);
-        zipEntry.setSize(filePath.length());
-        zipEntry.setCrc(DigestUtils.calculateCrc32(filePath));
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(size);
+        zipEntry.setCompressedSize(size);
+        zipEntry.setCrc(crc);
         zipEntry.setTime(timestamp);
         zipOutputStream.putNextEntry(zipEntry);
         try (InputStream apkInputStream = filePath.openInputStream()) {
-            IoUtils.copy(apkInputStream, zipOutputStream);
+            IoUtils.copy(apkInputStream, zipOutputStream, size);
         }
         zipOutputStream.closeEntry();
     }
@@ -110,6 +122,21 @@ public final class SplitApkExporter {
         zipOutputStream.closeEntry();
     }
 
+    /**
+     * Calculate the CRC32 checksums of the files in parallel using the shared digester pool. They are required before
+     * writing the stored entries.
+     */
+    @WorkerThread
+    @NonNull
+    private static long[] calculateCrc32s(@NonNull List<Path> files) throws IOException {
+        String[] digests = ParallelDigester.getHexDigests(DigestUtils.CRC32, files);
+        long[] crcs = new long[digests.length];
+        for (int i = 0; i < crcs.length; ++i) {
+            crcs[i] = Long.parseLong(digests[i], 16);
+        }
+        return crcs;
+    }
+
     @NonNull
     private static List<Path> getAllApkFiles(@NonNull ApplicationInfo applicationInfo) {
         List<Path> apkFiles = new ArrayList<>();
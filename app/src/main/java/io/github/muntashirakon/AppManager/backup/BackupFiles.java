@@ -4,6 +4,7 @@ package io.github.muntashirakon.AppManager.backup;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -12,11 +13,14 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
 
 import io.github.muntashirakon.AppManager.settings.Prefs;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.ParallelDigester;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.PathReader;
 import io.github.muntashirakon.io.PathWriter;
@@ -134,6 +138,24 @@ public class BackupFiles {
             } else return getBackupPath().findFile(RULES_TSV + CryptoUtils.getExtension(mode));
         }
 
+        @NonNull
+        public Path getManifestFile(int index, @CryptoUtils.Mode String mode) throws IOException {
+            String name = DataManifest.getManifestName(index) + CryptoUtils.getExtension(mode);
+            if (mIsTemporary) {
+                return getBackupPath().findOrCreateFile(name, null);
+            } else return getBackupPath().findFile(name);
+        }
+
+        /**
+         * Index of the APK files stored in the {@link ChunkStore}. It is never encrypted.
+         */
+        @NonNull
+        public Path getChunkIndexFile() throws IOException {
+            if (mIsTemporary) {
+                return getBackupPath().findOrCreateFile(ChunkStore.CHUNK_INDEX_TSV, null);
+            } else return getBackupPath().findFile(ChunkStore.CHUNK_INDEX_TSV);
+        }
+
         public void freeze() throws IOException {
             getBackupPath().createNewFile(FREEZE, null);
         }
@@ -302,6 +324,31 @@ public class BackupFiles {
             }
         }
 
+        /**
+         * Verify the checksums of the given files. The files are hashed in parallel.
+         *
+         * @param errorMessage Message of the exception thrown if a file could not be verified
+         */
+        @WorkerThread
+        void verify(@DigestUtils.Algorithm String algo, @NonNull Path[] files, @NonNull String errorMessage)
+                throws BackupException {
+            String[] checksums;
+            try {
+                checksums = ParallelDigester.getHexDigests(algo, Arrays.asList(files));
+            } catch (IOException e) {
+                throw new BackupException(errorMessage, e);
+            }
+            for (int i = 0; i < files.length; ++i) {
+                String requiredChecksum = get(files[i].getName());
+                if (!checksums[i].equals(requiredChecksum)) {
+                    throw new BackupException(errorMessage +
+                            "\nFile: " + files[i] +
+                            "\nFound: " + checksums[i] +
+                            "\nRequired: " + requiredChecksum);
+                }
+            }
+        }
+
         @Override
         public void close() {
             synchronized (mChecksums) {
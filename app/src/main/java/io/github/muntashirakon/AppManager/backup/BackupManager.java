@@ -37,6 +37,8 @@ public class BackupManager {
     @NonNull
     public static String getExt(@TarUtils.TarType String tarType) {
         if (TarUtils.TAR_BZIP2.equals(tarType)) return ".tar.bz2";
+        else if (TarUtils.TAR_ZSTD.equals(tarType)) return ".tar.zst";
+        else if (TarUtils.TAR_LZ4.equals(tarType)) return ".tar.lz4";
         else return ".tar.gz";
     }
 
@@ -90,15 +92,23 @@ public class BackupManager {
         try {
             // Get backup files based on the number of backupNames
             BackupFiles backupFiles = new BackupFiles(targetPackage.getPackageName(), targetPackage.getUserHandle(), backupNames);
-            BackupFiles.BackupFile[] backupFileList = requestedFlags.backupMultiple() ?
-                    backupFiles.getFreshBackupPaths() : backupFiles.getBackupPaths(true);
+            // Incremental backups must not replace the backups they depend on
+            boolean freshBackup = requestedFlags.backupMultiple() || requestedFlags.backupIncremental();
+            BackupFiles.BackupFile[] backupFileList = freshBackup ? backupFiles.getFreshBackupPaths()
+                    : backupFiles.getBackupPaths(true);
+            boolean replacedChunkedSource = false;
             for (BackupFiles.BackupFile backupFile : backupFileList) {
                 try (BackupOp backupOp = new BackupOp(targetPackage.getPackageName(), metadataManager, requestedFlags,
                         backupFile, targetPackage.getUserHandle())) {
                     backupOp.runBackup();
+                    replacedChunkedSource |= !freshBackup && backupOp.getMetadata().chunkedSource;
                     BackupUtils.putBackupToDbAndBroadcast(ContextUtils.getContext(), backupOp.getMetadata());
                 }
             }
+            if (replacedChunkedSource) {
+                // The chunks of the replaced backup may no longer be in use
+                collectUnusedChunks();
+            }
         } catch (IOException e) {
             throw new BackupException("Backup failed", e);
         }
@@ -106,7 +116,7 @@ public class BackupManager {
 
     @Nullable
     private String[] getProcessedBackupNames(@Nullable String[] backupNames) {
-        if (requestedFlags.backupMultiple()) {
+        if (requestedFlags.backupMultiple() || requestedFlags.backupIncremental()) {
             // Multiple backups requested
             if (backupNames == null) {
                 // Create a singleton backupNames array with current time
@@ -183,6 +193,7 @@ public class BackupManager {
     }
 
     public void deleteBackup(@Nullable String[] backupNames) throws BackupException {
+        boolean hasChunkedSource = false;
         if (backupNames == null) {
             // No backup names supplied, use user handle
             BackupFiles backupFiles;
@@ -197,9 +208,11 @@ public class BackupManager {
             for (BackupFiles.BackupFile backupFile : backupFileList) {
                 try {
                     MetadataManager.Metadata metadata = MetadataManager.getMetadata(backupFile);
+                    checkNoDependentBackup(backupFile);
                     if (!backupFile.isFrozen() && !backupFile.delete()) {
                         throw new BackupException("Could not delete the selected backups");
                     }
+                    hasChunkedSource |= metadata.chunkedSource;
                     BackupUtils.deleteBackupToDbAndBroadcast(ContextUtils.getContext(), metadata);
                 } catch (IOException e) {
                     throw new BackupException("Could not delete the selected backups", e);
@@ -218,12 +231,50 @@ public class BackupManager {
                 } catch (IOException e) {
                     throw new BackupException("Could not get backup files.", e);
                 }
+                checkNoDependentBackup(backupFile);
                 if (!backupFile.isFrozen() && !backupFile.delete()) {
                     throw new BackupException("Could not delete the selected backups");
                 }
+                hasChunkedSource |= metadata.chunkedSource;
                 BackupUtils.deleteBackupToDbAndBroadcast(ContextUtils.getContext(), metadata);
             }
         }
+        if (hasChunkedSource) {
+            collectUnusedChunks();
+        }
+    }
+
+    /**
+     * Remove the unused chunks once for all the backups deleted or replaced in a batch operation.
+     */
+    public static void beginBatchOperation() {
+        ChunkStore.deferGarbageCollection();
+    }
+
+    public static void endBatchOperation() {
+        try {
+            ChunkStore.resumeGarbageCollection();
+        } catch (IOException e) {
+            // Unused chunks will be removed next time
+            Log.w(TAG, "Could not remove unused chunks.", e);
+        }
+    }
+
+    private static void collectUnusedChunks() {
+        try {
+            ChunkStore.collectGarbage();
+        } catch (IOException e) {
+            // Unused chunks will be removed next time
+            Log.w(TAG, "Could not remove unused chunks.", e);
+        }
+    }
+
+    private static void checkNoDependentBackup(@NonNull BackupFiles.BackupFile backupFile) throws BackupException {
+        String dependentBackup = ParentBackup.findDependentBackup(backupFile.getBackupPath());
+        if (dependentBackup != null) {
+            throw new BackupException("Backup " + backupFile.getBackupPath().getName()
+                    + " cannot be deleted because the incremental backup " + dependentBackup + " depends on it.");
+        }
     }
 
     public void verify(@Nullable String backupName) throws BackupException {
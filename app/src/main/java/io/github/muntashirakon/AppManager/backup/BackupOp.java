@@ -24,6 +24,7 @@ import android.os.Build;
 import android.os.RemoteException;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.core.content.pm.PermissionInfoCompat;
 
@@ -32,10 +33,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.regex.Pattern;
 
 import io.github.muntashirakon.AppManager.AppManager;
@@ -250,53 +251,130 @@ class BackupOp implements Closeable {
                 throw new BackupException(mMetadata.apkName + " not found at " + sourceDir);
             }
         }
-        Path[] sourceFiles;
+        if (mMetadata.chunkedSource) {
+            backupApkFilesToChunkStore(sourceDir);
+            return;
+        }
         try {
-            sourceFiles = TarUtils.create(mMetadata.tarType, sourceDir, mTempBackupPath, sourceBackupFilePrefix,
-                    /* language=regexp */ new String[]{".*\\.apk"}, null, null, false).toArray(new Path[0]);
+            // Files are encrypted and their checksums are stored while they are being written
+            TarUtils.create(mMetadata.tarType, sourceDir, getSplitOutputStream(sourceBackupFilePrefix),
+                    /* language=regexp */ new String[]{".*\\.apk"}, null, false,
+                    mMetadata.compressionLevel, Prefs.BackupRestore.getCompressionThreadCount());
         } catch (Throwable th) {
             throw new BackupException("APK files backup is requested but no source directory has been backed up.", th);
         }
+    }
+
+    private void backupApkFilesToChunkStore(@NonNull Path sourceDir) throws BackupException {
+        Path basePath = sourceDir.isDirectory() ? sourceDir : Objects.requireNonNull(sourceDir.getParentFile());
+        List<Path> apkFiles = new ArrayList<>();
+        for (Path file : Paths.getAll(basePath, sourceDir, /* language=regexp */ new String[]{".*\\.apk"}, null, false)) {
+            if (!file.isDirectory()) {
+                apkFiles.add(file);
+            }
+        }
+        if (apkFiles.isEmpty()) {
+            throw new BackupException("APK files backup is requested but no APK files are found in " + sourceDir);
+        }
         try {
-            sourceFiles = encrypt(sourceFiles);
+            Path indexFile = mBackupFile.getChunkIndexFile();
+            ChunkStore.getInstance().storeFiles(basePath, apkFiles, indexFile);
+            // Store checksum
+            mChecksum.add(indexFile.getName(), DigestUtils.getHexDigest(mMetadata.checksumAlgo, indexFile));
         } catch (IOException e) {
-            throw new BackupException("Failed to encrypt " + Arrays.toString(sourceFiles), e);
-        }
-        for (Path file : sourceFiles) {
-            mChecksum.add(file.getName(), DigestUtils.getHexDigest(mMetadata.checksumAlgo, file));
+            throw new BackupException("Could not store the APK files in the chunk store.", e);
         }
     }
 
     private void backupData() throws BackupException {
         String sourceBackupFilePrefix;
-        Path[] dataFiles;
         // Store file hash in a separate thread
         new Thread(() -> {
             for (String dir : mMetadata.dataDirs) {
                 FileHash fileHash = new FileHash();
                 fileHash.path = dir;
-                fileHash.hash = DigestUtils.getHexDigest(DigestUtils.SHA_256, Paths.get(dir));
+                try {
+                    fileHash.hash = DigestUtils.getHexDigest(DigestUtils.SHA_256, Paths.get(dir));
+                } catch (IOException e) {
+                    // A partial hash would hide the changes in the unreadable files
+                    Log.w(TAG, "Could not calculate the hash of " + dir, e);
+                    AppsDb.getInstance().fileHashDao().delete(dir);
+                    continue;
+                }
                 AppsDb.getInstance().fileHashDao().insert(fileHash);
             }
         }).start();
+        DataManifest[] parentManifests = mBackupFlags.backupIncremental() ? getParentManifests() : null;
         for (int i = 0; i < mMetadata.dataDirs.length; ++i) {
             sourceBackupFilePrefix = DATA_PREFIX + i + getExt(mMetadata.tarType);
+            String[] excludeDirs = BackupUtils.getExcludeDirs(!mBackupFlags.backupCache(), null);
+            if (mBackupFlags.backupIncremental()) {
+                backupDataIncremental(i, sourceBackupFilePrefix, excludeDirs,
+                        parentManifests != null ? parentManifests[i] : null);
+                continue;
+            }
             try {
-                dataFiles = TarUtils.create(mMetadata.tarType, Paths.get(mMetadata.dataDirs[i]), mTempBackupPath,
-                                sourceBackupFilePrefix, null, null,
-                                BackupUtils.getExcludeDirs(!mBackupFlags.backupCache(), null), false)
-                        .toArray(new Path[0]);
+                TarUtils.create(mMetadata.tarType, Paths.get(mMetadata.dataDirs[i]),
+                        getSplitOutputStream(sourceBackupFilePrefix), null, excludeDirs, false,
+                        mMetadata.compressionLevel, Prefs.BackupRestore.getCompressionThreadCount());
             } catch (Throwable th) {
                 throw new BackupException("Failed to backup data directory at " + mMetadata.dataDirs[i], th);
             }
-            try {
-                dataFiles = encrypt(dataFiles);
-            } catch (IOException e) {
-                throw new BackupException("Failed to encrypt " + Arrays.toString(dataFiles));
-            }
-            for (Path file : dataFiles) {
-                mChecksum.add(file.getName(), DigestUtils.getHexDigest(mMetadata.checksumAlgo, file));
+        }
+    }
+
+    /**
+     * Store only the files modified since the parent backup along with a manifest of all the files. If there's no
+     * parent manifest, all the files are stored.
+     */
+    private void backupDataIncremental(int index, @NonNull String sourceBackupFilePrefix,
+                                       @NonNull String[] excludeDirs, @Nullable DataManifest parentManifest)
+            throws BackupException {
+        Path dataDir = Paths.get(mMetadata.dataDirs[index]);
+        DataManifest manifest;
+        try {
+            List<Path> modifiedFiles = new ArrayList<>();
+            manifest = DataManifest.build(dataDir, Paths.getAll(dataDir, dataDir, null, excludeDirs, false),
+                    mMetadata.checksumAlgo, parentManifest, modifiedFiles);
+            TarUtils.create(mMetadata.tarType, dataDir, modifiedFiles, getSplitOutputStream(sourceBackupFilePrefix),
+                    false, mMetadata.compressionLevel, Prefs.BackupRestore.getCompressionThreadCount());
+        } catch (Throwable th) {
+            throw new BackupException("Failed to backup data directory at " + mMetadata.dataDirs[index], th);
+        }
+        try {
+            Path manifestFile = mBackupFile.getManifestFile(index, CryptoUtils.MODE_NO_ENCRYPTION);
+            manifest.write(manifestFile);
+            encrypt(new Path[]{manifestFile});
+            // Overwrite with the new file
+            manifestFile = mBackupFile.getManifestFile(index, mMetadata.crypto);
+            // Store checksum
+            mChecksum.add(manifestFile.getName(), DigestUtils.getHexDigest(mMetadata.checksumAlgo, manifestFile));
+        } catch (IOException e) {
+            throw new BackupException("Failed to write the manifest for index " + index, e);
+        }
+    }
+
+    /**
+     * Get the manifests of the latest incremental backup and set it as the parent of this backup.
+     *
+     * @return The manifests for each data directory, or {@code null} if a full backup has to be taken
+     */
+    @Nullable
+    private DataManifest[] getParentManifests() {
+        Path packagePath = mTempBackupPath.getParentFile();
+        if (packagePath == null) return null;
+        MetadataManager.Metadata parentMetadata = ParentBackup.findParent(packagePath, mMetadata);
+        if (parentMetadata == null) return null;
+        try (ParentBackup parentBackup = new ParentBackup(parentMetadata)) {
+            DataManifest[] manifests = new DataManifest[mMetadata.dataDirs.length];
+            for (int i = 0; i < manifests.length; ++i) {
+                manifests[i] = parentBackup.readManifest(i);
             }
+            mMetadata.parentBackup = parentMetadata.backupName;
+            return manifests;
+        } catch (IOException | BackupException e) {
+            Log.w(TAG, "Could not read the parent backup " + parentMetadata.backupName + ", taking a full backup.", e);
+            return null;
         }
     }
 
@@ -328,29 +406,21 @@ class BackupOp implements Closeable {
             throw new BackupException("There were some KeyStore items but they couldn't be cached before taking a backup.");
         }
         String keyStorePrefix = KEYSTORE_PREFIX + getExt(mMetadata.tarType);
-        Path[] backedUpKeyStoreFiles;
         try {
-            backedUpKeyStoreFiles = TarUtils.create(mMetadata.tarType, cachePath, mTempBackupPath, keyStorePrefix,
-                            keyStoreFilters.toArray(new String[0]), null, null, false)
-                    .toArray(new Path[0]);
+            TarUtils.create(mMetadata.tarType, cachePath, getSplitOutputStream(keyStorePrefix),
+                    keyStoreFilters.toArray(new String[0]), null, false,
+                    mMetadata.compressionLevel, Prefs.BackupRestore.getCompressionThreadCount());
         } catch (Throwable th) {
             throw new BackupException("Could not backup KeyStore item.", th);
-        }
-        // Remove cache
-        for (String name : cachedKeyStoreFileNames) {
-            try {
-                cachePath.findFile(name).delete();
-            } catch (FileNotFoundException ignore) {
+        } finally {
+            // Remove cache
+            for (String name : cachedKeyStoreFileNames) {
+                try {
+                    cachePath.findFile(name).delete();
+                } catch (FileNotFoundException ignore) {
+                }
             }
         }
-        try {
-            backedUpKeyStoreFiles = encrypt(backedUpKeyStoreFiles);
-        } catch (IOException e) {
-            throw new BackupException("Failed to encrypt " + Arrays.toString(backedUpKeyStoreFiles), e);
-        }
-        for (Path file : backedUpKeyStoreFiles) {
-            mChecksum.add(file.getName(), DigestUtils.getHexDigest(mMetadata.checksumAlgo, file));
-        }
     }
 
     private void backupExtras() throws BackupException {
@@ -491,6 +561,14 @@ class BackupOp implements Closeable {
         }
     }
 
+    /**
+     * Get a stream that encrypts the splits and stores their checksums while they are being written.
+     */
+    @NonNull
+    private BackupSplitOutputStream getSplitOutputStream(@NonNull String baseName) {
+        return new BackupSplitOutputStream(mTempBackupPath, baseName, mMetadata, mCrypto, mChecksum);
+    }
+
     @NonNull
     private Path[] encrypt(@NonNull Path[] files) throws IOException {
         synchronized (Crypto.class) {
@@ -0,0 +1,96 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.github.muntashirakon.AppManager.crypto.Crypto;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.SplitInputStream;
+
+/**
+ * A {@link SplitInputStream} that reads the backup files in a single pass: each split is decrypted while it is being
+ * read, and the checksum of the encrypted split is verified as soon as the split is read completely. This is the
+ * counterpart of {@link BackupSplitOutputStream}, and it does not require any temporary decrypted files.
+ * <p>
+ * Checksum and integrity errors are thrown as {@link IOException}s from the read that reaches the end of the affected
+ * split. Therefore, the stream should be read until the end even if the caller has got all the data it needs.
+ */
+class BackupSplitInputStream extends SplitInputStream {
+    @NonNull
+    private final Crypto mCrypto;
+    @NonNull
+    @DigestUtils.Algorithm
+    private final String mChecksumAlgo;
+    @Nullable
+    private final BackupFiles.Checksum mChecksum;
+
+    /**
+     * @param checksum Checksums of the splits, or {@code null} to skip verification
+     */
+    public BackupSplitInputStream(@NonNull Path[] files, @NonNull MetadataManager.Metadata metadata,
+                                  @NonNull Crypto crypto, @Nullable BackupFiles.Checksum checksum) {
+        super(files);
+        mCrypto = crypto;
+        mChecksumAlgo = metadata.checksumAlgo;
+        mChecksum = checksum;
+    }
+
+    @WorkerThread
+    @NonNull
+    @Override
+    protected InputStream openInputStream(@NonNull Path file) throws IOException {
+        InputStream is = file.openInputStream();
+        if (mChecksum != null) {
+            is = new VerifyingInputStream(is, mChecksumAlgo, file.getName(), mChecksum.get(file.getName()));
+        }
+        return mCrypto.getDecryptingInputStream(is);
+    }
+
+    private static class VerifyingInputStream extends DigestUtils.DigestInputStream {
+        @NonNull
+        private final String mFilename;
+        @Nullable
+        private final String mRequiredChecksum;
+        private boolean mVerified;
+
+        public VerifyingInputStream(@NonNull InputStream in, @DigestUtils.Algorithm String algo,
+                                    @NonNull String filename, @Nullable String requiredChecksum) throws IOException {
+            super(in, algo);
+            mFilename = filename;
+            mRequiredChecksum = requiredChecksum;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) verify();
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int readCount = super.read(b, off, len);
+            if (readCount == -1) verify();
+            return readCount;
+        }
+
+        private void verify() throws IOException {
+            if (mVerified) return;
+            mVerified = true;
+            String checksum = getHexDigest();
+            if (!checksum.equals(mRequiredChecksum)) {
+                throw new IOException("Checksum mismatch." +
+                        "\nFile: " + mFilename +
+                        "\nFound: " + checksum +
+                        "\nRequired: " + mRequiredChecksum);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import io.github.muntashirakon.AppManager.crypto.Crypto;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.SplitOutputStream;
+
+/**
+ * A {@link SplitOutputStream} that writes the backup files in a single pass: each split is encrypted while it is being
+ * written, and the checksum of the encrypted split is stored as soon as the split is complete. The resulting files are
+ * identical to those produced by encrypting the splits and calculating their checksums afterwards.
+ */
+class BackupSplitOutputStream extends SplitOutputStream {
+    @NonNull
+    private final Crypto mCrypto;
+    @NonNull
+    private final String mExtension;
+    @NonNull
+    @DigestUtils.Algorithm
+    private final String mChecksumAlgo;
+    @NonNull
+    private final BackupFiles.Checksum mChecksum;
+
+    public BackupSplitOutputStream(@NonNull Path basePath, @NonNull String baseName,
+                                   @NonNull MetadataManager.Metadata metadata, @NonNull Crypto crypto,
+                                   @NonNull BackupFiles.Checksum checksum) {
+        super(basePath, baseName);
+        mCrypto = crypto;
+        mExtension = CryptoUtils.getExtension(metadata.crypto);
+        mChecksumAlgo = metadata.checksumAlgo;
+        mChecksum = checksum;
+    }
+
+    @NonNull
+    @Override
+    protected String getFileName(@NonNull String baseName, int index) {
+        return super.getFileName(baseName, index) + mExtension;
+    }
+
+    @WorkerThread
+    @NonNull
+    @Override
+    protected OutputStream openOutputStream(@NonNull Path file) throws IOException {
+        OutputStream digestOutputStream = new DigestUtils.DigestOutputStream(file.openOutputStream(), mChecksumAlgo) {
+            private boolean mClosed;
+
+            @Override
+            public void close() throws IOException {
+                if (mClosed) return;
+                mClosed = true;
+                super.close();
+                // The split is complete
+                mChecksum.add(file.getName(), getHexDigest());
+            }
+        };
+        return mCrypto.getEncryptingOutputStream(digestOutputStream);
+    }
+}
@@ -64,6 +64,9 @@ public final class BackupUtils {
             if (BackupFiles.TEMPORARY_DIRECTORY.equals(path.getName())) {
                 continue;
             }
+            if (ChunkStore.CHUNKS_DIRECTORY.equals(path.getName())) {
+                continue;
+            }
             // Other backups can store multiple backups per folder
             backupPaths.addAll(Arrays.asList(path.listFiles(Path::isDirectory)));
         }
@@ -0,0 +1,374 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import aosp.libcore.util.HexEncoding;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.io.IoUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.PathReader;
+import io.github.muntashirakon.io.PathWriter;
+import io.github.muntashirakon.io.Paths;
+
+/**
+ * A content-addressed store shared by all the backups. Files are split into content-defined chunks (see
+ * {@link ContentDefinedChunker}), and each chunk is stored only once under its SHA-256 hash, regardless of the
+ * number of backups, users or versions of an app referring to it. A backup only stores an index file listing the
+ * chunks of each of its files.
+ * <p>
+ * Chunks are stored unencrypted, and therefore, the store is only used by the backups that aren't encrypted. Chunks
+ * that are no longer referenced by any backup are removed by {@link #collectGarbage()}. Since it reads the index of
+ * every backup, batch operations should defer it using {@link #deferGarbageCollection()} so that it is run only once.
+ */
+@WorkerThread
+public class ChunkStore {
+    public static final String TAG = ChunkStore.class.getSimpleName();
+
+    static final String CHUNKS_DIRECTORY = ".chunks";
+    static final String CHUNK_INDEX_TSV = "chunks.am.tsv";
+
+    /**
+     * Algorithm used for addressing the chunks. It must never be changed.
+     */
+    private static final String CHUNK_HASH_ALGO = DigestUtils.SHA_256;
+
+    /**
+     * Held in read mode while a backup is adding chunks to the store and writing its index so that the garbage
+     * collector, which holds it in write mode, does not remove the chunks before they are referenced.
+     */
+    private static final ReentrantReadWriteLock sLock = new ReentrantReadWriteLock();
+
+    /**
+     * Number of operations that have deferred the garbage collection
+     */
+    private static int sDeferCount = 0;
+    /**
+     * Whether a garbage collection was requested while it was deferred
+     */
+    private static boolean sGarbageCollectionPending = false;
+
+    /**
+     * An entry in the index of a backup.
+     */
+    static class Entry {
+        /**
+         * Relative path of the file
+         */
+        @NonNull
+        public final String name;
+        public final long size;
+        @NonNull
+        public final List<String> chunks;
+
+        Entry(@NonNull String name, long size, @NonNull List<String> chunks) {
+            this.name = name;
+            this.size = size;
+            this.chunks = chunks;
+        }
+    }
+
+    @NonNull
+    public static ChunkStore getInstance() throws IOException {
+        return new ChunkStore(BackupFiles.getBaseDirectory().findOrCreateDirectory(CHUNKS_DIRECTORY));
+    }
+
+    /**
+     * Remove the chunks that aren't referenced by the index of any backup, including the backups that are still being
+     * created.
+     *
+     * @return Number of chunks removed, always {@code 0} if the garbage collection is deferred
+     */
+    public static int collectGarbage() throws IOException {
+        synchronized (ChunkStore.class) {
+            if (sDeferCount > 0) {
+                sGarbageCollectionPending = true;
+                return 0;
+            }
+        }
+        Path baseDirectory = BackupFiles.getBaseDirectory();
+        if (!baseDirectory.hasFile(CHUNKS_DIRECTORY)) {
+            return 0;
+        }
+        sLock.writeLock().lock();
+        try {
+            Set<String> referencedChunks = new HashSet<>();
+            for (Path indexFile : findIndexFiles(baseDirectory)) {
+                for (Entry entry : readIndex(indexFile)) {
+                    referencedChunks.addAll(entry.chunks);
+                }
+            }
+            return new ChunkStore(baseDirectory.findFile(CHUNKS_DIRECTORY)).removeChunksExcept(referencedChunks);
+        } finally {
+            sLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Defer the garbage collection until {@link #resumeGarbageCollection()} is called. This must be called before a
+     * batch operation that may delete or replace multiple backups.
+     */
+    public static synchronized void deferGarbageCollection() {
+        ++sDeferCount;
+    }
+
+    /**
+     * Resume the garbage collection deferred by {@link #deferGarbageCollection()}, and collect the garbage once if it
+     * was requested in the meantime.
+     */
+    public static void resumeGarbageCollection() throws IOException {
+        synchronized (ChunkStore.class) {
+            if (sDeferCount == 0) {
+                throw new IllegalStateException("Garbage collection was not deferred.");
+            }
+            if (--sDeferCount > 0 || !sGarbageCollectionPending) {
+                return;
+            }
+            sGarbageCollectionPending = false;
+        }
+        collectGarbage();
+    }
+
+    @NonNull
+    static List<Entry> readIndex(@NonNull Path indexFile) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new PathReader(indexFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] parts = line.split("\t", 3);
+                if (parts.length != 3) {
+                    throw new IOException("Illegal line found in " + indexFile.getName() + ": " + line);
+                }
+                List<String> chunks = parts[1].isEmpty() ? Collections.emptyList() : Arrays.asList(parts[1].split(","));
+                try {
+                    entries.add(new Entry(parts[2], Long.parseLong(parts[0]), chunks));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Illegal line found in " + indexFile.getName() + ": " + line, e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    static void writeIndex(@NonNull Path indexFile, @NonNull List<Entry> entries) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new PathWriter(indexFile)))) {
+            for (Entry entry : entries) {
+                writer.println(String.format(Locale.ROOT, "%d\t%s\t%s", entry.size, TextUtils.join(",", entry.chunks),
+                        entry.name));
+            }
+            if (writer.checkError()) {
+                throw new IOException("Could not write " + indexFile.getName());
+            }
+        }
+    }
+
+    @NonNull
+    private static List<Path> findIndexFiles(@NonNull Path baseDirectory) {
+        List<Path> indexFiles = new ArrayList<>();
+        for (Path path : baseDirectory.listFiles(Path::isDirectory)) {
+            if (CHUNKS_DIRECTORY.equals(path.getName())) {
+                continue;
+            }
+            // UUID-based backups
+            if (path.hasFile(CHUNK_INDEX_TSV)) {
+                try {
+                    indexFiles.add(path.findFile(CHUNK_INDEX_TSV));
+                } catch (FileNotFoundException ignore) {
+                }
+            }
+            // Package directories, including the temporary backups
+            for (Path backupPath : path.listFiles(Path::isDirectory)) {
+                if (backupPath.hasFile(CHUNK_INDEX_TSV)) {
+                    try {
+                        indexFiles.add(backupPath.findFile(CHUNK_INDEX_TSV));
+                    } catch (FileNotFoundException ignore) {
+                    }
+                }
+            }
+        }
+        return indexFiles;
+    }
+
+    @NonNull
+    private final Path mRoot;
+
+    @VisibleForTesting
+    ChunkStore(@NonNull Path root) {
+        mRoot = root;
+    }
+
+    /**
+     * Add the given files to the store and write the index of the files.
+     *
+     * @param basePath  The directory the names of the files are relative to
+     * @param files     Files to be stored
+     * @param indexFile Where the index has to be written
+     */
+    void storeFiles(@NonNull Path basePath, @NonNull List<Path> files, @NonNull Path indexFile) throws IOException {
+        sLock.readLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>(files.size());
+            for (Path file : files) {
+                entries.add(storeFile(file, Paths.getRelativePath(file, basePath)));
+            }
+            writeIndex(indexFile, entries);
+        } finally {
+            sLock.readLock().unlock();
+        }
+    }
+
+    @VisibleForTesting
+    @NonNull
+    Entry storeFile(@NonNull Path file, @NonNull String name) throws IOException {
+        MessageDigest messageDigest = getMessageDigest();
+        List<String> chunks = new ArrayList<>();
+        long[] size = new long[]{0};
+        try (InputStream is = file.openInputStream()) {
+            ContentDefinedChunker.split(is, (buffer, length) -> {
+                messageDigest.update(buffer, 0, length);
+                String hash = HexEncoding.encodeToString(messageDigest.digest(), false /* lowercase */);
+                putChunk(hash, buffer, length);
+                chunks.add(hash);
+                size[0] += length;
+            });
+        }
+        return new Entry(name, size[0], chunks);
+    }
+
+    /**
+     * Reassemble a file from its chunks.
+     *
+     * @param verify Whether to verify the hash of each chunk
+     */
+    void restoreFile(@NonNull Entry entry, @NonNull Path dest, boolean verify) throws IOException {
+        MessageDigest messageDigest = getMessageDigest();
+        byte[] buffer = new byte[IoUtils.DEFAULT_BUFFER_SIZE];
+        long size = 0;
+        try (OutputStream os = dest.openOutputStream()) {
+            for (String hash : entry.chunks) {
+                try (InputStream is = getChunkFile(hash).openInputStream()) {
+                    int read;
+                    while ((read = is.read(buffer)) != -1) {
+                        os.write(buffer, 0, read);
+                        if (verify) {
+                            messageDigest.update(buffer, 0, read);
+                        }
+                        size += read;
+                    }
+                }
+                if (verify) {
+                    String actualHash = HexEncoding.encodeToString(messageDigest.digest(), false /* lowercase */);
+                    if (!hash.equals(actualHash)) {
+                        throw new IOException("Chunk " + hash + " of " + entry.name + " is corrupted.");
+                    }
+                }
+            }
+        }
+        if (size != entry.size) {
+            throw new IOException("Size mismatch for " + entry.name + ". Required " + entry.size + ", found " + size);
+        }
+    }
+
+    /**
+     * Check whether all the chunks of the given file exist and are intact.
+     */
+    void verifyFile(@NonNull Entry entry) throws IOException {
+        long size = 0;
+        for (String hash : entry.chunks) {
+            Path chunkFile = getChunkFile(hash);
+            String actualHash;
+            try (InputStream is = chunkFile.openInputStream()) {
+                actualHash = DigestUtils.getHexDigest(CHUNK_HASH_ALGO, is);
+            }
+            if (!hash.equals(actualHash)) {
+                throw new IOException("Chunk " + hash + " of " + entry.name + " is corrupted.");
+            }
+            size += chunkFile.length();
+        }
+        if (size != entry.size) {
+            throw new IOException("Size mismatch for " + entry.name + ". Required " + entry.size + ", found " + size);
+        }
+    }
+
+    private void putChunk(@NonNull String hash, @NonNull byte[] buffer, int length) throws IOException {
+        Path chunkDir = mRoot.findOrCreateDirectory(hash.substring(0, 2));
+        if (chunkDir.hasFile(hash)) {
+            // Already stored
+            return;
+        }
+        // Write to a temporary file first so that an interrupted write never results in a corrupted chunk
+        Path tmpFile = chunkDir.createNewFile("." + hash + "_" + Thread.currentThread().getId(), null);
+        try (OutputStream os = tmpFile.openOutputStream()) {
+            os.write(buffer, 0, length);
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        if (!tmpFile.renameTo(hash)) {
+            tmpFile.delete();
+            if (!chunkDir.hasFile(hash)) {
+                throw new IOException("Could not store chunk " + hash);
+            }
+            // Another backup has stored the same chunk in the meantime
+        }
+    }
+
+    @NonNull
+    private Path getChunkFile(@NonNull String hash) throws FileNotFoundException {
+        if (hash.length() < 2) {
+            throw new FileNotFoundException("Invalid chunk " + hash);
+        }
+        return mRoot.findFile(hash.substring(0, 2)).findFile(hash);
+    }
+
+    private int removeChunksExcept(@NonNull Set<String> referencedChunks) {
+        int count = 0;
+        for (Path chunkDir : mRoot.listFiles(Path::isDirectory)) {
+            for (Path chunkFile : chunkDir.listFiles()) {
+                // Temporary files are also removed as no backups are running at this point
+                if (!referencedChunks.contains(chunkFile.getName()) && chunkFile.delete()) {
+                    ++count;
+                }
+            }
+            if (chunkDir.listFiles().length == 0) {
+                chunkDir.delete();
+            }
+        }
+        Log.d(TAG, "Removed " + count + " unused chunks.");
+        return count;
+    }
+
+    @NonNull
+    private static MessageDigest getMessageDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(CHUNK_HASH_ALGO);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
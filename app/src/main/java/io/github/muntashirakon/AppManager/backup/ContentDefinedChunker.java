@@ -0,0 +1,87 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Split a stream into content-defined chunks using a gear-based rolling hash (as in FastCDC). Since the chunk
+ * boundaries depend only on the bytes around them, inserting or removing bytes in a file only changes the chunks near
+ * the modification, and the rest of the chunks can be shared with the older version of the file.
+ * <p>
+ * <b>Note:</b> The chunk boundaries must remain the same across versions of App Manager for the chunks to be shared
+ * with the existing backups. Therefore, none of the constants here should ever be changed.
+ */
+class ContentDefinedChunker {
+    public interface ChunkConsumer {
+        @WorkerThread
+        void accept(@NonNull byte[] buffer, int length) throws IOException;
+    }
+
+    static final int MIN_CHUNK_SIZE = 256 * 1024;  // 256 KiB
+    static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;  // 4 MiB
+    /**
+     * 20 bits are used for an average chunk size of 1 MiB (excluding {@link #MIN_CHUNK_SIZE}). The top bits are used
+     * because the lower bits of a gear hash only depend on the last few bytes.
+     */
+    private static final long BOUNDARY_MASK = 0xFFFFF00000000000L;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // SplitMix64 with a fixed seed
+        long seed = 0x416d4368756e6b73L;
+        for (int i = 0; i < GEAR.length; ++i) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Split the given stream into chunks. The buffer passed to the consumer is reused after it returns.
+     */
+    @WorkerThread
+    static void split(@NonNull InputStream is, @NonNull ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[MAX_CHUNK_SIZE];
+        int filled = 0;
+        boolean eof = false;
+        while (true) {
+            while (!eof && filled < buffer.length) {
+                int read = is.read(buffer, filled, buffer.length - filled);
+                if (read == -1) {
+                    eof = true;
+                } else filled += read;
+            }
+            if (filled == 0) {
+                return;
+            }
+            int boundary = findBoundary(buffer, filled);
+            consumer.accept(buffer, boundary);
+            System.arraycopy(buffer, boundary, buffer, 0, filled - boundary);
+            filled -= boundary;
+        }
+    }
+
+    /**
+     * @return The end of the first chunk in the buffer, or {@code length} if there isn't any boundary
+     */
+    static int findBoundary(@NonNull byte[] buffer, int length) {
+        if (length <= MIN_CHUNK_SIZE) {
+            return length;
+        }
+        long hash = 0;
+        for (int i = MIN_CHUNK_SIZE; i < length; ++i) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xFF];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+}
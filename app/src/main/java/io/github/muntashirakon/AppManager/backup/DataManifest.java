@@ -0,0 +1,178 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.PathReader;
+import io.github.muntashirakon.io.PathWriter;
+import io.github.muntashirakon.io.Paths;
+
+/**
+ * List of files in a data directory at the time of an incremental backup. Each line of the manifest file consists of
+ * the tab-separated hash, size, modification time and the relative path of a file. Directories are always stored in
+ * the data backup, but they are also listed so that the ones removed since a parent backup can be deleted during a
+ * restore. The relative path of a directory ends with a separator, and its hash is {@link #DIRECTORY_HASH}.
+ */
+class DataManifest {
+    static final String MANIFEST_PREFIX = "manifest";
+    static final String DIRECTORY_HASH = "-";
+
+    static class Entry {
+        @NonNull
+        public final String path;
+        public final long size;
+        public final long lastModified;
+        @NonNull
+        public final String hash;
+
+        Entry(@NonNull String path, long size, long lastModified, @NonNull String hash) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    @NonNull
+    static String getManifestName(int index) {
+        return MANIFEST_PREFIX + index + ".am.tsv";
+    }
+
+    /**
+     * Create a manifest for the given list of files and find the files that have to be stored in the data backup. A
+     * file is only hashed if its size or modification time differs from the one in the parent manifest.
+     *
+     * @param basePath      The data directory
+     * @param files         All files and directories inside the data directory
+     * @param algo          Algorithm used for hashing the files
+     * @param parent        Manifest of the parent backup, {@code null} if it's a full backup
+     * @param modifiedFiles Files that are new or modified since the parent backup along with all the directories are
+     *                      added here in their original order
+     */
+    @WorkerThread
+    @NonNull
+    static DataManifest build(@NonNull Path basePath, @NonNull List<Path> files,
+                              @DigestUtils.Algorithm String algo, @Nullable DataManifest parent,
+                              @NonNull List<Path> modifiedFiles) throws IOException {
+        DataManifest manifest = new DataManifest();
+        for (Path file : files) {
+            String relativePath = Paths.getRelativePath(file, basePath);
+            if (file.isDirectory() && !file.isSymbolicLink()) {
+                modifiedFiles.add(file);
+                if (!relativePath.isEmpty()) {
+                    manifest.put(new Entry(relativePath, 0, 0, DIRECTORY_HASH));
+                }
+                continue;
+            }
+            boolean isLink = file.isSymbolicLink();
+            long size = isLink ? 0 : file.length();
+            long lastModified = file.lastModified();
+            Entry oldEntry = parent != null ? parent.get(relativePath) : null;
+            String hash;
+            if (oldEntry != null && oldEntry.size == size && oldEntry.lastModified == lastModified) {
+                // Unmodified
+                hash = oldEntry.hash;
+            } else {
+                if (isLink) {
+                    String target = file.getRealFilePath();
+                    hash = DigestUtils.getHexDigest(algo, (target != null ? target : "").getBytes());
+                } else {
+                    try (InputStream is = file.openInputStream()) {
+                        hash = DigestUtils.getHexDigest(algo, is);
+                    }
+                }
+                if (oldEntry == null || !oldEntry.hash.equals(hash)) {
+                    modifiedFiles.add(file);
+                }
+            }
+            manifest.put(new Entry(relativePath, size, lastModified, hash));
+        }
+        return manifest;
+    }
+
+    @WorkerThread
+    @NonNull
+    static DataManifest read(@NonNull Path manifestFile) throws IOException {
+        DataManifest manifest = new DataManifest();
+        try (BufferedReader reader = new BufferedReader(new PathReader(manifestFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] parts = line.split("\t", 4);
+                if (parts.length != 4) {
+                    throw new IOException("Illegal line found in " + manifestFile.getName() + ": " + line);
+                }
+                try {
+                    manifest.put(new Entry(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Illegal line found in " + manifestFile.getName() + ": " + line, e);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+
+    private DataManifest() {
+    }
+
+    @Nullable
+    Entry get(@NonNull String path) {
+        return mEntries.get(path);
+    }
+
+    boolean contains(@NonNull String path) {
+        return mEntries.containsKey(path);
+    }
+
+    /**
+     * Same as {@link #contains(String)}, except that a directory with the same path as the given file (and vice
+     * versa) is also considered.
+     */
+    boolean containsFileOrDirectory(@NonNull String path) {
+        if (mEntries.containsKey(path)) {
+            return true;
+        }
+        return mEntries.containsKey(path.endsWith(File.separator) ? path.substring(0, path.length() - 1)
+                : path + File.separator);
+    }
+
+    @NonNull
+    List<String> getPaths() {
+        return new ArrayList<>(mEntries.keySet());
+    }
+
+    @WorkerThread
+    void write(@NonNull Path manifestFile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new PathWriter(manifestFile)))) {
+            for (Entry entry : mEntries.values()) {
+                writer.println(String.format(Locale.ROOT, "%s\t%d\t%d\t%s", entry.hash, entry.size,
+                        entry.lastModified, entry.path));
+            }
+            if (writer.checkError()) {
+                throw new IOException("Could not write " + manifestFile.getName());
+            }
+        }
+    }
+
+    private void put(@NonNull Entry entry) {
+        mEntries.put(entry.path, entry);
+    }
+}
@@ -54,7 +54,9 @@ public final class MetadataManager {
     public static final String TAG = MetadataManager.class.getSimpleName();
 
     public static final String META_FILE = "meta_v2.am.json";
-    public static final String[] TAR_TYPES = new String[]{TarUtils.TAR_GZIP, TarUtils.TAR_BZIP2};
+    public static final String[] TAR_TYPES = new String[]{TarUtils.TAR_GZIP, TarUtils.TAR_BZIP2, TarUtils.TAR_ZSTD,
+            TarUtils.TAR_LZ4};
+    public static final String[] TAR_TYPES_READABLE = new String[]{"GZip", "BZip2", "Zstandard", "LZ4"};
 
     // For an extended documentation, see https://github.com/MuntashirAkon/AppManager/issues/30
     // All the attributes must be non-null
@@ -95,8 +97,18 @@ public final class MetadataManager {
         public int userHandle;  // user_handle
         @TarUtils.TarType
         public String tarType;  // tar_type
+        public int compressionLevel = TarUtils.DEFAULT_COMPRESSION_LEVEL;  // compression_level
         public boolean keyStore;  // key_store
+        /**
+         * Whether the APK files are stored in the {@link ChunkStore} instead of the source tarballs.
+         */
+        public boolean chunkedSource;  // chunked_source
         public String installer;  // installer
+        /**
+         * Name of the backup (in the same package directory) this backup depends on. It is only set for incremental
+         * backups whose data files contain the changes made since the parent backup.
+         */
+        public String parentBackup;  // parent_backup
 
         public Metadata() {
         }
@@ -134,8 +146,11 @@ public final class MetadataManager {
             flags = new BackupFlags(metadata.flags.getFlags());
             userHandle = metadata.userHandle;
             tarType = metadata.tarType;
+            compressionLevel = metadata.compressionLevel;
             keyStore = metadata.keyStore;
+            chunkedSource = metadata.chunkedSource;
             installer = metadata.installer;
+            parentBackup = metadata.parentBackup;
         }
 
         public long getBackupSize() {
@@ -173,7 +188,7 @@ public final class MetadataManager {
                         crypto.toUpperCase(Locale.ROOT)));
             }
             subtitleText.append(", ").append(context.getString(R.string.gz_bz2_compressed,
-                    tarType.equals(TarUtils.TAR_GZIP) ? "GZip" : "BZip2"));
+                    getReadableTarType(tarType)));
             if (keyStore) {
                 subtitleText.append(", ").append(context.getString(R.string.keystore));
             }
@@ -190,6 +205,12 @@ public final class MetadataManager {
         }
     }
 
+    @NonNull
+    public static String getReadableTarType(@NonNull @TarUtils.TarType String tarType) {
+        int i = ArrayUtils.indexOf(TAR_TYPES, tarType);
+        return i == -1 ? tarType : TAR_TYPES_READABLE[i];
+    }
+
     @NonNull
     public static MetadataManager getNewInstance() {
         return new MetadataManager();
@@ -256,8 +277,12 @@ public final class MetadataManager {
             mMetadata.flags = new BackupFlags(rootObject.getInt("flags"));
             mMetadata.userHandle = rootObject.getInt("user_handle");
             mMetadata.tarType = rootObject.getString("tar_type");
+            mMetadata.compressionLevel = JSONUtils.getInt(rootObject, "compression_level",
+                    TarUtils.DEFAULT_COMPRESSION_LEVEL);
             mMetadata.keyStore = rootObject.getBoolean("key_store");
+            mMetadata.chunkedSource = rootObject.optBoolean("chunked_source", false);
             mMetadata.installer = JSONUtils.getString(rootObject, "installer", BuildConfig.APPLICATION_ID);
+            mMetadata.parentBackup = JSONUtils.getString(rootObject, "parent_backup", null);
         } catch (JSONException e) {
             throw new IOException(e.getMessage() + " for path " + backupFile.getBackupPath());
         }
@@ -309,8 +334,11 @@ public final class MetadataManager {
             rootObject.put("flags", mMetadata.flags.getFlags());
             rootObject.put("user_handle", mMetadata.userHandle);
             rootObject.put("tar_type", mMetadata.tarType);
+            rootObject.put("compression_level", mMetadata.compressionLevel);
             rootObject.put("key_store", mMetadata.keyStore);
+            rootObject.put("chunked_source", mMetadata.chunkedSource);
             rootObject.put("installer", mMetadata.installer);
+            rootObject.put("parent_backup", mMetadata.parentBackup);
             outputStream.write(rootObject.toString(4).getBytes());
         } catch (JSONException e) {
             throw new IOException(e.getMessage() + " for path " + backupFile.getBackupPath());
@@ -334,7 +362,11 @@ public final class MetadataManager {
             // Unknown tar type, set default
             mMetadata.tarType = TarUtils.TAR_GZIP;
         }
+        mMetadata.compressionLevel = Prefs.BackupRestore.getCompressionLevel();
         mMetadata.keyStore = KeyStoreUtils.hasKeyStore(applicationInfo.uid);
+        // Chunks are shared between backups, and therefore, they cannot be encrypted
+        mMetadata.chunkedSource = requestedFlags.backupApkFiles() && Prefs.BackupRestore.deduplicateApkFiles()
+                && CryptoUtils.MODE_NO_ENCRYPTION.equals(mMetadata.crypto);
         mMetadata.label = applicationInfo.loadLabel(pm).toString();
         mMetadata.packageName = packageInfo.packageName;
         mMetadata.versionName = packageInfo.versionName;
@@ -0,0 +1,241 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import static io.github.muntashirakon.AppManager.backup.BackupManager.DATA_PREFIX;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.muntashirakon.AppManager.crypto.Crypto;
+import io.github.muntashirakon.AppManager.crypto.CryptoException;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.SplitInputStream;
+
+/**
+ * A backup on which an incremental backup depends. Incremental backups only contain the data files modified since
+ * their parent backups, and they are restored by restoring the data of all the parent backups first.
+ */
+@WorkerThread
+class ParentBackup implements Closeable {
+    public static final String TAG = ParentBackup.class.getSimpleName();
+
+    /**
+     * Maximum number of backups in a chain of incremental backups, including the full backup. A full backup is taken
+     * once the limit is reached so that a restore doesn't have to go through too many backups.
+     */
+    static final int MAX_CHAIN_LENGTH = 10;
+
+    /**
+     * Find the latest backup that can be used as the parent of the given backup.
+     *
+     * @param packagePath Directory containing all the backups of the package
+     * @param metadata    Metadata of the new backup
+     * @return Metadata of the parent backup or {@code null} if a full backup has to be taken
+     */
+    @Nullable
+    static MetadataManager.Metadata findParent(@NonNull Path packagePath, @NonNull MetadataManager.Metadata metadata) {
+        MetadataManager.Metadata latestMetadata = null;
+        for (Path backupPath : packagePath.listFiles(Path::isDirectory)) {
+            if (backupPath.getName().startsWith(".")) {
+                // Temporary backup
+                continue;
+            }
+            MetadataManager.Metadata candidate;
+            try {
+                candidate = MetadataManager.getMetadata(backupPath);
+            } catch (IOException e) {
+                continue;
+            }
+            if (candidate.userHandle != metadata.userHandle || !candidate.flags.backupIncremental()
+                    || !candidate.flags.backupData() || !Arrays.equals(candidate.dataDirs, metadata.dataDirs)) {
+                continue;
+            }
+            // A chain of backups must use the same crypto and checksum algorithm
+            if (!candidate.crypto.equals(metadata.crypto) || !candidate.checksumAlgo.equals(metadata.checksumAlgo)) {
+                continue;
+            }
+            if (latestMetadata == null || candidate.backupTime > latestMetadata.backupTime) {
+                latestMetadata = candidate;
+            }
+        }
+        if (latestMetadata == null) {
+            return null;
+        }
+        try {
+            if (getAncestors(packagePath, latestMetadata).size() + 1 >= MAX_CHAIN_LENGTH) {
+                // Start a new chain
+                return null;
+            }
+        } catch (BackupException e) {
+            Log.w(TAG, "Broken chain of incremental backups.", e);
+            return null;
+        }
+        if (!CryptoUtils.isAvailable(latestMetadata.crypto)) {
+            return null;
+        }
+        return latestMetadata;
+    }
+
+    /**
+     * Get the metadata of all the backups the given backup depends on, starting from the full backup. Since the data
+     * of the backups are combined during a restore, all of them must use the same crypto and checksum algorithm.
+     *
+     * @param packagePath Directory containing all the backups of the package
+     * @param metadata    Metadata of the incremental backup
+     */
+    @NonNull
+    static List<MetadataManager.Metadata> getAncestors(@NonNull Path packagePath,
+                                                        @NonNull MetadataManager.Metadata metadata)
+            throws BackupException {
+        List<MetadataManager.Metadata> ancestors = new ArrayList<>();
+        MetadataManager.Metadata current = metadata;
+        while (current.parentBackup != null) {
+            if (ancestors.size() >= MAX_CHAIN_LENGTH) {
+                throw new BackupException("Too many parent backups for " + metadata.backupName);
+            }
+            try {
+                current = MetadataManager.getMetadata(packagePath.findFile(current.parentBackup));
+            } catch (IOException e) {
+                throw new BackupException("Parent backup " + current.parentBackup + " is missing.", e);
+            }
+            if (!metadata.crypto.equals(current.crypto) || !metadata.checksumAlgo.equals(current.checksumAlgo)) {
+                throw new BackupException("Parent backup " + current.backupName + " uses crypto " + current.crypto
+                        + " and checksum " + current.checksumAlgo + ", but " + metadata.backupName + " uses crypto "
+                        + metadata.crypto + " and checksum " + metadata.checksumAlgo + ".");
+            }
+            ancestors.add(current);
+        }
+        Collections.reverse(ancestors);
+        return ancestors;
+    }
+
+    /**
+     * Find a backup that depends on the given backup.
+     *
+     * @return Name of the dependent backup, or {@code null} if no backups depend on it
+     */
+    @Nullable
+    static String findDependentBackup(@NonNull Path backupPath) {
+        Path packagePath = backupPath.getParentFile();
+        if (packagePath == null) {
+            return null;
+        }
+        String backupName = backupPath.getName();
+        for (Path path : packagePath.listFiles(Path::isDirectory)) {
+            try {
+                MetadataManager.Metadata metadata = MetadataManager.getMetadata(path);
+                if (backupName.equals(metadata.parentBackup)) {
+                    return metadata.backupName;
+                }
+            } catch (IOException ignore) {
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private final MetadataManager.Metadata mMetadata;
+    @NonNull
+    private final Path mBackupPath;
+    @NonNull
+    private final Crypto mCrypto;
+    private final List<Path> mDecryptedFiles = new ArrayList<>();
+    @Nullable
+    private BackupFiles.Checksum mChecksum;
+
+    ParentBackup(@NonNull MetadataManager.Metadata metadata) throws BackupException {
+        mMetadata = metadata;
+        mBackupPath = metadata.backupFile.getBackupPath();
+        if (!CryptoUtils.isAvailable(metadata.crypto)) {
+            throw new BackupException("Mode " + metadata.crypto + " is currently unavailable.");
+        }
+        try {
+            mCrypto = CryptoUtils.getCrypto(metadata);
+        } catch (CryptoException e) {
+            throw new BackupException("Failed to get crypto " + metadata.crypto, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        mCrypto.close();
+        for (Path file : mDecryptedFiles) {
+            file.delete();
+        }
+    }
+
+    @NonNull
+    public MetadataManager.Metadata getMetadata() {
+        return mMetadata;
+    }
+
+    @NonNull
+    public DataManifest readManifest(int index) throws IOException {
+        decrypt(new Path[]{mMetadata.backupFile.getManifestFile(index, mMetadata.crypto)});
+        return DataManifest.read(mMetadata.backupFile.getManifestFile(index, CryptoUtils.MODE_NO_ENCRYPTION));
+    }
+
+    /**
+     * Get a stream of the decrypted data at the given index, optionally verifying the checksums of the data files
+     * while they are being read.
+     */
+    @NonNull
+    public SplitInputStream getDataInputStream(int index, boolean verify) throws BackupException {
+        return new BackupSplitInputStream(getDataFiles(index), mMetadata, mCrypto, verify ? getChecksum() : null);
+    }
+
+    /**
+     * Verify the checksums of the (encrypted) data files at the given index. This only reads the data files, and it
+     * should be done before anything is modified during a restore.
+     */
+    public void verifyData(int index) throws BackupException {
+        getChecksum().verify(mMetadata.checksumAlgo, getDataFiles(index), "Data file verification failed for index "
+                + index + " in " + mMetadata.backupName + ".");
+    }
+
+    @NonNull
+    private Path[] getDataFiles(int index) throws BackupException {
+        String mode = CryptoUtils.getExtension(mMetadata.crypto);
+        final String dataPrefix = DATA_PREFIX + index;
+        Path[] dataFiles = mBackupPath.listFiles((dir, name) -> name.startsWith(dataPrefix) && name.endsWith(mode));
+        if (dataFiles.length == 0) {
+            throw new BackupException("There are no data files for index " + index + " in " + mMetadata.backupName);
+        }
+        return dataFiles;
+    }
+
+    @NonNull
+    private BackupFiles.Checksum getChecksum() throws BackupException {
+        if (mChecksum != null) {
+            return mChecksum;
+        }
+        try {
+            decrypt(new Path[]{mMetadata.backupFile.getChecksumFile(mMetadata.crypto)});
+            mChecksum = mMetadata.backupFile.getChecksum(CryptoUtils.MODE_NO_ENCRYPTION);
+            return mChecksum;
+        } catch (IOException e) {
+            throw new BackupException("Failed to get checksums of " + mMetadata.backupName, e);
+        }
+    }
+
+    @NonNull
+    private Path[] decrypt(@NonNull Path[] files) throws IOException {
+        Path[] newFiles;
+        synchronized (Crypto.class) {
+            mCrypto.decrypt(files);
+            newFiles = mCrypto.getNewFiles();
+        }
+        mDecryptedFiles.addAll(Arrays.asList(newFiles));
+        return newFiles.length > 0 ? newFiles : files;
+    }
+}
@@ -59,6 +59,7 @@ import io.github.muntashirakon.AppManager.runner.Runner;
 import io.github.muntashirakon.AppManager.settings.Ops;
 import io.github.muntashirakon.AppManager.ssaid.SsaidSettings;
 import io.github.muntashirakon.AppManager.uri.UriManager;
+import io.github.muntashirakon.AppManager.utils.ArrayUtils;
 import io.github.muntashirakon.AppManager.utils.ContextUtils;
 import io.github.muntashirakon.AppManager.utils.DigestUtils;
 import io.github.muntashirakon.AppManager.utils.KeyStoreUtils;
@@ -67,6 +68,7 @@ import io.github.muntashirakon.AppManager.utils.TarUtils;
 import io.github.muntashirakon.AppManager.utils.Utils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
+import io.github.muntashirakon.io.SplitInputStream;
 import io.github.muntashirakon.io.UidGidPair;
 
 @WorkerThread
@@ -151,13 +153,7 @@ class RestoreOp implements Closeable {
             } catch (IOException e) {
                 throw new BackupException("Could not get metadata file.", e);
             }
-            String checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, metadataFile);
-            if (!checksum.equals(this.checksum.get(metadataFile.getName()))) {
-                throw new BackupException("Couldn't verify metadata file." +
-                        "\nFile: " + metadataFile +
-                        "\nFound: " + checksum +
-                        "\nRequired: " + this.checksum.get(metadataFile.getName()));
-            }
+            this.checksum.verify(metadata.checksumAlgo, new Path[]{metadataFile}, "Couldn't verify metadata file.");
         }
         // Check user handle
         if (metadata.userHandle != userHandle) {
@@ -243,10 +239,19 @@ class RestoreOp implements Closeable {
         if (!backupFlags.backupApkFiles()) {
             throw new BackupException("APK restore is requested but backup doesn't contain any source files.");
         }
-        Path[] backupSourceFiles = getSourceFiles(backupPath);
-        if (backupSourceFiles.length == 0) {
-            // No source backup found
-            throw new BackupException("Source restore is requested but there are no source files.");
+        List<ChunkStore.Entry> chunkIndex;
+        Path[] backupSourceFiles;
+        if (metadata.chunkedSource) {
+            // APK files are in the chunk store
+            chunkIndex = getChunkIndex();
+            backupSourceFiles = new Path[0];
+        } else {
+            chunkIndex = null;
+            backupSourceFiles = getSourceFiles(backupPath);
+            if (backupSourceFiles.length == 0) {
+                // No source backup found
+                throw new BackupException("Source restore is requested but there are no source files.");
+            }
         }
         boolean isVerified = true;
         if (packageInfo != null) {
@@ -263,70 +268,34 @@ class RestoreOp implements Closeable {
                 }
             }
         }
-        if (!requestedFlags.skipSignatureCheck()) {
-            String checksum;
-            for (Path file : backupSourceFiles) {
-                checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, file);
-                if (!checksum.equals(this.checksum.get(file.getName()))) {
-                    throw new BackupException("Source file verification failed." +
-                            "\nFile: " + file +
-                            "\nFound: " + checksum +
-                            "\nRequired: " + this.checksum.get(file.getName()));
-                }
+        // Setup apk files, including split apk
+        final int splitCount = metadata.splitConfigs.length;
+        String[] allApkNames = new String[splitCount + 1];
+        allApkNames[0] = metadata.apkName;
+        System.arraycopy(metadata.splitConfigs, 0, allApkNames, 1, splitCount);
+        synchronized (sLock) {
+            Path[] allApks;
+            if (chunkIndex != null) {
+                // Reassemble apk files in the package staging directory
+                allApks = restoreApkFilesFromChunkStore(chunkIndex, allApkNames);
+            } else if (!isVerified) {
+                // The app has to be uninstalled first (see below). Extract the apk files before that so that a broken
+                // backup (e.g. a decryption or tar error) doesn't leave the app uninstalled.
+                allApks = extractApkFiles(backupSourceFiles, allApkNames);
+            } else {
+                // Apk files are streamed from the backup to the installer session, nothing is staged
+                allApks = null;
             }
-        }
-        if (!isVerified) {
-            // Signature verification failed but still here because signature check is disabled.
-            // The only way to restore is to reinstall the app
-            synchronized (sLock) {
+            if (!isVerified) {
+                // Signature verification failed but still here because signature check is disabled.
+                // The only way to restore is to reinstall the app. This is done after the apk files are staged so that
+                // the app isn't uninstalled if the backup is broken.
                 PackageInstallerCompat installer = PackageInstallerCompat.getNewInstance();
                 if (installer.uninstall(packageName, userHandle, false)) {
+                    if (allApks != null) deleteFiles(allApks);
                     throw new BackupException("An uninstallation was necessary but couldn't perform it.");
                 }
             }
-        }
-        // Setup package staging directory
-        Path packageStagingDirectory;
-        if (Ops.isPrivileged()) {
-            try {
-                synchronized (sLock) {
-                    PackageUtils.ensurePackageStagingDirectoryPrivileged();
-                }
-                packageStagingDirectory = Paths.get(PackageUtils.PACKAGE_STAGING_DIRECTORY);
-            } catch (Exception e) {
-                throw new BackupException("Could not ensure the existence of /data/local/tmp", e);
-            }
-        } else {
-            packageStagingDirectory = backupPath;
-        }
-        synchronized (sLock) {
-            // Setup apk files, including split apk
-            final int splitCount = metadata.splitConfigs.length;
-            String[] allApkNames = new String[splitCount + 1];
-            Path[] allApks = new Path[splitCount + 1];
-            try {
-                Path baseApk = packageStagingDirectory.createNewFile(metadata.apkName, null);
-                allApks[0] = baseApk;
-                allApkNames[0] = metadata.apkName;
-                for (int i = 1; i < allApkNames.length; ++i) {
-                    allApkNames[i] = metadata.splitConfigs[i - 1];
-                    allApks[i] = packageStagingDirectory.createNewFile(allApkNames[i], null);
-                }
-            } catch (IOException e) {
-                throw new BackupException("Could not create staging files", e);
-            }
-            // Decrypt sources
-            try {
-                backupSourceFiles = decrypt(backupSourceFiles);
-            } catch (IOException e) {
-                throw new BackupException("Failed to decrypt " + Arrays.toString(backupSourceFiles), e);
-            }
-            // Extract apk files to the package staging directory
-            try {
-                TarUtils.extract(metadata.tarType, backupSourceFiles, packageStagingDirectory, allApkNames, null, null);
-            } catch (Throwable th) {
-                throw new BackupException("Failed to extract the apk file(s).", th);
-            }
             // A normal update will do it now
             PackageInstallerCompat packageInstaller = PackageInstallerCompat.getNewInstance(metadata.installer);
             packageInstaller.setOnInstallListener(new PackageInstallerCompat.OnInstallListener() {
@@ -338,19 +307,33 @@ class RestoreOp implements Closeable {
                 public void onAnotherAttemptInMiui(@Nullable ApkFile apkFile) {
                     // This works because the parent install method still remains active until a final status is
                     // received after all the attempts are finished, which is, then, returned to the parent.
-                    packageInstaller.install(allApks, packageName, userHandle);
+                    if (allApks != null) {
+                        packageInstaller.install(allApks, packageName, userHandle);
+                        return;
+                    }
+                    packageInstaller.install(metadata.tarType, getDecryptingInputStream(backupSourceFiles),
+                            allApkNames, packageName, userHandle);
                 }
 
                 @Override
                 public void onFinishedInstall(int sessionId, String packageName, int result, @Nullable String blockingPackage, @Nullable String statusMessage) {
                 }
             });
-            try {
-                if (!packageInstaller.install(allApks, packageName, userHandle)) {
+            if (allApks != null) {
+                try {
+                    if (!packageInstaller.install(allApks, packageName, userHandle)) {
+                        throw new BackupException("A (re)install was necessary but couldn't perform it.");
+                    }
+                } finally {
+                    deleteFiles(allApks);  // Clean up apk files
+                }
+            } else {
+                // Decrypt, verify and install apk files in a single pass. The installer reads the whole stream
+                // before committing the session, so a broken backup is never installed.
+                if (!packageInstaller.install(metadata.tarType, getDecryptingInputStream(backupSourceFiles),
+                        allApkNames, packageName, userHandle)) {
                     throw new BackupException("A (re)install was necessary but couldn't perform it.");
                 }
-            } finally {
-                deleteFiles(allApks);  // Clean up apk files
             }
             // Get package info, again
             try {
@@ -362,6 +345,76 @@ class RestoreOp implements Closeable {
         }
     }
 
+    @NonNull
+    private Path[] extractApkFiles(@NonNull Path[] backupSourceFiles, @NonNull String[] allApkNames)
+            throws BackupException {
+        Path packageStagingDirectory = getPackageStagingDirectory();
+        Path[] allApks = createStagingFiles(packageStagingDirectory, allApkNames);
+        try {
+            // Decrypt, verify and extract apk files to the package staging directory in a single pass
+            TarUtils.extract(metadata.tarType, getDecryptingInputStream(backupSourceFiles), packageStagingDirectory,
+                    allApkNames, null, null);
+        } catch (Throwable th) {
+            deleteFiles(allApks);
+            throw new BackupException("Failed to extract the apk file(s).", th);
+        }
+        return allApks;
+    }
+
+    @NonNull
+    private Path[] restoreApkFilesFromChunkStore(@NonNull List<ChunkStore.Entry> chunkIndex,
+                                                 @NonNull String[] allApkNames) throws BackupException {
+        Path[] allApks = createStagingFiles(getPackageStagingDirectory(), allApkNames);
+        try {
+            ChunkStore chunkStore = ChunkStore.getInstance();
+            boolean[] restored = new boolean[allApkNames.length];
+            for (ChunkStore.Entry entry : chunkIndex) {
+                int index = ArrayUtils.indexOf(allApkNames, entry.name);
+                if (index == -1) {
+                    throw new IOException("Unknown file " + entry.name + " in the chunk index.");
+                }
+                chunkStore.restoreFile(entry, allApks[index], !requestedFlags.skipSignatureCheck());
+                restored[index] = true;
+            }
+            for (int i = 0; i < allApkNames.length; ++i) {
+                if (!restored[i]) {
+                    throw new IOException(allApkNames[i] + " is missing in the chunk index.");
+                }
+            }
+        } catch (IOException e) {
+            deleteFiles(allApks);
+            throw new BackupException("Failed to restore the apk file(s) from the chunk store.", e);
+        }
+        return allApks;
+    }
+
+    @NonNull
+    private Path getPackageStagingDirectory() throws BackupException {
+        if (Ops.isPrivileged()) {
+            try {
+                PackageUtils.ensurePackageStagingDirectoryPrivileged();
+                return Paths.get(PackageUtils.PACKAGE_STAGING_DIRECTORY);
+            } catch (Exception e) {
+                throw new BackupException("Could not ensure the existence of /data/local/tmp", e);
+            }
+        }
+        return backupPath;
+    }
+
+    @NonNull
+    private static Path[] createStagingFiles(@NonNull Path packageStagingDirectory, @NonNull String[] allApkNames)
+            throws BackupException {
+        Path[] allApks = new Path[allApkNames.length];
+        try {
+            for (int i = 0; i < allApkNames.length; ++i) {
+                allApks[i] = packageStagingDirectory.createNewFile(allApkNames[i], null);
+            }
+        } catch (IOException e) {
+            throw new BackupException("Could not create staging files", e);
+        }
+        return allApks;
+    }
+
     private void restoreKeyStore() throws BackupException {
         if (packageInfo == null) {
             throw new BackupException("KeyStore restore is requested but the app isn't installed.");
@@ -371,22 +424,8 @@ class RestoreOp implements Closeable {
             throw new BackupException("KeyStore files should've existed but they didn't");
         }
         if (!requestedFlags.skipSignatureCheck()) {
-            String checksum;
-            for (Path file : keyStoreFiles) {
-                checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, file);
-                if (!checksum.equals(this.checksum.get(file.getName()))) {
-                    throw new BackupException("KeyStore file verification failed." +
-                            "\nFile: " + file +
-                            "\nFound: " + checksum +
-                            "\nRequired: " + this.checksum.get(file.getName()));
-                }
-            }
-        }
-        // Decrypt sources
-        try {
-            keyStoreFiles = decrypt(keyStoreFiles);
-        } catch (IOException e) {
-            throw new BackupException("Failed to decrypt " + Arrays.toString(keyStoreFiles), e);
+            // Verify before anything is written to the KeyStore folder
+            checksum.verify(metadata.checksumAlgo, keyStoreFiles, "KeyStore file verification failed.");
         }
         // Restore KeyStore files to the /data/misc/keystore folder
         Path keyStorePath = KeyStoreUtils.getKeyStorePath(userHandle);
@@ -400,7 +439,9 @@ class RestoreOp implements Closeable {
             throw new BackupException("Failed to access properties of the KeyStore folder.", e);
         }
         try {
-            TarUtils.extract(metadata.tarType, keyStoreFiles, keyStorePath, null, null, null);
+            // Decrypt and extract in a single pass
+            TarUtils.extract(metadata.tarType, getDecryptingInputStream(keyStoreFiles), keyStorePath, null, null,
+                    null);
             // Restore folder permission
             Paths.chown(keyStorePath, uidGidPair.uid, uidGidPair.gid);
             //noinspection OctalInteger
@@ -433,28 +474,38 @@ class RestoreOp implements Closeable {
         if (packageInfo == null) {
             throw new BackupException("Data restore is requested but the app isn't installed.");
         }
-        if (!requestedFlags.skipSignatureCheck()) {
-            // Verify integrity of the data backups
-            String checksum;
+        // Incremental backups only contain the files modified since their parent backups
+        List<ParentBackup> parentBackups = getParentBackups();
+        try {
+            // Verify integrity of the data backups, including the parent backups. This is done before clearing the app
+            // data so that a broken backup doesn't leave the app half-restored. Only the checksums of the encrypted
+            // files are calculated here, decryption happens while they are being extracted.
             for (int i = 0; i < metadata.dataDirs.length; ++i) {
                 Path[] dataFiles = getDataFiles(backupPath, i);
                 if (dataFiles.length == 0) {
                     throw new BackupException("Data restore is requested but there are no data files for index " + i + ".");
                 }
-                for (Path file : dataFiles) {
-                    checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, file);
-                    if (!checksum.equals(this.checksum.get(file.getName()))) {
-                        throw new BackupException("Data file verification failed for index " + i + "." +
-                                "\nFile: " + file +
-                                "\nFound: " + checksum +
-                                "\nRequired: " + this.checksum.get(file.getName()));
+                if (!requestedFlags.skipSignatureCheck()) {
+                    this.checksum.verify(metadata.checksumAlgo, dataFiles, "Data file verification failed for index "
+                            + i + ".");
+                    for (ParentBackup parentBackup : parentBackups) {
+                        parentBackup.verifyData(i);
                     }
                 }
             }
+            // Force-stop and clear app data
+            PackageManagerCompat.clearApplicationUserData(packageName, userHandle);
+            // Restore backups
+            restoreData(parentBackups);
+        } finally {
+            for (ParentBackup parentBackup : parentBackups) {
+                parentBackup.close();
+            }
         }
-        // Force-stop and clear app data
-        PackageManagerCompat.clearApplicationUserData(packageName, userHandle);
-        // Restore backups
+    }
+
+    private void restoreData(@NonNull List<ParentBackup> parentBackups) throws BackupException {
+        assert packageInfo != null;
         for (int i = 0; i < metadata.dataDirs.length; ++i) {
             String dataSource = BackupUtils.getWritableDataDirectory(metadata.dataDirs[i], metadata.userHandle, userHandle);
             BackupDataDirectoryInfo dataDirectoryInfo = BackupDataDirectoryInfo.getInfo(dataSource, userHandle);
@@ -506,20 +557,32 @@ class RestoreOp implements Closeable {
                     dataSourceFile.setUidGid(uidGidPair);
                 }
             }
-            // Decrypt data
-            try {
-                dataFiles = decrypt(dataFiles);
-            } catch (IOException e) {
-                throw new BackupException("Failed to decrypt " + Arrays.toString(dataFiles), e);
-            }
             // Extract data to the data directory
+            String publicSourceDir = new File(packageInfo.applicationInfo.publicSourceDir).getParent();
+            String[] excludeDirs = BackupUtils.getExcludeDirs(!requestedFlags.backupCache(), null);
+            // Extract the parent backups first, starting from the full backup
+            for (ParentBackup parentBackup : parentBackups) {
+                SplitInputStream parentDataStream = parentBackup.getDataInputStream(i,
+                        !requestedFlags.skipSignatureCheck());
+                try {
+                    TarUtils.extract(parentBackup.getMetadata().tarType, parentDataStream, dataSourceFile, null,
+                            excludeDirs, publicSourceDir);
+                } catch (Throwable th) {
+                    throw new BackupException("Failed to restore data files for index " + i + " from "
+                            + parentBackup.getMetadata().backupName, th);
+                }
+            }
             try {
-                String publicSourceDir = new File(packageInfo.applicationInfo.publicSourceDir).getParent();
-                TarUtils.extract(metadata.tarType, dataFiles, dataSourceFile, null, BackupUtils
-                        .getExcludeDirs(!requestedFlags.backupCache(), null), publicSourceDir);
+                // Decrypt, verify and extract in a single pass
+                TarUtils.extract(metadata.tarType, getDecryptingInputStream(dataFiles), dataSourceFile, null,
+                        excludeDirs, publicSourceDir);
             } catch (Throwable th) {
                 throw new BackupException("Failed to restore data files for index " + i + ".", th);
             }
+            if (!parentBackups.isEmpty()) {
+                // Remove the files that were deleted after the parent backups were taken
+                deleteRemovedFiles(i, dataSourceFile, parentBackups);
+            }
             // Restore UID and GID
             if (!Runner.runCommand(String.format(Locale.ROOT, "chown -R %d:%d \"%s\"", uidGidPair.uid, uidGidPair.gid, dataSource)).isSuccessful()) {
                 throw new BackupException("Failed to restore ownership info for index " + i + ".");
@@ -627,13 +690,7 @@ class RestoreOp implements Closeable {
             return;
         }
         if (!requestedFlags.skipSignatureCheck()) {
-            String checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, miscFile);
-            if (!checksum.equals(this.checksum.get(miscFile.getName()))) {
-                throw new BackupException("Couldn't verify misc file." +
-                        "\nFile: " + miscFile +
-                        "\nFound: " + checksum +
-                        "\nRequired: " + this.checksum.get(miscFile.getName()));
-            }
+            this.checksum.verify(metadata.checksumAlgo, new Path[]{miscFile}, "Couldn't verify misc file.");
         }
         // Decrypt permission file
         try {
@@ -671,13 +728,7 @@ class RestoreOp implements Closeable {
             }
         }
         if (!requestedFlags.skipSignatureCheck()) {
-            String checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, rulesFile);
-            if (!checksum.equals(this.checksum.get(rulesFile.getName()))) {
-                throw new BackupException("Couldn't verify permission file." +
-                        "\nFile: " + rulesFile +
-                        "\nFound: " + checksum +
-                        "\nRequired: " + this.checksum.get(rulesFile.getName()));
-            }
+            this.checksum.verify(metadata.checksumAlgo, new Path[]{rulesFile}, "Couldn't verify permission file.");
         }
         // Decrypt rules file
         try {
@@ -700,6 +751,73 @@ class RestoreOp implements Closeable {
         }
     }
 
+    @NonNull
+    private List<ParentBackup> getParentBackups() throws BackupException {
+        if (metadata.parentBackup == null) {
+            return Collections.emptyList();
+        }
+        Path packagePath = Objects.requireNonNull(backupPath.getParentFile());
+        List<ParentBackup> parentBackups = new ArrayList<>();
+        try {
+            for (MetadataManager.Metadata parentMetadata : ParentBackup.getAncestors(packagePath, metadata)) {
+                parentBackups.add(new ParentBackup(parentMetadata));
+            }
+        } catch (BackupException e) {
+            for (ParentBackup parentBackup : parentBackups) {
+                parentBackup.close();
+            }
+            throw e;
+        }
+        return parentBackups;
+    }
+
+    private void deleteRemovedFiles(int index, @NonNull Path dataSourceFile, @NonNull List<ParentBackup> parentBackups)
+            throws BackupException {
+        DataManifest manifest;
+        try {
+            Path manifestFile = backupFile.getManifestFile(index, metadata.crypto);
+            if (!requestedFlags.skipSignatureCheck()) {
+                this.checksum.verify(metadata.checksumAlgo, new Path[]{manifestFile},
+                        "Manifest verification failed for index " + index + ".");
+            }
+            decrypt(new Path[]{manifestFile});
+            manifest = DataManifest.read(backupFile.getManifestFile(index, CryptoUtils.MODE_NO_ENCRYPTION));
+        } catch (IOException e) {
+            throw new BackupException("Could not read the manifest for index " + index, e);
+        }
+        for (ParentBackup parentBackup : parentBackups) {
+            DataManifest parentManifest;
+            try {
+                parentManifest = parentBackup.readManifest(index);
+            } catch (IOException e) {
+                throw new BackupException("Could not read the manifest for index " + index + " from "
+                        + parentBackup.getMetadata().backupName, e);
+            }
+            for (String path : parentManifest.getPaths()) {
+                // A file may have been replaced with a directory of the same name, or vice versa
+                if (manifest.containsFileOrDirectory(path)) continue;
+                // Directories are deleted recursively
+                Path file = Paths.build(dataSourceFile, path);
+                if (file != null) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @NonNull
+    private List<ChunkStore.Entry> getChunkIndex() throws BackupException {
+        try {
+            Path indexFile = backupFile.getChunkIndexFile();
+            if (!requestedFlags.skipSignatureCheck()) {
+                this.checksum.verify(metadata.checksumAlgo, new Path[]{indexFile}, "Source file verification failed.");
+            }
+            return ChunkStore.readIndex(indexFile);
+        } catch (IOException e) {
+            throw new BackupException("Could not read the index of the apk files.", e);
+        }
+    }
+
     @NonNull
     private Path[] getSourceFiles(@NonNull Path backupPath) {
         String mode = CryptoUtils.getExtension(metadata.crypto);
@@ -725,6 +843,16 @@ class RestoreOp implements Closeable {
         return backupPath.listFiles((dir, name) -> name.startsWith(dataPrefix) && name.endsWith(mode));
     }
 
+    /**
+     * Get a stream that decrypts the given backup files and, unless signature check is disabled, verifies their
+     * checksums while they are being read.
+     */
+    @NonNull
+    private SplitInputStream getDecryptingInputStream(@NonNull Path[] files) {
+        return new BackupSplitInputStream(files, metadata, crypto, requestedFlags.skipSignatureCheck() ? null
+                : checksum);
+    }
+
     @NonNull
     private Path[] decrypt(@NonNull Path[] files) throws IOException {
         Path[] newFiles;
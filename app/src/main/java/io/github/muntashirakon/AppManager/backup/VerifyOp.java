@@ -10,11 +10,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 import io.github.muntashirakon.AppManager.crypto.Crypto;
 import io.github.muntashirakon.AppManager.crypto.CryptoException;
 import io.github.muntashirakon.AppManager.logs.Log;
-import io.github.muntashirakon.AppManager.utils.DigestUtils;
 import io.github.muntashirakon.io.Path;
 
 import static io.github.muntashirakon.AppManager.backup.BackupManager.DATA_PREFIX;
@@ -88,13 +88,7 @@ class VerifyOp implements Closeable {
         } catch (IOException e) {
             throw new BackupException("Could not get metadata file.", e);
         }
-        String checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, metadataFile);
-        if (!checksum.equals(this.checksum.get(metadataFile.getName()))) {
-            throw new BackupException("Could not verify metadata." +
-                    "\nFile: " + metadataFile.getName() +
-                    "\nFound: " + checksum +
-                    "\nRequired: " + this.checksum.get(metadataFile.getName()));
-        }
+        this.checksum.verify(metadata.checksumAlgo, new Path[]{metadataFile}, "Could not verify metadata.");
     }
 
     @Override
@@ -134,20 +128,33 @@ class VerifyOp implements Closeable {
     }
 
     private void verifyApkFiles() throws BackupException {
+        if (metadata.chunkedSource) {
+            verifyChunkedApkFiles();
+            return;
+        }
         Path[] backupSourceFiles = getSourceFiles(backupPath);
         if (backupSourceFiles.length == 0) {
             // No APK files found
             throw new BackupException("Backup does not contain any APK files.");
         }
-        String checksum;
-        for (Path file : backupSourceFiles) {
-            checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, file);
-            if (!checksum.equals(this.checksum.get(file.getName()))) {
-                throw new BackupException("Could not verify APK files." +
-                        "\nFile: " + file.getName() +
-                        "\nFound: " + checksum +
-                        "\nRequired: " + this.checksum.get(file.getName()));
+        checksum.verify(metadata.checksumAlgo, backupSourceFiles, "Could not verify APK files.");
+    }
+
+    private void verifyChunkedApkFiles() throws BackupException {
+        Path indexFile;
+        try {
+            indexFile = backupFile.getChunkIndexFile();
+        } catch (IOException e) {
+            throw new BackupException("Backup does not contain any APK files.", e);
+        }
+        this.checksum.verify(metadata.checksumAlgo, new Path[]{indexFile}, "Could not verify APK files.");
+        try {
+            ChunkStore chunkStore = ChunkStore.getInstance();
+            for (ChunkStore.Entry entry : ChunkStore.readIndex(indexFile)) {
+                chunkStore.verifyFile(entry);
             }
+        } catch (IOException e) {
+            throw new BackupException("Could not verify APK files.", e);
         }
     }
 
@@ -156,36 +163,32 @@ class VerifyOp implements Closeable {
         if (keyStoreFiles.length == 0) {
             throw new BackupException("KeyStore files do not exist.");
         }
-        String checksum;
-        for (Path file : keyStoreFiles) {
-            checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, file);
-            if (!checksum.equals(this.checksum.get(file.getName()))) {
-                throw new BackupException("Could not verify KeyStore files." +
-                        "\nFile: " + file.getName() +
-                        "\nFound: " + checksum +
-                        "\nRequired: " + this.checksum.get(file.getName()));
-            }
-        }
+        checksum.verify(metadata.checksumAlgo, keyStoreFiles, "Could not verify KeyStore files.");
     }
 
     private void verifyData() throws BackupException {
         Path[] dataFiles;
-        String checksum;
         for (int i = 0; i < metadata.dataDirs.length; ++i) {
             dataFiles = getDataFiles(backupPath, i);
             if (dataFiles.length == 0) {
                 throw new BackupException("No data files at index " + i + ".");
             }
-            for (Path file : dataFiles) {
-                checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, file);
-                if (!checksum.equals(this.checksum.get(file.getName()))) {
-                    throw new BackupException("Could not verify data files at index " + i + "." +
-                            "\nFile: " + file.getName() +
-                            "\nFound: " + checksum +
-                            "\nRequired: " + this.checksum.get(file.getName()));
+            this.checksum.verify(metadata.checksumAlgo, dataFiles, "Could not verify data files at index " + i + ".");
+            if (metadata.flags.backupIncremental()) {
+                Path manifestFile;
+                try {
+                    manifestFile = backupFile.getManifestFile(i, metadata.crypto);
+                } catch (IOException e) {
+                    throw new BackupException("Manifest is missing at index " + i + ".", e);
                 }
+                this.checksum.verify(metadata.checksumAlgo, new Path[]{manifestFile},
+                        "Could not verify manifest at index " + i + ".");
             }
         }
+        if (metadata.parentBackup != null) {
+            // The backup is unusable without its parents
+            ParentBackup.getAncestors(Objects.requireNonNull(backupPath.getParentFile()), metadata);
+        }
     }
 
     private void verifyExtras() throws BackupException {
@@ -196,13 +199,7 @@ class VerifyOp implements Closeable {
             // There are no permissions, just skip
             return;
         }
-        String checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, miscFile);
-        if (!checksum.equals(this.checksum.get(miscFile.getName()))) {
-            throw new BackupException("Could not verify extras." +
-                    "\nFile: " + miscFile.getName() +
-                    "\nFound: " + checksum +
-                    "\nRequired: " + this.checksum.get(miscFile.getName()));
-        }
+        this.checksum.verify(metadata.checksumAlgo, new Path[]{miscFile}, "Could not verify extras.");
     }
 
     private void verifyRules() throws BackupException {
@@ -217,13 +214,7 @@ class VerifyOp implements Closeable {
                 return;
             }
         }
-        String checksum = DigestUtils.getHexDigest(metadata.checksumAlgo, rulesFile);
-        if (!checksum.equals(this.checksum.get(rulesFile.getName()))) {
-            throw new BackupException("Could not verify rules file." +
-                    "\nFile: " + rulesFile.getName() +
-                    "\nFound: " + checksum +
-                    "\nRequired: " + this.checksum.get(rulesFile.getName()));
-        }
+        this.checksum.verify(metadata.checksumAlgo, new Path[]{rulesFile}, "Could not verify rules file.");
     }
 
     @NonNull
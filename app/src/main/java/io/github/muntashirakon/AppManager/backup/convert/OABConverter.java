@@ -7,8 +7,6 @@ import static io.github.muntashirakon.AppManager.backup.BackupManager.DATA_PREFI
 import static io.github.muntashirakon.AppManager.backup.BackupManager.SOURCE_PREFIX;
 import static io.github.muntashirakon.AppManager.backup.BackupManager.getExt;
 import static io.github.muntashirakon.AppManager.utils.TarUtils.DEFAULT_SPLIT_SIZE;
-import static io.github.muntashirakon.AppManager.utils.TarUtils.TAR_BZIP2;
-import static io.github.muntashirakon.AppManager.utils.TarUtils.TAR_GZIP;
 
 import android.annotation.UserIdInt;
 import android.os.UserHandleHidden;
@@ -18,8 +16,6 @@ import androidx.annotation.NonNull;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -299,7 +295,8 @@ public class OABConverter extends Converter {
         Path[] sourceFiles;
         try {
             sourceFiles = TarUtils.create(mDestMetadata.tarType, baseApkFile, mTempBackupPath, sourceBackupFilePrefix,
-                            /* language=regexp */ new String[]{".*\\.apk"}, null, null, false)
+                            /* language=regexp */ new String[]{".*\\.apk"}, null, null, false,
+                            mDestMetadata.compressionLevel, Prefs.BackupRestore.getCompressionThreadCount())
                     .toArray(new Path[0]);
         } catch (Throwable th) {
             throw new BackupException("APK files backup is requested but no APK files have been backed up.", th);
@@ -310,8 +307,12 @@ public class OABConverter extends Converter {
         } catch (IOException e) {
             throw new BackupException("Failed to encrypt " + Arrays.toString(sourceFiles), e);
         }
-        for (Path file : sourceFiles) {
-            mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+        try {
+            for (Path file : sourceFiles) {
+                mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+            }
+        } catch (IOException e) {
+            throw new BackupException("Failed to generate checksum for " + Arrays.toString(sourceFiles), e);
         }
     }
 
@@ -351,14 +352,8 @@ public class OABConverter extends Converter {
             try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(files[0].openInputStream()));
                  SplitOutputStream sos = new SplitOutputStream(mTempBackupPath, dataBackupFilePrefix, DEFAULT_SPLIT_SIZE);
                  BufferedOutputStream bos = new BufferedOutputStream(sos)) {
-                OutputStream os;
-                if (TAR_GZIP.equals(mDestMetadata.tarType)) {
-                    os = new GzipCompressorOutputStream(bos);
-                } else if (TAR_BZIP2.equals(mDestMetadata.tarType)) {
-                    os = new BZip2CompressorOutputStream(bos);
-                } else {
-                    throw new BackupException("Invalid compression type: " + mDestMetadata.tarType);
-                }
+                OutputStream os = TarUtils.createCompressorOutputStream(mDestMetadata.tarType, bos,
+                        mDestMetadata.compressionLevel, 1);
                 try (TarArchiveOutputStream tos = new TarArchiveOutputStream(os)) {
                     tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
                     tos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
@@ -8,8 +8,6 @@ import static io.github.muntashirakon.AppManager.backup.BackupManager.ICON_FILE;
 import static io.github.muntashirakon.AppManager.backup.BackupManager.SOURCE_PREFIX;
 import static io.github.muntashirakon.AppManager.backup.BackupManager.getExt;
 import static io.github.muntashirakon.AppManager.utils.TarUtils.DEFAULT_SPLIT_SIZE;
-import static io.github.muntashirakon.AppManager.utils.TarUtils.TAR_BZIP2;
-import static io.github.muntashirakon.AppManager.utils.TarUtils.TAR_GZIP;
 
 import android.annotation.SuppressLint;
 import android.annotation.UserIdInt;
@@ -25,8 +23,6 @@ import androidx.core.content.pm.PackageInfoCompat;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -210,7 +206,9 @@ public class SBConverter extends Converter {
         try {
             // We have to specify APK files because the folder may contain many
             sourceFiles = TarUtils.create(mDestMetadata.tarType, sourceDir, mTempBackupPath, sourceBackupFilePrefix,
-                    apkFiles, null, null, false).toArray(new Path[0]);
+                    apkFiles, null, null, false, mDestMetadata.compressionLevel,
+                    Prefs.BackupRestore.getCompressionThreadCount())
+                    .toArray(new Path[0]);
         } catch (Throwable th) {
             throw new BackupException("APK files backup is requested but no APK files have been backed up.", th);
         }
@@ -219,8 +217,12 @@ public class SBConverter extends Converter {
         } catch (IOException e) {
             throw new BackupException("Failed to encrypt " + Arrays.toString(sourceFiles));
         }
-        for (Path file : sourceFiles) {
-            mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+        try {
+            for (Path file : sourceFiles) {
+                mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+            }
+        } catch (IOException e) {
+            throw new BackupException("Failed to generate checksum for " + Arrays.toString(sourceFiles), e);
         }
     }
 
@@ -246,14 +248,8 @@ public class SBConverter extends Converter {
                  SplitOutputStream sos = new SplitOutputStream(mTempBackupPath, dataBackupFilePrefix, DEFAULT_SPLIT_SIZE);
                  BufferedOutputStream bos = new BufferedOutputStream(sos)) {
                 // TODO: 31/5/21 Check backup format (each zip file has a comment section which can be parsed as JSON)
-                OutputStream os;
-                if (TAR_GZIP.equals(mDestMetadata.tarType)) {
-                    os = new GzipCompressorOutputStream(bos);
-                } else if (TAR_BZIP2.equals(mDestMetadata.tarType)) {
-                    os = new BZip2CompressorOutputStream(bos);
-                } else {
-                    throw new BackupException("Invalid compression type: " + mDestMetadata.tarType);
-                }
+                OutputStream os = TarUtils.createCompressorOutputStream(mDestMetadata.tarType, bos,
+                        mDestMetadata.compressionLevel, 1);
                 try (TarArchiveOutputStream tos = new TarArchiveOutputStream(os)) {
                     tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
                     tos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
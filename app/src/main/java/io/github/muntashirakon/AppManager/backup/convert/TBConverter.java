@@ -24,11 +24,8 @@ import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.compressors.CompressorInputStream;
-import org.apache.commons.compress.compressors.CompressorOutputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -247,7 +244,8 @@ public class TBConverter extends Converter {
         Path[] sourceFiles;
         try {
             sourceFiles = TarUtils.create(mDestMetadata.tarType, baseApkFile, mTempBackupPath, sourceBackupFilePrefix,
-                            /* language=regexp */new String[]{".*\\.apk"}, null, null, false)
+                            /* language=regexp */new String[]{".*\\.apk"}, null, null, false,
+                            mDestMetadata.compressionLevel, Prefs.BackupRestore.getCompressionThreadCount())
                     .toArray(new Path[0]);
         } catch (Throwable th) {
             throw new BackupException("APK files backup is requested but no APK files have been backed up.", th);
@@ -260,8 +258,12 @@ public class TBConverter extends Converter {
         } catch (IOException e) {
             throw new BackupException("Failed to encrypt " + Arrays.toString(sourceFiles));
         }
-        for (Path file : sourceFiles) {
-            mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+        try {
+            for (Path file : sourceFiles) {
+                mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+            }
+        } catch (IOException e) {
+            throw new BackupException("Failed to generate checksum for " + Arrays.toString(sourceFiles), e);
         }
     }
 
@@ -296,14 +298,8 @@ public class TBConverter extends Converter {
             if (intBackupFilePrefix != null) {
                 intSos = new SplitOutputStream(mTempBackupPath, intBackupFilePrefix, DEFAULT_SPLIT_SIZE);
                 BufferedOutputStream bos = new BufferedOutputStream(intSos);
-                CompressorOutputStream cos;
-                if (TAR_GZIP.equals(mDestMetadata.tarType)) {
-                    cos = new GzipCompressorOutputStream(bos);
-                } else if (TAR_BZIP2.equals(mDestMetadata.tarType)) {
-                    cos = new BZip2CompressorOutputStream(bos);
-                } else {
-                    throw new BackupException("Invalid compression type: " + mDestMetadata.tarType);
-                }
+                OutputStream cos = TarUtils.createCompressorOutputStream(mDestMetadata.tarType, bos,
+                        mDestMetadata.compressionLevel, 1);
                 intTos = new TarArchiveOutputStream(cos);
                 intTos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
                 intTos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
@@ -311,14 +307,8 @@ public class TBConverter extends Converter {
             if (extBackupFilePrefix != null) {
                 extSos = new SplitOutputStream(mTempBackupPath, extBackupFilePrefix, DEFAULT_SPLIT_SIZE);
                 BufferedOutputStream bos = new BufferedOutputStream(extSos);
-                CompressorOutputStream cos;
-                if (TAR_GZIP.equals(mDestMetadata.tarType)) {
-                    cos = new GzipCompressorOutputStream(bos);
-                } else if (TAR_BZIP2.equals(mDestMetadata.tarType)) {
-                    cos = new BZip2CompressorOutputStream(bos);
-                } else {
-                    throw new BackupException("Invalid compression type: " + mDestMetadata.tarType);
-                }
+                OutputStream cos = TarUtils.createCompressorOutputStream(mDestMetadata.tarType, bos,
+                        mDestMetadata.compressionLevel, 1);
                 extTos = new TarArchiveOutputStream(cos);
                 extTos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
                 extTos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
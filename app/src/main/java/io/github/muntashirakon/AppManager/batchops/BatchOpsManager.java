@@ -8,6 +8,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.NetworkPolicyManager;
 import android.net.Uri;
@@ -30,9 +31,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.github.muntashirakon.AppManager.AppManager;
 import io.github.muntashirakon.AppManager.accessibility.AccessibilityMultiplexer;
@@ -55,8 +62,10 @@ import io.github.muntashirakon.AppManager.logs.Logger;
 import io.github.muntashirakon.AppManager.rules.compontents.ComponentUtils;
 import io.github.muntashirakon.AppManager.rules.compontents.ComponentsBlocker;
 import io.github.muntashirakon.AppManager.rules.compontents.ExternalComponentsImporter;
+import io.github.muntashirakon.AppManager.scanner.ScanIndexer;
 import io.github.muntashirakon.AppManager.settings.Ops;
 import io.github.muntashirakon.AppManager.types.UserPackagePair;
+import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.ArrayUtils;
 import io.github.muntashirakon.AppManager.utils.ContextUtils;
 import io.github.muntashirakon.AppManager.utils.FreezeUtils;
@@ -139,6 +148,7 @@ public class BatchOpsManager {
             OP_NET_POLICY,
             OP_REVOKE_PERMISSIONS,
             OP_RESTORE_BACKUP,
+            OP_SCAN,
             OP_SET_APP_OPS,
             OP_UNBLOCK_COMPONENTS,
             OP_UNBLOCK_TRACKERS,
@@ -172,6 +182,7 @@ public class BatchOpsManager {
     public static final int OP_IMPORT_BACKUPS = 19;
     public static final int OP_NET_POLICY = 20;
     public static final int OP_DEXOPT = 21;
+    public static final int OP_SCAN = 22;
 
     @Nullable
     public Logger mLogger;
@@ -191,10 +202,17 @@ public class BatchOpsManager {
         mCustomLogger = true;
     }
 
+    /**
+     * {@link ComponentsBlocker} keeps a single instance at a time, operations using it cannot be run concurrently.
+     */
+    private static final int COMPONENTS_BLOCKER_PARALLELISM = 1;
+
     private static Result lastResult;
 
     private UserPackagePair[] userPackagePairs;
     private Bundle args;
+    @Nullable
+    private CharSequence lastProgressMessage;
 
     public void setArgs(Bundle args) {
         this.args = args;
@@ -271,6 +289,8 @@ public class BatchOpsManager {
                     return opPerformDexOpt();
                 }
                 return lastResult = new Result(Collections.emptyList(), false);
+            case OP_SCAN:
+                return opScan();
             case OP_NONE:
                 break;
         }
@@ -293,63 +313,60 @@ public class BatchOpsManager {
     }
 
     private Result opBackupApk() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        int max = userPackagePairs.length;
-        Context context = AppManager.getContext();
-        PackageManager pm = context.getPackageManager();
-        // Initial progress
-        sendProgress(context, null, max, 0);
-        UserPackagePair pair;
-        for (int i = 0; i < max; ++i) {
-            pair = userPackagePairs[i];
-            // Send progress
-            sendProgress(context, PackageUtils.getPackageLabel(pm, pair.getPackageName(), pair.getUserHandle()),
-                    max, i + 1);
-            // Do operation
-            try {
-                ApkUtils.backupApk(pair.getPackageName(), pair.getUserHandle());
-            } catch (Exception e) {
-                failedPackages.add(pair);
-                log("====> op=BACKUP_APK, pkg=" + pair, e);
-            }
-        }
+        // Copying APK files is I/O-bound
+        List<UserPackagePair> failedPackages = performConcurrently("BACKUP_APK",
+                BatchOpsScheduler.DEFAULT_IO_CONCURRENCY, pair ->
+                        ApkUtils.backupApk(pair.getPackageName(), pair.getUserHandle()));
         return lastResult = new Result(failedPackages);
     }
 
     private Result opBackupRestore(@BackupRestoreDialogFragment.ActionMode int mode) {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        MultithreadedExecutor executor = MultithreadedExecutor.getNewInstance();
+        Context context = AppManager.getContext();
+        PackageManager pm = context.getPackageManager();
         AtomicBoolean requiresRestart = new AtomicBoolean();
+        // Deleting backups hardly does any I/O, only backup and restore need to be throttled
+        BatchOpsScheduler scheduler = new BatchOpsScheduler(mode == BackupRestoreDialogFragment.MODE_DELETE
+                ? MultithreadedExecutor.getThreadCount() : BatchOpsScheduler.DEFAULT_IO_CONCURRENCY);
+        for (UserPackagePair pair : userPackagePairs) {
+            scheduler.add(pair, mode == BackupRestoreDialogFragment.MODE_DELETE ? 0
+                    : BatchOpsScheduler.getEstimatedSize(pair));
+        }
+        String[] backupNames = args.getStringArray(ARG_BACKUP_NAMES);
+        // Initial progress
+        sendProgress(context, null, userPackagePairs.length, 0);
+        BackupManager.beginBatchOperation();
+        List<UserPackagePair> failedPackages;
         try {
-            String[] backupNames = args.getStringArray(ARG_BACKUP_NAMES);
-            for (UserPackagePair pair : userPackagePairs) {
-                executor.submit(() -> {
-                    BackupManager backupManager = BackupManager.getNewInstance(pair, args.getInt(ARG_FLAGS));
-                    try {
-                        switch (mode) {
-                            case BackupRestoreDialogFragment.MODE_BACKUP:
-                                backupManager.backup(backupNames);
-                                break;
-                            case BackupRestoreDialogFragment.MODE_DELETE:
-                                backupManager.deleteBackup(backupNames);
-                                break;
-                            case BackupRestoreDialogFragment.MODE_RESTORE:
-                                backupManager.restore(backupNames);
-                                requiresRestart.set(requiresRestart.get() | backupManager.requiresRestart());
-                                break;
-                        }
-                    } catch (BackupException e) {
-                        log("====> op=BACKUP_RESTORE, mode=" + mode + " pkg=" + pair, e);
-                        synchronized (failedPackages) {
-                            failedPackages.add(pair);
-                        }
+            failedPackages = scheduler.run(pair -> {
+                BackupManager backupManager = BackupManager.getNewInstance(pair, args.getInt(ARG_FLAGS));
+                try {
+                    switch (mode) {
+                        case BackupRestoreDialogFragment.MODE_BACKUP:
+                            backupManager.backup(backupNames);
+                            break;
+                        case BackupRestoreDialogFragment.MODE_DELETE:
+                            backupManager.deleteBackup(backupNames);
+                            break;
+                        case BackupRestoreDialogFragment.MODE_RESTORE:
+                            backupManager.restore(backupNames);
+                            if (backupManager.requiresRestart()) {
+                                requiresRestart.set(true);
+                            }
+                            break;
                     }
-                });
-            }
-        } catch (Throwable th) {
-            log("====> op=BACKUP_RESTORE, mode=" + mode, th);
+                    return true;
+                } catch (BackupException e) {
+                    log("====> op=BACKUP_RESTORE, mode=" + mode + " pkg=" + pair, e);
+                    return false;
+                }
+            }, (stats, startedPair) -> {
+                CharSequence message = startedPair != null ? PackageUtils.getPackageLabel(pm,
+                        startedPair.getPackageName(), startedPair.getUserHandle()) : null;
+                sendProgress(context, message, stats);
+            });
+        } finally {
+            BackupManager.endBatchOperation();
         }
-        executor.awaitCompletion();
         lastResult = new Result(failedPackages);
         lastResult.setRequiresRestart(requiresRestart.get());
         return lastResult;
@@ -392,28 +409,15 @@ public class BatchOpsManager {
     }
 
     private Result opBlockComponents() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                ComponentUtils.blockFilteredComponents(pair, args.getStringArray(ARG_SIGNATURES));
-            } catch (Exception e) {
-                log("====> op=BLOCK_COMPONENTS, pkg=" + pair, e);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("BLOCK_COMPONENTS",
+                COMPONENTS_BLOCKER_PARALLELISM, pair ->
+                        ComponentUtils.blockFilteredComponents(pair, args.getStringArray(ARG_SIGNATURES)));
         return lastResult = new Result(failedPackages);
     }
 
     private Result opBlockTrackers() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                ComponentUtils.blockTrackingComponents(pair);
-            } catch (Exception e) {
-                log("====> op=BLOCK_TRACKERS, pkg=" + pair, e);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("BLOCK_TRACKERS",
+                COMPONENTS_BLOCKER_PARALLELISM, ComponentUtils::blockTrackingComponents);
         return lastResult = new Result(failedPackages);
     }
 
@@ -423,15 +427,8 @@ public class BatchOpsManager {
             // No packages supplied means trim all caches
             return opTrimCaches();
         }
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                PackageManagerCompat.deleteApplicationCacheFilesAsUser(pair);
-            } catch (Exception e) {
-                log("====> op=CLEAR_CACHE, pkg=" + pair, e);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("CLEAR_CACHE",
+                MultithreadedExecutor.getThreadCount(), PackageManagerCompat::deleteApplicationCacheFilesAsUser);
         return lastResult = new Result(failedPackages);
     }
 
@@ -453,58 +450,42 @@ public class BatchOpsManager {
 
     @NonNull
     private Result opClearData() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                PackageManagerCompat.clearApplicationUserData(pair);
-            } catch (Exception e) {
-                log("====> op=CLEAR_DATA, pkg=" + pair, e);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("CLEAR_DATA",
+                MultithreadedExecutor.getThreadCount(), PackageManagerCompat::clearApplicationUserData);
         return lastResult = new Result(failedPackages);
     }
 
     @NonNull
     private Result opFreeze(boolean freeze) {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                if (freeze) {
-                    FreezeUtils.freeze(pair.getPackageName(), pair.getUserHandle());
-                } else {
-                    FreezeUtils.unfreeze(pair.getPackageName(), pair.getUserHandle());
-                }
-            } catch (Throwable e) {
-                log("====> op=APP_FREEZE, pkg=" + pair + ", freeze = " + freeze, e);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently(freeze ? "APP_FREEZE" : "APP_UNFREEZE",
+                MultithreadedExecutor.getThreadCount(), pair -> {
+                    if (freeze) {
+                        FreezeUtils.freeze(pair.getPackageName(), pair.getUserHandle());
+                    } else {
+                        FreezeUtils.unfreeze(pair.getPackageName(), pair.getUserHandle());
+                    }
+                });
         return new Result(failedPackages);
     }
 
     @NonNull
     private Result opDisableBackground() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        List<UserPackagePair> appliedPackages = new ArrayList<>();
         AppOpsManagerCompat appOpsManager = new AppOpsManagerCompat(ContextUtils.getContext());
-        for (UserPackagePair pair : userPackagePairs) {
-            int uid = PackageUtils.getAppUid(pair);
-            try {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                    appOpsManager.setMode(AppOpsManagerCompat.OP_RUN_IN_BACKGROUND, uid,
-                            pair.getPackageName(), AppOpsManager.MODE_IGNORED);
-                }
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-                    appOpsManager.setMode(AppOpsManagerCompat.OP_RUN_ANY_IN_BACKGROUND, uid,
-                            pair.getPackageName(), AppOpsManager.MODE_IGNORED);
-                }
-                appliedPackages.add(pair);
-            } catch (Throwable e) {
-                log("====> op=DISABLE_BACKGROUND, pkg=" + pair, e);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("DISABLE_BACKGROUND",
+                MultithreadedExecutor.getThreadCount(), pair -> {
+                    int uid = PackageUtils.getAppUid(pair);
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                        appOpsManager.setMode(AppOpsManagerCompat.OP_RUN_IN_BACKGROUND, uid,
+                                pair.getPackageName(), AppOpsManager.MODE_IGNORED);
+                    }
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                        appOpsManager.setMode(AppOpsManagerCompat.OP_RUN_ANY_IN_BACKGROUND, uid,
+                                pair.getPackageName(), AppOpsManager.MODE_IGNORED);
+                    }
+                });
+        List<UserPackagePair> appliedPackages = new ArrayList<>(Arrays.asList(userPackagePairs));
+        appliedPackages.removeAll(failedPackages);
+        // Rules are saved one package at a time (ComponentsBlocker is a singleton)
         for (UserPackagePair pair : appliedPackages) {
             try (ComponentsBlocker cb = ComponentsBlocker.getMutableInstance(pair.getPackageName(), pair.getUserHandle())) {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
@@ -520,132 +501,124 @@ public class BatchOpsManager {
 
     private Result opGrantOrRevokePermissions(boolean isGrant) {
         String[] permissions = args.getStringArray(ARG_PERMISSIONS);
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        if (permissions.length == 1 && permissions[0].equals("*")) {
-            // Wildcard detected
-            for (UserPackagePair pair : userPackagePairs) {
+        // Wildcard means all the permissions of a package
+        boolean allPermissions = permissions.length == 1 && permissions[0].equals("*");
+        List<UserPackagePair> failedPackages = performConcurrently("GRANT_OR_REVOKE_PERMISSIONS",
+                MultithreadedExecutor.getThreadCount(), pair -> {
+                    String[] packagePermissions = allPermissions ? PackageUtils.getPermissionsForPackage(
+                            pair.getPackageName(), pair.getUserHandle()) : permissions;
+                    if (packagePermissions == null) return;
+                    Throwable failure = null;
+                    for (String permission : packagePermissions) {
+                        try {
+                            if (isGrant) {
+                                PermissionCompat.grantPermission(pair.getPackageName(), permission,
+                                        pair.getUserHandle());
+                            } else {
+                                PermissionCompat.revokePermission(pair.getPackageName(), permission,
+                                        pair.getUserHandle());
+                            }
+                        } catch (Throwable th) {
+                            if (allPermissions) {
+                                throw th;
+                            }
+                            // Try the rest of the permissions, but report the package as failed
+                            log("====> op=GRANT_OR_REVOKE_PERMISSIONS, pkg=" + pair + ", perm=" + permission, th);
+                            failure = th;
+                        }
+                    }
+                    if (failure != null) {
+                        throw failure;
+                    }
+                });
+        return lastResult = new Result(failedPackages);
+    }
+
+    @NonNull
+    private Result opScan() {
+        // The APK files of a package are shared by all users, scan each package only once
+        Set<String> packageNames = new HashSet<>();
+        List<UserPackagePair> uniquePackages = new ArrayList<>();
+        if (userPackagePairs.length == 0) {
+            // No packages supplied means all installed packages
+            for (int userId : Users.getUsersIds()) {
                 try {
-                    permissions = PackageUtils.getPermissionsForPackage(pair.getPackageName(), pair.getUserHandle());
-                    if (permissions == null) continue;
-                    for (String permission : permissions) {
-                        if (isGrant) {
-                            PermissionCompat.grantPermission(pair.getPackageName(), permission, pair.getUserHandle());
-                        } else {
-                            PermissionCompat.revokePermission(pair.getPackageName(), permission, pair.getUserHandle());
+                    for (PackageInfo info : PackageManagerCompat.getInstalledPackages(0, userId)) {
+                        if (packageNames.add(info.packageName)) {
+                            uniquePackages.add(new UserPackagePair(info.packageName, userId));
                         }
                     }
-                } catch (Throwable e) {
-                    log("====> op=GRANT_OR_REVOKE_PERMISSIONS, pkg=" + pair, e);
-                    failedPackages.add(pair);
+                } catch (Throwable th) {
+                    log("====> op=SCAN, user=" + userId, th);
                 }
             }
         } else {
             for (UserPackagePair pair : userPackagePairs) {
-                for (String permission : permissions) {
-                    try {
-                        if (isGrant) {
-                            PermissionCompat.grantPermission(pair.getPackageName(), permission, pair.getUserHandle());
-                        } else {
-                            PermissionCompat.revokePermission(pair.getPackageName(), permission, pair.getUserHandle());
-                        }
-                    } catch (Throwable e) {
-                        log("====> op=GRANT_OR_REVOKE_PERMISSIONS, pkg=" + pair, e);
-                        failedPackages.add(pair);
-                    }
+                if (packageNames.add(pair.getPackageName())) {
+                    uniquePackages.add(pair);
                 }
             }
         }
+        userPackagePairs = uniquePackages.toArray(new UserPackagePair[0]);
+        ScanIndexer indexer = new ScanIndexer();
+        // Loading classes is mostly CPU-bound
+        List<UserPackagePair> failedPackages = performConcurrently("SCAN",
+                MultithreadedExecutor.getThreadCount(), pair -> indexer.index(PackageManagerCompat.getPackageInfo(
+                        pair.getPackageName(), PackageUtils.flagMatchUninstalled, pair.getUserHandle())));
         return lastResult = new Result(failedPackages);
     }
 
     @NonNull
     private Result opForceStop() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                PackageManagerCompat.forceStopPackage(pair.getPackageName(), pair.getUserHandle());
-            } catch (Throwable e) {
-                log("====> op=FORCE_STOP, pkg=" + pair, e);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("FORCE_STOP",
+                MultithreadedExecutor.getThreadCount(), pair ->
+                        PackageManagerCompat.forceStopPackage(pair.getPackageName(), pair.getUserHandle()));
         return lastResult = new Result(failedPackages);
     }
 
     private Result opNetPolicy() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
         int netPolicies = args.getInt(ARG_NET_POLICIES, NetworkPolicyManager.POLICY_NONE);
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                int uid = PackageUtils.getAppUid(pair);
-                NetworkPolicyManagerCompat.setUidPolicy(uid, netPolicies);
-            } catch (Throwable e) {
-                log("====> op=NET_POLICY, pkg=" + pair, e);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("NET_POLICY",
+                MultithreadedExecutor.getThreadCount(), pair ->
+                        NetworkPolicyManagerCompat.setUidPolicy(PackageUtils.getAppUid(pair), netPolicies));
         return lastResult = new Result(failedPackages);
     }
 
     private Result opSetAppOps() {
         int[] appOps = args.getIntArray(ARG_APP_OPS);
         int mode = args.getInt(ARG_APP_OP_MODE, AppOpsManager.MODE_IGNORED);
-        List<UserPackagePair> failedPkgList = new ArrayList<>();
         AppOpsManagerCompat appOpsManager = new AppOpsManagerCompat(ContextUtils.getContext());
-        if (appOps.length == 1 && appOps[0] == AppOpsManagerCompat.OP_NONE) {
-            // Wildcard detected
-            for (UserPackagePair pair : userPackagePairs) {
-                try {
-                    List<Integer> appOpList = new ArrayList<>();
-                    ApplicationInfo info = PackageManagerCompat.getApplicationInfo(pair.getPackageName(), pair.getUserHandle(), 0);
-                    List<AppOpsManagerCompat.OpEntry> entries = AppOpsManagerCompat.getConfiguredOpsForPackage(
-                            appOpsManager, info.packageName, info.uid);
-                    for (AppOpsManagerCompat.OpEntry entry : entries) {
-                        appOpList.add(entry.getOp());
+        // Wildcard means all the configured app ops of a package
+        boolean allAppOps = appOps.length == 1 && appOps[0] == AppOpsManagerCompat.OP_NONE;
+        List<UserPackagePair> failedPkgList = performConcurrently("SET_APP_OPS", COMPONENTS_BLOCKER_PARALLELISM,
+                pair -> {
+                    int[] packageAppOps = appOps;
+                    if (allAppOps) {
+                        List<Integer> appOpList = new ArrayList<>();
+                        ApplicationInfo info = PackageManagerCompat.getApplicationInfo(pair.getPackageName(),
+                                pair.getUserHandle(), 0);
+                        List<AppOpsManagerCompat.OpEntry> entries = AppOpsManagerCompat.getConfiguredOpsForPackage(
+                                appOpsManager, info.packageName, info.uid);
+                        for (AppOpsManagerCompat.OpEntry entry : entries) {
+                            appOpList.add(entry.getOp());
+                        }
+                        packageAppOps = ArrayUtils.convertToIntArray(appOpList);
                     }
-                    ExternalComponentsImporter.setModeToFilteredAppOps(appOpsManager, pair,
-                            ArrayUtils.convertToIntArray(appOpList), mode);
-                } catch (Exception e) {
-                    log("====> op=SET_APP_OPS, pkg=" + pair, e);
-                    failedPkgList.add(pair);
-                }
-            }
-        } else {
-            for (UserPackagePair pair : userPackagePairs) {
-                try {
-                    ExternalComponentsImporter.setModeToFilteredAppOps(appOpsManager, pair, appOps, mode);
-                } catch (RemoteException e) {
-                    log("====> op=SET_APP_OPS, pkg=" + pair, e);
-                    failedPkgList.add(pair);
-                }
-            }
-        }
+                    ExternalComponentsImporter.setModeToFilteredAppOps(appOpsManager, pair, packageAppOps, mode);
+                });
         return lastResult = new Result(failedPkgList);
     }
 
     private Result opUnblockComponents() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                ComponentUtils.unblockFilteredComponents(pair, args.getStringArray(ARG_SIGNATURES));
-            } catch (Throwable th) {
-                log("====> op=UNBLOCK_COMPONENTS, pkg=" + pair, th);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("UNBLOCK_COMPONENTS",
+                COMPONENTS_BLOCKER_PARALLELISM, pair ->
+                        ComponentUtils.unblockFilteredComponents(pair, args.getStringArray(ARG_SIGNATURES)));
         return lastResult = new Result(failedPackages);
     }
 
     private Result opUnblockTrackers() {
-        List<UserPackagePair> failedPackages = new ArrayList<>();
-        for (UserPackagePair pair : userPackagePairs) {
-            try {
-                ComponentUtils.unblockTrackingComponents(pair);
-            } catch (Throwable th) {
-                log("====> op=UNBLOCK_TRACKERS, pkg=" + pair, th);
-                failedPackages.add(pair);
-            }
-        }
+        List<UserPackagePair> failedPackages = performConcurrently("UNBLOCK_TRACKERS",
+                COMPONENTS_BLOCKER_PARALLELISM, ComponentUtils::unblockTrackingComponents);
         return lastResult = new Result(failedPackages);
     }
 
@@ -722,6 +695,69 @@ public class BatchOpsManager {
         return lastResult = new Result(failedPackages);
     }
 
+    private interface PackageOp {
+        @WorkerThread
+        void perform(@NonNull UserPackagePair pair) throws Throwable;
+    }
+
+    /**
+     * Perform an operation on every package in {@link #userPackagePairs}. Operations on different packages are
+     * independent of each other, and are run concurrently using at most {@code parallelism} threads.
+     *
+     * @param opName      Name of the operation, used in the logs
+     * @param parallelism Maximum number of packages processed at a time
+     * @return The packages for which the operation has failed, in the order they were supplied
+     */
+    @WorkerThread
+    @NonNull
+    private List<UserPackagePair> performConcurrently(@NonNull String opName, int parallelism, @NonNull PackageOp op) {
+        Context context = AppManager.getContext();
+        PackageManager pm = context.getPackageManager();
+        int max = userPackagePairs.length;
+        boolean[] failed = new boolean[max];
+        AtomicInteger progress = new AtomicInteger();
+        // Initial progress
+        sendProgress(context, null, max, 0);
+        int threadCount = Math.min(parallelism, max);
+        ExecutorService executor = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+        for (int i = 0; i < max; ++i) {
+            int index = i;
+            Runnable runnable = () -> {
+                UserPackagePair pair = userPackagePairs[index];
+                try {
+                    op.perform(pair);
+                } catch (Throwable th) {
+                    log("====> op=" + opName + ", pkg=" + pair, th);
+                    failed[index] = true;
+                }
+                sendProgress(context, PackageUtils.getPackageLabel(pm, pair.getPackageName(), pair.getUserHandle()),
+                        max, progress.incrementAndGet());
+            };
+            if (executor != null) {
+                executor.submit(runnable);
+            } else runnable.run();
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                //noinspection StatementWithEmptyBody
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Results are collected after all the threads are terminated, which makes the writes to failed visible here
+        List<UserPackagePair> failedPackages = new ArrayList<>();
+        for (int i = 0; i < max; ++i) {
+            if (failed[i]) {
+                failedPackages.add(userPackagePairs[i]);
+            }
+        }
+        return failedPackages;
+    }
+
     private void log(@Nullable String message, @Nullable Throwable th) {
         if (mLogger != null) {
             mLogger.println(message, th);
@@ -742,6 +778,26 @@ public class BatchOpsManager {
         UiThreadHandler.run(() -> context.sendBroadcast(broadcastIntent));
     }
 
+    private void sendProgress(@NonNull Context context, @Nullable CharSequence message,
+                              @NonNull BatchOpsScheduler.Stats stats) {
+        Intent broadcastIntent = new Intent(BatchOpsService.ACTION_BATCH_OPS_PROGRESS);
+        CharSequence progressMessage;
+        // Called concurrently by the scheduler
+        synchronized (this) {
+            if (message != null) {
+                lastProgressMessage = message;
+            }
+            progressMessage = lastProgressMessage;
+        }
+        broadcastIntent.putExtra(BatchOpsService.EXTRA_PROGRESS_MESSAGE, progressMessage);
+        broadcastIntent.putExtra(BatchOpsService.EXTRA_PROGRESS_MAX, stats.total);
+        broadcastIntent.putExtra(BatchOpsService.EXTRA_PROGRESS_CURRENT, stats.completed + stats.failed);
+        broadcastIntent.putExtra(BatchOpsService.EXTRA_PROGRESS_QUEUED, stats.queued);
+        broadcastIntent.putExtra(BatchOpsService.EXTRA_PROGRESS_RUNNING, stats.running);
+        broadcastIntent.putExtra(BatchOpsService.EXTRA_PROGRESS_THROUGHPUT, stats.getThroughput());
+        UiThreadHandler.run(() -> context.sendBroadcast(broadcastIntent));
+    }
+
     public static class Result {
         @NonNull
         private final ArrayList<String> mFailedPackages;
@@ -0,0 +1,221 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.batchops;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.github.muntashirakon.AppManager.db.AppsDb;
+import io.github.muntashirakon.AppManager.db.entity.App;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.types.UserPackagePair;
+
+/**
+ * Schedule per-package jobs of a batch operation that are I/O-bound, such as backup and restore.
+ * <p>
+ * Running too many of these jobs at once makes them compete for the same storage, and the throughput collapses,
+ * especially on eMMC. Therefore, only a few jobs are run at a time. CPU-heavy stages, such as compression, do not
+ * need a job slot each as they are spread over their own thread pool (see {@code ParallelCompressorOutputStream}).
+ * Larger packages are run first so that a large package started at the end does not hold up the whole operation.
+ */
+@WorkerThread
+class BatchOpsScheduler {
+    public static final String TAG = BatchOpsScheduler.class.getSimpleName();
+
+    /**
+     * Number of concurrent jobs that read or write large amounts of data. A couple of sequential streams are enough
+     * to keep flash storage busy. More streams only add contention.
+     */
+    static final int DEFAULT_IO_CONCURRENCY = 2;
+
+    interface Job {
+        /**
+         * @return {@code true} on success
+         */
+        @WorkerThread
+        boolean run(@NonNull UserPackagePair pair);
+    }
+
+    interface StatsListener {
+        /**
+         * Called when a job is started or finished. It is called from the worker threads without holding any locks,
+         * and therefore, it may be called concurrently, and the snapshots may arrive slightly out of order.
+         *
+         * @param startedPair The package whose job has just started, {@code null} if a job has finished
+         */
+        @WorkerThread
+        void onStatsChanged(@NonNull Stats stats, @Nullable UserPackagePair startedPair);
+    }
+
+    /**
+     * A snapshot of the queue and throughput statistics.
+     */
+    static class Stats {
+        public final int total;
+        public final int queued;
+        public final int running;
+        public final int completed;
+        public final int failed;
+        /**
+         * Estimated size of the packages processed so far, in bytes
+         */
+        public final long processedBytes;
+        public final long elapsedMillis;
+
+        Stats(int total, int queued, int running, int completed, int failed, long processedBytes,
+              long elapsedMillis) {
+            this.total = total;
+            this.queued = queued;
+            this.running = running;
+            this.completed = completed;
+            this.failed = failed;
+            this.processedBytes = processedBytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @return Estimated throughput in bytes per second
+         */
+        public long getThroughput() {
+            return elapsedMillis == 0 ? 0 : processedBytes * 1000 / elapsedMillis;
+        }
+    }
+
+    private static class Entry {
+        @NonNull
+        public final UserPackagePair pair;
+        public final long size;
+
+        Entry(@NonNull UserPackagePair pair, long size) {
+            this.pair = pair;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Estimate the size of a package using the sizes stored in the app database. The estimate is only used for
+     * ordering the jobs and calculating the throughput.
+     *
+     * @return Estimated size in bytes, or {@code 0} if unknown
+     */
+    static long getEstimatedSize(@NonNull UserPackagePair pair) {
+        try {
+            List<App> apps = AppsDb.getInstance().appDao().getAll(pair.getPackageName(), pair.getUserHandle());
+            if (!apps.isEmpty()) {
+                App app = apps.get(0);
+                return app.codeSize + app.dataSize;
+            }
+        } catch (Throwable th) {
+            Log.w(TAG, "Could not get the size of " + pair, th);
+        }
+        return 0;
+    }
+
+    private final int mConcurrency;
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    private int mRunning;
+    private int mCompleted;
+    private int mFailed;
+    private long mProcessedBytes;
+    private long mStartTime;
+
+    /**
+     * @param concurrency Maximum number of jobs run at a time
+     */
+    BatchOpsScheduler(int concurrency) {
+        mConcurrency = Math.max(1, concurrency);
+    }
+
+    void add(@NonNull UserPackagePair pair, long estimatedSize) {
+        mEntries.add(new Entry(pair, estimatedSize));
+    }
+
+    /**
+     * Run the job for all the packages and wait for them to finish.
+     *
+     * @return The packages for which the job has failed
+     */
+    @NonNull
+    List<UserPackagePair> run(@NonNull Job job, @Nullable StatsListener listener) {
+        // Largest first
+        Collections.sort(mEntries, (o1, o2) -> Long.compare(o2.size, o1.size));
+        List<UserPackagePair> failedPackages = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(mConcurrency, Math.max(1, mEntries.size())));
+        synchronized (this) {
+            mStartTime = SystemClock.elapsedRealtime();
+        }
+        for (Entry entry : mEntries) {
+            executor.submit(() -> {
+                onStarted(entry, listener);
+                boolean success;
+                try {
+                    success = job.run(entry.pair);
+                } catch (Throwable th) {
+                    Log.e(TAG, "Job failed for " + entry.pair, th);
+                    success = false;
+                }
+                if (!success) {
+                    synchronized (failedPackages) {
+                        failedPackages.add(entry.pair);
+                    }
+                }
+                onFinished(entry, success, listener);
+            });
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Log.d(TAG, "Waiting for " + getStats().running + " running jobs");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return failedPackages;
+    }
+
+    @NonNull
+    synchronized Stats getStats() {
+        int total = mEntries.size();
+        return new Stats(total, total - mRunning - mCompleted - mFailed, mRunning, mCompleted, mFailed,
+                mProcessedBytes, SystemClock.elapsedRealtime() - mStartTime);
+    }
+
+    private void onStarted(@NonNull Entry entry, @Nullable StatsListener listener) {
+        Stats stats;
+        synchronized (this) {
+            ++mRunning;
+            stats = getStats();
+        }
+        // The listener is called outside the lock so that a slow listener does not hold up the other jobs
+        if (listener != null) {
+            listener.onStatsChanged(stats, entry.pair);
+        }
+    }
+
+    private void onFinished(@NonNull Entry entry, boolean success, @Nullable StatsListener listener) {
+        Stats stats;
+        synchronized (this) {
+            --mRunning;
+            if (success) {
+                ++mCompleted;
+            } else ++mFailed;
+            mProcessedBytes += entry.size;
+            stats = getStats();
+        }
+        if (listener != null) {
+            listener.onStatsChanged(stats, null);
+        }
+    }
+}
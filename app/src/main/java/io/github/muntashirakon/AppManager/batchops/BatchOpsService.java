@@ -13,6 +13,7 @@ import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.UserHandleHidden;
+import android.text.format.Formatter;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -77,6 +78,18 @@ public class BatchOpsService extends ForegroundService {
      * Current value for progress, to be used with {@link #ACTION_BATCH_OPS_PROGRESS}
      */
     public static final String EXTRA_PROGRESS_CURRENT = "EXTRA_PROGRESS_CURRENT";
+    /**
+     * Number of packages waiting to be processed, to be used with {@link #ACTION_BATCH_OPS_PROGRESS}
+     */
+    public static final String EXTRA_PROGRESS_QUEUED = "EXTRA_PROGRESS_QUEUED";
+    /**
+     * Number of packages being processed, to be used with {@link #ACTION_BATCH_OPS_PROGRESS}
+     */
+    public static final String EXTRA_PROGRESS_RUNNING = "EXTRA_PROGRESS_RUNNING";
+    /**
+     * Throughput in bytes per second, {@link Long} value, to be used with {@link #ACTION_BATCH_OPS_PROGRESS}
+     */
+    public static final String EXTRA_PROGRESS_THROUGHPUT = "EXTRA_PROGRESS_THROUGHPUT";
 
     /**
      * Send to the appropriate broadcast receiver denoting that the batch operation is completed. It
@@ -109,6 +122,10 @@ public class BatchOpsService extends ForegroundService {
      *     <li>
      *         {@link #EXTRA_PROGRESS_CURRENT} is the current progress
      *     </li>
+     *     <li>
+     *         {@link #EXTRA_PROGRESS_QUEUED}, {@link #EXTRA_PROGRESS_RUNNING} and
+     *         {@link #EXTRA_PROGRESS_THROUGHPUT} are optional queue statistics
+     *     </li>
      * </ul>
      */
     public static final String ACTION_BATCH_OPS_PROGRESS = BuildConfig.APPLICATION_ID + ".action.BATCH_OPS_PROGRESS";
@@ -139,6 +156,13 @@ public class BatchOpsService extends ForegroundService {
                     progressMessage = getString(R.string.operation_running);
                 }
                 builder.setContentText(progressMessage);
+                if (intent.hasExtra(EXTRA_PROGRESS_QUEUED)) {
+                    String stats = getString(R.string.batch_ops_queue_stats,
+                            intent.getIntExtra(EXTRA_PROGRESS_RUNNING, 0),
+                            intent.getIntExtra(EXTRA_PROGRESS_QUEUED, 0),
+                            Formatter.formatShortFileSize(context, intent.getLongExtra(EXTRA_PROGRESS_THROUGHPUT, 0)));
+                    builder.setStyle(new NotificationCompat.BigTextStyle().bigText(progressMessage + "\n" + stats));
+                } else builder.setStyle(null);
                 builder.setProgress(progressMax, intent.getIntExtra(EXTRA_PROGRESS_CURRENT, 0), progressMax == 0);
                 notificationManager.notify(NOTIFICATION_ID, builder.build());
             }
@@ -359,6 +383,8 @@ public class BatchOpsService extends ForegroundService {
                 return getString(R.string.pref_import_backups);
             case BatchOpsManager.OP_DEXOPT:
                 return getString(R.string.batch_ops_runtime_optimization);
+            case BatchOpsManager.OP_SCAN:
+                return getString(R.string.scan_apps_for_trackers_and_libraries);
             case BatchOpsManager.OP_NONE:
                 break;
         }
@@ -402,6 +428,8 @@ public class BatchOpsService extends ForegroundService {
                 return getResources().getQuantityString(R.plurals.alert_failed_to_import_backups, failedCount, failedCount);
             case BatchOpsManager.OP_DEXOPT:
                 return getResources().getQuantityString(R.plurals.alert_failed_to_optimize_apps, failedCount, failedCount);
+            case BatchOpsManager.OP_SCAN:
+                return getResources().getQuantityString(R.plurals.alert_failed_to_scan_apps, failedCount, failedCount);
         }
         return getString(R.string.error);
     }
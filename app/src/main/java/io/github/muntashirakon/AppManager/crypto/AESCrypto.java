@@ -138,6 +138,15 @@ public class AESCrypto implements Crypto {
         }
     }
 
+    @NonNull
+    @Override
+    public OutputStream getEncryptingOutputStream(@NonNull OutputStream encryptedStream) {
+        // Init cipher
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(true, getParams());
+        return new CipherOutputStream(encryptedStream, cipher);
+    }
+
     @WorkerThread
     @Override
     public void decrypt(@NonNull Path[] files) throws IOException {
@@ -156,6 +165,15 @@ public class AESCrypto implements Crypto {
         }
     }
 
+    @NonNull
+    @Override
+    public InputStream getDecryptingInputStream(@NonNull InputStream encryptedStream) {
+        // Init cipher
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(false, getParams());
+        return new CipherInputStream(encryptedStream, cipher);
+    }
+
     @WorkerThread
     private void handleFiles(boolean forEncryption, @NonNull Path[] files) throws IOException {
         mNewFiles.clear();
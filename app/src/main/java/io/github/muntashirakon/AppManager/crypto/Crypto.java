@@ -19,12 +19,30 @@ public interface Crypto extends Closeable {
     @WorkerThread
     void encrypt(@NonNull InputStream unencryptedStream, @NonNull OutputStream encryptedStream) throws IOException;
 
+    /**
+     * Get a stream that encrypts everything written to it into the given stream. The result is the same as
+     * {@link #encrypt(InputStream, OutputStream)}, except that the caller pushes the data. Closing the returned stream
+     * finishes the encryption and closes the encrypted stream.
+     */
+    @WorkerThread
+    @NonNull
+    OutputStream getEncryptingOutputStream(@NonNull OutputStream encryptedStream) throws IOException;
+
     @WorkerThread
     void decrypt(@NonNull Path[] files) throws IOException;
 
     @WorkerThread
     void decrypt(@NonNull InputStream encryptedStream, @NonNull OutputStream unencryptedStream) throws IOException;
 
+    /**
+     * Get a stream that decrypts the given stream while it is being read. The result is the same as
+     * {@link #decrypt(InputStream, OutputStream)}, except that the caller pulls the data. Integrity errors, if any,
+     * are thrown once the end of the stream is reached. Closing the returned stream closes the encrypted stream.
+     */
+    @WorkerThread
+    @NonNull
+    InputStream getDecryptingInputStream(@NonNull InputStream encryptedStream) throws IOException;
+
     @NonNull
     Path[] getNewFiles();
 
@@ -23,6 +23,13 @@ public class DummyCrypto implements Crypto {
         // Do nothing since both are the same stream
     }
 
+    @NonNull
+    @Override
+    public OutputStream getEncryptingOutputStream(@NonNull OutputStream encryptedStream) {
+        // No encryption is needed
+        return encryptedStream;
+    }
+
     @Override
     public void decrypt(@NonNull Path[] files) {
         // The new files will be deleted, so don't send
@@ -34,6 +41,13 @@ public class DummyCrypto implements Crypto {
         // Do nothing since both are the same stream
     }
 
+    @NonNull
+    @Override
+    public InputStream getDecryptingInputStream(@NonNull InputStream encryptedStream) {
+        // No decryption is needed
+        return encryptedStream;
+    }
+
     @NonNull
     @Override
     public Path[] getNewFiles() {
@@ -24,11 +24,18 @@ import org.openintents.openpgp.OpenPgpError;
 import org.openintents.openpgp.util.OpenPgpApi;
 import org.openintents.openpgp.util.OpenPgpServiceConnection;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import javax.crypto.Cipher;
 
@@ -39,6 +46,7 @@ import io.github.muntashirakon.AppManager.compat.PendingIntentCompat;
 import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.settings.Prefs;
 import io.github.muntashirakon.AppManager.utils.NotificationUtils;
+import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
 
 // Copyright 2018 jensstein
@@ -138,6 +146,116 @@ public class OpenPGPCrypto implements Crypto {
         handleStreams(intent, Cipher.ENCRYPT_MODE, unencryptedStream, encryptedStream);
     }
 
+    @WorkerThread
+    @NonNull
+    @Override
+    public OutputStream getEncryptingOutputStream(@NonNull OutputStream encryptedStream) throws IOException {
+        // OpenPgpApi pulls the data from an InputStream. So, the data written by the caller is passed to it through a
+        // pipe, and the API is run in a separate thread.
+        PipedInputStream pipedInputStream = new PipedInputStream(IoUtils.DEFAULT_BUFFER_SIZE);
+        PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream);
+        FutureTask<Void> encryptionTask = new FutureTask<>(() -> {
+            try (InputStream is = pipedInputStream) {
+                encrypt(is, encryptedStream);
+            }
+            return null;
+        });
+        new Thread(encryptionTask, TAG).start();
+        return new FilterOutputStream(pipedOutputStream) {
+            private boolean mClosed;
+
+            @Override
+            public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (mClosed) return;
+                mClosed = true;
+                try {
+                    super.close();
+                    encryptionTask.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException(cause);
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException().initCause(e);
+                } finally {
+                    encryptedStream.close();
+                }
+            }
+        };
+    }
+
+    @WorkerThread
+    @NonNull
+    @Override
+    public InputStream getDecryptingInputStream(@NonNull InputStream encryptedStream) throws IOException {
+        // OpenPgpApi pushes the data to an OutputStream. So, the decrypted data is passed to the caller through a pipe,
+        // and the API is run in a separate thread.
+        PipedInputStream pipedInputStream = new PipedInputStream(IoUtils.DEFAULT_BUFFER_SIZE);
+        PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream);
+        FutureTask<Void> decryptionTask = new FutureTask<>(() -> {
+            try (OutputStream os = pipedOutputStream) {
+                decrypt(encryptedStream, os);
+            }
+            return null;
+        });
+        new Thread(decryptionTask, TAG).start();
+        return new FilterInputStream(pipedInputStream) {
+            private boolean mClosed;
+
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b == -1) checkResult();
+                return b;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                int readCount = in.read(b, off, len);
+                if (readCount == -1) checkResult();
+                return readCount;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (mClosed) return;
+                mClosed = true;
+                try {
+                    // Fails the decryption if it is still running
+                    super.close();
+                    decryptionTask.get();
+                } catch (ExecutionException ignore) {
+                    // Errors are reported while reading
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException().initCause(e);
+                } finally {
+                    encryptedStream.close();
+                }
+            }
+
+            private void checkResult() throws IOException {
+                try {
+                    decryptionTask.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException(cause);
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException().initCause(e);
+                }
+            }
+        };
+    }
+
     @WorkerThread
     private void handleFiles(Intent intent, int mode, @NonNull Path[] filesList) throws IOException {
         isFileMode = true;
@@ -2,27 +2,73 @@
 
 package io.github.muntashirakon.AppManager.db;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import io.github.muntashirakon.AppManager.AppManager;
 import io.github.muntashirakon.AppManager.db.dao.AppDao;
 import io.github.muntashirakon.AppManager.db.dao.BackupDao;
 import io.github.muntashirakon.AppManager.db.dao.FileHashDao;
 import io.github.muntashirakon.AppManager.db.dao.LogFilterDao;
+import io.github.muntashirakon.AppManager.db.dao.ScanResultDao;
+import io.github.muntashirakon.AppManager.db.dao.UsageDao;
 import io.github.muntashirakon.AppManager.db.entity.App;
 import io.github.muntashirakon.AppManager.db.entity.Backup;
 import io.github.muntashirakon.AppManager.db.entity.FileHash;
 import io.github.muntashirakon.AppManager.db.entity.LogFilter;
+import io.github.muntashirakon.AppManager.db.entity.ScanResult;
+import io.github.muntashirakon.AppManager.db.entity.UsageDaily;
+import io.github.muntashirakon.AppManager.db.entity.UsageIngestion;
+import io.github.muntashirakon.AppManager.db.entity.UsageSession;
 
-@Database(entities = {App.class, LogFilter.class, FileHash.class, Backup.class}, version = 2)
+@Database(entities = {App.class, LogFilter.class, FileHash.class, Backup.class, ScanResult.class,
+        UsageSession.class, UsageDaily.class, UsageIngestion.class}, version = 5)
 public abstract class AppsDb extends RoomDatabase {
+    private static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `scan_result` (`package_name` TEXT NOT NULL, "
+                    + "`version_code` INTEGER NOT NULL, `apk_hash` TEXT NOT NULL, `last_update_time` INTEGER NOT NULL, "
+                    + "`class_count` INTEGER NOT NULL, `tracker_count` INTEGER NOT NULL, "
+                    + "`library_count` INTEGER NOT NULL, `trackers` TEXT, `libraries` TEXT, "
+                    + "`scan_time` INTEGER NOT NULL, PRIMARY KEY(`package_name`, `version_code`, `apk_hash`))");
+        }
+    };
+
+    private static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `usage_session` (`user_id` INTEGER NOT NULL, "
+                    + "`start_time` INTEGER NOT NULL, `package_name` TEXT NOT NULL, `end_time` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`user_id`, `start_time`, `package_name`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `usage_daily` (`user_id` INTEGER NOT NULL, "
+                    + "`day` INTEGER NOT NULL, `package_name` TEXT NOT NULL, `screen_time` INTEGER NOT NULL, "
+                    + "`times_opened` INTEGER NOT NULL, `last_used` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`user_id`, `day`, `package_name`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `usage_ingestion` (`user_id` INTEGER NOT NULL, "
+                    + "`watermark` INTEGER NOT NULL, `last_run` INTEGER NOT NULL, PRIMARY KEY(`user_id`))");
+        }
+    };
+
+    private static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `usage_daily` ADD COLUMN `last_event` INTEGER NOT NULL DEFAULT 0");
+            // Being in the foreground is the last known event of the days ingested so far
+            database.execSQL("UPDATE `usage_daily` SET `last_event` = `last_used`");
+        }
+    };
+
     private static AppsDb sAppsDb;
 
     public static AppsDb getInstance() {
         if (sAppsDb == null) {
             sAppsDb = Room.databaseBuilder(AppManager.getContext(), AppsDb.class, "apps.db")
+                    .addMigrations(MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5)
                     .fallbackToDestructiveMigration()
                     .build();
         }
@@ -36,4 +82,8 @@ public abstract class AppsDb extends RoomDatabase {
     public abstract LogFilterDao logFilterDao();
 
     public abstract FileHashDao fileHashDao();
+
+    public abstract ScanResultDao scanResultDao();
+
+    public abstract UsageDao usageDao();
 }
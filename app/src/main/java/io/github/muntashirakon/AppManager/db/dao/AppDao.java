@@ -7,6 +7,7 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
 import java.util.List;
@@ -47,4 +48,13 @@ public interface AppDao {
 
     @Query("DELETE FROM app WHERE package_name = :packageName AND user_id = :userId")
     void delete(String packageName, int userId);
+
+    /**
+     * Delete the removed apps and insert the modified ones in a single transaction.
+     */
+    @Transaction
+    default void replace(List<App> removedApps, List<App> modifiedApps) {
+        delete(removedApps);
+        insert(modifiedApps);
+    }
 }
@@ -16,4 +16,7 @@ public interface FileHashDao {
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insert(FileHash fileHash);
+
+    @Query("DELETE FROM file_hash WHERE path = :path")
+    void delete(String path);
 }
@@ -0,0 +1,40 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.db.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+import io.github.muntashirakon.AppManager.db.entity.ScanResult;
+
+@Dao
+public interface ScanResultDao {
+    @Query("SELECT * FROM scan_result")
+    List<ScanResult> getAll();
+
+    @Query("SELECT * FROM scan_result WHERE package_name = :packageName LIMIT 1")
+    ScanResult get(String packageName);
+
+    @Query("SELECT * FROM scan_result ORDER BY tracker_count DESC")
+    List<ScanResult> getAllByTrackerCount();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(ScanResult scanResult);
+
+    @Query("DELETE FROM scan_result WHERE package_name = :packageName")
+    void delete(String packageName);
+
+    /**
+     * Replace the results of the previous versions of the package.
+     */
+    @Transaction
+    default void replace(ScanResult scanResult) {
+        delete(scanResult.packageName);
+        insert(scanResult);
+    }
+}
@@ -0,0 +1,88 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.db.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.Collection;
+import java.util.List;
+
+import io.github.muntashirakon.AppManager.db.entity.UsageDaily;
+import io.github.muntashirakon.AppManager.db.entity.UsageIngestion;
+import io.github.muntashirakon.AppManager.db.entity.UsageSession;
+
+@Dao
+public interface UsageDao {
+    @Query("SELECT * FROM usage_ingestion WHERE user_id = :userId LIMIT 1")
+    UsageIngestion getIngestion(int userId);
+
+    /**
+     * Sessions of all packages overlapping the given interval, in chronological order
+     */
+    @Query("SELECT * FROM usage_session WHERE user_id = :userId AND start_time <= :until AND end_time >= :since "
+            + "ORDER BY start_time")
+    List<UsageSession> getSessions(int userId, long since, long until);
+
+    /**
+     * @return The time of the last usage event of the package in the given interval, or {@code 0} if none. Only the
+     * last event of each day is recorded, so an event is missed if the last event of its day is after {@code until}.
+     */
+    @Query("SELECT MAX(last_event) FROM usage_daily WHERE user_id = :userId AND package_name = :packageName "
+            + "AND last_event >= :since AND last_event <= :until")
+    long getLastEvent(int userId, String packageName, long since, long until);
+
+    /**
+     * Usage of each package summed up over the days starting in the given interval. {@link UsageDaily#day} is the
+     * first day the package was used. Packages that weren't in the foreground are skipped.
+     */
+    @Query("SELECT user_id, MIN(day) AS day, package_name, SUM(screen_time) AS screen_time, "
+            + "SUM(times_opened) AS times_opened, MAX(last_used) AS last_used, MAX(last_event) AS last_event "
+            + "FROM usage_daily WHERE user_id = :userId AND day >= :since AND day <= :until GROUP BY package_name "
+            + "HAVING MAX(last_used) > 0")
+    List<UsageDaily> getUsageSum(int userId, long since, long until);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(UsageIngestion ingestion);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(List<UsageSession> sessions);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(UsageDaily usageDaily);
+
+    @Query("UPDATE usage_daily SET screen_time = screen_time + :screenTime, "
+            + "times_opened = times_opened + :timesOpened, last_used = MAX(last_used, :lastUsed), "
+            + "last_event = MAX(last_event, :lastEvent) "
+            + "WHERE user_id = :userId AND day = :day AND package_name = :packageName")
+    int add(int userId, long day, String packageName, long screenTime, int timesOpened, long lastUsed,
+            long lastEvent);
+
+    @Query("DELETE FROM usage_session WHERE user_id = :userId AND end_time < :before")
+    void deleteSessions(int userId, long before);
+
+    @Query("DELETE FROM usage_daily WHERE user_id = :userId AND day < :before")
+    void deleteUsage(int userId, long before);
+
+    /**
+     * Store newly ingested sessions, add their daily usage to the existing ones, advance the watermark and drop the
+     * usage older than the given time.
+     */
+    @Transaction
+    default void ingest(UsageIngestion ingestion, List<UsageSession> sessions, Collection<UsageDaily> dailyUsages,
+                        long retainSince) {
+        insert(sessions);
+        for (UsageDaily usage : dailyUsages) {
+            if (add(usage.userId, usage.day, usage.packageName, usage.screenTime, usage.timesOpened,
+                    usage.lastUsed, usage.lastEvent) == 0) {
+                insert(usage);
+            }
+        }
+        deleteSessions(ingestion.userId, retainSince);
+        deleteUsage(ingestion.userId, retainSince);
+        insert(ingestion);
+    }
+}
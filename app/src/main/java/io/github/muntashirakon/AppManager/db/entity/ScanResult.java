@@ -0,0 +1,66 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.db.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * Trackers and libraries found in the classes of an installed package. A result remains valid as long as the version
+ * code and the hash of the APK files remain the same.
+ */
+@SuppressWarnings("NotNullFieldNotInitialized")
+@Entity(tableName = "scan_result", primaryKeys = {"package_name", "version_code", "apk_hash"})
+public class ScanResult {
+    @ColumnInfo(name = "package_name")
+    @NonNull
+    public String packageName;
+
+    @ColumnInfo(name = "version_code")
+    public long versionCode;
+
+    /**
+     * SHA-256 checksum of the base and split APK files
+     */
+    @ColumnInfo(name = "apk_hash")
+    @NonNull
+    public String apkHash;
+
+    /**
+     * {@link android.content.pm.PackageInfo#lastUpdateTime} at the time of the scan. If it is unchanged, the APK files
+     * are not hashed again.
+     */
+    @ColumnInfo(name = "last_update_time")
+    public long lastUpdateTime;
+
+    @ColumnInfo(name = "class_count")
+    public int classCount;
+
+    /**
+     * Number of classes matching at least one tracker signature
+     */
+    @ColumnInfo(name = "tracker_count")
+    public int trackerCount;
+
+    /**
+     * Number of classes matching at least one library signature
+     */
+    @ColumnInfo(name = "library_count")
+    public int libraryCount;
+
+    /**
+     * Names of the trackers found, separated by newlines
+     */
+    @ColumnInfo(name = "trackers")
+    public String trackers;
+
+    /**
+     * Names of the libraries found, separated by newlines
+     */
+    @ColumnInfo(name = "libraries")
+    public String libraries;
+
+    @ColumnInfo(name = "scan_time")
+    public long scanTime;
+}
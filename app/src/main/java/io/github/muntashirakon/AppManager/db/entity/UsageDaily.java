@@ -0,0 +1,45 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.db.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * Usage of a package during a day, summed up from its {@link UsageSession}s. A session spanning midnight is split
+ * between the days it spans, and it is counted as a launch on the day it has started. A package may also have a row
+ * for a day it was not in the foreground, in which case only {@link #lastEvent} is set.
+ */
+@SuppressWarnings("NotNullFieldNotInitialized")
+@Entity(tableName = "usage_daily", primaryKeys = {"user_id", "day", "package_name"})
+public class UsageDaily {
+    @ColumnInfo(name = "user_id")
+    public int userId;
+
+    /**
+     * Start of the day in the time zone at the time of recording
+     */
+    @ColumnInfo(name = "day")
+    public long day;
+
+    @ColumnInfo(name = "package_name")
+    @NonNull
+    public String packageName;
+
+    @ColumnInfo(name = "screen_time")
+    public long screenTime;
+
+    @ColumnInfo(name = "times_opened")
+    public int timesOpened;
+
+    @ColumnInfo(name = "last_used")
+    public long lastUsed;
+
+    /**
+     * Time of the last usage event of any kind during the day, including the ones that aren't related to the screen
+     * time, e.g. the events of the services of the package
+     */
+    @ColumnInfo(name = "last_event", defaultValue = "0")
+    public long lastEvent;
+}
@@ -0,0 +1,27 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.db.entity;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Progress of the ingestion of the usage events of a user.
+ */
+@Entity(tableName = "usage_ingestion")
+public class UsageIngestion {
+    @PrimaryKey
+    @ColumnInfo(name = "user_id")
+    public int userId;
+
+    /**
+     * Time from which the usage events have not been ingested yet. If an activity was still in the foreground during
+     * the last ingestion, this is the time it was resumed.
+     */
+    @ColumnInfo(name = "watermark")
+    public long watermark;
+
+    @ColumnInfo(name = "last_run")
+    public long lastRun;
+}
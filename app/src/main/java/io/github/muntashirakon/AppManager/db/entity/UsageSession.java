@@ -0,0 +1,29 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.db.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * A period during which an activity of the package was in the foreground, i.e. from an
+ * {@link android.app.usage.UsageEvents.Event#ACTIVITY_RESUMED} to the following
+ * {@link android.app.usage.UsageEvents.Event#ACTIVITY_PAUSED} of the same package.
+ */
+@SuppressWarnings("NotNullFieldNotInitialized")
+@Entity(tableName = "usage_session", primaryKeys = {"user_id", "start_time", "package_name"})
+public class UsageSession {
+    @ColumnInfo(name = "user_id")
+    public int userId;
+
+    @ColumnInfo(name = "start_time")
+    public long startTime;
+
+    @ColumnInfo(name = "package_name")
+    @NonNull
+    public String packageName;
+
+    @ColumnInfo(name = "end_time")
+    public long endTime;
+}
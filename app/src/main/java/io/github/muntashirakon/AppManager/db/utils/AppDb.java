@@ -20,14 +20,21 @@ import android.util.ArrayMap;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
+import androidx.core.content.pm.PackageInfoCompat;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import io.github.muntashirakon.AppManager.backup.BackupUtils;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
@@ -37,7 +44,7 @@ import io.github.muntashirakon.AppManager.db.dao.BackupDao;
 import io.github.muntashirakon.AppManager.db.entity.App;
 import io.github.muntashirakon.AppManager.db.entity.Backup;
 import io.github.muntashirakon.AppManager.logs.Log;
-import io.github.muntashirakon.AppManager.rules.compontents.ComponentsBlocker;
+import io.github.muntashirakon.AppManager.rules.RulesStorageManager;
 import io.github.muntashirakon.AppManager.ssaid.SsaidSettings;
 import io.github.muntashirakon.AppManager.types.PackageChangeReceiver;
 import io.github.muntashirakon.AppManager.types.PackageSizeInfo;
@@ -47,12 +54,18 @@ import io.github.muntashirakon.AppManager.usage.PackageUsageInfo;
 import io.github.muntashirakon.AppManager.usage.UsageUtils;
 import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.KeyStoreUtils;
+import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
 import io.github.muntashirakon.AppManager.utils.PackageUtils;
 import io.github.muntashirakon.AppManager.utils.TextUtilsCompat;
 
 public class AppDb {
     public static final String TAG = AppDb.class.getSimpleName();
 
+    /**
+     * Number of packages handled by a single task while updating the apps in parallel
+     */
+    private static final int CHUNK_SIZE = 32;
+
     private static final Object sLock = new Object();
 
     private final AppDao appDao;
@@ -235,11 +248,19 @@ public class AppDb {
         return appList;
     }
 
+    /**
+     * Update the apps of all users. The package lists of the users are fetched in parallel without any extra
+     * information, and only the packages whose version, last update time or flags have changed are loaded in full, in
+     * chunks of {@link #CHUNK_SIZE} packages. The changes are written to the database in a single transaction.
+     */
     @WorkerThread
     public void updateApplications(@NonNull Context context) {
         synchronized (sLock) {
             Map<String, Backup> backups = getBackups(false);
-            List<App> oldApps = new ArrayList<>(appDao.getAll());
+            Map<String, App> oldApps = new HashMap<>();
+            for (App app : appDao.getAll()) {
+                oldApps.put(getKey(app.packageName, app.userId), app);
+            }
             List<App> modifiedApps = new ArrayList<>();
             Set<String> newApps = new HashSet<>();
             Set<String> updatedApps = new HashSet<>();
@@ -247,47 +268,67 @@ public class AppDb {
             // Interrupt thread on request
             if (Thread.currentThread().isInterrupted()) return;
 
-            for (int userId : Users.getUsersIds()) {
-                // Interrupt thread on request
-                if (Thread.currentThread().isInterrupted()) return;
-
-                List<PackageInfo> packageInfoList;
-                try {
-                    packageInfoList = PackageManagerCompat.getInstalledPackages(flagSigningInfo
-                            | PackageManager.GET_ACTIVITIES | PackageManager.GET_RECEIVERS | PackageManager.GET_PROVIDERS
-                            | PackageManager.GET_SERVICES | flagDisabledComponents | flagMatchUninstalled, userId);
-                } catch (Exception e) {
-                    Log.e(TAG, "Could not retrieve package info list for user " + userId, e);
-                    continue;
+            int[] userIds = Users.getUsersIds();
+            ExecutorService executor = Executors.newFixedThreadPool(MultithreadedExecutor.getThreadCount());
+            try {
+                List<Future<List<PackageInfo>>> packageInfoListFutures = new ArrayList<>(userIds.length);
+                for (int userId : userIds) {
+                    packageInfoListFutures.add(executor.submit(() ->
+                            PackageManagerCompat.getInstalledPackages(flagMatchUninstalled, userId)));
                 }
-
-                for (PackageInfo packageInfo : packageInfoList) {
-                    // Interrupt thread on request
-                    if (Thread.currentThread().isInterrupted()) return;
-
-                    int oldAppIndex = findIndexOfApp(oldApps, packageInfo.packageName, UserHandleHidden.getUserId(packageInfo.applicationInfo.uid));
-                    if (oldAppIndex >= 0) {
-                        // There's already existing app
-                        App oldApp = oldApps.remove(oldAppIndex);
-                        if (isUpToDate(oldApp, packageInfo)) {
+                List<Callable<List<App>>> appLoaders = new ArrayList<>();
+                for (int i = 0; i < userIds.length; ++i) {
+                    int userId = userIds[i];
+                    List<PackageInfo> packageInfoList;
+                    try {
+                        packageInfoList = packageInfoListFutures.get(i).get();
+                    } catch (ExecutionException e) {
+                        Log.e(TAG, "Could not retrieve package info list for user " + userId, e.getCause());
+                        continue;
+                    }
+                    List<String> outdatedPackages = new ArrayList<>();
+                    for (PackageInfo packageInfo : packageInfoList) {
+                        // Interrupt thread on request
+                        if (Thread.currentThread().isInterrupted()) return;
+
+                        backups.remove(packageInfo.packageName);
+                        String key = getKey(packageInfo.packageName, UserHandleHidden.getUserId(packageInfo.applicationInfo.uid));
+                        App oldApp = oldApps.get(key);
+                        if (oldApp != null && isUpToDate(oldApp, packageInfo)) {
                             // Up-to-date app
+                            oldApps.remove(key);
                             updatedApps.add(oldApp.packageName);
                             modifiedApps.add(oldApp);
-                            backups.remove(packageInfo.packageName);
                             oldApp.lastActionTime = System.currentTimeMillis();
                             continue;
                         }
+                        // New or updated app
+                        outdatedPackages.add(packageInfo.packageName);
+                    }
+                    for (int j = 0; j < outdatedPackages.size(); j += CHUNK_SIZE) {
+                        List<String> chunk = outdatedPackages.subList(j, Math.min(j + CHUNK_SIZE, outdatedPackages.size()));
+                        appLoaders.add(() -> loadApps(context, chunk, userId));
+                    }
+                }
+                for (Future<List<App>> appsFuture : executor.invokeAll(appLoaders)) {
+                    for (App app : appsFuture.get()) {
+                        oldApps.remove(getKey(app.packageName, app.userId));
+                        newApps.add(app.packageName);
+                        modifiedApps.add(app);
                     }
-                    // New app
-                    App app = App.fromPackageInfo(context, packageInfo);
-                    backups.remove(packageInfo.packageName);
-                    newApps.add(app.packageName);
-                    modifiedApps.add(app);
                 }
-            }
 
-            // Update usage and others
-            updateVariableData(context, modifiedApps);
+                // Update usage and others
+                updateVariableData(context, modifiedApps, executor);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Could not load apps", e.getCause());
+                return;
+            } finally {
+                executor.shutdownNow();
+            }
 
             // Add rest of the backup items, i.e., items that aren't installed
             for (Backup backup : backups.values()) {
@@ -295,16 +336,12 @@ public class AppDb {
                 // Interrupt thread on request
                 if (Thread.currentThread().isInterrupted()) return;
 
-                int oldAppIndex = findIndexOfApp(oldApps, backup.packageName, backup.userId);
-                if (oldAppIndex >= 0) {
-                    // There's already existing app
-                    App oldApp = oldApps.remove(oldAppIndex);
-                    if (isUpToDate(oldApp, backup)) {
-                        // Up-to-date app
-                        updatedApps.add(oldApp.packageName);
-                        modifiedApps.add(oldApp);
-                        continue;
-                    }
+                App oldApp = oldApps.remove(getKey(backup.packageName, backup.userId));
+                if (oldApp != null && isUpToDate(oldApp, backup)) {
+                    // Up-to-date app
+                    updatedApps.add(oldApp.packageName);
+                    modifiedApps.add(oldApp);
+                    continue;
                 }
                 // New app
                 App app = App.fromBackup(backup);
@@ -312,13 +349,13 @@ public class AppDb {
                 modifiedApps.add(app);
             }
             // Add new data
-            appDao.delete(oldApps);
-            appDao.insert(modifiedApps);
-            if (oldApps.size() > 0) {
+            List<App> removedApps = new ArrayList<>(oldApps.values());
+            appDao.replace(removedApps, modifiedApps);
+            if (removedApps.size() > 0) {
                 // Delete broadcast
                 Intent intent = new Intent(PackageChangeReceiver.ACTION_DB_PACKAGE_REMOVED);
                 intent.setPackage(context.getPackageName());
-                intent.putExtra(Intent.EXTRA_CHANGED_PACKAGE_LIST, getPackageNamesFromApps(oldApps));
+                intent.putExtra(Intent.EXTRA_CHANGED_PACKAGE_LIST, getPackageNamesFromApps(removedApps));
                 context.sendBroadcast(intent);
             }
             if (newApps.size() > 0) {
@@ -338,6 +375,30 @@ public class AppDb {
         }
     }
 
+    /**
+     * Load the complete information of the given packages of a user.
+     */
+    @WorkerThread
+    @NonNull
+    private static List<App> loadApps(@NonNull Context context, @NonNull List<String> packageNames,
+                                      @UserIdInt int userId) {
+        List<App> apps = new ArrayList<>(packageNames.size());
+        for (String packageName : packageNames) {
+            // Interrupt thread on request
+            if (Thread.currentThread().isInterrupted()) break;
+            try {
+                PackageInfo packageInfo = PackageManagerCompat.getPackageInfo(packageName, flagSigningInfo
+                        | PackageManager.GET_ACTIVITIES | PackageManager.GET_RECEIVERS | PackageManager.GET_PROVIDERS
+                        | PackageManager.GET_SERVICES | flagDisabledComponents | flagMatchUninstalled, userId);
+                apps.add(App.fromPackageInfo(context, packageInfo));
+            } catch (RemoteException | PackageManager.NameNotFoundException | SecurityException e) {
+                // The package has been uninstalled in the meantime
+                Log.w(TAG, "Could not load " + packageName + " for user " + userId, e);
+            }
+        }
+        return apps;
+    }
+
     @WorkerThread
     @NonNull
     public Map<String, Backup> getBackups(boolean loadBackups) {
@@ -349,36 +410,50 @@ public class AppDb {
         }
     }
 
+    /**
+     * Update the data that may change without an update of the app, such as usage and sizes, on the calling thread.
+     */
     private static void updateVariableData(@NonNull Context context, @NonNull List<App> modifiedApps) {
-        UriManager uriManager = new UriManager();
-        ArrayMap<Integer, SsaidSettings> userIdSsaidSettingsMap = new ArrayMap<>();
-        List<PackageUsageInfo> packageUsageInfoList = new ArrayList<>();
-        for (int userId : Users.getUsersIds()) {
-            // Interrupt thread on request
-            if (Thread.currentThread().isInterrupted()) return;
-            try {
-                packageUsageInfoList.addAll(AppUsageStatsManager.getInstance(context)
-                        .getUsageStats(UsageUtils.USAGE_WEEKLY, userId));
-            } catch (RemoteException | SecurityException e) {
-                e.printStackTrace();
-            }
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                try {
-                    userIdSsaidSettingsMap.put(userId, new SsaidSettings(userId));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        VariableDataSources sources = VariableDataSources.load(context);
+        if (sources == null) return;
+        updateVariableData(context, modifiedApps, sources);
+    }
+
+    /**
+     * Same as {@link #updateVariableData(Context, List)}, except that the apps are updated in parallel in chunks of
+     * {@link #CHUNK_SIZE}.
+     */
+    private static void updateVariableData(@NonNull Context context, @NonNull List<App> modifiedApps,
+                                           @NonNull ExecutorService executor)
+            throws ExecutionException, InterruptedException {
+        VariableDataSources sources = VariableDataSources.load(context);
+        if (sources == null) return;
+        List<Callable<Void>> updaters = new ArrayList<>();
+        for (int i = 0; i < modifiedApps.size(); i += CHUNK_SIZE) {
+            List<App> chunk = modifiedApps.subList(i, Math.min(i + CHUNK_SIZE, modifiedApps.size()));
+            updaters.add(() -> {
+                updateVariableData(context, chunk, sources);
+                return null;
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(updaters)) {
+            future.get();
         }
+    }
+
+    private static void updateVariableData(@NonNull Context context, @NonNull List<App> modifiedApps,
+                                           @NonNull VariableDataSources sources) {
+        UriManager uriManager = sources.uriManager;
+        ArrayMap<Integer, SsaidSettings> userIdSsaidSettingsMap = sources.userIdSsaidSettingsMap;
+        Map<String, PackageUsageInfo> packageUsageInfoMap = sources.packageUsageInfoMap;
+        Set<Integer> uidsWithKeyStore = sources.uidsWithKeyStore;
         for (App app : modifiedApps) {
             boolean isSystemApp = (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
             if (!app.isInstalled && !isSystemApp) {
                 continue;
             }
             int userId = app.userId;
-            try (ComponentsBlocker cb = ComponentsBlocker.getInstance(app.packageName, userId, false)) {
-                app.rulesCount = cb.entryCount();
-            }
+            app.rulesCount = RulesStorageManager.getEntryCount(app.packageName, userId);
             PackageSizeInfo sizeInfo = PackageUtils.getPackageSizeInfo(context, app.packageName, userId, null);
             if (sizeInfo != null) {
                 app.codeSize = sizeInfo.codeSize + sizeInfo.obbSize;
@@ -391,18 +466,21 @@ public class AppDb {
             if (!app.isInstalled) {
                 continue;
             }
-            app.hasKeystore = KeyStoreUtils.hasKeyStore(app.uid);
+            app.hasKeystore = uidsWithKeyStore.contains(app.uid);
             app.usesSaf = uriManager.getGrantedUris(app.packageName) != null;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 SsaidSettings ssaidSettings = userIdSsaidSettingsMap.get(userId);
                 if (ssaidSettings != null) {
-                    String ssaid = ssaidSettings.getSsaid(app.packageName, app.uid);
+                    String ssaid;
+                    synchronized (ssaidSettings) {
+                        ssaid = ssaidSettings.getSsaid(app.packageName, app.uid);
+                    }
                     app.ssaid = TextUtilsCompat.isEmpty(ssaid) ? null : ssaid;
                 } else {
                     app.ssaid = null;
                 }
             }
-            PackageUsageInfo usageInfo = findUsage(packageUsageInfoList, app.packageName, userId);
+            PackageUsageInfo usageInfo = packageUsageInfoMap.get(getKey(app.packageName, userId));
             if (usageInfo != null) {
                 app.mobileDataUsage = usageInfo.mobileData != null ? usageInfo.mobileData.getTotal() : 0;
                 app.wifiDataUsage = usageInfo.wifiData != null ? usageInfo.wifiData.getTotal() : 0;
@@ -416,6 +494,11 @@ public class AppDb {
         }
     }
 
+    @NonNull
+    private static String getKey(@NonNull String packageName, @UserIdInt int userId) {
+        return userId + "/" + packageName;
+    }
+
     private static int findIndexOfApp(@NonNull List<App> appList, @NonNull String packageName, @UserIdInt int userId) {
         for (int i = 0; i < appList.size(); ++i) {
             App app = appList.get(i);
@@ -426,16 +509,6 @@ public class AppDb {
         return -1;
     }
 
-    @Nullable
-    private static PackageUsageInfo findUsage(@NonNull List<PackageUsageInfo> usageInfoList, @NonNull String packageName, @UserIdInt int userId) {
-        for (PackageUsageInfo usageInfo : usageInfoList) {
-            if (usageInfo.userId == userId && usageInfo.packageName.equals(packageName)) {
-                return usageInfo;
-            }
-        }
-        return null;
-    }
-
     private static boolean isUpToDate(@NonNull App currentApp, @NonNull PackageInfo installedPackageInfo) {
         if (!currentApp.isInstalled) {
             // The app was not installed earlier
@@ -443,6 +516,7 @@ public class AppDb {
         }
         // App was installed
         return currentApp.lastUpdateTime == installedPackageInfo.lastUpdateTime
+                && currentApp.versionCode == PackageInfoCompat.getLongVersionCode(installedPackageInfo)
                 && currentApp.flags == installedPackageInfo.applicationInfo.flags;
     }
 
@@ -468,4 +542,43 @@ public class AppDb {
         }
         return packages.toArray(new String[0]);
     }
+
+    /**
+     * Data shared by all the apps while updating the variable data, loaded once for all the users.
+     */
+    private static class VariableDataSources {
+        final UriManager uriManager = new UriManager();
+        final ArrayMap<Integer, SsaidSettings> userIdSsaidSettingsMap = new ArrayMap<>();
+        final Map<String, PackageUsageInfo> packageUsageInfoMap = new HashMap<>();
+        final Set<Integer> uidsWithKeyStore = new HashSet<>();
+
+        /**
+         * @return {@code null} if the thread was interrupted
+         */
+        @Nullable
+        static VariableDataSources load(@NonNull Context context) {
+            VariableDataSources sources = new VariableDataSources();
+            for (int userId : Users.getUsersIds()) {
+                // Interrupt thread on request
+                if (Thread.currentThread().isInterrupted()) return null;
+                try {
+                    for (PackageUsageInfo usageInfo : AppUsageStatsManager.getInstance(context)
+                            .getUsageStats(UsageUtils.USAGE_WEEKLY, userId)) {
+                        sources.packageUsageInfoMap.put(getKey(usageInfo.packageName, usageInfo.userId), usageInfo);
+                    }
+                } catch (RemoteException | SecurityException e) {
+                    e.printStackTrace();
+                }
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    try {
+                        sources.userIdSsaidSettingsMap.put(userId, new SsaidSettings(userId));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                sources.uidsWithKeyStore.addAll(KeyStoreUtils.getUidsWithKeyStore(userId));
+            }
+            return sources;
+        }
+    }
 }
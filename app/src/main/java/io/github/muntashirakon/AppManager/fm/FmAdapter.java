@@ -72,18 +72,18 @@ public class FmAdapter extends MultiSelectionView.Adapter<FmAdapter.ViewHolder>
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         FmItem item = adapterList.get(position);
         holder.title.setText(item.path.getName());
-        String modificationDate = DateUtils.formatDateTime(item.path.lastModified());
+        String modificationDate = DateUtils.formatDateTime(item.getLastModified());
         // Set icon
         if (item.type == FileType.DIRECTORY) {
             holder.icon.setImageResource(R.drawable.ic_folder);
-            holder.subtitle.setText(String.format(Locale.getDefault(), "%d • %s", item.path.listFiles().length,
+            holder.subtitle.setText(String.format(Locale.getDefault(), "%d • %s", item.getChildCount(),
                     modificationDate));
             holder.itemView.setOnClickListener(v -> fmActivity.loadNewFragment(
                     FmFragment.getNewInstance(item.path.getUri())));
         } else {
             holder.icon.setImageResource(R.drawable.ic_file_document);
             holder.subtitle.setText(String.format(Locale.getDefault(), "%s • %s",
-                    Formatter.formatShortFileSize(fmActivity, item.path.length()), modificationDate));
+                    Formatter.formatShortFileSize(fmActivity, item.getSize()), modificationDate));
             holder.itemView.setOnClickListener(v -> {
                 // TODO: 16/11/22 Retrieve default open with from DB and open the file with it
                 OpenWithDialogFragment fragment = OpenWithDialogFragment.getInstance(item.path);
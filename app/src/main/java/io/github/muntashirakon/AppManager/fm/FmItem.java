@@ -3,15 +3,24 @@
 package io.github.muntashirakon.AppManager.fm;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.util.Objects;
 
+import io.github.muntashirakon.io.ExtendedFile;
 import io.github.muntashirakon.io.Path;
 
 public class FmItem implements Comparable<FmItem> {
     final int type;
     @NonNull
     final Path path;
+    // Cached as they are used repeatedly while sorting, and each may cost a transaction for remote files
+    @Nullable
+    private Long lastModified;
+    @Nullable
+    private Long size;
+    @Nullable
+    private Integer childCount;
 
     FmItem(@NonNull Path path) {
         this.path = path;
@@ -20,6 +29,30 @@ public class FmItem implements Comparable<FmItem> {
         else type = FileType.UNKNOWN;
     }
 
+    public long getLastModified() {
+        if (lastModified == null) {
+            lastModified = path.lastModified();
+        }
+        return lastModified;
+    }
+
+    public long getSize() {
+        if (size == null) {
+            size = path.length();
+        }
+        return size;
+    }
+
+    public int getChildCount() {
+        if (childCount == null) {
+            // Only names are needed, listing the files would fetch their attributes as well
+            ExtendedFile file = path.getFile();
+            String[] names = file != null ? file.list() : null;
+            childCount = names != null ? names.length : path.listFiles().length;
+        }
+        return childCount;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
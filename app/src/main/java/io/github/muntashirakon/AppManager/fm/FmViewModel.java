@@ -176,10 +176,10 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
             Path p1 = o1.path;
             Path p2 = o2.path;
             if (sortBy == FmListOptions.SORT_BY_LAST_MODIFIED) {
-                return -Long.compare(p1.lastModified(), p2.lastModified()) * inverse;
+                return -Long.compare(o1.getLastModified(), o2.getLastModified()) * inverse;
             }
             if (sortBy == FmListOptions.SORT_BY_SIZE) {
-                return -Long.compare(p1.length(), p2.length()) * inverse;
+                return -Long.compare(o1.getSize(), o2.getSize()) * inverse;
             }
             if (sortBy == FmListOptions.SORT_BY_TYPE) {
                 return p1.getType().compareToIgnoreCase(p2.getType()) * inverse;
@@ -2,8 +2,6 @@
 
 package io.github.muntashirakon.AppManager.logcat;
 
-import static io.github.muntashirakon.AppManager.logcat.LogViewerActivity.UPDATE_CHECK_INTERVAL;
-
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -21,8 +19,6 @@ import io.github.muntashirakon.AppManager.BuildConfig;
 import io.github.muntashirakon.AppManager.R;
 import io.github.muntashirakon.AppManager.logcat.helper.ServiceHelper;
 import io.github.muntashirakon.AppManager.logcat.struct.LogLine;
-import io.github.muntashirakon.AppManager.logs.Log;
-import io.github.muntashirakon.AppManager.settings.Prefs;
 import io.github.muntashirakon.AppManager.utils.UIUtils;
 import io.github.muntashirakon.reflow.ReflowMenuViewWrapper;
 
@@ -31,7 +27,6 @@ public class LiveLogViewerFragment extends AbsLogViewerFragment implements LogVi
         ReflowMenuViewWrapper.OnItemSelectedListener, LogViewerActivity.SearchingInterface, Filter.FilterListener {
     public static final String TAG = LiveLogViewerFragment.class.getSimpleName();
 
-    private int mLogCounter = 0;
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
@@ -110,22 +105,11 @@ public class LiveLogViewerFragment extends AbsLogViewerFragment implements LogVi
     @Override
     public void onNewLogsAvailable(@NonNull List<LogLine> logLines) {
         mActivity.getProgressBar().hide();
+        // The adapter keeps at most the display limit number of lines to avoid OutOfMemoryError
+        mLogListAdapter.addAll(logLines, mQueryString);
         for (LogLine logLine : logLines) {
-            mLogListAdapter.addWithFilter(logLine, mQueryString, false);
             mActivity.addToAutocompleteSuggestions(logLine);
         }
-        mLogListAdapter.notifyDataSetChanged();
-
-        // How many logs to keep in memory, to avoid OutOfMemoryError
-        int maxNumLogLines = Prefs.LogViewer.getDisplayLimit();
-
-        // Check to see if the list needs to be truncated to avoid OutOfMemoryError
-        ++mLogCounter;
-        if (mLogCounter % UPDATE_CHECK_INTERVAL == 0 && mLogListAdapter.getRealSize() > maxNumLogLines) {
-            int numItemsToRemove = mLogListAdapter.getRealSize() - maxNumLogLines;
-            mLogListAdapter.removeFirst(numItemsToRemove);
-            Log.d(TAG, "Truncating " + numItemsToRemove + " lines from log list to avoid out of memory errors");
-        }
 
         if (mAutoscrollToBottom) {
             mRecyclerView.scrollToPosition(mLogListAdapter.getItemCount() - 1);
@@ -86,9 +86,6 @@ public class LogViewerActivity extends BaseActivity implements SearchView.OnQuer
     public static final String EXTRA_FILTER = "filter";
     public static final String EXTRA_LEVEL = "level";
 
-    // how often to check to see if we've gone over the max size
-    public static final int UPDATE_CHECK_INTERVAL = 200;
-
     // how many suggestions to keep in the autosuggestions text
     private static final int MAX_NUM_SUGGESTIONS = 1000;
 
@@ -16,21 +16,20 @@ import androidx.annotation.ColorInt;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
 import androidx.collection.SparseArrayCompat;
 import androidx.core.content.ContextCompat;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
-import io.github.muntashirakon.AppManager.BuildConfig;
 import io.github.muntashirakon.AppManager.R;
 import io.github.muntashirakon.AppManager.logcat.struct.LogLine;
 import io.github.muntashirakon.AppManager.logcat.struct.SearchCriteria;
-import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.settings.Prefs;
+import io.github.muntashirakon.AppManager.utils.RingBuffer;
 import io.github.muntashirakon.AppManager.utils.UIUtils;
 import io.github.muntashirakon.AppManager.utils.appearance.ColorCodes;
 import io.github.muntashirakon.widget.MultiSelectionView;
@@ -105,13 +104,28 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
     /**
      * Contains the list of objects that represent the data of this ArrayAdapter.
      * The content of this list is referred to as "the array" in the documentation.
+     * These are the lines in {@link #mOriginalValues} that match the current filter.
      */
     @GuardedBy("mLock")
-    private List<LogLine> mObjects;
+    private RingBuffer<LogLine> mObjects;
+    /**
+     * All the lines, up to the display limit. The oldest line is evicted when a line is added to a full buffer.
+     */
+    @GuardedBy("mLock")
+    private final RingBuffer<LogLine> mOriginalValues;
+    /**
+     * Number of lines added to {@link #mOriginalValues} since it was last cleared
+     */
+    @GuardedBy("mLock")
+    private long mAddedCount;
+    /**
+     * Incremented every time {@link #mOriginalValues} is cleared
+     */
+    @GuardedBy("mLock")
+    private int mGeneration;
 
     private ViewHolder.OnClickListener mClickListener;
 
-    private ArrayList<LogLine> mOriginalValues;
     private ArrayFilter mFilter;
 
     private int logLevelLimit = Prefs.LogViewer.getLogLevel();
@@ -120,118 +134,48 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
     private int highlightColor;
 
     public LogViewerRecyclerAdapter() {
-        mObjects = new ArrayList<>();
+        int capacity = Math.max(1, Prefs.LogViewer.getDisplayLimit());
+        mOriginalValues = new RingBuffer<>(capacity);
+        mObjects = new RingBuffer<>(capacity);
         setHasStableIds(true);
     }
 
     /**
-     * Adds the specified object at the end of the array.
-     *
-     * @param object The object to add at the end of the array.
+     * Add the lines at the end of the array, and display the ones matching the query. If the display limit is
+     * exceeded, the oldest lines are removed. The changes are published as (at most) one range removal and one range
+     * insertion.
      */
-    @GuardedBy("mLock")
-    public void add(LogLine object, boolean notify) {
-        synchronized (mLock) {
-            if (mOriginalValues != null) {
-                mOriginalValues.add(object);
-            }
-            mObjects.add(object);
-            if (notify) {
-                notifyItemInserted(mObjects.size());
-            }
+    @UiThread
+    public void addAll(@NonNull List<LogLine> logLines, @Nullable CharSequence query) {
+        int capacity = mOriginalValues.capacity();
+        if (logLines.size() > capacity) {
+            // The rest would be evicted by the end of this batch
+            logLines = logLines.subList(logLines.size() - capacity, logLines.size());
         }
-    }
-
-    @GuardedBy("mLock")
-    public void readAll(LogLine object, boolean notify) {
+        List<LogLine> filteredObjects = getFilterInternal().performFilteringOnList(logLines, query);
+        int removedCount = 0;
+        int insertedStart;
         synchronized (mLock) {
-            if (mOriginalValues != null) {
-                mOriginalValues.add(object);
-            }
-            mObjects.add(object);
-            if (notify) {
-                notifyItemInserted(mObjects.size());
-            }
-        }
-    }
-
-    public void addWithFilter(@NonNull LogLine object, @Nullable CharSequence text, boolean notify) {
-        if (mOriginalValues != null) {
-            List<LogLine> inputList = Collections.singletonList(object);
-            if (mFilter == null) {
-                mFilter = new ArrayFilter();
-            }
-            List<LogLine> filteredObjects = mFilter.performFilteringOnList(inputList, text);
-            synchronized (mLock) {
-                mOriginalValues.add(object);
-                mObjects.addAll(filteredObjects);
-                if (notify) {
-                    notifyItemRangeInserted(mObjects.size() - filteredObjects.size(), filteredObjects.size());
-                }
-            }
-        } else {
-            synchronized (mLock) {
-                mObjects.add(object);
-                if (notify) {
-                    notifyItemInserted(mObjects.size());
+            for (LogLine logLine : logLines) {
+                LogLine evictedLine = mOriginalValues.addLast(logLine);
+                // The lines of both the arrays are in the same order, therefore, an evicted line can only be the first
+                // one in the filtered array
+                if (evictedLine != null && !mObjects.isEmpty() && mObjects.get(0) == evictedLine) {
+                    mObjects.removeFirst();
+                    ++removedCount;
                 }
             }
+            mAddedCount += logLines.size();
+            // This cannot evict anything, since the filtered array is a subset of the original array
+            mObjects.addAll(filteredObjects);
+            insertedStart = mObjects.size() - filteredObjects.size();
         }
-    }
-
-    /**
-     * Inserts the specified object at the specified index in the array.
-     *
-     * @param object The object to insert into the array.
-     * @param index  The index at which the object must be inserted.
-     */
-    @GuardedBy("mLock")
-    public void insert(LogLine object, int index) {
-        synchronized (mLock) {
-            if (mOriginalValues != null) {
-                mOriginalValues.add(index, object);
-            } else {
-                mObjects.add(index, object);
-            }
-            notifyDataSetChanged();
+        if (removedCount > 0) {
+            notifyItemRangeRemoved(0, removedCount);
         }
-    }
-
-    /**
-     * Removes the specified object from the array.
-     *
-     * @param object The object to remove.
-     */
-    @GuardedBy("mLock")
-    public void remove(LogLine object) {
-        synchronized (mLock) {
-            if (mOriginalValues != null) {
-                mOriginalValues.remove(object);
-            } else {
-                mObjects.remove(object);
-            }
-            notifyDataSetChanged();
-        }
-    }
-
-    public void removeFirst(int n) {
-        StopWatch stopWatch = new StopWatch("removeFirst()");
-        if (mOriginalValues != null) {
-            synchronized (mLock) {
-                List<LogLine> subList = mOriginalValues.subList(n, mOriginalValues.size());
-                for (int i = 0; i < n; i++) {
-                    mObjects.remove(mOriginalValues.get(i));
-                }
-                mOriginalValues = new ArrayList<>(subList);
-                notifyDataSetChanged();
-            }
-        } else {
-            synchronized (mLock) {
-                mObjects = new ArrayList<>(mObjects.subList(n, mObjects.size()));
-                notifyDataSetChanged();
-            }
+        if (!filteredObjects.isEmpty()) {
+            notifyItemRangeInserted(insertedStart, filteredObjects.size());
         }
-        stopWatch.log();
     }
 
     /**
@@ -240,10 +184,10 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
     @GuardedBy("mLock")
     public void clear() {
         synchronized (mLock) {
-            if (mOriginalValues != null) {
-                mOriginalValues.clear();
-            }
+            mOriginalValues.clear();
             mObjects.clear();
+            mAddedCount = 0;
+            ++mGeneration;
             notifyDataSetChanged();
         }
     }
@@ -255,13 +199,6 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
         }
     }
 
-    @GuardedBy("mLock")
-    public int getRealSize() {
-        synchronized (mLock) {
-            return (mOriginalValues != null ? mOriginalValues : mObjects).size();
-        }
-    }
-
     public Set<LogLine> getSelectedLogLines() {
         return mSelectedLogLines;
     }
@@ -269,8 +206,7 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
     @GuardedBy("mLock")
     public void setCollapseMode(boolean isCollapsed) {
         synchronized (mLock) {
-            List<LogLine> list = mOriginalValues != null ? mOriginalValues : mObjects;
-            for (LogLine logLine : list) {
+            for (LogLine logLine : mOriginalValues) {
                 logLine.setExpanded(!isCollapsed);
             }
         }
@@ -432,6 +368,11 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
      */
     @Override
     public Filter getFilter() {
+        return getFilterInternal();
+    }
+
+    @NonNull
+    private ArrayFilter getFilterInternal() {
         if (mFilter == null) {
             mFilter = new ArrayFilter();
         }
@@ -452,18 +393,13 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
         @Override
         protected FilterResults performFiltering(CharSequence prefix) {
             FilterResults results = new FilterResults();
-
-            if (mOriginalValues == null) {
-                synchronized (mLock) {
-                    mOriginalValues = new ArrayList<>(mObjects);
-                }
+            FilteredValues filteredValues;
+            synchronized (mLock) {
+                filteredValues = new FilteredValues(new ArrayList<>(mOriginalValues), mAddedCount, mGeneration);
             }
-
-            ArrayList<LogLine> allValues = performFilteringOnList(mOriginalValues, prefix);
-
-            results.values = allValues;
-            results.count = allValues.size();
-
+            filteredValues.values = performFilteringOnList(filteredValues.originalValues, prefix);
+            results.values = filteredValues;
+            results.count = filteredValues.values.size();
             return results;
         }
 
@@ -473,12 +409,7 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
             // search by log level
             ArrayList<LogLine> allValues = new ArrayList<>();
 
-            ArrayList<LogLine> logLines;
-            synchronized (mLock) {
-                logLines = new ArrayList<>(inputList);
-            }
-
-            for (LogLine logLine : logLines) {
+            for (LogLine logLine : inputList) {
                 if (logLine != null && logLine.getLogLevel() >= logLevelLimit) {
                     allValues.add(logLine);
                 }
@@ -500,29 +431,58 @@ public class LogViewerRecyclerAdapter extends MultiSelectionView.Adapter<LogView
             return finalValues;
         }
 
-        @SuppressWarnings("unchecked")
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
+            FilteredValues filteredValues = (FilteredValues) results.values;
             synchronized (mLock) {
-                mObjects = (List<LogLine>) results.values;
+                RingBuffer<LogLine> objects = new RingBuffer<>(mOriginalValues.capacity());
+                if (filteredValues.generation == mGeneration) {
+                    // Skip the lines evicted after the snapshot was taken
+                    long snapshotStart = filteredValues.addedCount - filteredValues.originalValues.size();
+                    long currentStart = mAddedCount - mOriginalValues.size();
+                    int evictedCount = (int) Math.min(Math.max(0, currentStart - snapshotStart),
+                            filteredValues.originalValues.size());
+                    int firstValid = 0;
+                    for (int i = 0; i < evictedCount && firstValid < filteredValues.values.size(); ++i) {
+                        if (filteredValues.values.get(firstValid) == filteredValues.originalValues.get(i)) {
+                            ++firstValid;
+                        }
+                    }
+                    objects.addAll(filteredValues.values.subList(firstValid, filteredValues.values.size()));
+                    // Filter the lines added after the snapshot was taken
+                    int newCount = (int) Math.min(mAddedCount - filteredValues.addedCount, mOriginalValues.size());
+                    objects.addAll(performFilteringOnList(mOriginalValues.subList(mOriginalValues.size() - newCount,
+                            mOriginalValues.size()), constraint));
+                } else {
+                    // The array was cleared after the snapshot was taken
+                    objects.addAll(performFilteringOnList(mOriginalValues, constraint));
+                }
+                mObjects = objects;
                 notifyDataSetChanged();
             }
         }
     }
 
-    private static class StopWatch {
-        private long startTime;
-        private String name;
-
-        public StopWatch(String name) {
-            if (BuildConfig.DEBUG) {
-                this.name = name;
-                this.startTime = System.currentTimeMillis();
-            }
-        }
-
-        public void log() {
-            Log.d(TAG, name + " took " + (System.currentTimeMillis() - startTime) + " ms");
+    private static class FilteredValues {
+        /**
+         * Snapshot of the original values
+         */
+        @NonNull
+        final List<LogLine> originalValues;
+        /**
+         * Value of {@link LogViewerRecyclerAdapter#mAddedCount} when the snapshot was taken
+         */
+        final long addedCount;
+        /**
+         * Value of {@link LogViewerRecyclerAdapter#mGeneration} when the snapshot was taken
+         */
+        final int generation;
+        List<LogLine> values;
+
+        FilteredValues(@NonNull List<LogLine> originalValues, long addedCount, int generation) {
+            this.originalValues = originalValues;
+            this.addedCount = addedCount;
+            this.generation = generation;
         }
     }
 
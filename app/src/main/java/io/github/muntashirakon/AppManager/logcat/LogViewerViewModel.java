@@ -26,8 +26,10 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -50,6 +52,7 @@ import io.github.muntashirakon.AppManager.settings.Ops;
 import io.github.muntashirakon.AppManager.settings.Prefs;
 import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
 import io.github.muntashirakon.AppManager.utils.PermissionUtils;
+import io.github.muntashirakon.AppManager.utils.RingBuffer;
 import io.github.muntashirakon.AppManager.utils.UiThreadHandler;
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
@@ -64,7 +67,19 @@ public class LogViewerViewModel extends AndroidViewModel {
         void onNewLogsAvailable(@NonNull List<LogLine> logLines);
     }
 
+    /**
+     * Interval (in milliseconds) at which the lines read from logcat are delivered to the UI in a batch
+     */
+    private static final long DELIVERY_INTERVAL = 50;
+
     private final Object mLock = new Object();
+    /**
+     * Lines read from logcat but not yet delivered to the UI. The reader thread is the only producer and the UI thread
+     * is the only consumer.
+     */
+    private final ConcurrentLinkedQueue<LogLine> mPendingLogLines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mPendingLogLineCount = new AtomicInteger();
+    private final AtomicBoolean mDeliveryScheduled = new AtomicBoolean();
 
     private volatile boolean mPaused;
     private volatile boolean mKilled = true;
@@ -148,10 +163,11 @@ public class LogViewerViewModel extends AndroidViewModel {
             try {
                 mReader = LogcatReaderLoader.create(true).loadReader();
 
-                int maxLines = Prefs.LogViewer.getDisplayLimit();
+                int maxLines = Math.max(1, Prefs.LogViewer.getDisplayLimit());
+                Runnable deliverPendingLogs = () -> deliverPendingLogs(logLinesAvailableInterface);
 
                 String line;
-                LinkedList<LogLine> initialLines = new LinkedList<>();
+                RingBuffer<LogLine> initialLines = new RingBuffer<>(maxLines);
                 while ((line = mReader.readLine()) != null && !Thread.currentThread().isInterrupted()) {
                     if (mPaused) {
                         synchronized (mLock) {
@@ -168,17 +184,16 @@ public class LogViewerViewModel extends AndroidViewModel {
                     } else if (!mReader.readyToRecord()) {
                         // "ready to record" in this case means all the initial lines have been flushed from the reader
                         initialLines.add(logLine);
-                        if (initialLines.size() > maxLines) {
-                            initialLines.removeFirst();
-                        }
                     } else if (!initialLines.isEmpty()) {
                         // flush all the initial lines we've loaded
-                        initialLines.add(logLine);
-                        sendNewLogs(initialLines, logLinesAvailableInterface);
+                        for (LogLine initialLine : initialLines) {
+                            queueNewLog(initialLine, maxLines, deliverPendingLogs);
+                        }
+                        queueNewLog(logLine, maxLines, deliverPendingLogs);
                         initialLines.clear();
                     } else {
                         // just proceed as normal
-                        sendNewLogs(Collections.singletonList(logLine), logLinesAvailableInterface);
+                        queueNewLog(logLine, maxLines, deliverPendingLogs);
                     }
                 }
             } catch (Exception e) {
@@ -212,6 +227,43 @@ public class LogViewerViewModel extends AndroidViewModel {
         });
     }
 
+    /**
+     * Queue a line read from logcat without blocking, and schedule a delivery to the UI unless one is already pending.
+     * Only called from the reader thread.
+     */
+    @WorkerThread
+    private void queueNewLog(@NonNull LogLine logLine, int maxLines, @NonNull Runnable deliverPendingLogs) {
+        mPendingLogLines.offer(logLine);
+        if (mPendingLogLineCount.incrementAndGet() > maxLines) {
+            // The UI is lagging behind, the oldest lines would be evicted from the display anyway
+            if (mPendingLogLines.poll() != null) {
+                mPendingLogLineCount.decrementAndGet();
+            }
+        }
+        if (mDeliveryScheduled.compareAndSet(false, true)) {
+            UiThreadHandler.handler.postDelayed(deliverPendingLogs, DELIVERY_INTERVAL);
+        }
+    }
+
+    @UiThread
+    private void deliverPendingLogs(@Nullable WeakReference<LogLinesAvailableInterface> logLinesAvailableInterface) {
+        // Reset before draining so that a line queued during the drain schedules the next delivery
+        mDeliveryScheduled.set(false);
+        List<LogLine> logLines = new ArrayList<>(mPendingLogLineCount.get());
+        LogLine logLine;
+        while ((logLine = mPendingLogLines.poll()) != null) {
+            mPendingLogLineCount.decrementAndGet();
+            logLines.add(logLine);
+        }
+        if (logLines.isEmpty() || logLinesAvailableInterface == null) {
+            return;
+        }
+        LogLinesAvailableInterface i = logLinesAvailableInterface.get();
+        if (i != null) {
+            i.onNewLogsAvailable(logLines);
+        }
+    }
+
     private static void sendNewLogs(@NonNull List<LogLine> logLines, @Nullable WeakReference<LogLinesAvailableInterface> logLinesAvailableInterface) {
         if (logLinesAvailableInterface != null) {
             LogLinesAvailableInterface i = logLinesAvailableInterface.get();
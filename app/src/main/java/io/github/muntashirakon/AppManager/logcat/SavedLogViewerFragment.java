@@ -75,11 +75,10 @@ public class SavedLogViewerFragment extends AbsLogViewerFragment implements LogV
     @Override
     public void onNewLogsAvailable(@NonNull List<LogLine> logLines) {
         mActivity.getProgressBar().hide();
+        mLogListAdapter.addAll(logLines, "");
         for (LogLine logLine : logLines) {
-            mLogListAdapter.addWithFilter(logLine, "", false);
             mActivity.addToAutocompleteSuggestions(logLine);
         }
-        mLogListAdapter.notifyDataSetChanged();
 
         mRecyclerView.scrollToPosition(mLogListAdapter.getItemCount() - 1);
     }
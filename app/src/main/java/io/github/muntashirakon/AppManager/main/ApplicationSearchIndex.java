@@ -0,0 +1,222 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.main;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import io.github.muntashirakon.AppManager.misc.AdvancedSearchView;
+import io.github.muntashirakon.AppManager.utils.Utils;
+
+/**
+ * Search index for the package names and labels of the items in the main list. The lower-cased texts and the
+ * initials of the labels are computed once when an item is added, instead of on every search.
+ * <ul>
+ *     <li>Prefix and suffix searches are range queries on the texts (reversed for suffix) sorted in a tree.</li>
+ *     <li>Contains searches only check the items sharing the rarest trigram of the query.</li>
+ *     <li>Regular expressions cannot be indexed, but the pattern is compiled once for all items.</li>
+ * </ul>
+ * The results are the same as matching the query against the package name and the label of each item, where a
+ * contains search also matches the initials of the label (see {@link Utils#containsOrHasInitials(String, String)}).
+ */
+@AnyThread
+class ApplicationSearchIndex {
+    private static final int GRAM_SIZE = 3;
+
+    private static class Entry {
+        @NonNull
+        final String packageName;
+        @NonNull
+        final String label;
+        @NonNull
+        final String packageNameLower;
+        @NonNull
+        final String labelLower;
+        @NonNull
+        final String labelInitials;
+
+        Entry(@NonNull String packageName, @Nullable String label) {
+            this.packageName = packageName;
+            this.label = label != null ? label : packageName;
+            packageNameLower = packageName.toLowerCase(Locale.ROOT);
+            labelLower = this.label.toLowerCase(Locale.ROOT);
+            labelInitials = Utils.getFirstLettersInLowerCase(Utils.camelCaseToSpaceSeparatedString(this.label));
+        }
+
+        @NonNull
+        String[] getTexts() {
+            return new String[]{packageNameLower, labelLower};
+        }
+
+        @NonNull
+        String[] getContainsTexts() {
+            return new String[]{packageNameLower, labelLower, labelInitials};
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    // Texts to package names
+    private final TreeMap<String, Set<String>> mPrefixes = new TreeMap<>();
+    // Reversed texts to package names
+    private final TreeMap<String, Set<String>> mSuffixes = new TreeMap<>();
+    // Trigrams to package names
+    private final Map<String, Set<String>> mGrams = new HashMap<>();
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mPrefixes.clear();
+        mSuffixes.clear();
+        mGrams.clear();
+    }
+
+    public synchronized void addAll(@NonNull Collection<ApplicationItem> items) {
+        for (ApplicationItem item : items) {
+            put(item);
+        }
+    }
+
+    public synchronized void put(@NonNull ApplicationItem item) {
+        remove(item.packageName);
+        Entry entry = new Entry(item.packageName, item.label);
+        mEntries.put(entry.packageName, entry);
+        for (String text : entry.getTexts()) {
+            addPosting(mPrefixes, text, entry.packageName);
+            addPosting(mSuffixes, reverse(text), entry.packageName);
+        }
+        for (String text : entry.getContainsTexts()) {
+            for (int i = 0; i + GRAM_SIZE <= text.length(); ++i) {
+                addPosting(mGrams, text.substring(i, i + GRAM_SIZE), entry.packageName);
+            }
+        }
+    }
+
+    public synchronized void remove(@NonNull String packageName) {
+        Entry entry = mEntries.remove(packageName);
+        if (entry == null) {
+            return;
+        }
+        for (String text : entry.getTexts()) {
+            removePosting(mPrefixes, text, packageName);
+            removePosting(mSuffixes, reverse(text), packageName);
+        }
+        for (String text : entry.getContainsTexts()) {
+            for (int i = 0; i + GRAM_SIZE <= text.length(); ++i) {
+                removePosting(mGrams, text.substring(i, i + GRAM_SIZE), packageName);
+            }
+        }
+    }
+
+    /**
+     * Find the items matching the query.
+     *
+     * @param query Search query, lower-cased unless it is a regular expression
+     * @return Package names of the matching items
+     */
+    @NonNull
+    public synchronized Set<String> search(@NonNull String query, @AdvancedSearchView.SearchType int searchType) {
+        switch (searchType) {
+            case AdvancedSearchView.SEARCH_TYPE_PREFIX:
+                return searchRange(mPrefixes, query);
+            case AdvancedSearchView.SEARCH_TYPE_SUFFIX:
+                return searchRange(mSuffixes, reverse(query));
+            case AdvancedSearchView.SEARCH_TYPE_REGEX:
+                return searchRegex(query);
+            case AdvancedSearchView.SEARCH_TYPE_CONTAINS:
+            default:
+                return searchContains(query);
+        }
+    }
+
+    @NonNull
+    private Set<String> searchRange(@NonNull TreeMap<String, Set<String>> texts, @NonNull String query) {
+        Set<String> results = new HashSet<>();
+        NavigableMap<String, Set<String>> range = texts.subMap(query, true, query + Character.MAX_VALUE, false);
+        for (Set<String> packageNames : range.values()) {
+            results.addAll(packageNames);
+        }
+        return results;
+    }
+
+    @NonNull
+    private Set<String> searchContains(@NonNull String query) {
+        Collection<String> candidates;
+        if (query.length() < GRAM_SIZE) {
+            candidates = mEntries.keySet();
+        } else {
+            // Any match must contain all the trigrams of the query, the rarest one has the fewest candidates
+            candidates = null;
+            for (int i = 0; i + GRAM_SIZE <= query.length(); ++i) {
+                Set<String> packageNames = mGrams.get(query.substring(i, i + GRAM_SIZE));
+                if (packageNames == null) {
+                    return new HashSet<>();
+                }
+                if (candidates == null || packageNames.size() < candidates.size()) {
+                    candidates = packageNames;
+                }
+            }
+        }
+        Set<String> results = new HashSet<>();
+        for (String packageName : candidates) {
+            Entry entry = mEntries.get(packageName);
+            for (String text : entry.getContainsTexts()) {
+                if (text.contains(query)) {
+                    results.add(packageName);
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    @NonNull
+    private Set<String> searchRegex(@NonNull String query) {
+        Set<String> results = new HashSet<>();
+        Pattern p;
+        try {
+            p = Pattern.compile(query);
+        } catch (PatternSyntaxException ignore) {
+            return results;
+        }
+        for (Entry entry : mEntries.values()) {
+            if (p.matcher(entry.packageName).find() || p.matcher(entry.label).find()) {
+                results.add(entry.packageName);
+            }
+        }
+        return results;
+    }
+
+    private static void addPosting(@NonNull Map<String, Set<String>> postings, @NonNull String key,
+                                   @NonNull String packageName) {
+        Set<String> packageNames = postings.get(key);
+        if (packageNames == null) {
+            packageNames = new HashSet<>(1);
+            postings.put(key, packageNames);
+        }
+        packageNames.add(packageName);
+    }
+
+    private static void removePosting(@NonNull Map<String, Set<String>> postings, @NonNull String key,
+                                      @NonNull String packageName) {
+        Set<String> packageNames = postings.get(key);
+        if (packageNames != null && packageNames.remove(packageName) && packageNames.isEmpty()) {
+            postings.remove(key);
+        }
+    }
+
+    @NonNull
+    private static String reverse(@NonNull String text) {
+        return new StringBuilder(text).reverse().toString();
+    }
+}
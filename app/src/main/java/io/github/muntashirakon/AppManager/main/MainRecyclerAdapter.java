@@ -29,6 +29,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.UiThread;
 import androidx.appcompat.widget.AppCompatImageView;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.divider.MaterialDivider;
@@ -37,6 +38,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import io.github.muntashirakon.AppManager.R;
@@ -99,14 +101,54 @@ public class MainRecyclerAdapter extends MultiSelectionView.Adapter<MainRecycler
     void setDefaultList(List<ApplicationItem> list) {
         if (mActivity.mModel == null) return;
         synchronized (mAdapterList) {
+            String searchQuery = mActivity.mModel.getSearchQuery();
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new ItemDiffCallback(mAdapterList, list), false);
             mAdapterList.clear();
             mAdapterList.addAll(list);
-            mSearchQuery = mActivity.mModel.getSearchQuery();
-            notifyDataSetChanged();
+            result.dispatchUpdatesTo(this);
+            if (!Objects.equals(mSearchQuery, searchQuery)) {
+                // Highlights have to be updated
+                mSearchQuery = searchQuery;
+                notifyItemRangeChanged(0, mAdapterList.size());
+            }
             notifySelectionChange();
         }
     }
 
+    /**
+     * The items of a package are replaced by new objects whenever the package changes, so that the unchanged items
+     * can be compared by identity.
+     */
+    private static class ItemDiffCallback extends DiffUtil.Callback {
+        private final List<ApplicationItem> mOldList;
+        private final List<ApplicationItem> mNewList;
+
+        ItemDiffCallback(@NonNull List<ApplicationItem> oldList, @NonNull List<ApplicationItem> newList) {
+            mOldList = oldList;
+            mNewList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldList.get(oldItemPosition).packageName.equals(mNewList.get(newItemPosition).packageName);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldList.get(oldItemPosition) == mNewList.get(newItemPosition);
+        }
+    }
+
     @Override
     public int getHighlightColor() {
         return mHighlightColor;
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -60,7 +61,6 @@ import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.ArrayUtils;
 import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
 import io.github.muntashirakon.AppManager.utils.PackageUtils;
-import io.github.muntashirakon.AppManager.utils.Utils;
 import io.github.muntashirakon.io.Path;
 
 public class MainViewModel extends AndroidViewModel implements ListOptions.ListOptionActions {
@@ -93,12 +93,27 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
         mFilterFlags = Prefs.MainPage.getFilters();
         mFilterProfileName = Prefs.MainPage.getFilteredProfileName();
         if ("".equals(mFilterProfileName)) mFilterProfileName = null;
+        mComparator = getComparator(mSortBy, mReverseSort);
     }
 
     private final MutableLiveData<Boolean> operationStatus = new MutableLiveData<>();
     @NonNull
     private final MutableLiveData<List<ApplicationItem>> applicationItemsLiveData = new MutableLiveData<>();
+    @GuardedBy("applicationItems")
     private final List<ApplicationItem> applicationItems = new ArrayList<>();
+    @GuardedBy("applicationItems")
+    private Comparator<ApplicationItem> mComparator;
+    /**
+     * Items of {@link #applicationItems} matching the filters and the search query, in the same order. Filtering is
+     * serialised by this lock so that {@link #applicationItems} is only locked to take a snapshot of it.
+     */
+    @GuardedBy("mFilteredItems")
+    private final List<ApplicationItem> mFilteredItems = new ArrayList<>();
+    @GuardedBy("mFilteredItems")
+    @Nullable
+    private Set<String> mFilterProfilePackages;
+    // Updated along with applicationItems
+    private final ApplicationSearchIndex mSearchIndex = new ApplicationSearchIndex();
 
     public int getApplicationItemCount() {
         return applicationItems.size();
@@ -247,7 +262,8 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     public void addFilterFlag(@MainListOptions.Filter int filterFlag) {
         mFilterFlags |= filterFlag;
         Prefs.MainPage.setFilters(mFilterFlags);
-        executor.submit(this::filterItemsByFlags);
+        // A new filter can only remove items from the filtered list
+        executor.submit(this::narrowFilteredItems);
     }
 
     @Override
@@ -306,142 +322,191 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
             synchronized (applicationItems) {
                 applicationItems.clear();
                 applicationItems.addAll(updatedApplicationItems);
+                mSearchIndex.clear();
+                mSearchIndex.addAll(updatedApplicationItems);
                 // select apps again
                 for (ApplicationItem item : getSelectedApplicationItems()) {
                     select(item);
                 }
                 sortApplicationList(mSortBy, mReverseSort);
-                filterItemsByFlags();
             }
+            filterItemsByFlags();
         });
     }
 
-    private void filterItemsByQuery(@NonNull List<ApplicationItem> applicationItems) {
-        List<ApplicationItem> filteredApplicationItems;
-        if (searchType == AdvancedSearchView.SEARCH_TYPE_REGEX) {
-            filteredApplicationItems = AdvancedSearchView.matches(searchQuery, applicationItems,
-                    (AdvancedSearchView.ChoicesGenerator<ApplicationItem>) item -> new ArrayList<String>() {{
-                        add(item.packageName);
-                        add(item.label);
-                    }}, AdvancedSearchView.SEARCH_TYPE_REGEX);
-            mHandler.post(() -> applicationItemsLiveData.postValue(filteredApplicationItems));
-            return;
-        }
-        // Others
-        filteredApplicationItems = new ArrayList<>();
+    @NonNull
+    private List<ApplicationItem> filterItemsByQuery(@NonNull List<ApplicationItem> applicationItems) {
+        Set<String> matchedPackages = mSearchIndex.search(searchQuery, searchType);
+        List<ApplicationItem> filteredApplicationItems = new ArrayList<>();
         for (ApplicationItem item : applicationItems) {
-            if (AdvancedSearchView.matches(searchQuery, item.packageName.toLowerCase(Locale.ROOT), searchType)) {
-                filteredApplicationItems.add(item);
-            } else if (searchType == AdvancedSearchView.SEARCH_TYPE_CONTAINS) {
-                if (Utils.containsOrHasInitials(searchQuery, item.label)) {
-                    filteredApplicationItems.add(item);
-                }
-            } else if (AdvancedSearchView.matches(searchQuery, item.label.toLowerCase(Locale.ROOT), searchType)) {
+            if (matchedPackages.contains(item.packageName)) {
                 filteredApplicationItems.add(item);
             }
         }
-        mHandler.post(() -> applicationItemsLiveData.postValue(filteredApplicationItems));
+        return filteredApplicationItems;
     }
 
+    /**
+     * Filter all the items again, e.g. after the sort order, the search query, or the profile has changed.
+     */
     @WorkerThread
-    @GuardedBy("applicationItems")
+    @GuardedBy("mFilteredItems")
     private void filterItemsByFlags() {
-        synchronized (applicationItems) {
-            List<ApplicationItem> candidateApplicationItems = new ArrayList<>();
+        synchronized (mFilteredItems) {
+            if ((mFilterFlags & MainListOptions.FILTER_RUNNING_APPS) != 0) {
+                loadRunningApps();
+            }
+            List<ApplicationItem> candidateApplicationItems;
+            synchronized (applicationItems) {
+                candidateApplicationItems = new ArrayList<>(applicationItems);
+            }
             if (mFilterProfileName != null) {
                 ProfileMetaManager profileMetaManager = new ProfileMetaManager(mFilterProfileName);
-                List<Integer> indexes = new ArrayList<>();
-                for (String packageName : profileMetaManager.getProfile().packages) {
-                    ApplicationItem item = new ApplicationItem();
-                    item.packageName = packageName;
-                    int index = applicationItems.indexOf(item);
-                    if (index != -1) {
-                        indexes.add(index);
-                    }
-                }
-                Collections.sort(indexes);
-                for (int index : indexes) {
-                    candidateApplicationItems.add(applicationItems.get(index));
-                }
-            } else candidateApplicationItems.addAll(applicationItems);
-            // Other filters
-            if (mFilterFlags == MainListOptions.FILTER_NO_FILTER) {
-                if (!TextUtils.isEmpty(searchQuery)) {
-                    filterItemsByQuery(candidateApplicationItems);
-                } else {
-                    mHandler.post(() -> applicationItemsLiveData.postValue(candidateApplicationItems));
-                }
-            } else {
-                List<ApplicationItem> filteredApplicationItems = new ArrayList<>();
-                if ((mFilterFlags & MainListOptions.FILTER_RUNNING_APPS) != 0) {
-                    loadRunningApps();
-                }
-                for (ApplicationItem item : candidateApplicationItems) {
-                    // Filter user and system apps first (if requested)
-                    if ((mFilterFlags & MainListOptions.FILTER_USER_APPS) != 0 && !item.isUser) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_SYSTEM_APPS) != 0 && item.isUser) {
-                        continue;
-                    }
-                    // Filter installed/uninstalled
-                    if ((mFilterFlags & MainListOptions.FILTER_INSTALLED_APPS) != 0 && !item.isInstalled) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_UNINSTALLED_APPS) != 0 && item.isInstalled) {
-                        continue;
-                    }
-                    // Filter backups
-                    if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_BACKUPS) != 0 && item.backup == null) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITHOUT_BACKUPS) != 0 && item.backup != null) {
-                        continue;
-                    }
-                    // Filter rests
-                    if ((mFilterFlags & MainListOptions.FILTER_FROZEN_APPS) != 0 && !item.isDisabled) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_RULES) != 0 && item.blockedCount <= 0) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_ACTIVITIES) != 0 && !item.hasActivities) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_SPLITS) != 0 && !item.hasSplits) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_RUNNING_APPS) != 0 && !item.isRunning) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_KEYSTORE) != 0 && !item.hasKeystore) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_SAF) != 0 && !item.usesSaf) {
-                        continue;
-                    } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_SSAID) != 0 && item.ssaid == null) {
-                        continue;
-                    }
-                    filteredApplicationItems.add(item);
+                mFilterProfilePackages = new HashSet<>(Arrays.asList(profileMetaManager.getProfile().packages));
+            } else mFilterProfilePackages = null;
+            mFilteredItems.clear();
+            mFilteredItems.addAll(filterItems(candidateApplicationItems));
+            postFilteredItems();
+        }
+    }
+
+    /**
+     * Apply the filter flags to the already filtered items. This is sufficient when a filter flag is added.
+     */
+    @WorkerThread
+    @GuardedBy("mFilteredItems")
+    private void narrowFilteredItems() {
+        synchronized (mFilteredItems) {
+            if ((mFilterFlags & MainListOptions.FILTER_RUNNING_APPS) != 0) {
+                loadRunningApps();
+            }
+            List<ApplicationItem> filteredApplicationItems = filterItemsByFlags(mFilteredItems);
+            mFilteredItems.clear();
+            mFilteredItems.addAll(filteredApplicationItems);
+            postFilteredItems();
+        }
+    }
+
+    /**
+     * Replace the filtered items of the given packages with the new items, if they match the filters.
+     */
+    @WorkerThread
+    @GuardedBy("mFilteredItems")
+    private void updateFilteredItems(@NonNull Set<String> packages, @NonNull List<ApplicationItem> newItems) {
+        synchronized (mFilteredItems) {
+            Iterator<ApplicationItem> it = mFilteredItems.iterator();
+            while (it.hasNext()) {
+                if (packages.contains(it.next().packageName)) {
+                    it.remove();
                 }
-                if (!TextUtils.isEmpty(searchQuery)) {
-                    filterItemsByQuery(filteredApplicationItems);
-                } else {
-                    mHandler.post(() -> applicationItemsLiveData.postValue(filteredApplicationItems));
+            }
+            if ((mFilterFlags & MainListOptions.FILTER_RUNNING_APPS) != 0) {
+                loadRunningApps();
+            }
+            Comparator<ApplicationItem> comparator;
+            synchronized (applicationItems) {
+                comparator = mComparator;
+            }
+            for (ApplicationItem item : filterItems(newItems)) {
+                int i = Collections.binarySearch(mFilteredItems, item, comparator);
+                mFilteredItems.add(i < 0 ? -(i + 1) : i, item);
+            }
+            postFilteredItems();
+        }
+    }
+
+    @GuardedBy("mFilteredItems")
+    @NonNull
+    private List<ApplicationItem> filterItems(@NonNull List<ApplicationItem> candidateApplicationItems) {
+        if (mFilterProfilePackages != null) {
+            List<ApplicationItem> profileApplicationItems = new ArrayList<>();
+            for (ApplicationItem item : candidateApplicationItems) {
+                if (mFilterProfilePackages.contains(item.packageName)) {
+                    profileApplicationItems.add(item);
                 }
             }
+            candidateApplicationItems = profileApplicationItems;
         }
+        // Other filters
+        List<ApplicationItem> filteredApplicationItems = filterItemsByFlags(candidateApplicationItems);
+        if (!TextUtils.isEmpty(searchQuery)) {
+            return filterItemsByQuery(filteredApplicationItems);
+        }
+        return filteredApplicationItems;
+    }
+
+    @NonNull
+    private List<ApplicationItem> filterItemsByFlags(@NonNull List<ApplicationItem> candidateApplicationItems) {
+        if (mFilterFlags == MainListOptions.FILTER_NO_FILTER) {
+            return new ArrayList<>(candidateApplicationItems);
+        }
+        List<ApplicationItem> filteredApplicationItems = new ArrayList<>();
+        for (ApplicationItem item : candidateApplicationItems) {
+            // Filter user and system apps first (if requested)
+            if ((mFilterFlags & MainListOptions.FILTER_USER_APPS) != 0 && !item.isUser) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_SYSTEM_APPS) != 0 && item.isUser) {
+                continue;
+            }
+            // Filter installed/uninstalled
+            if ((mFilterFlags & MainListOptions.FILTER_INSTALLED_APPS) != 0 && !item.isInstalled) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_UNINSTALLED_APPS) != 0 && item.isInstalled) {
+                continue;
+            }
+            // Filter backups
+            if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_BACKUPS) != 0 && item.backup == null) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITHOUT_BACKUPS) != 0 && item.backup != null) {
+                continue;
+            }
+            // Filter rests
+            if ((mFilterFlags & MainListOptions.FILTER_FROZEN_APPS) != 0 && !item.isDisabled) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_RULES) != 0 && item.blockedCount <= 0) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_ACTIVITIES) != 0 && !item.hasActivities) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_SPLITS) != 0 && !item.hasSplits) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_RUNNING_APPS) != 0 && !item.isRunning) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_KEYSTORE) != 0 && !item.hasKeystore) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_SAF) != 0 && !item.usesSaf) {
+                continue;
+            } else if ((mFilterFlags & MainListOptions.FILTER_APPS_WITH_SSAID) != 0 && item.ssaid == null) {
+                continue;
+            }
+            filteredApplicationItems.add(item);
+        }
+        return filteredApplicationItems;
+    }
+
+    @GuardedBy("mFilteredItems")
+    private void postFilteredItems() {
+        // The adapter calculates the changes from its current list
+        List<ApplicationItem> filteredApplicationItems = new ArrayList<>(mFilteredItems);
+        mHandler.post(() -> applicationItemsLiveData.postValue(filteredApplicationItems));
     }
 
     @GuardedBy("applicationItems")
     private void loadRunningApps() {
+        Set<String> runningPackages = new HashSet<>();
+        try {
+            List<ActivityManager.RunningAppProcessInfo> runningAppProcessInfoList;
+            runningAppProcessInfoList = ActivityManagerCompat.getRunningAppProcesses();
+            for (ActivityManager.RunningAppProcessInfo runningAppProcessInfo : runningAppProcessInfoList) {
+                Collections.addAll(runningPackages, runningAppProcessInfo.pkgList);
+            }
+        } catch (Throwable th) {
+            Log.e("MVM", th);
+            return;
+        }
         synchronized (applicationItems) {
-            try {
-                List<ActivityManager.RunningAppProcessInfo> runningAppProcessInfoList;
-                runningAppProcessInfoList = ActivityManagerCompat.getRunningAppProcesses();
-                Set<String> runningPackages = new HashSet<>();
-                for (ActivityManager.RunningAppProcessInfo runningAppProcessInfo : runningAppProcessInfoList) {
-                    Collections.addAll(runningPackages, runningAppProcessInfo.pkgList);
-                }
-                for (int i = 0; i < applicationItems.size(); ++i) {
-                    ApplicationItem applicationItem = applicationItems.get(i);
-                    applicationItem.isRunning = applicationItem.isInstalled
-                            && runningPackages.contains(applicationItem.packageName);
-                    applicationItems.set(i, applicationItem);
-                }
-            } catch (Throwable th) {
-                Log.e("MVM", th);
+            for (ApplicationItem applicationItem : applicationItems) {
+                applicationItem.isRunning = applicationItem.isInstalled
+                        && runningPackages.contains(applicationItem.packageName);
             }
         }
     }
@@ -449,80 +514,107 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     @GuardedBy("applicationItems")
     private void sortApplicationList(@MainListOptions.SortOrder int sortBy, boolean reverse) {
         synchronized (applicationItems) {
-            final boolean isRootEnabled = Ops.isRoot();
-            if (sortBy != MainListOptions.SORT_BY_APP_LABEL) {
-                sortApplicationList(MainListOptions.SORT_BY_APP_LABEL, false);
-            }
-            int mode = reverse ? -1 : 1;
-            Collections.sort(applicationItems, (o1, o2) -> {
-                switch (sortBy) {
-                    case MainListOptions.SORT_BY_APP_LABEL:
-                        return mode * sCollator.compare(o1.label, o2.label);
-                    case MainListOptions.SORT_BY_PACKAGE_NAME:
-                        return mode * o1.packageName.compareTo(o2.packageName);
-                    case MainListOptions.SORT_BY_DOMAIN:
-                        boolean isSystem1 = (o1.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-                        boolean isSystem2 = (o2.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-                        return mode * Boolean.compare(isSystem1, isSystem2);
-                    case MainListOptions.SORT_BY_LAST_UPDATE:
-                        // Sort in decreasing order
-                        return -mode * o1.lastUpdateTime.compareTo(o2.lastUpdateTime);
-                    case MainListOptions.SORT_BY_TOTAL_SIZE:
-                        // Sort in decreasing order
-                        return -mode * o1.totalSize.compareTo(o2.totalSize);
-                    case MainListOptions.SORT_BY_DATA_USAGE:
-                        // Sort in decreasing order
-                        return -mode * o1.dataUsage.compareTo(o2.dataUsage);
-                    case MainListOptions.SORT_BY_OPEN_COUNT:
-                        // Sort in decreasing order
-                        return -mode * Integer.compare(o1.openCount, o2.openCount);
-                    case MainListOptions.SORT_BY_INSTALLATION_DATE:
-                        // Sort in decreasing order
-                        return -mode * Long.compare(o1.firstInstallTime, o2.firstInstallTime);
-                    case MainListOptions.SORT_BY_SCREEN_TIME:
-                        // Sort in decreasing order
-                        return -mode * Long.compare(o1.screenTime, o2.screenTime);
-                    case MainListOptions.SORT_BY_LAST_USAGE_TIME:
-                        // Sort in decreasing order
-                        return -mode * Long.compare(o1.lastUsageTime, o2.lastUsageTime);
-                    case MainListOptions.SORT_BY_TARGET_SDK:
-                        // null on top
-                        if (o1.sdk == null) return -mode;
-                        else if (o2.sdk == null) return +mode;
-                        return mode * o1.sdk.compareTo(o2.sdk);
-                    case MainListOptions.SORT_BY_SHARED_ID:
-                        return mode * Integer.compare(o1.uid, o2.uid);
-                    case MainListOptions.SORT_BY_SHA:
-                        // null on top
-                        if (o1.sha == null) {
-                            return -mode;
-                        } else if (o2.sha == null) {
-                            return +mode;
-                        } else {  // Both aren't null
-                            int i = o1.sha.first.compareToIgnoreCase(o2.sha.first);
-                            if (i == 0) {
-                                return mode * o1.sha.second.compareToIgnoreCase(o2.sha.second);
-                            } else return mode * i;
-                        }
-                    case MainListOptions.SORT_BY_BLOCKED_COMPONENTS:
-                        if (isRootEnabled) {
-                            return -mode * o1.blockedCount.compareTo(o2.blockedCount);
-                        }
-                        break;
-                    case MainListOptions.SORT_BY_FROZEN_APP:
-                        return -mode * Boolean.compare(o1.isDisabled, o2.isDisabled);
-                    case MainListOptions.SORT_BY_BACKUP:
-                        return -mode * Boolean.compare(o1.backup != null, o2.backup != null);
-                    case MainListOptions.SORT_BY_LAST_ACTION:
-                        return -mode * o1.lastActionTime.compareTo(o2.lastActionTime);
-                    case MainListOptions.SORT_BY_TRACKERS:
-                        return -mode * o1.trackerCount.compareTo(o2.trackerCount);
-                }
-                return 0;
-            });
+            mComparator = getComparator(sortBy, reverse);
+            Collections.sort(applicationItems, mComparator);
         }
     }
 
+    /**
+     * Items are ordered by the given order, and then by their labels. The same comparator is used to insert the
+     * changed items at their positions.
+     */
+    @NonNull
+    private static Comparator<ApplicationItem> getComparator(@MainListOptions.SortOrder int sortBy, boolean reverse) {
+        final boolean isRootEnabled = Ops.isRoot();
+        int mode = reverse ? -1 : 1;
+        return (o1, o2) -> {
+            int result = 0;
+            switch (sortBy) {
+                case MainListOptions.SORT_BY_APP_LABEL:
+                    return mode * sCollator.compare(o1.label, o2.label);
+                case MainListOptions.SORT_BY_PACKAGE_NAME:
+                    result = mode * o1.packageName.compareTo(o2.packageName);
+                    break;
+                case MainListOptions.SORT_BY_DOMAIN:
+                    boolean isSystem1 = (o1.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+                    boolean isSystem2 = (o2.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+                    result = mode * Boolean.compare(isSystem1, isSystem2);
+                    break;
+                case MainListOptions.SORT_BY_LAST_UPDATE:
+                    // Sort in decreasing order
+                    result = -mode * o1.lastUpdateTime.compareTo(o2.lastUpdateTime);
+                    break;
+                case MainListOptions.SORT_BY_TOTAL_SIZE:
+                    // Sort in decreasing order
+                    result = -mode * o1.totalSize.compareTo(o2.totalSize);
+                    break;
+                case MainListOptions.SORT_BY_DATA_USAGE:
+                    // Sort in decreasing order
+                    result = -mode * o1.dataUsage.compareTo(o2.dataUsage);
+                    break;
+                case MainListOptions.SORT_BY_OPEN_COUNT:
+                    // Sort in decreasing order
+                    result = -mode * Integer.compare(o1.openCount, o2.openCount);
+                    break;
+                case MainListOptions.SORT_BY_INSTALLATION_DATE:
+                    // Sort in decreasing order
+                    result = -mode * Long.compare(o1.firstInstallTime, o2.firstInstallTime);
+                    break;
+                case MainListOptions.SORT_BY_SCREEN_TIME:
+                    // Sort in decreasing order
+                    result = -mode * Long.compare(o1.screenTime, o2.screenTime);
+                    break;
+                case MainListOptions.SORT_BY_LAST_USAGE_TIME:
+                    // Sort in decreasing order
+                    result = -mode * Long.compare(o1.lastUsageTime, o2.lastUsageTime);
+                    break;
+                case MainListOptions.SORT_BY_TARGET_SDK:
+                    // null on top
+                    if (o1.sdk == null) {
+                        result = o2.sdk == null ? 0 : -mode;
+                    } else if (o2.sdk == null) {
+                        result = +mode;
+                    } else result = mode * o1.sdk.compareTo(o2.sdk);
+                    break;
+                case MainListOptions.SORT_BY_SHARED_ID:
+                    result = mode * Integer.compare(o1.uid, o2.uid);
+                    break;
+                case MainListOptions.SORT_BY_SHA:
+                    // null on top
+                    if (o1.sha == null) {
+                        result = o2.sha == null ? 0 : -mode;
+                    } else if (o2.sha == null) {
+                        result = +mode;
+                    } else {  // Both aren't null
+                        int i = o1.sha.first.compareToIgnoreCase(o2.sha.first);
+                        if (i == 0) {
+                            result = mode * o1.sha.second.compareToIgnoreCase(o2.sha.second);
+                        } else result = mode * i;
+                    }
+                    break;
+                case MainListOptions.SORT_BY_BLOCKED_COMPONENTS:
+                    if (isRootEnabled) {
+                        result = -mode * o1.blockedCount.compareTo(o2.blockedCount);
+                    }
+                    break;
+                case MainListOptions.SORT_BY_FROZEN_APP:
+                    result = -mode * Boolean.compare(o1.isDisabled, o2.isDisabled);
+                    break;
+                case MainListOptions.SORT_BY_BACKUP:
+                    result = -mode * Boolean.compare(o1.backup != null, o2.backup != null);
+                    break;
+                case MainListOptions.SORT_BY_LAST_ACTION:
+                    result = -mode * o1.lastActionTime.compareTo(o2.lastActionTime);
+                    break;
+                case MainListOptions.SORT_BY_TRACKERS:
+                    result = -mode * o1.trackerCount.compareTo(o2.trackerCount);
+                    break;
+            }
+            // Items with the same order are sorted by their labels
+            return result != 0 ? result : sCollator.compare(o1.label, o2.label);
+        };
+    }
+
     @WorkerThread
     private void updateInfoForUid(int uid, String action) {
         Log.d("updateInfoForUid", "Uid: " + uid);
@@ -537,6 +629,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
         Log.d("updateInfoForPackages", "packages: " + Arrays.toString(packages));
         if (packages == null || packages.length == 0) return;
         boolean modified = false;
+        List<ApplicationItem> newItems = new ArrayList<>();
         switch (action) {
             case PackageChangeReceiver.ACTION_DB_PACKAGE_REMOVED:
             case PackageChangeReceiver.ACTION_DB_PACKAGE_ALTERED:
@@ -544,6 +637,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
                 AppDb appDb = new AppDb();
                 for (String packageName : packages) {
                     ApplicationItem item = getNewApplicationItem(packageName, appDb.getAllApplications(packageName));
+                    if (item != null) newItems.add(item);
                     modified |= item != null ? insertOrAddApplicationItem(item) : deleteApplicationItem(packageName);
                 }
                 break;
@@ -560,6 +654,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
                 List<App> appList = new AppDb().updateApplications(getApplication(), packages);
                 for (String packageName : packages) {
                     ApplicationItem item = getNewApplicationItem(packageName, appList);
+                    if (item != null) newItems.add(item);
                     modified |= item != null ? insertOrAddApplicationItem(item) : deleteApplicationItem(packageName);
                 }
                 break;
@@ -568,8 +663,8 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
                 return;
         }
         if (modified) {
-            sortApplicationList(mSortBy, mReverseSort);
-            filterItemsByFlags();
+            // Only the changed items are filtered and moved into place
+            updateFilteredItems(new HashSet<>(Arrays.asList(packages)), newItems);
         }
     }
 
@@ -577,31 +672,15 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     private boolean insertOrAddApplicationItem(@Nullable ApplicationItem item) {
         if (item == null) return false;
         synchronized (applicationItems) {
-            if (insertApplicationItem(item)) {
-                return true;
-            }
-            boolean inserted = applicationItems.add(item);
+            // The item may have moved as a result of the change
+            applicationItems.remove(item);
+            int i = Collections.binarySearch(applicationItems, item, mComparator);
+            applicationItems.add(i < 0 ? -(i + 1) : i, item);
+            mSearchIndex.put(item);
             if (selectedPackageApplicationItemMap.containsKey(item.packageName)) {
                 select(item);
             }
-            return inserted;
-        }
-    }
-
-    @GuardedBy("applicationItems")
-    private boolean insertApplicationItem(@NonNull ApplicationItem item) {
-        synchronized (applicationItems) {
-            boolean isInserted = false;
-            for (int i = 0; i < applicationItems.size(); ++i) {
-                if (item.equals(applicationItems.get(i))) {
-                    applicationItems.set(i, item);
-                    isInserted = true;
-                    if (selectedPackageApplicationItemMap.containsKey(item.packageName)) {
-                        select(item);
-                    }
-                }
-            }
-            return isInserted;
+            return true;
         }
     }
 
@@ -613,6 +692,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
                 if (item.packageName.equals(packageName)) {
                     selectedPackageApplicationItemMap.remove(packageName);
                     it.remove();
+                    mSearchIndex.remove(packageName);
                     return true;
                 }
             }
@@ -175,6 +175,15 @@ public class OneClickOpsActivity extends BaseActivity {
                             })
                             .show();
                 });
+        mItemCreator.addItemWithTitleSubtitle(getString(R.string.scan_apps_for_trackers_and_libraries),
+                        getString(R.string.scan_apps_for_trackers_and_libraries_description))
+                .setOnClickListener(v -> {
+                    // No packages means all installed packages
+                    Intent intent = new Intent(this, BatchOpsService.class);
+                    intent.putExtra(BatchOpsService.EXTRA_OP, BatchOpsManager.OP_SCAN);
+                    intent.putExtra(BatchOpsService.EXTRA_HEADER, getString(R.string.one_click_ops));
+                    ContextCompat.startForegroundService(this, intent);
+                });
         if (BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             mItemCreator.addItemWithTitleSubtitle(getString(R.string.title_perform_runtime_optimization_to_apps),
                             getString(R.string.summary_perform_runtime_optimization_to_apps))
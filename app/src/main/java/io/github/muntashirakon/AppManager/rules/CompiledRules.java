@@ -0,0 +1,195 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.rules;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.rules.struct.RuleEntry;
+import io.github.muntashirakon.io.Path;
+
+/**
+ * A compiled copy of the rules of a package, stored alongside its TSV file. The TSV file remains the source of truth,
+ * and the compiled file is only used if it was created from the TSV file in its current state, i.e. the modification
+ * time and the size of the TSV file match the ones recorded in the compiled file.
+ * <p>
+ * File format (big endian):
+ * <pre>
+ * header:  magic (int), version (int), TSV mtime (long), TSV size (long), string count (int), record count (int)
+ * strings: string count × [length (int), UTF-8 bytes]
+ * records: record count × [type ordinal (int), name index (int), extras index (int)]
+ * </pre>
+ * Strings are interned, so that the repeated values, such as component statuses, are stored and decoded once.
+ */
+@WorkerThread
+public final class CompiledRules {
+    public static final String TAG = CompiledRules.class.getSimpleName();
+
+    private static final int MAGIC = 0x414d5243; // AMRC
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int RECORD_SIZE = 4 + 4 + 4;
+    private static final String EXTENSION = ".bin";
+
+    /**
+     * Read the compiled rules of the given TSV file.
+     *
+     * @return The rules in the order they were saved, or {@code null} if the compiled rules do not exist or are out
+     * of date
+     */
+    @Nullable
+    public static List<RuleEntry> read(@NonNull String packageName, @NonNull Path tsvFile) {
+        File tsv = getLocalFile(tsvFile);
+        if (tsv == null || !tsv.isFile()) {
+            return null;
+        }
+        File compiledFile = getCompiledFile(tsv);
+        if (!compiledFile.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(compiledFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(packageName, buffer, tsv.lastModified(), tsv.length());
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not read compiled rules of " + packageName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Compile the rules which have just been saved to the given TSV file. If the TSV file does not exist, the
+     * compiled rules are deleted as well.
+     */
+    public static void write(@NonNull Path tsvFile, @NonNull List<RuleEntry> entries) {
+        File tsv = getLocalFile(tsvFile);
+        if (tsv == null) {
+            return;
+        }
+        File compiledFile = getCompiledFile(tsv);
+        if (!tsv.isFile() || entries.isEmpty()) {
+            // noinspection ResultOfMethodCallIgnored
+            compiledFile.delete();
+            return;
+        }
+        File tmpFile = new File(compiledFile.getPath() + ".tmp");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+                fos.write(compile(entries, tsv.lastModified(), tsv.length()));
+            }
+            if (!tmpFile.renameTo(compiledFile)) {
+                throw new IOException("Could not rename " + tmpFile + " to " + compiledFile);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not compile rules to " + compiledFile, e);
+            // noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+            // noinspection ResultOfMethodCallIgnored
+            compiledFile.delete();
+        }
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static byte[] compile(@NonNull List<RuleEntry> entries, long tsvLastModified, long tsvLength) {
+        Map<String, Integer> stringIndices = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] records = new int[entries.size() * 3];
+        int stringsSize = 0;
+        for (int i = 0; i < entries.size(); ++i) {
+            RuleEntry entry = entries.get(i);
+            // The flattened entry is in the form: name<tab>type[<tab>extras]
+            String flattenedEntry = entry.flattenToString(false);
+            int extrasStart = flattenedEntry.indexOf('\t', entry.name.length() + 1);
+            String extras = extrasStart == -1 ? "" : flattenedEntry.substring(extrasStart + 1);
+            records[i * 3] = entry.type.ordinal();
+            for (int j = 1; j <= 2; ++j) {
+                String string = j == 1 ? entry.name : extras;
+                Integer index = stringIndices.get(string);
+                if (index == null) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    index = strings.size();
+                    stringIndices.put(string, index);
+                    strings.add(bytes);
+                    stringsSize += 4 + bytes.length;
+                }
+                records[i * 3 + j] = index;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + stringsSize + entries.size() * RECORD_SIZE);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(tsvLastModified)
+                .putLong(tsvLength)
+                .putInt(strings.size())
+                .putInt(entries.size());
+        for (byte[] bytes : strings) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        for (int record : records) {
+            buffer.putInt(record);
+        }
+        return buffer.array();
+    }
+
+    @VisibleForTesting
+    @Nullable
+    static List<RuleEntry> read(@NonNull String packageName, @NonNull ByteBuffer buffer, long tsvLastModified,
+                                long tsvLength) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        if (buffer.getLong() != tsvLastModified || buffer.getLong() != tsvLength) {
+            // The TSV file has been modified since
+            return null;
+        }
+        int stringCount = buffer.getInt();
+        int recordCount = buffer.getInt();
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; ++i) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (buffer.remaining() != recordCount * RECORD_SIZE) {
+            throw new IllegalArgumentException("Invalid number of records.");
+        }
+        RuleType[] types = RuleType.values();
+        List<RuleEntry> entries = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; ++i) {
+            RuleType type = types[buffer.getInt()];
+            String name = strings[buffer.getInt()];
+            String extras = strings[buffer.getInt()];
+            entries.add(RuleEntry.unflattenFromParts(packageName, name, type, extras));
+        }
+        return entries;
+    }
+
+    @NonNull
+    private static File getCompiledFile(@NonNull File tsvFile) {
+        return new File(tsvFile.getPath() + EXTENSION);
+    }
+
+    @Nullable
+    private static File getLocalFile(@NonNull Path path) {
+        // Only real files can be mapped
+        String filePath = path.getFilePath();
+        return filePath != null ? new File(filePath) : null;
+    }
+}
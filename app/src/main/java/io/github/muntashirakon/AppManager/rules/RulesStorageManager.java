@@ -7,6 +7,7 @@ import android.os.RemoteException;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import java.io.BufferedReader;
@@ -14,8 +15,13 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import io.github.muntashirakon.AppManager.AppManager;
@@ -41,8 +47,35 @@ import io.github.muntashirakon.io.PathReader;
 import io.github.muntashirakon.io.Paths;
 
 public class RulesStorageManager implements Closeable {
+    /**
+     * Rule types that can be contained by {@link ComponentRule}
+     */
+    protected static final RuleType[] COMPONENT_TYPES = new RuleType[]{RuleType.ACTIVITY, RuleType.PROVIDER,
+            RuleType.RECEIVER, RuleType.SERVICE};
+
+    /**
+     * Holder of an entry. Slots are compared by identity since entries are mutable.
+     */
+    private static final class Slot {
+        @NonNull
+        public final RuleEntry entry;
+
+        Slot(@NonNull RuleEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * All entries in the order they were added
+     */
+    @NonNull
+    private final LinkedHashSet<Slot> mEntries;
+    /**
+     * Entries of each type in the order they were added. Entries are unique by their names except for
+     * {@link RuleType#URI_GRANT}, where an entry is its own key.
+     */
     @NonNull
-    private final ArrayList<RuleEntry> mEntries;
+    private final EnumMap<RuleType, LinkedHashMap<Object, Slot>> mEntriesByType;
 
     @GuardedBy("entries")
     @NonNull
@@ -54,13 +87,32 @@ public class RulesStorageManager implements Closeable {
     protected RulesStorageManager(@NonNull String packageName, int userHandle) {
         this.packageName = packageName;
         this.userHandle = userHandle;
-        this.mEntries = new ArrayList<>();
+        this.mEntries = new LinkedHashSet<>();
+        this.mEntriesByType = new EnumMap<>(RuleType.class);
+        for (RuleType type : RuleType.values()) {
+            mEntriesByType.put(type, new LinkedHashMap<>());
+        }
         try {
-            loadEntries(getDesiredFile(false), false);
+            Path tsvFile = getDesiredFile(false);
+            List<RuleEntry> compiledEntries = CompiledRules.read(packageName, tsvFile);
+            if (compiledEntries != null) {
+                for (RuleEntry entry : compiledEntries) addEntry(entry);
+            } else loadEntries(tsvFile, false);
         } catch (Throwable ignored) {
         }
     }
 
+    /**
+     * Number of rules saved for the package. Unlike
+     * {@link io.github.muntashirakon.AppManager.rules.compontents.ComponentsBlocker ComponentsBlocker}, this does not
+     * load the components of the package, and it can be called from multiple threads.
+     */
+    public static int getEntryCount(@NonNull String packageName, int userHandle) {
+        try (RulesStorageManager rulesStorageManager = new RulesStorageManager(packageName, userHandle)) {
+            return rulesStorageManager.entryCount();
+        }
+    }
+
     public void setReadOnly() {
         this.readOnly = true;
     }
@@ -77,8 +129,14 @@ public class RulesStorageManager implements Closeable {
     @GuardedBy("entries")
     public <T extends RuleEntry> List<T> getAll(Class<T> type) {
         synchronized (mEntries) {
+            EnumSet<RuleType> types = EnumSet.noneOf(RuleType.class);
+            for (Map.Entry<RuleType, LinkedHashMap<Object, Slot>> entries : mEntriesByType.entrySet()) {
+                if (entries.getValue().isEmpty()) continue;
+                // All entries of a rule type are of the same class
+                if (type.isInstance(entries.getValue().values().iterator().next().entry)) types.add(entries.getKey());
+            }
             List<T> newEntries = new ArrayList<>();
-            for (RuleEntry entry : mEntries) if (type.isInstance(entry)) newEntries.add(type.cast(entry));
+            for (RuleEntry entry : getAllInternal(types)) newEntries.add(type.cast(entry));
             return newEntries;
         }
     }
@@ -86,9 +144,7 @@ public class RulesStorageManager implements Closeable {
     @GuardedBy("entries")
     public List<RuleEntry> getAll(List<RuleType> types) {
         synchronized (mEntries) {
-            List<RuleEntry> newEntries = new ArrayList<>();
-            for (RuleEntry entry : mEntries) if (types.contains(entry.type)) newEntries.add(entry);
-            return newEntries;
+            return getAllInternal(types.isEmpty() ? EnumSet.noneOf(RuleType.class) : EnumSet.copyOf(types));
         }
     }
 
@@ -97,10 +153,35 @@ public class RulesStorageManager implements Closeable {
         return getAll(ComponentRule.class);
     }
 
+    /**
+     * @return A snapshot of all the entries
+     */
     @GuardedBy("entries")
     public List<RuleEntry> getAll() {
         synchronized (mEntries) {
-            return mEntries;
+            List<RuleEntry> newEntries = new ArrayList<>(mEntries.size());
+            for (Slot slot : mEntries) newEntries.add(slot.entry);
+            return newEntries;
+        }
+    }
+
+    /**
+     * Get the entry of the given name and type. Since {@link RuleType#URI_GRANT} entries are not unique by names, the
+     * first one is returned for them.
+     */
+    @GuardedBy("entries")
+    @Nullable
+    public RuleEntry getEntry(@NonNull String name, @NonNull RuleType type) {
+        synchronized (mEntries) {
+            LinkedHashMap<Object, Slot> entries = Objects.requireNonNull(mEntriesByType.get(type));
+            if (type.equals(RuleType.URI_GRANT)) {
+                for (Slot slot : entries.values()) {
+                    if (slot.entry.name.equals(name)) return slot.entry;
+                }
+                return null;
+            }
+            Slot slot = entries.get(name);
+            return slot != null ? slot.entry : null;
         }
     }
 
@@ -114,20 +195,33 @@ public class RulesStorageManager implements Closeable {
     @GuardedBy("entries")
     public void removeEntry(RuleEntry entry) {
         synchronized (mEntries) {
-            mEntries.remove(entry);
+            LinkedHashMap<Object, Slot> entries = Objects.requireNonNull(mEntriesByType.get(entry.type));
+            Object key = getKey(entry);
+            Slot slot = entries.get(key);
+            if (slot != null && entry.equals(slot.entry)) {
+                entries.remove(key);
+                mEntries.remove(slot);
+            }
         }
     }
 
     @GuardedBy("entries")
     protected void removeEntries(String name, RuleType type) {
         synchronized (mEntries) {
-            Iterator<RuleEntry> entryIterator = mEntries.iterator();
-            RuleEntry entry;
-            while (entryIterator.hasNext()) {
-                entry = entryIterator.next();
-                if (entry.name.equals(name) && entry.type.equals(type)) {
-                    entryIterator.remove();
+            LinkedHashMap<Object, Slot> entries = Objects.requireNonNull(mEntriesByType.get(type));
+            if (type.equals(RuleType.URI_GRANT)) {
+                Iterator<Slot> slotIterator = entries.values().iterator();
+                Slot slot;
+                while (slotIterator.hasNext()) {
+                    slot = slotIterator.next();
+                    if (slot.entry.name.equals(name)) {
+                        slotIterator.remove();
+                        mEntries.remove(slot);
+                    }
                 }
+            } else {
+                Slot slot = entries.remove(name);
+                if (slot != null) mEntries.remove(slot);
             }
         }
     }
@@ -192,8 +286,7 @@ public class RulesStorageManager implements Closeable {
     @GuardedBy("entries")
     private void addEntryInternal(@NonNull RuleEntry entry) {
         synchronized (mEntries) {
-            removeEntry(entry);
-            mEntries.add(entry);
+            putEntry(entry, entry);
         }
     }
 
@@ -203,20 +296,44 @@ public class RulesStorageManager implements Closeable {
     @GuardedBy("entries")
     private void addUniqueEntry(@NonNull RuleEntry entry) {
         synchronized (mEntries) {
-            removeEntries(entry.name, entry.type);
-            mEntries.add(entry);
+            putEntry(entry.name, entry);
         }
     }
 
+    /**
+     * Replace the entry having the same key. The new entry is placed at the end.
+     */
+    @GuardedBy("entries")
+    private void putEntry(@NonNull Object key, @NonNull RuleEntry entry) {
+        LinkedHashMap<Object, Slot> entries = Objects.requireNonNull(mEntriesByType.get(entry.type));
+        Slot oldSlot = entries.remove(key);
+        if (oldSlot != null) mEntries.remove(oldSlot);
+        Slot slot = new Slot(entry);
+        entries.put(key, slot);
+        mEntries.add(slot);
+    }
+
+    @NonNull
+    @GuardedBy("entries")
+    private List<RuleEntry> getAllInternal(@NonNull EnumSet<RuleType> types) {
+        List<RuleEntry> newEntries = new ArrayList<>();
+        if (types.size() == 1) {
+            // Entries of a single type are already in order
+            for (Slot slot : Objects.requireNonNull(mEntriesByType.get(types.iterator().next())).values()) {
+                newEntries.add(slot.entry);
+            }
+        } else if (!types.isEmpty()) {
+            for (Slot slot : mEntries) if (types.contains(slot.entry.type)) newEntries.add(slot.entry);
+        }
+        return newEntries;
+    }
+
     @GuardedBy("entries")
     protected void loadEntries(Path file, boolean isExternal) throws IOException {
         String dataRow;
         try (BufferedReader TSVFile = new BufferedReader(new PathReader(file))) {
             while ((dataRow = TSVFile.readLine()) != null) {
-                RuleEntry entry = RuleEntry.unflattenFromString(packageName, dataRow, isExternal);
-                synchronized (mEntries) {
-                    mEntries.add(entry);
-                }
+                addEntry(RuleEntry.unflattenFromString(packageName, dataRow, isExternal));
             }
         }
     }
@@ -225,7 +342,12 @@ public class RulesStorageManager implements Closeable {
     @GuardedBy("entries")
     public void commit() {
         try {
-            saveEntries(getDesiredFile(true), false);
+            Path tsvFile = getDesiredFile(true);
+            synchronized (mEntries) {
+                saveEntries(tsvFile, false);
+                // Rules are loaded from the compiled copy next time
+                CompiledRules.write(tsvFile, getAll());
+            }
         } catch (IOException | RemoteException ex) {
             ex.printStackTrace();
         }
@@ -245,16 +367,23 @@ public class RulesStorageManager implements Closeable {
     @GuardedBy("entries")
     protected void saveEntries(Path tsvRulesFile, boolean isExternal) throws IOException, RemoteException {
         synchronized (mEntries) {
-            if (mEntries.size() == 0) {
+            List<RuleEntry> entries = getAll();
+            if (entries.size() == 0) {
                 tsvRulesFile.delete();
                 return;
             }
             try (OutputStream TSVFile = tsvRulesFile.openOutputStream()) {
-                ComponentUtils.storeRules(TSVFile, mEntries, isExternal);
+                ComponentUtils.storeRules(TSVFile, entries, isExternal);
             }
         }
     }
 
+    @NonNull
+    private static Object getKey(@NonNull RuleEntry entry) {
+        // UriGrant is not unique
+        return entry.type.equals(RuleType.URI_GRANT) ? entry : entry.name;
+    }
+
     @NonNull
     public static Path getConfDir() {
         Context ctx = AppManager.getContext();
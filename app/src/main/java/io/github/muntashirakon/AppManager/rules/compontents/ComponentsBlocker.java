@@ -219,8 +219,7 @@ public final class ComponentsBlocker extends RulesStorageManager {
      */
     @GuardedBy("entries")
     public boolean hasComponentName(String componentName) {
-        for (ComponentRule entry : getAllComponents()) if (entry.name.equals(componentName)) return true;
-        return false;
+        return getComponent(componentName) != null;
     }
 
     /**
@@ -238,8 +237,9 @@ public final class ComponentsBlocker extends RulesStorageManager {
 
     @Nullable
     public ComponentRule getComponent(String componentName) {
-        for (ComponentRule rule : getAllComponents()) {
-            if (rule.name.equals(componentName)) return rule;
+        for (RuleType type : COMPONENT_TYPES) {
+            RuleEntry entry = getEntry(componentName, type);
+            if (entry != null) return (ComponentRule) entry;
         }
         return null;
     }
@@ -87,6 +87,19 @@ public abstract class RuleEntry {
         return getRuleEntry(packageName, name, type, tokenizer);
     }
 
+    /**
+     * Same as {@link #unflattenFromString(String, String, boolean)} except that the name and the type are already
+     * known.
+     *
+     * @param extras Rest of the flattened entry after the type, separated by tabs
+     */
+    @NonNull
+    public static RuleEntry unflattenFromParts(@NonNull String packageName, @NonNull String name,
+                                               @NonNull RuleType type, @NonNull String extras)
+            throws IllegalArgumentException {
+        return getRuleEntry(packageName, name, type, new StringTokenizer(extras, "\t"));
+    }
+
     @NonNull
     private static RuleEntry getRuleEntry(@NonNull String packageName, @NonNull String name,
                                           @NonNull RuleType type, @NonNull StringTokenizer tokenizer)
@@ -104,8 +104,8 @@ public class RunningAppsViewModel extends AndroidViewModel {
                 mVtFileReport.postValue(new Pair<>(processItem, null));
                 return;
             }
-            String sha256 = DigestUtils.getHexDigest(DigestUtils.SHA_256, proxyFile);
             try (InputStream is = proxyFile.openInputStream()) {
+                String sha256 = DigestUtils.getHexDigest(DigestUtils.SHA_256, proxyFile);
                 mVt.fetchReportsOrScan(proxyFile.getName(), proxyFile.length(), is, sha256,
                         new VirusTotal.FullScanResponseInterface() {
                             @Override
@@ -0,0 +1,167 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.scanner;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.os.Build;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.content.pm.PackageInfoCompat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import io.github.muntashirakon.AppManager.AppManager;
+import io.github.muntashirakon.AppManager.R;
+import io.github.muntashirakon.AppManager.StaticDataset;
+import io.github.muntashirakon.AppManager.db.AppsDb;
+import io.github.muntashirakon.AppManager.db.dao.ScanResultDao;
+import io.github.muntashirakon.AppManager.db.entity.ScanResult;
+import io.github.muntashirakon.AppManager.dex.DexClasses;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.MultiPatternMatcher;
+import io.github.muntashirakon.AppManager.utils.ParallelDigester;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+/**
+ * Scan the classes of installed packages for trackers and libraries, and store the results in {@link AppsDb}. A
+ * package is only scanned again if its APK files have changed.
+ */
+@WorkerThread
+public class ScanIndexer {
+    public static final String TAG = ScanIndexer.class.getSimpleName();
+
+    private final ScanResultDao mScanResultDao;
+    private final String[] mTrackerNames;
+    private final String[] mLibNames;
+    private final MultiPatternMatcher mTrackerMatcher;
+    private final MultiPatternMatcher mLibraryMatcher;
+
+    public ScanIndexer() {
+        mScanResultDao = AppsDb.getInstance().scanResultDao();
+        mTrackerNames = StaticDataset.getTrackerNames();
+        mLibNames = AppManager.getContext().getResources().getStringArray(R.array.lib_names);
+        mTrackerMatcher = StaticDataset.getTrackerSignatureMatcher();
+        mLibraryMatcher = StaticDataset.getLibrarySignatureMatcher();
+    }
+
+    /**
+     * Scan the package unless an up-to-date result already exists. It is safe to call this method from multiple
+     * threads for different packages.
+     *
+     * @return {@code true} if the package was scanned, {@code false} if the existing result was up-to-date
+     */
+    public boolean index(@NonNull PackageInfo packageInfo) throws IOException {
+        ApplicationInfo info = packageInfo.applicationInfo;
+        long versionCode = PackageInfoCompat.getLongVersionCode(packageInfo);
+        ScanResult oldResult = mScanResultDao.get(packageInfo.packageName);
+        if (oldResult != null && oldResult.versionCode == versionCode
+                && oldResult.lastUpdateTime == packageInfo.lastUpdateTime) {
+            // Not updated since the last scan
+            return false;
+        }
+        List<File> apkFiles = getApkFiles(info);
+        String apkHash = getApkHash(apkFiles);
+        if (oldResult != null && oldResult.versionCode == versionCode && oldResult.apkHash.equals(apkHash)) {
+            // Reinstalled with the same APK files
+            oldResult.lastUpdateTime = packageInfo.lastUpdateTime;
+            mScanResultDao.insert(oldResult);
+            return false;
+        }
+        ScanResult result = scan(apkFiles);
+        result.packageName = packageInfo.packageName;
+        result.versionCode = versionCode;
+        result.apkHash = apkHash;
+        result.lastUpdateTime = packageInfo.lastUpdateTime;
+        result.scanTime = System.currentTimeMillis();
+        mScanResultDao.replace(result);
+        return true;
+    }
+
+    @NonNull
+    private ScanResult scan(@NonNull List<File> apkFiles) throws IOException {
+        Set<String> classNames = new HashSet<>();
+        for (int i = 0; i < apkFiles.size(); ++i) {
+            try (DexClasses dexClasses = new DexClasses(apkFiles.get(i), Build.VERSION.SDK_INT)) {
+                classNames.addAll(dexClasses.getBaseClassNames());
+            } catch (IOException e) {
+                if (i == 0) {
+                    // The base APK must be readable
+                    throw e;
+                }
+                // Split APKs may not have any code
+                Log.d(TAG, "Could not load classes from " + apkFiles.get(i), e);
+            }
+        }
+        ScanResult result = new ScanResult();
+        Set<String> trackers = new TreeSet<>();
+        Set<String> libraries = new TreeSet<>();
+        for (String className : classNames) {
+            if (className.length() <= 8 || !className.contains(".")) {
+                continue;
+            }
+            int[] trackerMatches = mTrackerMatcher.findAll(className);
+            if (trackerMatches.length > 0) {
+                ++result.trackerCount;
+                for (int i : trackerMatches) {
+                    trackers.add(mTrackerNames[i]);
+                }
+            }
+            int[] libMatches = mLibraryMatcher.findAll(className);
+            if (libMatches.length > 0) {
+                ++result.libraryCount;
+                for (int i : libMatches) {
+                    libraries.add(mLibNames[i]);
+                }
+            }
+        }
+        result.classCount = classNames.size();
+        result.trackers = TextUtils.join("\n", trackers);
+        result.libraries = TextUtils.join("\n", libraries);
+        return result;
+    }
+
+    @NonNull
+    private static List<File> getApkFiles(@NonNull ApplicationInfo info) throws IOException {
+        if (info.publicSourceDir == null) {
+            throw new IOException("Package " + info.packageName + " has no APK files.");
+        }
+        List<File> apkFiles = new ArrayList<>();
+        apkFiles.add(new File(info.publicSourceDir));
+        if (info.splitPublicSourceDirs != null) {
+            for (String splitSourceDir : info.splitPublicSourceDirs) {
+                apkFiles.add(new File(splitSourceDir));
+            }
+        }
+        return apkFiles;
+    }
+
+    @NonNull
+    private static String getApkHash(@NonNull List<File> apkFiles) throws IOException {
+        List<Path> paths = new ArrayList<>(apkFiles.size());
+        for (File apkFile : apkFiles) {
+            paths.add(Paths.get(apkFile));
+        }
+        String[] hashes = ParallelDigester.getHexDigests(DigestUtils.SHA_256, paths);
+        if (hashes.length == 1) {
+            return hashes[0];
+        }
+        return DigestUtils.getHexDigest(DigestUtils.SHA_256, TextUtils.join("", hashes).getBytes());
+    }
+
+    @Nullable
+    public static ScanResult getScanResult(@NonNull String packageName) {
+        return AppsDb.getInstance().scanResultDao().get(packageName);
+    }
+}
@@ -45,6 +45,7 @@ import io.github.muntashirakon.AppManager.scanner.vt.VtFileReport;
 import io.github.muntashirakon.AppManager.scanner.vt.VtFileScanMeta;
 import io.github.muntashirakon.AppManager.self.filecache.FileCache;
 import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.MultiPatternMatcher;
 import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
@@ -287,83 +288,71 @@ public class ScannerViewModel extends AndroidViewModel implements VirusTotal.Ful
         }
         mAllClassesLiveData.postValue(mAllClasses);
         // Load tracker and library info
-        mExecutor.submit(this::loadTrackers);
-        mExecutor.submit(this::loadLibraries);
+        mExecutor.submit(this::loadSignatures);
     }
 
+    /**
+     * Match all classes against the tracker and library signatures. A class is counted for every signature it
+     * contains.
+     */
     @WorkerThread
-    private void loadTrackers() {
+    private void loadSignatures() {
         if (mAllClasses == null) return;
-        List<SignatureInfo> trackerInfoList = new ArrayList<>();
         String[] trackerNames = StaticDataset.getTrackerNames();
         String[] trackerSignatures = StaticDataset.getTrackerCodeSignatures();
-        int[] signatureCount = new int[trackerSignatures.length];
+        String[] libNames = getApplication().getResources().getStringArray(R.array.lib_names);
+        String[] libSignatures = getApplication().getResources().getStringArray(R.array.lib_signatures);
+        String[] libTypes = getApplication().getResources().getStringArray(R.array.lib_types);
+        MultiPatternMatcher trackerMatcher = StaticDataset.getTrackerSignatureMatcher();
+        MultiPatternMatcher libraryMatcher = StaticDataset.getLibrarySignatureMatcher();
+        // The following arrays are directly mapped to the signature arrays above
+        int[] trackerSignatureCount = new int[trackerSignatures.length];
+        int[] libSignatureCount = new int[libSignatures.length];
+        List<String> trackerClasses = new ArrayList<>();
+        List<String> libraryClasses = new ArrayList<>();
+        ArrayList<String> missingLibs = new ArrayList<>();
         // Iterate over all classes
-        mTrackerClasses = new ArrayList<>();
         for (String className : mAllClasses) {
-            if (className.length() > 8 && className.contains(".")) {
-                // Iterate over all signatures to match the class name
-                // This is a greedy algorithm, only matches the first item
-                for (int i = 0; i < trackerSignatures.length; i++) {
-                    if (className.contains(trackerSignatures[i])) {
-                        mTrackerClasses.add(className);
-                        signatureCount[i]++;
-                        break;
-                    }
+            if (className.length() <= 8 || !className.contains(".")) {
+                continue;
+            }
+            int[] trackerMatches = trackerMatcher.findAll(className);
+            if (trackerMatches.length > 0) {
+                trackerClasses.add(className);
+                for (int i : trackerMatches) {
+                    trackerSignatureCount[i]++;
+                }
+            }
+            int[] libMatches = libraryMatcher.findAll(className);
+            if (libMatches.length > 0) {
+                libraryClasses.add(className);
+                for (int i : libMatches) {
+                    libSignatureCount[i]++;
                 }
+            } else if ((mPackageName != null && !className.startsWith(mPackageName))
+                    && !SIG_TO_IGNORE.matcher(className).matches()) {
+                // Add the class to the missing libs list if it doesn't match the filters
+                missingLibs.add(className);
             }
         }
+        mTrackerClasses = trackerClasses;
+        mLibraryClasses = libraryClasses;
         // Iterate over signatures again but this time list only the found ones.
+        List<SignatureInfo> trackerInfoList = new ArrayList<>();
         for (int i = 0; i < trackerSignatures.length; i++) {
-            if (signatureCount[i] == 0) continue;
+            if (trackerSignatureCount[i] == 0) continue;
             SignatureInfo signatureInfo = new SignatureInfo(trackerSignatures[i], trackerNames[i]);
-            signatureInfo.setCount(signatureCount[i]);
+            signatureInfo.setCount(trackerSignatureCount[i]);
             trackerInfoList.add(signatureInfo);
         }
-        mTrackerClassesLiveData.postValue(trackerInfoList);
-    }
-
-    public void loadLibraries() {
-        if (mAllClasses == null) return;
         List<SignatureInfo> libraryInfoList = new ArrayList<>();
-        ArrayList<String> missingLibs = new ArrayList<>();
-        String[] libNames = getApplication().getResources().getStringArray(R.array.lib_names);
-        String[] libSignatures = getApplication().getResources().getStringArray(R.array.lib_signatures);
-        String[] libTypes = getApplication().getResources().getStringArray(R.array.lib_types);
-        // The following array is directly mapped to the arrays above
-        int[] signatureCount = new int[libSignatures.length];
-        // Iterate over all classes
-        mLibraryClasses = new ArrayList<>();
-        for (String className : mAllClasses) {
-            if (className.length() > 8 && className.contains(".")) {
-                boolean matched = false;
-                // Iterate over all signatures to match the class name
-                // This is a greedy algorithm, only matches the first item
-                for (int i = 0; i < libSignatures.length; i++) {
-                    if (className.contains(libSignatures[i])) {
-                        matched = true;
-                        // Add to found classes
-                        mLibraryClasses.add(className);
-                        // Increment this signature match count
-                        signatureCount[i]++;
-                        break;
-                    }
-                }
-                // Add the class to the missing libs list if it doesn't match the filters
-                if (!matched
-                        && (mPackageName != null && !className.startsWith(mPackageName))
-                        && !SIG_TO_IGNORE.matcher(className).matches()) {
-                    missingLibs.add(className);
-                }
-            }
-        }
-        // Iterate over signatures again but this time list only the found ones.
         for (int i = 0; i < libSignatures.length; i++) {
-            if (signatureCount[i] == 0) continue;
+            if (libSignatureCount[i] == 0) continue;
             SignatureInfo signatureInfo = new SignatureInfo(libSignatures[i], libNames[i], libTypes[i]);
-            signatureInfo.setCount(signatureCount[i]);
+            signatureInfo.setCount(libSignatureCount[i]);
             libraryInfoList.add(signatureInfo);
         }
+        mTrackerClassesLiveData.postValue(trackerInfoList);
         mLibraryClassesLiveData.postValue(libraryInfoList);
         mMissingClassesLiveData.postValue(missingLibs);
     }
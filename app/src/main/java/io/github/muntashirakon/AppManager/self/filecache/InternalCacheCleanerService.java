@@ -58,6 +58,7 @@ public class InternalCacheCleanerService extends ForegroundService {
     protected void onHandleIntent(@Nullable Intent intent) {
         clearOldFiles();
         clearOldImages();
+        clearOldManifests();
     }
 
     private void clearOldFiles() {
@@ -76,6 +77,14 @@ public class InternalCacheCleanerService extends ForegroundService {
         Log.i(TAG, "Deleted " + deleteCount + " images.");
     }
 
+    private void clearOldManifests() {
+        // Delete any manifests not accessed the last 7 days
+        long lastAccessDate = System.currentTimeMillis() - 604_800_000;
+        Path fileCache = Paths.getUnprivileged(FileSystemManager.getLocal().getFile(FileUtils.getCachePath(), "manifests"));
+        int deleteCount = deleteFilesWithAccessDate(fileCache, lastAccessDate);
+        Log.i(TAG, "Deleted " + deleteCount + " manifests.");
+    }
+
     private static int deleteFilesWithAccessDate(@NonNull Path basePath, long accessDate) {
         int deleteCount = 0;
         Path[] files = basePath.listFiles();
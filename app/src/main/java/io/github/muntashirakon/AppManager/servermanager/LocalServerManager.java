@@ -279,6 +279,9 @@ class LocalServerManager {
         InputStream is = socket.getInputStream();
         DataTransmission transfer = new DataTransmission(os, is, false);
         transfer.shakeHands(ServerConfig.getLocalToken(), DataTransmission.Role.Client);
+        // Responses are read by a dedicated reader which has to wait for them indefinitely. Requests time out on
+        // their own instead.
+        socket.setSoTimeout(0);
         return new ClientSession(socket, transfer);
     }
 
@@ -317,7 +320,7 @@ class LocalServerManager {
          */
         @AnyThread
         boolean isRunning() {
-            return mIsRunning;
+            return mIsRunning && mDataTransmission.isRunning();
         }
 
         @AnyThread
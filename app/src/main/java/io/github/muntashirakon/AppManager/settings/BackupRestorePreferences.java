@@ -10,6 +10,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.SpannableStringBuilder;
+import android.text.TextUtils;
 import android.view.View;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -47,10 +48,13 @@ import io.github.muntashirakon.AppManager.settings.crypto.ECCCryptoSelectionDial
 import io.github.muntashirakon.AppManager.settings.crypto.OpenPgpKeySelectionDialogFragment;
 import io.github.muntashirakon.AppManager.settings.crypto.RSACryptoSelectionDialogFragment;
 import io.github.muntashirakon.AppManager.utils.ArrayUtils;
+import io.github.muntashirakon.AppManager.utils.TarUtils;
+import io.github.muntashirakon.AppManager.utils.Utils;
 import io.github.muntashirakon.dialog.DialogTitleBuilder;
 import io.github.muntashirakon.dialog.SearchableItemsDialogBuilder;
 import io.github.muntashirakon.dialog.SearchableMultiChoiceDialogBuilder;
 import io.github.muntashirakon.dialog.SearchableSingleChoiceDialogBuilder;
+import io.github.muntashirakon.dialog.TextInputDialogBuilder;
 import io.github.muntashirakon.io.Paths;
 
 public class BackupRestorePreferences extends PreferenceFragment {
@@ -72,6 +76,8 @@ public class BackupRestorePreferences extends PreferenceFragment {
 
     private SettingsActivity activity;
     private int currentCompression;
+    private int compressionThreadCount;
+    private Preference compressionLevelPref;
     private Uri backupVolume;
     @ImportType
     private int importType;
@@ -116,10 +122,38 @@ public class BackupRestorePreferences extends PreferenceFragment {
         model = new ViewModelProvider(requireActivity()).get(MainPreferencesViewModel.class);
         activity = (SettingsActivity) requireActivity();
         // Backup compression method
-        String[] readableTarTypes = new String[]{"GZip", "BZip2"};
+        String[] readableTarTypes = MetadataManager.TAR_TYPES_READABLE;
         currentCompression = ArrayUtils.indexOf(MetadataManager.TAR_TYPES, Prefs.BackupRestore.getCompressionMethod());
         Preference compressionMethod = Objects.requireNonNull(findPreference("backup_compression_method"));
         compressionMethod.setSummary(readableTarTypes[currentCompression == -1 ? 0 : currentCompression]);
+        // Compression level
+        compressionLevelPref = Objects.requireNonNull(findPreference("backup_compression_level"));
+        compressionLevelPref.setSummary(getCompressionLevelSummary());
+        compressionLevelPref.setOnPreferenceClickListener(preference -> {
+            String tarType = Prefs.BackupRestore.getCompressionMethod();
+            int level = Prefs.BackupRestore.getCompressionLevel();
+            new TextInputDialogBuilder(activity, null)
+                    .setTitle(R.string.pref_compression_level)
+                    .setHelperText(getString(R.string.pref_compression_level_hint,
+                            TarUtils.getMinCompressionLevel(tarType), TarUtils.getMaxCompressionLevel(tarType)))
+                    .setInputText(level == TarUtils.DEFAULT_COMPRESSION_LEVEL ? "0" : String.valueOf(level))
+                    .setNegativeButton(R.string.cancel, null)
+                    .setPositiveButton(R.string.save, (dialog, which, inputText, isChecked) -> {
+                        if (inputText != null && TextUtils.isDigitsOnly(inputText)) {
+                            int l = Integer.decode(inputText.toString());
+                            if (l <= 0) {
+                                l = TarUtils.DEFAULT_COMPRESSION_LEVEL;
+                            } else {
+                                l = Math.max(TarUtils.getMinCompressionLevel(tarType),
+                                        Math.min(l, TarUtils.getMaxCompressionLevel(tarType)));
+                            }
+                            Prefs.BackupRestore.setCompressionLevel(l);
+                            compressionLevelPref.setSummary(getCompressionLevelSummary());
+                        }
+                    })
+                    .show();
+            return true;
+        });
         compressionMethod.setOnPreferenceClickListener(preference -> {
             new SearchableSingleChoiceDialogBuilder<>(activity, MetadataManager.TAR_TYPES, readableTarTypes)
                     .setTitle(R.string.pref_compression_method)
@@ -129,12 +163,39 @@ public class BackupRestorePreferences extends PreferenceFragment {
                             currentCompression = which;
                             Prefs.BackupRestore.setCompressionMethod(selectedTarType);
                             compressionMethod.setSummary(readableTarTypes[currentCompression == -1 ? 0 : currentCompression]);
+                            // Levels are specific to each method
+                            Prefs.BackupRestore.setCompressionLevel(TarUtils.DEFAULT_COMPRESSION_LEVEL);
+                            compressionLevelPref.setSummary(getCompressionLevelSummary());
                         }
                     })
                     .setNegativeButton(R.string.cancel, null)
                     .show();
             return true;
         });
+        // Compression thread count
+        Preference compressionThreadCountPref = Objects.requireNonNull(findPreference("backup_compression_thread_count"));
+        compressionThreadCount = Prefs.BackupRestore.getCompressionThreadCount();
+        compressionThreadCountPref.setSummary(getResources().getQuantityString(R.plurals.pref_compression_thread_count_msg,
+                compressionThreadCount, compressionThreadCount));
+        compressionThreadCountPref.setOnPreferenceClickListener(preference -> {
+            new TextInputDialogBuilder(activity, null)
+                    .setTitle(R.string.pref_compression_thread_count)
+                    .setHelperText(getString(R.string.pref_compression_thread_count_hint, Utils.getTotalCores()))
+                    .setInputText(String.valueOf(compressionThreadCount))
+                    .setNegativeButton(R.string.cancel, null)
+                    .setPositiveButton(R.string.save, (dialog, which, inputText, isChecked) -> {
+                        if (inputText != null && TextUtils.isDigitsOnly(inputText)) {
+                            int c = Integer.decode(inputText.toString());
+                            Prefs.BackupRestore.setCompressionThreadCount(c);
+                            compressionThreadCount = Prefs.BackupRestore.getCompressionThreadCount();
+                            compressionThreadCountPref.setSummary(getResources().getQuantityString(
+                                    R.plurals.pref_compression_thread_count_msg, compressionThreadCount,
+                                    compressionThreadCount));
+                        }
+                    })
+                    .show();
+            return true;
+        });
         // Backup flags
         BackupFlags flags = BackupFlags.fromPref();
         ((Preference) Objects.requireNonNull(findPreference("backup_flags"))).setOnPreferenceClickListener(preference -> {
@@ -159,6 +220,9 @@ public class BackupRestorePreferences extends PreferenceFragment {
         // Keystore toggle
         SwitchPreferenceCompat backupKeyStore = Objects.requireNonNull(findPreference("backup_android_keystore"));
         backupKeyStore.setChecked(Prefs.BackupRestore.backupAppsWithKeyStore());
+        // Deduplicate APK files
+        SwitchPreferenceCompat deduplicateApkFiles = Objects.requireNonNull(findPreference("backup_deduplicate_apk_files"));
+        deduplicateApkFiles.setChecked(Prefs.BackupRestore.deduplicateApkFiles());
         // Encryption
         ((Preference) Objects.requireNonNull(findPreference("encryption"))).setOnPreferenceClickListener(preference -> {
             CharSequence[] encryptionNamesText = new CharSequence[encryptionNames.length];
@@ -279,6 +343,16 @@ public class BackupRestorePreferences extends PreferenceFragment {
         return R.string.backup_restore;
     }
 
+    @UiThread
+    @NonNull
+    private String getCompressionLevelSummary() {
+        int level = Prefs.BackupRestore.getCompressionLevel();
+        if (level == TarUtils.DEFAULT_COMPRESSION_LEVEL) {
+            return getString(R.string.pref_compression_level_default);
+        }
+        return String.valueOf(level);
+    }
+
     @UiThread
     private void startImportOperation(@ImportType int backupType, Uri uri, boolean removeImported) {
         // Start batch ops service
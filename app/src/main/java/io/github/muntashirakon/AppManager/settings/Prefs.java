@@ -35,6 +35,7 @@ import io.github.muntashirakon.AppManager.utils.FreezeUtils;
 import io.github.muntashirakon.AppManager.utils.PermissionUtils;
 import io.github.muntashirakon.AppManager.utils.TarUtils;
 import io.github.muntashirakon.AppManager.utils.TextUtilsCompat;
+import io.github.muntashirakon.AppManager.utils.Utils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
 
@@ -164,6 +165,36 @@ public final class Prefs {
             AppPref.set(AppPref.PrefKey.PREF_BACKUP_COMPRESSION_METHOD_STR, tarType);
         }
 
+        public static int getCompressionThreadCount() {
+            int configuredCount = AppPref.getInt(AppPref.PrefKey.PREF_BACKUP_COMPRESSION_THREAD_COUNT_INT);
+            int totalCores = Utils.getTotalCores();
+            if (configuredCount <= 0 || configuredCount > totalCores) return totalCores;
+            return configuredCount;
+        }
+
+        /**
+         * @param threadCount 1 - total cores. 0 = Total cores.
+         */
+        public static void setCompressionThreadCount(int threadCount) {
+            AppPref.set(AppPref.PrefKey.PREF_BACKUP_COMPRESSION_THREAD_COUNT_INT, threadCount);
+        }
+
+        public static int getCompressionLevel() {
+            return AppPref.getInt(AppPref.PrefKey.PREF_BACKUP_COMPRESSION_LEVEL_INT);
+        }
+
+        /**
+         * @param level Compression level for the current compression method. {@link TarUtils#DEFAULT_COMPRESSION_LEVEL}
+         *              = Default level of the compression method.
+         */
+        public static void setCompressionLevel(int level) {
+            AppPref.set(AppPref.PrefKey.PREF_BACKUP_COMPRESSION_LEVEL_INT, level);
+        }
+
+        public static boolean deduplicateApkFiles() {
+            return AppPref.getBoolean(AppPref.PrefKey.PREF_BACKUP_DEDUPLICATE_APK_FILES_BOOL);
+        }
+
         @BackupFlags.BackupFlag
         public static int getBackupFlags() {
             return AppPref.getInt(AppPref.PrefKey.PREF_BACKUP_FLAGS_INT);
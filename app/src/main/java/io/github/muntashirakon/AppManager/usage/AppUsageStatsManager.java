@@ -11,12 +11,12 @@ import android.annotation.SuppressLint;
 import android.annotation.UserIdInt;
 import android.app.usage.NetworkStats;
 import android.app.usage.NetworkStatsManager;
-import android.app.usage.UsageEvents;
 import android.content.Context;
 import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.os.RemoteException;
+import android.os.UserHandleHidden;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
@@ -26,6 +26,7 @@ import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
+import androidx.annotation.WorkerThread;
 import androidx.collection.SparseArrayCompat;
 import androidx.core.util.Pair;
 
@@ -33,16 +34,15 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 import dev.rikka.tools.refine.Refine;
-import io.github.muntashirakon.AppManager.AppManager;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
-import io.github.muntashirakon.AppManager.compat.UsageStatsManagerCompat;
-import io.github.muntashirakon.AppManager.utils.NonNullUtils;
+import io.github.muntashirakon.AppManager.db.AppsDb;
+import io.github.muntashirakon.AppManager.db.entity.UsageDaily;
+import io.github.muntashirakon.AppManager.db.entity.UsageSession;
+import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.utils.PackageUtils;
 import io.github.muntashirakon.AppManager.utils.PermissionUtils;
 
@@ -166,32 +166,29 @@ public class AppUsageStatsManager {
                                                      @UsageUtils.IntervalType int usageInterval,
                                                      @UserIdInt int userId)
             throws RemoteException {
+        UsageIndexer.update(userId);
         UsageUtils.TimeInterval range = UsageUtils.getTimeInterval(usageInterval);
         PackageUsageInfo packageUsageInfo = new PackageUsageInfo(context, packageName, userId,
                 PackageManagerCompat.getApplicationInfo(packageName, flagMatchUninstalled, userId));
-        UsageEvents events = UsageStatsManagerCompat.queryEvents(range.getStartTime(), range.getEndTime(), userId);
-        if (events == null) return packageUsageInfo;
-        UsageEvents.Event event = new UsageEvents.Event();
+        List<UsageSession> sessions = AppsDb.getInstance().usageDao().getSessions(userId, range.getStartTime(),
+                range.getEndTime());
         List<PackageUsageInfo.Entry> usEntries = new ArrayList<>();
         long startTime = 0;
         long endTime = 0;
-        while (events.hasNextEvent()) {
-            events.getNextEvent(event);
-            String currentPackageName = event.getPackageName();
-            int eventType = event.getEventType();
-            long eventTime = event.getTimeStamp();
-            if (currentPackageName.equals(packageName)) {
-                if (eventType == UsageEvents.Event.ACTIVITY_RESUMED) {
-                    if (startTime == 0) startTime = eventTime;
-                } else if (eventType == UsageEvents.Event.ACTIVITY_PAUSED) {
-                    if (startTime > 0) endTime = eventTime;
-                }
-            } else if (startTime > 0 && endTime > 0) {
+        // Consecutive sessions of the package are merged into a single entry
+        for (UsageSession session : sessions) {
+            if (session.packageName.equals(packageName)) {
+                if (startTime == 0) startTime = Math.max(session.startTime, range.getStartTime());
+                endTime = session.endTime;
+            } else if (startTime > 0) {
                 usEntries.add(new PackageUsageInfo.Entry(startTime, endTime));
                 startTime = 0;
                 endTime = 0;
             }
         }
+        if (startTime > 0) {
+            usEntries.add(new PackageUsageInfo.Entry(startTime, endTime));
+        }
         packageUsageInfo.entries = usEntries;
         return packageUsageInfo;
     }
@@ -209,51 +206,12 @@ public class AppUsageStatsManager {
                                                          @UserIdInt int userId)
             throws RemoteException {
         List<PackageUsageInfo> screenTimeList = new ArrayList<>();
-        Map<String, Long> screenTimes = new HashMap<>();
-        Map<String, Long> lastUse = new HashMap<>();
-        Map<String, Integer> accessCount = new HashMap<>();
-        // Get events
+        // Only the new events are ingested, the rest is answered from the daily usage
+        UsageIndexer.update(userId);
         UsageUtils.TimeInterval interval = UsageUtils.getTimeInterval(usageInterval);
-        UsageEvents events = UsageStatsManagerCompat.queryEvents(interval.getStartTime(), interval.getEndTime(), userId);
-        if (events == null) return Collections.emptyList();
-        UsageEvents.Event event = new UsageEvents.Event();
-        long startTime;
-        long endTime;
-        boolean skip_new = false;
-        while (events.hasNextEvent()) {
-            if (!skip_new) events.getNextEvent(event);
-            int eventType = event.getEventType();
-            long eventTime = event.getTimeStamp();
-            String packageName = event.getPackageName();
-            if (eventType == UsageEvents.Event.ACTIVITY_RESUMED) {  // App opened: MOVE_TO_FOREGROUND
-                startTime = eventTime;
-                while (events.hasNextEvent()) {
-                    events.getNextEvent(event);
-                    eventType = event.getEventType();
-                    eventTime = event.getTimeStamp();
-                    if (eventType == UsageEvents.Event.ACTIVITY_RESUMED) {
-                        skip_new = true;
-                        break;
-                    } else if (eventType == UsageEvents.Event.ACTIVITY_PAUSED) {
-                        endTime = eventTime;
-                        skip_new = false;
-                        if (packageName.equals(event.getPackageName())) {
-                            long time = endTime - startTime + 1;
-                            if (screenTimes.containsKey(packageName)) {
-                                screenTimes.put(packageName, NonNullUtils.defeatNullable(screenTimes
-                                        .get(packageName)) + time);
-                            } else screenTimes.put(packageName, time);
-                            lastUse.put(packageName, endTime);
-                            if (accessCount.containsKey(packageName)) {
-                                accessCount.put(packageName, NonNullUtils.defeatNullable(accessCount
-                                        .get(packageName)) + 1);
-                            } else accessCount.put(packageName, 1);
-                        }
-                        break;
-                    }
-                }
-            }
-        }
+        List<UsageDaily> usages = AppsDb.getInstance().usageDao().getUsageSum(userId,
+                UsageUtils.getStartOfDay(interval.getStartTime()), interval.getEndTime());
+        if (usages.isEmpty()) return Collections.emptyList();
         SparseArrayCompat<DataUsage> mobileData = new SparseArrayCompat<>();
         SparseArrayCompat<DataUsage> wifiData = new SparseArrayCompat<>();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -268,13 +226,13 @@ public class AppUsageStatsManager {
             } catch (Exception ignore) {
             }
         }
-        for (String packageName : screenTimes.keySet()) {
+        for (UsageDaily usage : usages) {
             // Skip uninstalled packages?
-            PackageUsageInfo packageUsageInfo = new PackageUsageInfo(context, packageName, userId,
-                    PackageManagerCompat.getApplicationInfo(packageName, flagMatchUninstalled, userId));
-            packageUsageInfo.timesOpened = NonNullUtils.defeatNullable(accessCount.get(packageName));
-            packageUsageInfo.lastUsageTime = NonNullUtils.defeatNullable(lastUse.get(packageName));
-            packageUsageInfo.screenTime = NonNullUtils.defeatNullable(screenTimes.get(packageName));
+            PackageUsageInfo packageUsageInfo = new PackageUsageInfo(context, usage.packageName, userId,
+                    PackageManagerCompat.getApplicationInfo(usage.packageName, flagMatchUninstalled, userId));
+            packageUsageInfo.timesOpened = usage.timesOpened;
+            packageUsageInfo.lastUsageTime = usage.lastUsed;
+            packageUsageInfo.screenTime = usage.screenTime;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
                 int uid = PackageUtils.getAppUid(packageUsageInfo.applicationInfo);
                 if (mobileData.containsKey(uid)) {
@@ -289,21 +247,20 @@ public class AppUsageStatsManager {
         return screenTimeList;
     }
 
+    /**
+     * @return The time of the last usage event of any kind of the package during the given interval for the current
+     * user, or {@code 0} if there were no events
+     */
+    @WorkerThread
     public static long getLastActivityTime(String packageName, @NonNull UsageUtils.TimeInterval interval) {
+        int userId = UserHandleHidden.myUserId();
         try {
-            UsageEvents events = UsageStatsManagerCompat.getUsageStatsManager().queryEvents(interval.getStartTime(),
-                    interval.getEndTime(), AppManager.getContext().getPackageName());
-            if (events == null) return 0L;
-            UsageEvents.Event event = new UsageEvents.Event();
-            while (events.hasNextEvent()) {
-                events.getNextEvent(event);
-                if (event.getPackageName().equals(packageName)) {
-                    return event.getTimeStamp();
-                }
-            }
-        } catch (RemoteException ignore) {
+            UsageIndexer.update(userId);
+        } catch (RemoteException | SecurityException e) {
+            Log.w(UsageIndexer.TAG, "Could not ingest usage events", e);
         }
-        return 0L;
+        return AppsDb.getInstance().usageDao().getLastEvent(userId, packageName, interval.getStartTime(),
+                interval.getEndTime());
     }
 
     @RequiresApi(Build.VERSION_CODES.M)
@@ -20,6 +20,8 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import io.github.muntashirakon.AppManager.R;
 import io.github.muntashirakon.AppManager.compat.PendingIntentCompat;
@@ -27,6 +29,8 @@ import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.DateUtils;
 
 public class ScreenTimeAppWidget extends AppWidgetProvider {
+    // The usage stats are read from the database, which cannot be accessed from the main thread
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
 
     static void updateAppWidget(Context context, AppWidgetManager appWidgetManager,
                                 int appWidgetId) {
@@ -89,14 +93,28 @@ public class ScreenTimeAppWidget extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId);
-        }
+        PendingResult result = goAsync();
+        sExecutor.submit(() -> {
+            try {
+                for (int appWidgetId : appWidgetIds) {
+                    updateAppWidget(context, appWidgetManager, appWidgetId);
+                }
+            } finally {
+                result.finish();
+            }
+        });
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager, int appWidgetId, Bundle newOptions) {
-        updateAppWidget(context, appWidgetManager, appWidgetId);
+        PendingResult result = goAsync();
+        sExecutor.submit(() -> {
+            try {
+                updateAppWidget(context, appWidgetManager, appWidgetId);
+            } finally {
+                result.finish();
+            }
+        });
     }
 
     @NonNull
@@ -0,0 +1,161 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.usage;
+
+import android.annotation.UserIdInt;
+import android.app.usage.UsageEvents;
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.muntashirakon.AppManager.compat.UsageStatsManagerCompat;
+import io.github.muntashirakon.AppManager.db.AppsDb;
+import io.github.muntashirakon.AppManager.db.dao.UsageDao;
+import io.github.muntashirakon.AppManager.db.entity.UsageDaily;
+import io.github.muntashirakon.AppManager.db.entity.UsageIngestion;
+import io.github.muntashirakon.AppManager.db.entity.UsageSession;
+
+/**
+ * Ingest the usage events of a user into {@link AppsDb} as {@link UsageSession}s and {@link UsageDaily} rollups,
+ * which also record the time of the last event of any kind of each package. Only
+ * the events after the watermark of the previous ingestion are read, so that the usage stats can be answered from the
+ * database without replaying all the events of the requested interval.
+ * <p>
+ * Screen time is calculated based on the assumption that no application can be run in the middle of a running
+ * application, see {@link AppUsageStatsManager#getUsageStats(int, int)}.
+ */
+@WorkerThread
+public final class UsageIndexer {
+    public static final String TAG = UsageIndexer.class.getSimpleName();
+
+    /**
+     * Number of days the usage is kept in the database
+     */
+    public static final int RETENTION_DAYS = 30;
+    /**
+     * Events are not ingested more than once in this interval (in milliseconds)
+     */
+    private static final long MIN_INGESTION_INTERVAL = 1000;
+
+    private static final Object sLock = new Object();
+
+    /**
+     * Ingest the usage events of the user since the last ingestion.
+     *
+     * @throws SecurityException If usage stats permission is not available for the user
+     * @throws RemoteException   If usage events cannot be retrieved due to transaction error
+     */
+    public static void update(@UserIdInt int userId) throws RemoteException, SecurityException {
+        synchronized (sLock) {
+            UsageDao usageDao = AppsDb.getInstance().usageDao();
+            long now = System.currentTimeMillis();
+            UsageIngestion ingestion = usageDao.getIngestion(userId);
+            if (ingestion == null) {
+                ingestion = new UsageIngestion();
+                ingestion.userId = userId;
+                // Start with everything that is retained. The system itself only keeps the events for a few days.
+                ingestion.watermark = getRetainSince(now);
+            } else if (now >= ingestion.lastRun && now - ingestion.lastRun < MIN_INGESTION_INTERVAL) {
+                return;
+            }
+            if (now <= ingestion.watermark) {
+                // The clock has been set back
+                return;
+            }
+            UsageEvents events = UsageStatsManagerCompat.queryEvents(ingestion.watermark, now, userId);
+            if (events == null) return;
+            UsageIndexer indexer = new UsageIndexer(userId);
+            UsageEvents.Event event = new UsageEvents.Event();
+            String openPackageName = null;
+            long openTime = 0;
+            while (events.hasNextEvent()) {
+                events.getNextEvent(event);
+                indexer.addEvent(event.getPackageName(), event.getTimeStamp());
+                int eventType = event.getEventType();
+                if (eventType == UsageEvents.Event.ACTIVITY_RESUMED) {  // App opened: MOVE_TO_FOREGROUND
+                    openPackageName = event.getPackageName();
+                    openTime = event.getTimeStamp();
+                } else if (eventType == UsageEvents.Event.ACTIVITY_PAUSED && openPackageName != null) {
+                    if (openPackageName.equals(event.getPackageName())) {
+                        indexer.addSession(openPackageName, openTime, event.getTimeStamp());
+                    }
+                    openPackageName = null;
+                }
+            }
+            // An activity still in the foreground is ingested once it is paused
+            ingestion.watermark = openPackageName != null ? openTime : now;
+            ingestion.lastRun = now;
+            usageDao.ingest(ingestion, indexer.mSessions, indexer.mDailyUsages.values(), getRetainSince(now));
+        }
+    }
+
+    private static long getRetainSince(long now) {
+        return UsageUtils.getStartOfDay(now - (long) RETENTION_DAYS * UsageUtils.ONE_DAY);
+    }
+
+    @UserIdInt
+    private final int mUserId;
+    private final List<UsageSession> mSessions = new ArrayList<>();
+    private final Map<String, UsageDaily> mDailyUsages = new HashMap<>();
+
+    private UsageIndexer(@UserIdInt int userId) {
+        mUserId = userId;
+    }
+
+    private void addEvent(@Nullable String packageName, long time) {
+        if (packageName == null) {
+            return;
+        }
+        UsageDaily usage = getDailyUsage(packageName, UsageUtils.getStartOfDay(time));
+        usage.lastEvent = Math.max(usage.lastEvent, time);
+    }
+
+    private void addSession(@NonNull String packageName, long startTime, long endTime) {
+        UsageSession session = new UsageSession();
+        session.userId = mUserId;
+        session.packageName = packageName;
+        session.startTime = startTime;
+        session.endTime = endTime;
+        mSessions.add(session);
+        // Split the session at midnight
+        long partStart = startTime;
+        boolean firstPart = true;
+        while (true) {
+            long day = UsageUtils.getStartOfDay(partStart);
+            long nextDay = UsageUtils.getStartOfNextDay(day);
+            long partEnd = Math.min(endTime, nextDay - 1);
+            UsageDaily usage = getDailyUsage(packageName, day);
+            usage.screenTime += partEnd - partStart + 1;
+            usage.lastUsed = Math.max(usage.lastUsed, partEnd);
+            if (firstPart) {
+                ++usage.timesOpened;
+                firstPart = false;
+            }
+            if (endTime < nextDay) {
+                break;
+            }
+            partStart = nextDay;
+        }
+    }
+
+    @NonNull
+    private UsageDaily getDailyUsage(@NonNull String packageName, long day) {
+        String key = day + "/" + packageName;
+        UsageDaily usage = mDailyUsages.get(key);
+        if (usage == null) {
+            usage = new UsageDaily();
+            usage.userId = mUserId;
+            usage.day = day;
+            usage.packageName = packageName;
+            mDailyUsages.put(key, usage);
+        }
+        return usage;
+    }
+}
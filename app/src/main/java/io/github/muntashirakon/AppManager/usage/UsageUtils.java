@@ -78,15 +78,33 @@ public final class UsageUtils {
         return new TimeInterval(SystemClock.elapsedRealtime(), System.currentTimeMillis());
     }
 
-    @NonNull
-    private static TimeInterval getToday() {
-        long timeNow = System.currentTimeMillis();
+    /**
+     * @return The start of the day (in the current time zone) containing the given time
+     */
+    public static long getStartOfDay(long time) {
         Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
         cal.set(Calendar.HOUR_OF_DAY, 0);
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
         cal.set(Calendar.MILLISECOND, 0);
-        return new TimeInterval(cal.getTimeInMillis(), timeNow);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * @return The start of the day following the day containing the given time
+     */
+    public static long getStartOfNextDay(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(getStartOfDay(time));
+        cal.add(Calendar.DAY_OF_MONTH, 1);
+        return cal.getTimeInMillis();
+    }
+
+    @NonNull
+    private static TimeInterval getToday() {
+        long timeNow = System.currentTimeMillis();
+        return new TimeInterval(getStartOfDay(timeNow), timeNow);
     }
 
     @NonNull
@@ -102,10 +120,14 @@ public final class UsageUtils {
         return new TimeInterval(start, Math.min(start + ONE_DAY, timeNow));
     }
 
+    /**
+     * Today and the six days before it. The interval starts at the beginning of a day so that it can be answered from
+     * the daily usage stored in {@link io.github.muntashirakon.AppManager.db.AppsDb AppsDb}.
+     */
     @NonNull
     private static TimeInterval getWeeklyInterval() {
         long timeEnd = System.currentTimeMillis();
-        long timeStart = timeEnd - TimeUnit.MILLISECONDS.convert(7, TimeUnit.DAYS);
+        long timeStart = getStartOfDay(timeEnd - TimeUnit.MILLISECONDS.convert(6, TimeUnit.DAYS));
         return new TimeInterval(timeStart, timeEnd);
     }
 }
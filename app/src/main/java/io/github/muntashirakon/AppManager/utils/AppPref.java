@@ -62,6 +62,9 @@ public class AppPref {
 
         PREF_BACKUP_ANDROID_KEYSTORE_BOOL,
         PREF_BACKUP_COMPRESSION_METHOD_STR,
+        PREF_BACKUP_COMPRESSION_THREAD_COUNT_INT,
+        PREF_BACKUP_COMPRESSION_LEVEL_INT,
+        PREF_BACKUP_DEDUPLICATE_APK_FILES_BOOL,
         PREF_BACKUP_FLAGS_INT,
         PREF_BACKUP_VOLUME_STR,
 
@@ -358,6 +361,8 @@ public class AppPref {
                         | BackupFlags.BACKUP_APK_FILES | BackupFlags.BACKUP_EXTRAS;
             case PREF_BACKUP_COMPRESSION_METHOD_STR:
                 return TarUtils.TAR_GZIP;
+            case PREF_BACKUP_COMPRESSION_LEVEL_INT:
+                return TarUtils.DEFAULT_COMPRESSION_LEVEL;
             case PREF_ENABLE_KILL_FOR_SYSTEM_BOOL:
             case PREF_GLOBAL_BLOCKING_ENABLED_BOOL:
             case PREF_INSTALLER_ALWAYS_ON_BACKGROUND_BOOL:
@@ -365,6 +370,7 @@ public class AppPref {
             case PREF_INSTALLER_DISPLAY_USERS_BOOL:
             case PREF_INSTALLER_SIGN_APK_BOOL:
             case PREF_BACKUP_ANDROID_KEYSTORE_BOOL:
+            case PREF_BACKUP_DEDUPLICATE_APK_FILES_BOOL:
             case PREF_ENABLE_SCREEN_LOCK_BOOL:
             case PREF_MAIN_WINDOW_SORT_REVERSE_BOOL:
             case PREF_LOG_VIEWER_EXPAND_BY_DEFAULT_BOOL:
@@ -380,6 +386,7 @@ public class AppPref {
             case PREF_VIRUS_TOTAL_PROMPT_BEFORE_UPLOADING_BOOL:
                 return true;
             case PREF_CONCURRENCY_THREAD_COUNT_INT:
+            case PREF_BACKUP_COMPRESSION_THREAD_COUNT_INT:
             case PREF_APP_THEME_CUSTOM_INT:
             case PREF_TIPS_PREFS_INT:
                 return 0;
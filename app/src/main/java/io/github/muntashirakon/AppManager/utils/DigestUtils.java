@@ -8,20 +8,24 @@ import android.util.Pair;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.StringDef;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 
@@ -55,24 +59,24 @@ public class DigestUtils {
     @VisibleForTesting
     @WorkerThread
     @NonNull
-    public static String getHexDigest(@Algorithm String algo, @NonNull File path) {
+    public static String getHexDigest(@Algorithm String algo, @NonNull File path) throws IOException {
         return getHexDigest(algo, Paths.get(path));
     }
 
     @WorkerThread
     @NonNull
-    public static String getHexDigest(@Algorithm String algo, @NonNull Path path) {
-        List<Path> allFiles = Paths.getAll(path);
-        List<String> hashes = new ArrayList<>(allFiles.size());
-        for (Path file : allFiles) {
-            try (InputStream fileInputStream = file.openInputStream()) {
-                hashes.add(DigestUtils.getHexDigest(algo, fileInputStream));
-            } catch (IOException e) {
-                e.printStackTrace();
+    public static String getHexDigest(@Algorithm String algo, @NonNull Path path) throws IOException {
+        List<Path> allFiles = new ArrayList<>();
+        for (Path file : Paths.getAll(path)) {
+            // Directories cannot be read
+            if (!file.isDirectory()) {
+                allFiles.add(file);
             }
         }
-        if (hashes.size() == 0) return HexEncoding.encodeToString(new byte[0], false /* lowercase */);
-        if (hashes.size() == 1) return hashes.get(0);
+        // Files are independent of each other and can be hashed in parallel
+        String[] hashes = ParallelDigester.getHexDigests(algo, allFiles);
+        if (hashes.length == 0) return HexEncoding.encodeToString(new byte[0], false /* lowercase */);
+        if (hashes.length == 1) return hashes[0];
         String fullString = TextUtils.join("", hashes);
         return getHexDigest(algo, fullString.getBytes());
     }
@@ -110,7 +114,8 @@ public class DigestUtils {
         }
         try {
             MessageDigest messageDigest = MessageDigest.getInstance(algo);
-            try (DigestInputStream digestInputStream = new DigestInputStream(stream, messageDigest)) {
+            try (java.security.DigestInputStream digestInputStream = new java.security.DigestInputStream(stream,
+                    messageDigest)) {
                 byte[] buffer = new byte[IoUtils.DEFAULT_BUFFER_SIZE];
                 //noinspection StatementWithEmptyBody
                 while (digestInputStream.read(buffer) != -1) {
@@ -176,6 +181,142 @@ public class DigestUtils {
         return digests;
     }
 
+    /**
+     * An {@link InputStream} that calculates the digest of all the bytes read from the underlying stream. The digest
+     * is the same as the one returned by {@link #getHexDigest(String, InputStream)} for the same bytes.
+     */
+    public static class DigestInputStream extends FilterInputStream {
+        @Nullable
+        private final MessageDigest mMessageDigest;
+        @Nullable
+        private final CRC32 mCrc32;
+
+        public DigestInputStream(@NonNull InputStream in, @Algorithm String algo) throws IOException {
+            super(in);
+            if (CRC32.equals(algo)) {
+                mCrc32 = new CRC32();
+                mMessageDigest = null;
+            } else {
+                try {
+                    mMessageDigest = MessageDigest.getInstance(algo);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IOException(e);
+                }
+                mCrc32 = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                update(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int readCount = in.read(b, off, len);
+            if (readCount > 0) {
+                update(b, off, readCount);
+            }
+            return readCount;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be digested as well
+            byte[] buffer = new byte[(int) Math.min(n, IoUtils.DEFAULT_BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int readCount = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+                if (readCount == -1) break;
+                skipped += readCount;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Get the digest of the bytes read so far. It should only be called once, after all the bytes are read.
+         */
+        @NonNull
+        public String getHexDigest() {
+            byte[] digest;
+            if (mCrc32 != null) {
+                digest = longToBytes(mCrc32.getValue());
+            } else digest = Objects.requireNonNull(mMessageDigest).digest();
+            return HexEncoding.encodeToString(digest, false /* lowercase */);
+        }
+
+        private void update(@NonNull byte[] b, int off, int len) {
+            if (mCrc32 != null) {
+                mCrc32.update(b, off, len);
+            } else Objects.requireNonNull(mMessageDigest).update(b, off, len);
+        }
+    }
+
+    /**
+     * An {@link OutputStream} that calculates the digest of all the bytes written to the underlying stream. The digest
+     * is the same as the one returned by {@link #getHexDigest(String, InputStream)} for the same bytes.
+     */
+    public static class DigestOutputStream extends FilterOutputStream {
+        @Nullable
+        private final MessageDigest mMessageDigest;
+        @Nullable
+        private final CRC32 mCrc32;
+
+        public DigestOutputStream(@NonNull OutputStream out, @Algorithm String algo) throws IOException {
+            super(out);
+            if (CRC32.equals(algo)) {
+                mCrc32 = new CRC32();
+                mMessageDigest = null;
+            } else {
+                try {
+                    mMessageDigest = MessageDigest.getInstance(algo);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IOException(e);
+                }
+                mCrc32 = null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            update(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            update(b, off, len);
+        }
+
+        /**
+         * Get the digest of the bytes written so far. It should only be called once, after all the bytes are written.
+         */
+        @NonNull
+        public String getHexDigest() {
+            byte[] digest;
+            if (mCrc32 != null) {
+                digest = longToBytes(mCrc32.getValue());
+            } else digest = Objects.requireNonNull(mMessageDigest).digest();
+            return HexEncoding.encodeToString(digest, false /* lowercase */);
+        }
+
+        private void update(@NonNull byte[] b, int off, int len) {
+            if (mCrc32 != null) {
+                mCrc32.update(b, off, len);
+            } else Objects.requireNonNull(mMessageDigest).update(b, off, len);
+        }
+    }
+
     @NonNull
     private static byte[] longToBytes(long l) {
         byte[] result = new byte[8];
@@ -109,6 +109,14 @@ public final class JSONUtils {
         return null;
     }
 
+    public static int getInt(@NonNull final JSONObject jsonObject, @NonNull String key, int defaultValue) {
+        try {
+            return jsonObject.getInt(key);
+        } catch (JSONException ignore) {
+        }
+        return defaultValue;
+    }
+
     public static long getLong(@NonNull final JSONObject jsonObject, @NonNull String key, long defaultValue) {
         try {
             return jsonObject.getLong(key);
@@ -8,7 +8,9 @@ import androidx.annotation.NonNull;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
@@ -24,6 +26,26 @@ public final class KeyStoreUtils {
         return false;
     }
 
+    /**
+     * Same as calling {@link #hasKeyStore(int)} for every app of the user, but the key store is listed only once.
+     *
+     * @return UIDs having at least one key
+     */
+    @NonNull
+    public static Set<Integer> getUidsWithKeyStore(int userHandle) {
+        String[] fileNames = getKeyStorePath(userHandle).listFileNames();
+        Set<Integer> uids = new HashSet<>();
+        for (String fileName : fileNames) {
+            int separator = fileName.indexOf('_');
+            if (separator <= 0) continue;
+            try {
+                uids.add(Integer.parseInt(fileName.substring(0, separator)));
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return uids;
+    }
+
     public static boolean hasMasterKey(int uid) {
         try {
             return getMasterKey(UserHandleHidden.getUserId(uid)).exists();
@@ -0,0 +1,211 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Find all the patterns occurring in a text in a single pass using the Aho-Corasick algorithm. Matching takes time
+ * proportional to the length of the text no matter how many patterns there are, which makes it suitable for matching
+ * thousands of class names against thousands of signatures.
+ * <p>
+ * The automaton is stored as a trie whose children are kept in sorted arrays along with the failure links, rather than
+ * as a full transition table. Its size is therefore proportional to the total length of the patterns, independent of
+ * the number of distinct characters in them, which matters since the matchers for the tracker and library signatures
+ * stay in memory.
+ * <p>
+ * The automaton is built once in the constructor and is immutable afterwards, and therefore, a single instance can be
+ * shared between threads.
+ */
+@AnyThread
+public class MultiPatternMatcher {
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Children of a state are at {@code mChildStart[state]} (inclusive) to {@code mChildStart[state + 1]} (exclusive)
+     * in {@link #mChildSymbols} and {@link #mChildStates}, sorted by their characters
+     */
+    private final int[] mChildStart;
+    private final char[] mChildSymbols;
+    private final int[] mChildStates;
+    /**
+     * State representing the longest proper suffix of a state that is also a prefix of some pattern
+     */
+    private final int[] mFailures;
+    /**
+     * Patterns that end at each state, including the ones reached via the failure links
+     */
+    private final int[][] mOutputs;
+    private final int mPatternCount;
+
+    public MultiPatternMatcher(@NonNull String[] patterns) {
+        mPatternCount = patterns.length;
+        // Insert the patterns in lexicographical order so that the children of a state are created in the order of
+        // their characters, and a matching child, if any, is always the one created last
+        Integer[] order = new Integer[patterns.length];
+        int maxStateCount = 1;
+        for (int p = 0; p < patterns.length; ++p) {
+            order[p] = p;
+            maxStateCount += patterns[p].length();
+        }
+        Arrays.sort(order, (o1, o2) -> patterns[o1].compareTo(patterns[o2]));
+        // Build the trie. The root is never a child, and so 0 denotes absence in lastChildren and ownOutputs.
+        int[] parents = new int[maxStateCount];
+        char[] symbols = new char[maxStateCount];
+        int[] lastChildren = new int[maxStateCount];
+        // Patterns ending at each state as linked lists: ownOutputs[state] - 1 is the first pattern and
+        // nextOutputs[pattern] - 1 is the next one
+        int[] ownOutputs = new int[maxStateCount];
+        int[] nextOutputs = new int[patterns.length];
+        int stateCount = 1;
+        for (int p : order) {
+            int state = 0;
+            String pattern = patterns[p];
+            for (int i = 0; i < pattern.length(); ++i) {
+                char c = pattern.charAt(i);
+                int next = lastChildren[state];
+                if (next == 0 || symbols[next] != c) {
+                    next = stateCount++;
+                    parents[next] = state;
+                    symbols[next] = c;
+                    lastChildren[state] = next;
+                }
+                state = next;
+            }
+            nextOutputs[p] = ownOutputs[state];
+            ownOutputs[state] = p + 1;
+        }
+        // Group the children by their parents. States are numbered in the order of creation, and therefore, the
+        // children of each state remain sorted.
+        mChildStart = new int[stateCount + 1];
+        for (int state = 1; state < stateCount; ++state) {
+            ++mChildStart[parents[state] + 1];
+        }
+        for (int state = 0; state < stateCount; ++state) {
+            mChildStart[state + 1] += mChildStart[state];
+        }
+        mChildSymbols = new char[stateCount - 1];
+        mChildStates = new int[stateCount - 1];
+        int[] positions = Arrays.copyOf(mChildStart, stateCount);
+        for (int state = 1; state < stateCount; ++state) {
+            int position = positions[parents[state]]++;
+            mChildSymbols[position] = symbols[state];
+            mChildStates[position] = state;
+        }
+        // Compute the failure links and the outputs with a breadth-first traversal so that the failure link of a
+        // state, which is always shallower, is complete before the state itself is visited.
+        mFailures = new int[stateCount];
+        mOutputs = new int[stateCount][];
+        mOutputs[0] = toArray(ownOutputs[0], nextOutputs, EMPTY);
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int state = queue[head++];
+            for (int i = mChildStart[state]; i < mChildStart[state + 1]; ++i) {
+                int child = mChildStates[i];
+                int failure = state == 0 ? 0 : nextState(mFailures[state], mChildSymbols[i]);
+                mFailures[child] = failure;
+                mOutputs[child] = toArray(ownOutputs[child], nextOutputs, mOutputs[failure]);
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    public int getPatternCount() {
+        return mPatternCount;
+    }
+
+    /**
+     * Find all the patterns that occur in the given text.
+     *
+     * @return Indices of the matched patterns in ascending order, each index is reported once
+     */
+    @NonNull
+    public int[] findAll(@NonNull CharSequence text) {
+        int[] matches = EMPTY;
+        int matchCount = 0;
+        int state = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            state = nextState(state, text.charAt(i));
+            for (int pattern : mOutputs[state]) {
+                if (contains(matches, matchCount, pattern)) {
+                    continue;
+                }
+                if (matchCount == matches.length) {
+                    matches = Arrays.copyOf(matches, Math.max(4, matchCount * 2));
+                }
+                matches[matchCount++] = pattern;
+            }
+        }
+        if (matchCount == 0) {
+            return EMPTY;
+        }
+        int[] result = Arrays.copyOf(matches, matchCount);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * @return {@code true} if at least one of the patterns occurs in the given text
+     */
+    public boolean containsAny(@NonNull CharSequence text) {
+        if (mOutputs[0].length > 0) {
+            // There is an empty pattern
+            return true;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            state = nextState(state, text.charAt(i));
+            if (mOutputs[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int nextState(int state, char c) {
+        int next;
+        while ((next = getChild(state, c)) == -1) {
+            if (state == 0) {
+                return 0;
+            }
+            state = mFailures[state];
+        }
+        return next;
+    }
+
+    private int getChild(int state, char c) {
+        int i = Arrays.binarySearch(mChildSymbols, mChildStart[state], mChildStart[state + 1], c);
+        return i < 0 ? -1 : mChildStates[i];
+    }
+
+    @NonNull
+    private static int[] toArray(int ownOutput, @NonNull int[] nextOutputs, @NonNull int[] inherited) {
+        if (ownOutput == 0) {
+            return inherited;
+        }
+        int count = 0;
+        for (int p = ownOutput; p != 0; p = nextOutputs[p - 1]) {
+            ++count;
+        }
+        int[] outputs = new int[count + inherited.length];
+        int i = 0;
+        for (int p = ownOutput; p != 0; p = nextOutputs[p - 1]) {
+            outputs[i++] = p - 1;
+        }
+        System.arraycopy(inherited, 0, outputs, count, inherited.length);
+        return outputs;
+    }
+
+    private static boolean contains(@NonNull int[] array, int length, int value) {
+        for (int i = 0; i < length; ++i) {
+            if (array[i] == value) return true;
+        }
+        return false;
+    }
+}
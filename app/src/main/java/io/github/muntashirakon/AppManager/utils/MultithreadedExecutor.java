@@ -23,7 +23,7 @@ public class MultithreadedExecutor implements ExecutorService {
 
     @WorkerThread
     @NonNull
-    public static MultithreadedExecutor getNewInstance() {
+    public static synchronized MultithreadedExecutor getNewInstance() {
         if (executorCache.size() > 0) {
             // Check if any executor has been shutdown
             for (MultithreadedExecutor executor : executorCache) {
@@ -0,0 +1,193 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A pigz/pbzip2-style compressor. The incoming stream is cut into fixed-size blocks, each of which is compressed
+ * independently by a pool of worker threads into a complete gzip member, bzip2 stream, zstd frame or LZ4 frame. The
+ * compressed blocks are written to the underlying stream in their original order, which results in a concatenated
+ * file that can be read using {@link TarUtils#createCompressorInputStream(String, InputStream)}.
+ */
+final class ParallelCompressorOutputStream extends OutputStream {
+    /**
+     * Size of an uncompressed gzip block. Each block loses the dictionary of the previous one, so this is kept
+     * large enough for the loss in compression ratio to be negligible.
+     */
+    static final int GZIP_BLOCK_SIZE = 1024 * 1024;  // 1 MiB
+    /**
+     * Size of an uncompressed bzip2 block. It is the same as the largest block size supported by bzip2 (-9) so that
+     * no compression ratio is lost.
+     */
+    static final int BZIP2_BLOCK_SIZE = 900 * 1000;
+    /**
+     * Size of an uncompressed zstd or LZ4 block. The same as the maximum block size of LZ4 frames.
+     */
+    static final int FRAME_BLOCK_SIZE = 4 * 1024 * 1024;  // 4 MiB
+
+    @NonNull
+    private final OutputStream mOut;
+    @NonNull
+    @TarUtils.TarType
+    private final String mType;
+    private final int mCompressionLevel;
+    @NonNull
+    private final ExecutorService mExecutor;
+    @NonNull
+    private final Queue<Future<byte[]>> mPendingBlocks;
+    private final int mMaxPendingBlocks;
+    private final int mBlockSize;
+
+    private byte[] mBuffer;
+    private int mBufferPos;
+    private boolean mClosed;
+
+    /**
+     * @param out              The underlying stream where the compressed blocks are written to
+     * @param type             The compression type
+     * @param compressionLevel Compression level of each block
+     * @param threadCount      Number of worker threads, must be greater than 0
+     */
+    public ParallelCompressorOutputStream(@NonNull OutputStream out, @NonNull @TarUtils.TarType String type,
+                                          int compressionLevel, int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Invalid thread count: " + threadCount);
+        }
+        switch (type) {
+            case TarUtils.TAR_GZIP:
+                mBlockSize = GZIP_BLOCK_SIZE;
+                break;
+            case TarUtils.TAR_BZIP2:
+                mBlockSize = BZIP2_BLOCK_SIZE;
+                break;
+            case TarUtils.TAR_ZSTD:
+            case TarUtils.TAR_LZ4:
+                mBlockSize = FRAME_BLOCK_SIZE;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid compression type: " + type);
+        }
+        mOut = out;
+        mType = type;
+        mCompressionLevel = compressionLevel;
+        mExecutor = Executors.newFixedThreadPool(threadCount);
+        // Allow the workers to stay busy while the oldest block is being written, but no more than that in order to
+        // keep the memory usage bounded.
+        mMaxPendingBlocks = threadCount * 2;
+        mPendingBlocks = new ArrayDeque<>(mMaxPendingBlocks);
+        mBuffer = new byte[mBlockSize];
+    }
+
+    @WorkerThread
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        mBuffer[mBufferPos++] = (byte) b;
+        if (mBufferPos == mBlockSize) {
+            submitBlock();
+        }
+    }
+
+    @WorkerThread
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int count = Math.min(len, mBlockSize - mBufferPos);
+            System.arraycopy(b, off, mBuffer, mBufferPos, count);
+            mBufferPos += count;
+            off += count;
+            len -= count;
+            if (mBufferPos == mBlockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compress the incomplete block, if any, and write all the pending blocks. Calling this method too often reduces
+     * the compression ratio.
+     */
+    @WorkerThread
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (mBufferPos > 0) {
+            submitBlock();
+        }
+        while (!mPendingBlocks.isEmpty()) {
+            writeNextBlock();
+        }
+        mOut.flush();
+    }
+
+    @WorkerThread
+    @Override
+    public void close() throws IOException {
+        if (mClosed) return;
+        try {
+            flush();
+        } finally {
+            mClosed = true;
+            mExecutor.shutdownNow();
+            mBuffer = null;
+            mOut.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (mPendingBlocks.size() >= mMaxPendingBlocks) {
+            writeNextBlock();
+        }
+        final byte[] block = mBuffer;
+        final int length = mBufferPos;
+        mPendingBlocks.add(mExecutor.submit(() -> compress(block, length)));
+        mBuffer = new byte[mBlockSize];
+        mBufferPos = 0;
+    }
+
+    private void writeNextBlock() throws IOException {
+        Future<byte[]> future = mPendingBlocks.remove();
+        try {
+            mOut.write(future.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException().initCause(e);
+        }
+    }
+
+    @NonNull
+    private byte[] compress(@NonNull byte[] block, int length) throws IOException {
+        // Compressed blocks are generally smaller than the original ones
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(length / 2);
+        try (OutputStream os = TarUtils.createCompressorOutputStream(mType, baos, mCompressionLevel, 1)) {
+            os.write(block, 0, length);
+        }
+        return baos.toByteArray();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+}
@@ -0,0 +1,217 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import aosp.libcore.util.HexEncoding;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.io.FileSystemManager;
+import io.github.muntashirakon.io.Path;
+
+/**
+ * Calculate the digests of independent files in parallel using a shared, bounded thread pool. Files backed by real files are
+ * read using a {@link FileChannel} into a large direct buffer, and the throughput for each file is logged. The digests
+ * are the same as the ones returned by {@link DigestUtils#getHexDigest(String, InputStream)}.
+ */
+public final class ParallelDigester {
+    public static final String TAG = ParallelDigester.class.getSimpleName();
+
+    private static final int BUFFER_SIZE = 1024 * 1024;  // 1 MiB
+
+    // One buffer per worker thread, released along with the thread
+    private static final ThreadLocal<ByteBuffer> sBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    // Threads are shared by all the calls and are kept alive for a while so that consecutive calls reuse them. The
+    // number of threads is bounded by the thread count in the settings.
+    @Nullable
+    private static ThreadPoolExecutor sExecutor;
+
+    @NonNull
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        int threadCount = MultithreadedExecutor.getThreadCount();
+        if (sExecutor == null) {
+            // Tasks are handed over directly instead of being queued, and are rejected when all the threads are busy
+            sExecutor = new ThreadPoolExecutor(0, threadCount, 30L, TimeUnit.SECONDS, new SynchronousQueue<>());
+        } else if (sExecutor.getMaximumPoolSize() != threadCount) {
+            sExecutor.setMaximumPoolSize(threadCount);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Same as {@link #getHexDigests(String, List, int)} with the number of threads set in the settings.
+     */
+    @WorkerThread
+    @NonNull
+    public static String[] getHexDigests(@DigestUtils.Algorithm String algo, @NonNull List<Path> files)
+            throws IOException {
+        return getHexDigests(algo, files, MultithreadedExecutor.getThreadCount());
+    }
+
+    /**
+     * Calculate the digests of the given files.
+     *
+     * @param threadCount Maximum number of threads including the calling thread. No other threads are used if there's
+     *                    only one file.
+     * @return Digests in the same order as the files
+     * @throws IOException If any of the files could not be read, or if the thread was interrupted, in which case an
+     *                     {@link InterruptedIOException} is thrown.
+     */
+    @WorkerThread
+    @NonNull
+    public static String[] getHexDigests(@DigestUtils.Algorithm String algo, @NonNull List<Path> files,
+                                         int threadCount) throws IOException {
+        String[] digests = new String[files.size()];
+        int workerCount = Math.min(threadCount, files.size());
+        if (workerCount <= 1) {
+            for (int i = 0; i < digests.length; ++i) {
+                digests[i] = getHexDigest(algo, files.get(i));
+            }
+            return digests;
+        }
+        // Each worker picks the next unprocessed file, which limits the number of threads used by this call. The
+        // calling thread is one of the workers, and it processes all the files by itself if no other threads are
+        // available, e.g. when the pool is saturated by the calls that led to this one.
+        AtomicInteger nextIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = getExecutor();
+        List<Future<?>> futures = new ArrayList<>(workerCount - 1);
+        try {
+            for (int i = 1; i < workerCount; ++i) {
+                try {
+                    futures.add(executor.submit(() -> {
+                        digestRemaining(algo, files, digests, nextIndex);
+                        return null;
+                    }));
+                } catch (RejectedExecutionException e) {
+                    break;
+                }
+            }
+            digestRemaining(algo, files, digests, nextIndex);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException("Interrupted while calculating digests.")
+                    .initCause(e);
+        } finally {
+            // Stop the remaining workers on failure
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return digests;
+    }
+
+    private static void digestRemaining(@DigestUtils.Algorithm String algo, @NonNull List<Path> files,
+                                        @NonNull String[] digests, @NonNull AtomicInteger nextIndex)
+            throws IOException {
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < digests.length) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+            digests[index] = getHexDigest(algo, files.get(index));
+        }
+    }
+
+    /**
+     * Calculate the digest of a single file on the calling thread.
+     */
+    @WorkerThread
+    @NonNull
+    public static String getHexDigest(@DigestUtils.Algorithm String algo, @NonNull Path file) throws IOException {
+        long startTime = SystemClock.elapsedRealtime();
+        String digest;
+        long size;
+        if (DigestUtils.CRC32.equals(algo)) {
+            // CRC32#update(ByteBuffer) is only available from API 26
+            try (InputStream is = file.openInputStream()) {
+                digest = DigestUtils.getHexDigest(algo, is);
+            }
+            size = file.length();
+        } else {
+            MessageDigest messageDigest;
+            try {
+                messageDigest = MessageDigest.getInstance(algo);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            size = update(messageDigest, file);
+            digest = HexEncoding.encodeToString(messageDigest.digest(), false /* lowercase */);
+        }
+        long elapsedTime = SystemClock.elapsedRealtime() - startTime;
+        Log.d(TAG, String.format(Locale.ROOT, "%s: %d bytes in %d ms (%.2f MiB/s)", file.getName(), size,
+                elapsedTime, elapsedTime == 0 ? 0 : (size * 1000.0 / elapsedTime) / (1024 * 1024)));
+        return digest;
+    }
+
+    private static long update(@NonNull MessageDigest messageDigest, @NonNull Path file) throws IOException {
+        FileChannel channel;
+        try {
+            channel = file.openFileChannel(FileSystemManager.MODE_READ_ONLY);
+        } catch (IOException e) {
+            // Not backed by a real file
+            channel = null;
+        }
+        long size = 0;
+        if (channel == null) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream is = file.openInputStream()) {
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    messageDigest.update(buffer, 0, read);
+                    size += read;
+                }
+            }
+            return size;
+        }
+        ByteBuffer buffer = sBuffer.get();
+        try (FileChannel fc = channel) {
+            int read;
+            while (true) {
+                buffer.clear();
+                read = fc.read(buffer);
+                if (read == -1) break;
+                buffer.flip();
+                messageDigest.update(buffer);
+                size += read;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,103 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A list with a fixed capacity. When the list is full, adding an element at the end evicts the first element. Adding,
+ * evicting and accessing elements by index are all done in constant time. This class is not thread-safe.
+ */
+public class RingBuffer<E> extends AbstractList<E> {
+    @NonNull
+    private final Object[] mElements;
+    // Index of the first element in mElements
+    private int mHead;
+    private int mSize;
+
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        mElements = new Object[capacity];
+    }
+
+    public int capacity() {
+        return mElements.length;
+    }
+
+    public boolean isFull() {
+        return mSize == mElements.length;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+        return (E) mElements[(mHead + index) % mElements.length];
+    }
+
+    @Override
+    public boolean add(E e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * Add the element at the end of the list.
+     *
+     * @return The evicted element if the list was full, {@code null} otherwise
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public E addLast(E e) {
+        ++modCount;
+        if (mSize < mElements.length) {
+            mElements[(mHead + mSize) % mElements.length] = e;
+            ++mSize;
+            return null;
+        }
+        E evicted = (E) mElements[mHead];
+        mElements[mHead] = e;
+        mHead = (mHead + 1) % mElements.length;
+        return evicted;
+    }
+
+    /**
+     * Remove the first element of the list.
+     *
+     * @throws NoSuchElementException If the list is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E removeFirst() {
+        if (mSize == 0) {
+            throw new NoSuchElementException();
+        }
+        ++modCount;
+        E first = (E) mElements[mHead];
+        mElements[mHead] = null;
+        mHead = (mHead + 1) % mElements.length;
+        --mSize;
+        return first;
+    }
+
+    @Override
+    public void clear() {
+        ++modCount;
+        Arrays.fill(mElements, null);
+        mHead = 0;
+        mSize = 0;
+    }
+}
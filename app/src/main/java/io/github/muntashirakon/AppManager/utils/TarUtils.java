@@ -10,6 +10,16 @@ import androidx.annotation.StringDef;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
+
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
@@ -18,6 +28,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -29,6 +40,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.List;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
@@ -41,7 +53,9 @@ public final class TarUtils {
 
     @StringDef(value = {
             TAR_GZIP,
-            TAR_BZIP2
+            TAR_BZIP2,
+            TAR_ZSTD,
+            TAR_LZ4,
     })
     @Retention(RetentionPolicy.SOURCE)
     public @interface TarType {
@@ -49,6 +63,13 @@ public final class TarUtils {
 
     public static final String TAR_GZIP = "z";
     public static final String TAR_BZIP2 = "j";
+    public static final String TAR_ZSTD = "zstd";
+    public static final String TAR_LZ4 = "lz4";
+
+    /**
+     * Use the default compression level of the compression method.
+     */
+    public static final int DEFAULT_COMPRESSION_LEVEL = -1;
 
     /**
      * Create a tar file using the given compression method and split it into multiple files based
@@ -70,24 +91,100 @@ public final class TarUtils {
                                     @NonNull String destFilePrefix, @Nullable String[] filters,
                                     @Nullable Long splitSize, @Nullable String[] exclude, boolean followLinks)
             throws IOException {
-        try (SplitOutputStream sos = new SplitOutputStream(dest, destFilePrefix, splitSize == null ? DEFAULT_SPLIT_SIZE : splitSize);
+        return create(type, source, dest, destFilePrefix, filters, splitSize, exclude, followLinks,
+                DEFAULT_COMPRESSION_LEVEL, 1);
+    }
+
+    /**
+     * Create a tar file using the given compression method and split it into multiple files based
+     * on the supplied split size.
+     *
+     * @param type             Compression type
+     * @param source           Source directory/file
+     * @param dest             Destination directory
+     * @param destFilePrefix   filename as a prefix (.0, .1, etc. are added at the end)
+     * @param filters          A list of mutually exclusive regex filters
+     * @param splitSize        Size of the split, {@link #DEFAULT_SPLIT_SIZE} will be used if null is supplied
+     * @param exclude          A list of mutually exclusive regex patterns to be excluded
+     * @param followLinks      Whether to follow the links
+     * @param compressionLevel Compression level, {@link #DEFAULT_COMPRESSION_LEVEL} to use the default level of the
+     *                         compression method
+     * @param threadCount      Number of threads used for compression. If more than one thread is used, the tar stream
+     *                         is compressed in independent blocks, and the result is a concatenation of compressed
+     *                         streams (e.g. gzip members or zstd frames).
+     * @return List of added files
+     */
+    @WorkerThread
+    @NonNull
+    public static List<Path> create(@NonNull @TarType String type, @NonNull Path source, @NonNull Path dest,
+                                    @NonNull String destFilePrefix, @Nullable String[] filters,
+                                    @Nullable Long splitSize, @Nullable String[] exclude, boolean followLinks,
+                                    int compressionLevel, int threadCount)
+            throws IOException {
+        return create(type, source, new SplitOutputStream(dest, destFilePrefix, splitSize == null ? DEFAULT_SPLIT_SIZE
+                : splitSize), filters, exclude, followLinks, compressionLevel, threadCount);
+    }
+
+    /**
+     * Create a tar file using the given compression method and write it to the given {@link SplitOutputStream}. This
+     * is useful when the splits have to be processed (e.g. encrypted) while they are being written.
+     *
+     * @param type             Compression type
+     * @param source           Source directory/file
+     * @param sos              Destination stream, closed when the tar file is written
+     * @param filters          A list of mutually exclusive regex filters
+     * @param exclude          A list of mutually exclusive regex patterns to be excluded
+     * @param followLinks      Whether to follow the links
+     * @param compressionLevel Compression level
+     * @param threadCount      Number of threads used for compression
+     * @return List of added files
+     */
+    @WorkerThread
+    @NonNull
+    public static List<Path> create(@NonNull @TarType String type, @NonNull Path source, @NonNull SplitOutputStream sos,
+                                    @Nullable String[] filters, @Nullable String[] exclude, boolean followLinks,
+                                    int compressionLevel, int threadCount)
+            throws IOException {
+        Path basePath = source.isDirectory() ? source : source.getParentFile();
+        if (basePath == null) {
+            basePath = Paths.get("/");
+        }
+        List<Path> files;
+        try {
+            files = Paths.getAll(basePath, source, filters, exclude, followLinks);
+        } catch (RuntimeException e) {
+            sos.close();
+            throw e;
+        }
+        return create(type, basePath, files, sos, followLinks, compressionLevel, threadCount);
+    }
+
+    /**
+     * Create a tar file containing only the given files using the given compression method and write it to the given
+     * {@link SplitOutputStream}. This is useful when the files have already been listed, e.g. in order to store only
+     * the modified files.
+     *
+     * @param type             Compression type
+     * @param basePath         The path in respect to which the files are stored
+     * @param files            Files and directories to be stored. Parents must appear before their children.
+     * @param sos              Destination stream, closed when the tar file is written
+     * @param followLinks      Whether to follow the links
+     * @param compressionLevel Compression level
+     * @param threadCount      Number of threads used for compression
+     * @return List of added files
+     */
+    @WorkerThread
+    @NonNull
+    public static List<Path> create(@NonNull @TarType String type, @NonNull Path basePath, @NonNull List<Path> files,
+                                    @NonNull SplitOutputStream sos, boolean followLinks, int compressionLevel,
+                                    int threadCount)
+            throws IOException {
+        try (SplitOutputStream ignore = sos;
              BufferedOutputStream bos = new BufferedOutputStream(sos)) {
-            OutputStream os;
-            if (TAR_GZIP.equals(type)) {
-                os = new GzipCompressorOutputStream(bos);
-            } else if (TAR_BZIP2.equals(type)) {
-                os = new BZip2CompressorOutputStream(bos);
-            } else {
-                throw new IllegalArgumentException("Invalid compression type: " + type);
-            }
+            OutputStream os = createCompressorOutputStream(type, bos, compressionLevel, threadCount);
             try (TarArchiveOutputStream tos = new TarArchiveOutputStream(os)) {
                 tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
                 tos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
-                Path basePath = source.isDirectory() ? source : source.getParentFile();
-                if (basePath == null) {
-                    basePath = Paths.get("/");
-                }
-                List<Path> files = Paths.getAll(basePath, source, filters, exclude, followLinks);
                 for (Path file : files) {
                     String relativePath = Paths.getRelativePath(file, basePath);
                     if (relativePath.equals("") || relativePath.equals("/")) continue;
@@ -132,6 +229,25 @@ public final class TarUtils {
                                @Nullable String[] filters, @Nullable String[] exclusions,
                                @Nullable String realDataAppPath)
             throws IOException {
+        extract(type, new SplitInputStream(sources), dest, filters, exclusions, realDataAppPath);
+    }
+
+    /**
+     * Extract a tar file compressed using the given compression method from the given stream. This is useful when the
+     * splits have to be processed (e.g. decrypted) while they are being read. The stream is read until the end, even
+     * after the end of the tar file, so that errors detected at the end of the stream are not missed.
+     *
+     * @param type       Compression type
+     * @param source     Source stream, closed when the tar file is extracted
+     * @param dest       Destination directory
+     * @param filters    A list of mutually exclusive regex filters
+     * @param exclusions A list of mutually exclusive regex patterns to be excluded
+     */
+    @WorkerThread
+    public static void extract(@NonNull @TarType String type, @NonNull InputStream source, @NonNull Path dest,
+                               @Nullable String[] filters, @Nullable String[] exclusions,
+                               @Nullable String realDataAppPath)
+            throws IOException {
         // Convert filters into patterns to reduce overheads
         Pattern[] filterPatterns;
         if (filters != null) {
@@ -148,16 +264,9 @@ public final class TarUtils {
             }
         } else exclusionPatterns = null;
         // Run extraction
-        try (SplitInputStream sis = new SplitInputStream(sources);
-             BufferedInputStream bis = new BufferedInputStream(sis)) {
-            InputStream is;
-            if (TAR_GZIP.equals(type)) {
-                is = new GzipCompressorInputStream(bis, true);
-            } else if (TAR_BZIP2.equals(type)) {
-                is = new BZip2CompressorInputStream(bis, true);
-            } else {
-                throw new IllegalArgumentException("Invalid compression type: " + type);
-            }
+        try (InputStream ignore = source;
+             BufferedInputStream bis = new BufferedInputStream(source)) {
+            InputStream is = createCompressorInputStream(type, bis);
             try (TarArchiveInputStream tis = new TarArchiveInputStream(is)) {
                 String realDestPath = dest.getRealFilePath();
                 TarArchiveEntry entry;
@@ -213,6 +322,11 @@ public final class TarUtils {
                         file.setLastModified(entry.getModTime().getTime());
                     }
                 }
+                // Read the rest, e.g. the padding at the end of the tar file
+                byte[] buffer = new byte[IoUtils.DEFAULT_BUFFER_SIZE];
+                //noinspection StatementWithEmptyBody
+                while (bis.read(buffer) != -1) {
+                }
             } catch (ErrnoException e) {
                 throw new IOException(e);
             } finally {
@@ -221,6 +335,100 @@ public final class TarUtils {
         }
     }
 
+    /**
+     * Get the minimum compression level supported by the given compression method.
+     */
+    public static int getMinCompressionLevel(@NonNull @TarType String type) {
+        // The minimum is the same for all the supported methods
+        return 1;
+    }
+
+    /**
+     * Get the maximum compression level supported by the given compression method.
+     */
+    public static int getMaxCompressionLevel(@NonNull @TarType String type) {
+        switch (type) {
+            case TAR_ZSTD:
+                return 19;
+            case TAR_LZ4:
+                // Maximum level of the LZ4 HC compressor
+                return 17;
+            case TAR_GZIP:
+                return Deflater.BEST_COMPRESSION;
+            case TAR_BZIP2:
+            default:
+                return BZip2CompressorOutputStream.MAX_BLOCKSIZE;
+        }
+    }
+
+    /**
+     * Get a stream that compresses everything written to it using the given compression method.
+     *
+     * @param compressionLevel Compression level, {@link #DEFAULT_COMPRESSION_LEVEL} to use the default level. Levels
+     *                         outside the supported range are clamped.
+     * @param threadCount      Number of threads used for compression
+     */
+    @NonNull
+    public static OutputStream createCompressorOutputStream(@NonNull @TarType String type, @NonNull OutputStream os,
+                                                            int compressionLevel, int threadCount)
+            throws IOException {
+        if (compressionLevel != DEFAULT_COMPRESSION_LEVEL) {
+            compressionLevel = Math.max(getMinCompressionLevel(type), Math.min(compressionLevel,
+                    getMaxCompressionLevel(type)));
+        }
+        if (threadCount > 1) {
+            return new ParallelCompressorOutputStream(os, type, compressionLevel, threadCount);
+        }
+        switch (type) {
+            case TAR_GZIP: {
+                GzipParameters parameters = new GzipParameters();
+                if (compressionLevel != DEFAULT_COMPRESSION_LEVEL) {
+                    parameters.setCompressionLevel(compressionLevel);
+                }
+                return new GzipCompressorOutputStream(os, parameters);
+            }
+            case TAR_BZIP2:
+                return new BZip2CompressorOutputStream(os, compressionLevel == DEFAULT_COMPRESSION_LEVEL
+                        ? BZip2CompressorOutputStream.MAX_BLOCKSIZE : compressionLevel);
+            case TAR_ZSTD:
+                return new ZstdOutputStream(os, compressionLevel == DEFAULT_COMPRESSION_LEVEL
+                        ? Zstd.defaultCompressionLevel() : compressionLevel);
+            case TAR_LZ4: {
+                // Levels above 1 use the high compression (HC) compressor
+                LZ4Compressor compressor = compressionLevel <= 1 ? LZ4Factory.fastestInstance().fastCompressor()
+                        : LZ4Factory.fastestInstance().highCompressor(compressionLevel);
+                return new LZ4FrameOutputStream(os, LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB, -1L, compressor,
+                        XXHashFactory.fastestInstance().hash32(), LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE,
+                        LZ4FrameOutputStream.FLG.Bits.CONTENT_CHECKSUM);
+            }
+            default:
+                throw new IllegalArgumentException("Invalid compression type: " + type);
+        }
+    }
+
+    /**
+     * Get a stream that decompresses the given stream using the given compression method. Concatenated streams
+     * (e.g. the ones created using multiple threads) are decompressed as a single stream.
+     */
+    @NonNull
+    public static InputStream createCompressorInputStream(@NonNull @TarType String type, @NonNull InputStream is)
+            throws IOException {
+        switch (type) {
+            case TAR_GZIP:
+                return new GzipCompressorInputStream(is, true);
+            case TAR_BZIP2:
+                return new BZip2CompressorInputStream(is, true);
+            case TAR_ZSTD:
+                // Reads all the frames by default
+                return new ZstdInputStream(is);
+            case TAR_LZ4:
+                // Reads all the frames by default
+                return new LZ4FrameInputStream(is);
+            default:
+                throw new IllegalArgumentException("Invalid compression type: " + type);
+        }
+    }
+
     @VisibleForTesting
     @NonNull
     static String getAbsolutePathToDataApp(@NonNull String brokenPath, @Nullable String realPath) {
@@ -17,6 +17,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -27,6 +29,8 @@ public final class IoUtils {
     public static final String TAG = IoUtils.class.getSimpleName();
 
     public static final int DEFAULT_BUFFER_SIZE = 1024 * 50;
+    private static final int MIN_BUFFER_SIZE = 1024 * 8;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
 
     /**
      * Get byte array from an InputStream most efficiently.
@@ -91,6 +95,39 @@ public final class IoUtils {
         }
     }
 
+    /**
+     * Copy a stream whose length is known in advance. If both streams are backed by file descriptors, the data is
+     * transferred by the kernel without copying it to the user space (Android 10+). Otherwise, the size of the
+     * buffer is chosen based on the length so that large files are copied with fewer system calls.
+     *
+     * @param length Number of bytes expected to be copied, or a negative number if unknown
+     */
+    public static long copy(@NonNull InputStream inputStream, @NonNull OutputStream outputStream, long length)
+            throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && inputStream instanceof FileInputStream
+                && outputStream instanceof FileOutputStream) {
+            // Uses sendfile/splice
+            return android.os.FileUtils.copy(inputStream, outputStream);
+        }
+        byte[] buffer = new byte[getBufferSize(length)];
+        long count = 0;
+        int n;
+        while ((n = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Get a buffer size suitable for copying a stream of the given length.
+     *
+     * @param length Length of the stream, or a negative number if unknown
+     */
+    public static int getBufferSize(long length) {
+        if (length < 0) return DEFAULT_BUFFER_SIZE;
+        return (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, length));
+    }
 
     @AnyThread
     public static void closeQuietly(@Nullable AutoCloseable closeable) {
@@ -131,6 +131,16 @@ public class SplitInputStream extends InputStream {
         return true;
     }
 
+    /**
+     * Open an input stream for the given split file. Every split is read until the end of its stream before the next
+     * one is opened. Subclasses may wrap the file stream, e.g. to decrypt or checksum a split while it is being read.
+     */
+    @WorkerThread
+    @NonNull
+    protected InputStream openInputStream(@NonNull Path file) throws IOException {
+        return file.openInputStream();
+    }
+
     @WorkerThread
     private synchronized int read0(byte[] b, int off, int len) throws IOException {
         int n = 0;
@@ -204,7 +214,7 @@ public class SplitInputStream extends InputStream {
                 return -1;
             } else if (currentIndex == -1) {
                 // Initialize a new stream
-                inputStreams.add(files.get(0).openInputStream());
+                inputStreams.add(openInputStream(files.get(0)));
                 ++currentIndex;
             }
             do {
@@ -212,7 +222,7 @@ public class SplitInputStream extends InputStream {
                 if (readCount <= 0) {
                     // This stream has been read completely, initialize new stream if available
                     if (currentIndex + 1 != files.size()) {
-                        inputStreams.add(files.get(currentIndex + 1).openInputStream());
+                        inputStreams.add(openInputStream(files.get(currentIndex + 1)));
                         ++currentIndex;
                     } else {
                         // Last stream reached
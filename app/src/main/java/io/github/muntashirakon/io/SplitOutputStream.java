@@ -20,6 +20,7 @@ public class SplitOutputStream extends OutputStream {
     private final long maxBytesPerFile;
     private final String baseName;
     private final Path basePath;
+    private boolean closed;
 
     public SplitOutputStream(@NonNull Path basePath, @NonNull String baseName) {
         this(basePath, baseName, MAX_BYTES_WRITTEN);
@@ -63,26 +64,55 @@ public class SplitOutputStream extends OutputStream {
     @WorkerThread
     @Override
     public void flush() throws IOException {
-        for (OutputStream stream : outputStreams) {
-            stream.flush();
+        if (!closed && currentIndex >= 0) {
+            outputStreams.get(currentIndex).flush();
         }
     }
 
     @WorkerThread
     @Override
     public void close() throws IOException {
-        for (OutputStream stream : outputStreams) {
-            stream.close();
+        if (closed) return;
+        closed = true;
+        // Previous streams are closed as soon as the next stream is opened
+        if (currentIndex >= 0) {
+            outputStreams.get(currentIndex).close();
         }
     }
 
+    /**
+     * Name of the split file at the given index.
+     */
+    @NonNull
+    protected String getFileName(@NonNull String baseName, int index) {
+        return baseName + "." + index;
+    }
+
+    /**
+     * Open an output stream for the given split file. The stream is closed as soon as the split is full or this
+     * stream is closed. Subclasses may wrap the file stream, e.g. to encrypt or checksum a split while it is being
+     * written.
+     */
+    @WorkerThread
+    @NonNull
+    protected OutputStream openOutputStream(@NonNull Path file) throws IOException {
+        return file.openOutputStream();
+    }
+
     @WorkerThread
     private void checkCurrentStream(int nextBytesSize) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
         if (bytesWritten + nextBytesSize > maxBytesPerFile) {
             // Need to create a new stream
+            if (currentIndex >= 0) {
+                // The current split is complete
+                outputStreams.get(currentIndex).close();
+            }
             Path newFile = getNextFile();
             files.add(newFile);
-            outputStreams.add(newFile.openOutputStream());
+            outputStreams.add(openOutputStream(newFile));
             ++currentIndex;
             bytesWritten = 0;
         }
@@ -90,6 +120,6 @@ public class SplitOutputStream extends OutputStream {
 
     @NonNull
     private Path getNextFile() throws IOException {
-        return basePath.createNewFile(baseName + "." + (currentIndex + 1), null);
+        return basePath.createNewFile(getFileName(baseName, currentIndex + 1), null);
     }
 }
@@ -0,0 +1,47 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.apk;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipFile;
+
+import io.github.muntashirakon.io.IoUtils;
+
+@RunWith(RobolectricTestRunner.class)
+public class ZipManifestReaderTest {
+    private final ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    public void readManifestTest() throws IOException {
+        assert classLoader != null;
+        String[] apks = new String[]{
+                "oandbackups/ademar.textlauncher/base.apk",
+                "oandbackups/org.billthefarmer.editor/base.apk",
+                "oandbackups/dnsfilter.android/base.apk",
+        };
+        for (String apk : apks) {
+            File apkFile = new File(classLoader.getResource(apk).getFile());
+            byte[] expected;
+            try (ZipFile zipFile = new ZipFile(apkFile);
+                 InputStream is = zipFile.getInputStream(zipFile.getEntry("AndroidManifest.xml"))) {
+                expected = IoUtils.readFully(is, -1, true);
+            }
+            assertArrayEquals(expected, ZipManifestReader.readEntry(apkFile, "AndroidManifest.xml"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readMissingEntryTest() throws IOException {
+        assert classLoader != null;
+        File apkFile = new File(classLoader.getResource("oandbackups/dnsfilter.android/base.apk").getFile());
+        ZipManifestReader.readEntry(apkFile, "NonExistent.xml");
+    }
+}
@@ -0,0 +1,111 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+@RunWith(RobolectricTestRunner.class)
+public class ChunkStoreTest {
+    private Path testRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        testRoot = Paths.get("/tmp").findOrCreateDirectory("chunk_store_test");
+    }
+
+    @After
+    public void tearDown() {
+        testRoot.delete();
+    }
+
+    @Test
+    public void testChunkBoundariesSurviveInsertion() throws IOException {
+        byte[] data = getTestData(8 * 1024 * 1024, 1);
+        // Insert a few bytes at the beginning
+        byte[] modifiedData = new byte[data.length + 100];
+        System.arraycopy(data, 0, modifiedData, 100, data.length);
+        Set<Integer> chunks = getChunkHashes(data);
+        Set<Integer> modifiedChunks = getChunkHashes(modifiedData);
+        assertTrue(chunks.size() > 2);
+        // Only the first chunk should differ
+        modifiedChunks.retainAll(chunks);
+        assertTrue(modifiedChunks.size() >= chunks.size() - 1);
+    }
+
+    @Test
+    public void testStoreAndRestore() throws IOException {
+        ChunkStore chunkStore = new ChunkStore(testRoot.findOrCreateDirectory(ChunkStore.CHUNKS_DIRECTORY));
+        byte[] data = getTestData(6 * 1024 * 1024, 2);
+        Path source = testRoot.findOrCreateFile("base.apk", null);
+        write(source, data);
+        ChunkStore.Entry entry = chunkStore.storeFile(source, "base.apk");
+        assertEquals(data.length, entry.size);
+        // Storing it again doesn't add any chunks
+        int chunkCount = countChunks();
+        chunkStore.storeFile(source, "base.apk");
+        assertEquals(chunkCount, countChunks());
+        // Index
+        Path indexFile = testRoot.findOrCreateFile(ChunkStore.CHUNK_INDEX_TSV, null);
+        ChunkStore.writeIndex(indexFile, Collections.singletonList(entry));
+        List<ChunkStore.Entry> entries = ChunkStore.readIndex(indexFile);
+        assertEquals(1, entries.size());
+        assertEquals(entry.chunks, entries.get(0).chunks);
+        // Restore
+        Path dest = testRoot.findOrCreateFile("restored.apk", null);
+        chunkStore.restoreFile(entries.get(0), dest, true);
+        assertArrayEquals(data, dest.getContentAsBinary());
+        chunkStore.verifyFile(entries.get(0));
+    }
+
+    private int countChunks() throws IOException {
+        int count = 0;
+        for (Path chunkDir : testRoot.findFile(ChunkStore.CHUNKS_DIRECTORY).listFiles()) {
+            count += chunkDir.listFiles().length;
+        }
+        return count;
+    }
+
+    private static Set<Integer> getChunkHashes(byte[] data) throws IOException {
+        List<Integer> hashes = new ArrayList<>();
+        ContentDefinedChunker.split(new ByteArrayInputStream(data), (buffer, length) -> {
+            byte[] chunk = new byte[length];
+            System.arraycopy(buffer, 0, chunk, 0, length);
+            hashes.add(Arrays.hashCode(chunk));
+        });
+        return new HashSet<>(hashes);
+    }
+
+    private static byte[] getTestData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static void write(Path file, byte[] data) throws IOException {
+        try (OutputStream os = file.openOutputStream()) {
+            os.write(data);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+@RunWith(RobolectricTestRunner.class)
+public class DataManifestTest {
+    private Path testRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        testRoot = Paths.get("/tmp").findOrCreateDirectory("manifest_test");
+        write(testRoot.findOrCreateFile("a.txt", null), "a");
+        write(testRoot.findOrCreateDirectory("shared_prefs").findOrCreateFile("b.xml", null), "b");
+    }
+
+    @After
+    public void tearDown() {
+        testRoot.delete();
+    }
+
+    @Test
+    public void testIncrementalChanges() throws IOException {
+        List<Path> modifiedFiles = new ArrayList<>();
+        DataManifest parent = DataManifest.build(testRoot, Paths.getAll(testRoot), DigestUtils.SHA_256, null,
+                modifiedFiles);
+        // Without a parent, everything is stored
+        List<String> allFiles = getFiles(modifiedFiles);
+        Collections.sort(allFiles);
+        assertEquals(Arrays.asList("a.txt", "shared_prefs/b.xml"), allFiles);
+        assertNotNull(parent.get("shared_prefs/b.xml"));
+
+        // Modify one file, touch another one, and add a new one
+        Path b = testRoot.findFile("shared_prefs").findFile("b.xml");
+        write(b, "bb");
+        Path a = testRoot.findFile("a.txt");
+        a.setLastModified(a.lastModified() - 10_000);
+        write(testRoot.findOrCreateFile("c.txt", null), "c");
+        modifiedFiles.clear();
+        DataManifest manifest = DataManifest.build(testRoot, Paths.getAll(testRoot), DigestUtils.SHA_256, parent,
+                modifiedFiles);
+        List<String> files = getFiles(modifiedFiles);
+        assertTrue(files.contains("shared_prefs/b.xml"));
+        assertTrue(files.contains("c.txt"));
+        // The content of a.txt is unchanged
+        assertFalse(files.contains("a.txt"));
+        // Three files and a directory
+        assertEquals(4, manifest.getPaths().size());
+        DataManifest.Entry dir = manifest.get("shared_prefs/");
+        assertNotNull(dir);
+        assertEquals(DataManifest.DIRECTORY_HASH, dir.hash);
+        assertTrue(manifest.containsFileOrDirectory("shared_prefs"));
+
+        // Deleted files are not listed
+        testRoot.findFile("c.txt").delete();
+        modifiedFiles.clear();
+        manifest = DataManifest.build(testRoot, Paths.getAll(testRoot), DigestUtils.SHA_256, manifest,
+                modifiedFiles);
+        assertFalse(manifest.contains("c.txt"));
+        assertTrue(getFiles(modifiedFiles).isEmpty());
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        DataManifest manifest = DataManifest.build(testRoot, Paths.getAll(testRoot), DigestUtils.SHA_256, null,
+                new ArrayList<>());
+        Path manifestFile = Paths.get("/tmp").findOrCreateFile(DataManifest.getManifestName(0), null);
+        try {
+            manifest.write(manifestFile);
+            DataManifest readManifest = DataManifest.read(manifestFile);
+            assertEquals(manifest.getPaths().size(), readManifest.getPaths().size());
+            for (String path : manifest.getPaths()) {
+                DataManifest.Entry expected = manifest.get(path);
+                DataManifest.Entry actual = readManifest.get(path);
+                assertNotNull(expected);
+                assertNotNull(actual);
+                assertEquals(expected.hash, actual.hash);
+                assertEquals(expected.size, actual.size);
+                assertEquals(expected.lastModified, actual.lastModified);
+            }
+        } finally {
+            manifestFile.delete();
+        }
+    }
+
+    private List<String> getFiles(List<Path> modifiedFiles) {
+        List<String> files = new ArrayList<>();
+        for (Path file : modifiedFiles) {
+            if (!file.isDirectory()) {
+                files.add(Paths.getRelativePath(file, testRoot));
+            }
+        }
+        return files;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        try (OutputStream os = file.openOutputStream()) {
+            os.write(content.getBytes());
+        }
+    }
+}
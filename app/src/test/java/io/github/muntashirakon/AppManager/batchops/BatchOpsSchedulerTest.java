@@ -0,0 +1,72 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.batchops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.muntashirakon.AppManager.types.UserPackagePair;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatchOpsSchedulerTest {
+    @Test
+    public void testLargestFirst() {
+        BatchOpsScheduler scheduler = new BatchOpsScheduler(1);
+        scheduler.add(new UserPackagePair("small", 0), 10);
+        scheduler.add(new UserPackagePair("large", 0), 1000);
+        scheduler.add(new UserPackagePair("unknown", 0), 0);
+        scheduler.add(new UserPackagePair("medium", 0), 100);
+        List<String> order = new ArrayList<>();
+        List<UserPackagePair> failed = scheduler.run(pair -> {
+            order.add(pair.getPackageName());
+            return !pair.getPackageName().equals("medium");
+        }, null);
+        assertEquals(Arrays.asList("large", "medium", "small", "unknown"), order);
+        assertEquals(1, failed.size());
+        assertEquals("medium", failed.get(0).getPackageName());
+        BatchOpsScheduler.Stats stats = scheduler.getStats();
+        assertEquals(4, stats.total);
+        assertEquals(3, stats.completed);
+        assertEquals(1, stats.failed);
+        assertEquals(0, stats.queued);
+        assertEquals(1110, stats.processedBytes);
+    }
+
+    @Test
+    public void testConcurrencyIsBounded() {
+        BatchOpsScheduler scheduler = new BatchOpsScheduler(2);
+        for (int i = 0; i < 8; ++i) {
+            scheduler.add(new UserPackagePair("pkg" + i, 0), i);
+        }
+        AtomicInteger maxRunning = new AtomicInteger();
+        // The listener is called from the worker threads where a failed assertion would be lost
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        scheduler.run(pair -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ignore) {
+            }
+            return true;
+        }, (stats, startedPair) -> {
+            maxRunning.accumulateAndGet(stats.running, Math::max);
+            int sum = stats.queued + stats.running + stats.completed + stats.failed;
+            if (sum != 8) {
+                failure.compareAndSet(null, new AssertionError("Expected 8 packages in the stats, found " + sum));
+            }
+        });
+        assertNull(failure.get());
+        assertTrue(maxRunning.get() <= 2);
+        assertEquals(8, scheduler.getStats().completed);
+    }
+}
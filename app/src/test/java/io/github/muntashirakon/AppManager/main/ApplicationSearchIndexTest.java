@@ -0,0 +1,90 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.main;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import io.github.muntashirakon.AppManager.misc.AdvancedSearchView;
+import io.github.muntashirakon.AppManager.utils.Utils;
+
+@RunWith(RobolectricTestRunner.class)
+public class ApplicationSearchIndexTest {
+    private static final String[][] APPS = new String[][]{
+            {"io.github.muntashirakon.AppManager", "App Manager"},
+            {"com.android.settings", "Settings"},
+            {"com.android.systemui", "System UI"},
+            {"org.mozilla.firefox", "Firefox"},
+            {"com.termux", "Termux"},
+            {"com.google.android.apps.maps", "Maps"},
+    };
+
+    @Test
+    public void searchMatchesLinearScanTest() {
+        List<ApplicationItem> items = getItems();
+        ApplicationSearchIndex index = new ApplicationSearchIndex();
+        index.addAll(items);
+        int[] types = new int[]{AdvancedSearchView.SEARCH_TYPE_CONTAINS, AdvancedSearchView.SEARCH_TYPE_PREFIX,
+                AdvancedSearchView.SEARCH_TYPE_SUFFIX};
+        for (String query : Arrays.asList("a", "am", "app", "android", "ui", "com.", "fox", "settings", "xyz")) {
+            for (int type : types) {
+                assertEquals(query + " " + type, linearSearch(items, query, type), index.search(query, type));
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("com.android.settings", "com.android.systemui")),
+                index.search("^com\\.android", AdvancedSearchView.SEARCH_TYPE_REGEX));
+        assertEquals(Collections.emptySet(), index.search("[", AdvancedSearchView.SEARCH_TYPE_REGEX));
+    }
+
+    @Test
+    public void updateAndRemoveTest() {
+        ApplicationSearchIndex index = new ApplicationSearchIndex();
+        index.addAll(getItems());
+        ApplicationItem item = new ApplicationItem();
+        item.packageName = "com.termux";
+        item.label = "Terminal";
+        index.put(item);
+        assertEquals(Collections.singleton("com.termux"), index.search("terminal", AdvancedSearchView.SEARCH_TYPE_CONTAINS));
+        assertEquals(Collections.emptySet(), index.search("termux", AdvancedSearchView.SEARCH_TYPE_PREFIX));
+        index.remove("com.termux");
+        assertEquals(Collections.emptySet(), index.search("term", AdvancedSearchView.SEARCH_TYPE_CONTAINS));
+    }
+
+    private static List<ApplicationItem> getItems() {
+        List<ApplicationItem> items = new ArrayList<>();
+        for (String[] app : APPS) {
+            ApplicationItem item = new ApplicationItem();
+            item.packageName = app[0];
+            item.label = app[1];
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static Set<String> linearSearch(List<ApplicationItem> items, String query, int type) {
+        Set<String> results = new HashSet<>();
+        for (ApplicationItem item : items) {
+            if (AdvancedSearchView.matches(query, item.packageName.toLowerCase(Locale.ROOT), type)) {
+                results.add(item.packageName);
+            } else if (type == AdvancedSearchView.SEARCH_TYPE_CONTAINS) {
+                if (Utils.containsOrHasInitials(query, item.label)) {
+                    results.add(item.packageName);
+                }
+            } else if (AdvancedSearchView.matches(query, item.label.toLowerCase(Locale.ROOT), type)) {
+                results.add(item.packageName);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,54 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.rules;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.muntashirakon.AppManager.rules.struct.AppOpRule;
+import io.github.muntashirakon.AppManager.rules.struct.BatteryOptimizationRule;
+import io.github.muntashirakon.AppManager.rules.struct.ComponentRule;
+import io.github.muntashirakon.AppManager.rules.struct.PermissionRule;
+import io.github.muntashirakon.AppManager.rules.struct.RuleEntry;
+import io.github.muntashirakon.AppManager.rules.struct.SsaidRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompiledRulesTest {
+    private static final String PACKAGE_NAME = "sample.package";
+
+    @Test
+    public void compileAndReadTest() {
+        List<RuleEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            entries.add(new ComponentRule(PACKAGE_NAME, PACKAGE_NAME + ".Component" + i,
+                    i % 2 == 0 ? RuleType.ACTIVITY : RuleType.RECEIVER, ComponentRule.COMPONENT_BLOCKED_IFW_DISABLE));
+        }
+        entries.add(new AppOpRule(PACKAGE_NAME, 10, 1));
+        entries.add(new PermissionRule(PACKAGE_NAME, "android.permission.CAMERA", false, 4));
+        entries.add(new BatteryOptimizationRule(PACKAGE_NAME, true));
+        entries.add(new SsaidRule(PACKAGE_NAME, "bc9948c6"));
+        byte[] compiledRules = CompiledRules.compile(entries, 1234L, 5678L);
+        List<RuleEntry> readEntries = CompiledRules.read(PACKAGE_NAME, ByteBuffer.wrap(compiledRules), 1234L, 5678L);
+        assertEquals(entries, readEntries);
+        for (int i = 0; i < entries.size(); ++i) {
+            assertEquals(entries.get(i).flattenToString(false), readEntries.get(i).flattenToString(false));
+        }
+    }
+
+    @Test
+    public void outdatedCompiledRulesTest() {
+        List<RuleEntry> entries = new ArrayList<>();
+        entries.add(new BatteryOptimizationRule(PACKAGE_NAME, true));
+        byte[] compiledRules = CompiledRules.compile(entries, 1234L, 5678L);
+        assertNull(CompiledRules.read(PACKAGE_NAME, ByteBuffer.wrap(compiledRules), 1235L, 5678L));
+        assertNull(CompiledRules.read(PACKAGE_NAME, ByteBuffer.wrap(compiledRules), 1234L, 5679L));
+    }
+}
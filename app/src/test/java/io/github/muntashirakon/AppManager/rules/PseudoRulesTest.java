@@ -8,6 +8,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.Collections;
 import java.util.List;
 
 import io.github.muntashirakon.AppManager.magisk.MagiskProcess;
@@ -24,6 +25,7 @@ import io.github.muntashirakon.AppManager.rules.struct.SsaidRule;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 
 @RunWith(RobolectricTestRunner.class)
 public class PseudoRulesTest {
@@ -217,6 +219,27 @@ public class PseudoRulesTest {
         assertEquals(new SsaidRule(PACKAGE_NAME, "bc9948c6"), ruleEntries.get(10));
     }
 
+    @Test
+    public void lookupAndOrderAfterReplacementTest() {
+        rules.setComponent(".a", RuleType.ACTIVITY, ComponentRule.COMPONENT_BLOCKED_IFW_DISABLE);
+        rules.setComponent(".b", RuleType.SERVICE, ComponentRule.COMPONENT_BLOCKED_IFW_DISABLE);
+        rules.setComponent(".c", RuleType.ACTIVITY, ComponentRule.COMPONENT_BLOCKED_IFW_DISABLE);
+        // Replacing an entry moves it to the end
+        rules.setComponent(".a", RuleType.ACTIVITY, ComponentRule.COMPONENT_TO_BE_DEFAULTED);
+        List<ComponentRule> componentRules = rules.getAllComponents();
+        assertEquals(3, componentRules.size());
+        assertEquals(".b", componentRules.get(0).name);
+        assertEquals(".c", componentRules.get(1).name);
+        assertEquals(".a", componentRules.get(2).name);
+        assertEquals(new ComponentRule(PACKAGE_NAME, ".a", RuleType.ACTIVITY,
+                ComponentRule.COMPONENT_TO_BE_DEFAULTED), rules.getEntry(".a", RuleType.ACTIVITY));
+        assertNull(rules.getEntry(".a", RuleType.SERVICE));
+        assertEquals(2, rules.getAll(Collections.singletonList(RuleType.ACTIVITY)).size());
+        rules.removeEntry(componentRules.get(1));
+        assertNull(rules.getEntry(".c", RuleType.ACTIVITY));
+        assertEquals(2, rules.entryCount());
+    }
+
     @After
     public void tearDown() {
         rules.setReadOnly();
@@ -0,0 +1,75 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.server.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class DataTransmissionTest {
+    private static final String TOKEN = "token";
+    private static final int REQUEST_COUNT = 8;
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            executor.submit(() -> {
+                Socket socket = serverSocket.accept();
+                List<Integer> requestIds = new ArrayList<>();
+                List<byte[]> requests = new ArrayList<>();
+                DataTransmission[] server = new DataTransmission[1];
+                // Respond only after all the requests have been received, and in the reverse order
+                server[0] = new DataTransmission(socket.getOutputStream(), socket.getInputStream(),
+                        (requestId, bytes) -> {
+                            requestIds.add(requestId);
+                            requests.add(bytes);
+                            if (requestIds.size() < REQUEST_COUNT) {
+                                return;
+                            }
+                            try {
+                                for (int i = REQUEST_COUNT - 1; i >= 0; --i) {
+                                    server[0].sendMessage(requestIds.get(i), requests.get(i));
+                                }
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+                server[0].shakeHands(TOKEN, DataTransmission.Role.Server);
+                server[0].handleReceive();
+                return null;
+            });
+            try (Socket socket = new Socket("127.0.0.1", serverSocket.getLocalPort())) {
+                DataTransmission client = new DataTransmission(socket.getOutputStream(), socket.getInputStream(),
+                        false);
+                client.shakeHands(TOKEN, DataTransmission.Role.Client);
+                assertTrue(client.isMultiplexed());
+                List<Future<byte[]>> responses = new ArrayList<>();
+                for (int i = 0; i < REQUEST_COUNT; ++i) {
+                    byte[] request = ("request " + i).getBytes();
+                    responses.add(executor.submit(() -> client.sendAndReceiveMessage(request)));
+                }
+                for (int i = 0; i < REQUEST_COUNT; ++i) {
+                    assertEquals("request " + i, new String(responses.get(i).get(10, TimeUnit.SECONDS)));
+                }
+                client.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
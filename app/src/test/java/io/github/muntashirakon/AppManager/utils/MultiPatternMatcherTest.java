@@ -0,0 +1,75 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+public class MultiPatternMatcherTest {
+    private static final String[] SIGNATURES = new String[]{
+            "com.google.firebase.analytics.",
+            "com.google.firebase.",
+            "com.facebook.ads",
+            ".facebook.",
+            "io.fabric.",
+    };
+
+    @Test
+    public void testFindAll() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(SIGNATURES);
+        assertArrayEquals(new int[]{0, 1}, matcher.findAll("com.google.firebase.analytics.FirebaseAnalytics"));
+        assertArrayEquals(new int[]{2, 3}, matcher.findAll("com.facebook.ads.AdView"));
+        assertArrayEquals(new int[]{3}, matcher.findAll("com.facebook.login.LoginManager"));
+        assertArrayEquals(new int[0], matcher.findAll("io.github.muntashirakon.AppManager.MainActivity"));
+        assertTrue(matcher.containsAny("x.io.fabric.sdk.Fabric"));
+        assertFalse(matcher.containsAny("io.fabricated.Class"));
+    }
+
+    @Test
+    public void testMatchesContains() {
+        Random random = new Random(3);
+        String alphabet = "ab.c";
+        for (int round = 0; round < 200; ++round) {
+            String[] patterns = new String[1 + random.nextInt(15)];
+            for (int i = 0; i < patterns.length; ++i) {
+                patterns[i] = randomString(random, alphabet, 1 + random.nextInt(4));
+            }
+            MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+            for (int j = 0; j < 20; ++j) {
+                // Include characters absent in the patterns
+                String text = randomString(random, alphabet + "xy", random.nextInt(16));
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < patterns.length; ++i) {
+                    if (text.contains(patterns[i])) {
+                        expected.add(i);
+                    }
+                }
+                int[] matches = matcher.findAll(text);
+                assertEquals(expected.size(), matches.length);
+                for (int i = 0; i < matches.length; ++i) {
+                    assertEquals((int) expected.get(i), matches[i]);
+                }
+                assertEquals(!expected.isEmpty(), matcher.containsAny(text));
+            }
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
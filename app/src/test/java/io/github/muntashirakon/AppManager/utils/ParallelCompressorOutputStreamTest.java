@@ -0,0 +1,100 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import androidx.annotation.NonNull;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import io.github.muntashirakon.io.IoUtils;
+
+@RunWith(RobolectricTestRunner.class)
+public class ParallelCompressorOutputStreamTest {
+    @Test
+    public void testGzipMultipleBlocks() throws IOException {
+        byte[] data = getTestData(ParallelCompressorOutputStream.GZIP_BLOCK_SIZE * 3 + 1234);
+        byte[] compressed = compress(TarUtils.TAR_GZIP, data, 4);
+        try (InputStream is = new GzipCompressorInputStream(new ByteArrayInputStream(compressed), true)) {
+            assertArrayEquals(data, IoUtils.readFully(is, -1, true));
+        }
+    }
+
+    @Test
+    public void testBzip2MultipleBlocks() throws IOException {
+        byte[] data = getTestData(ParallelCompressorOutputStream.BZIP2_BLOCK_SIZE * 2 + 1234);
+        byte[] compressed = compress(TarUtils.TAR_BZIP2, data, 3);
+        try (InputStream is = new BZip2CompressorInputStream(new ByteArrayInputStream(compressed), true)) {
+            assertArrayEquals(data, IoUtils.readFully(is, -1, true));
+        }
+    }
+
+    @Test
+    public void testZstdMultipleBlocks() throws IOException {
+        byte[] data = getTestData(ParallelCompressorOutputStream.FRAME_BLOCK_SIZE * 2 + 1234);
+        byte[] compressed = compress(TarUtils.TAR_ZSTD, data, 3);
+        try (InputStream is = TarUtils.createCompressorInputStream(TarUtils.TAR_ZSTD,
+                new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, IoUtils.readFully(is, -1, true));
+        }
+    }
+
+    @Test
+    public void testLz4MultipleBlocks() throws IOException {
+        byte[] data = getTestData(ParallelCompressorOutputStream.FRAME_BLOCK_SIZE * 2 + 1234);
+        byte[] compressed = compress(TarUtils.TAR_LZ4, data, 3);
+        try (InputStream is = TarUtils.createCompressorInputStream(TarUtils.TAR_LZ4,
+                new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, IoUtils.readFully(is, -1, true));
+        }
+    }
+
+    @Test
+    public void testGzipSingleThreadSmallInput() throws IOException {
+        byte[] data = getTestData(100);
+        byte[] compressed = compress(TarUtils.TAR_GZIP, data, 1);
+        try (InputStream is = new GzipCompressorInputStream(new ByteArrayInputStream(compressed), true)) {
+            assertArrayEquals(data, IoUtils.readFully(is, -1, true));
+        }
+    }
+
+    @NonNull
+    private static byte[] compress(@NonNull @TarUtils.TarType String type, @NonNull byte[] data, int threadCount)
+            throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream os = new ParallelCompressorOutputStream(baos, type, TarUtils.DEFAULT_COMPRESSION_LEVEL,
+                threadCount)) {
+            // Write in uneven chunks so that the chunks cross the block boundaries
+            int off = 0;
+            while (off < data.length) {
+                int len = Math.min(7919, data.length - off);
+                os.write(data, off, len);
+                off += len;
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    @NonNull
+    private static byte[] getTestData(int size) {
+        // Compressible, but not trivially so
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,69 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+@RunWith(RobolectricTestRunner.class)
+public class ParallelDigesterTest {
+    private Path testRoot;
+    private final List<Path> files = new ArrayList<>();
+    private final List<byte[]> contents = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        testRoot = Paths.get("/tmp").findOrCreateDirectory("parallel_digester_test");
+        Random random = new Random(7);
+        // Include files larger than the buffer
+        int[] sizes = new int[]{0, 1, 4096, 1024 * 1024 + 17, 3 * 1024 * 1024};
+        for (int i = 0; i < sizes.length; ++i) {
+            byte[] data = new byte[sizes[i]];
+            random.nextBytes(data);
+            Path file = testRoot.findOrCreateFile("split" + i + ".tar.gz", null);
+            try (OutputStream os = file.openOutputStream()) {
+                os.write(data);
+            }
+            files.add(file);
+            contents.add(data);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        testRoot.delete();
+    }
+
+    @Test
+    public void testDigestsMatchSequentialDigests() throws IOException {
+        for (String algo : new String[]{DigestUtils.SHA_256, DigestUtils.CRC32}) {
+            String[] digests = ParallelDigester.getHexDigests(algo, files, 3);
+            assertEquals(files.size(), digests.length);
+            for (int i = 0; i < digests.length; ++i) {
+                assertEquals(DigestUtils.getHexDigest(algo, new ByteArrayInputStream(contents.get(i))), digests[i]);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingFile() throws IOException {
+        List<Path> paths = new ArrayList<>(files);
+        paths.add(Paths.get("/tmp/parallel_digester_test/missing"));
+        ParallelDigester.getHexDigests(DigestUtils.SHA_256, paths, 2);
+    }
+}
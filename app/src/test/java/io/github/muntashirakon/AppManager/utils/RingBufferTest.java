@@ -0,0 +1,55 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class RingBufferTest {
+    @Test
+    public void evictionTest() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        assertNull(buffer.addLast(1));
+        assertNull(buffer.addLast(2));
+        assertNull(buffer.addLast(3));
+        assertTrue(buffer.isFull());
+        assertEquals(1, (int) buffer.addLast(4));
+        assertEquals(2, (int) buffer.addLast(5));
+        assertEquals(Arrays.asList(3, 4, 5), new ArrayList<>(buffer));
+        assertEquals(3, (int) buffer.removeFirst());
+        assertNull(buffer.addLast(6));
+        assertEquals(Arrays.asList(4, 5, 6), buffer.subList(0, 3));
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertNull(buffer.addLast(7));
+        assertEquals(7, (int) buffer.get(0));
+    }
+
+    @Test
+    public void matchesListTest() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(100);
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            buffer.add(i);
+            list.add(i);
+            if (list.size() > 100) {
+                list.remove(0);
+            }
+            if (i % 7 == 0) {
+                buffer.removeFirst();
+                list.remove(0);
+            }
+        }
+        assertEquals(list, buffer);
+    }
+}
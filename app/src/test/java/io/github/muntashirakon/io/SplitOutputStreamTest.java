@@ -56,7 +56,7 @@ public class SplitOutputStreamTest {
     }
 
     @NonNull
-    private List<String> getExpectedHashes() {
+    private List<String> getExpectedHashes() throws IOException {
         List<String> expectedHashes = new ArrayList<>();
         List<File> fileList = new ArrayList<>();
         assert classLoader != null;
@@ -75,7 +75,7 @@ public class SplitOutputStreamTest {
     }
 
     @NonNull
-    private List<String> getActualHashes() throws FileNotFoundException {
+    private List<String> getActualHashes() throws IOException {
         List<String> actualHashes = new ArrayList<>();
         List<File> fileList = new ArrayList<>();
         fileList.add(new File("/tmp/AppManager_v2.5.22.apks.0"));
@@ -4,6 +4,7 @@ package io.github.muntashirakon.io;
 
 import android.annotation.SuppressLint;
 import android.os.Build;
+import android.os.SharedMemory;
 import android.system.ErrnoException;
 import android.system.Int64Ref;
 import android.system.Os;
@@ -11,6 +12,8 @@ import android.system.OsConstants;
 import android.system.StructStat;
 import android.util.MutableLong;
 
+import androidx.annotation.RequiresApi;
+
 import java.io.Closeable;
 import java.io.FileDescriptor;
 import java.io.IOException;
@@ -31,6 +34,9 @@ class FileHolder implements Closeable {
 
     private ByteBuffer buf;
     private StructStat st;
+    // Shared memory attached by the client, only available in API 27+
+    private Object sharedMemory;
+    private ByteBuffer sharedBuf;
 
     private ByteBuffer getBuf() {
         if (buf == null)
@@ -47,6 +53,12 @@ class FileHolder implements Closeable {
 
     @Override
     public void close() {
+        if (sharedMemory != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            SharedMemory.unmap(sharedBuf);
+            ((SharedMemory) sharedMemory).close();
+            sharedMemory = null;
+            sharedBuf = null;
+        }
         if (fd != null) {
             try {
                 Os.close(fd);
@@ -75,6 +87,65 @@ class FileHolder implements Closeable {
             throw new ClosedChannelException();
     }
 
+    @RequiresApi(Build.VERSION_CODES.O_MR1)
+    void attachSharedMemory(SharedMemory memory) throws ErrnoException {
+        ByteBuffer buf = memory.mapReadWrite();
+        if (sharedMemory != null) {
+            SharedMemory.unmap(sharedBuf);
+            ((SharedMemory) sharedMemory).close();
+        }
+        sharedMemory = memory;
+        sharedBuf = buf;
+    }
+
+    private ByteBuffer getSharedBuf(int len) throws IOException {
+        if (sharedBuf == null)
+            throw new IOException("Shared memory is not attached");
+        if (len < 0 || len > sharedBuf.capacity())
+            throw new IllegalArgumentException("Invalid length " + len);
+        ByteBuffer buf = sharedBuf.duplicate();
+        buf.clear();
+        buf.limit(len);
+        return buf;
+    }
+
+    /**
+     * Read up to len bytes into the beginning of the shared memory. Unlike a pipe, the shared memory can hold all the
+     * bytes, and therefore, the read is only cut short at the end of the file.
+     */
+    int fdToShared(int len, long offset) throws ErrnoException, IOException {
+        if (fd == null)
+            throw new ClosedChannelException();
+        ByteBuffer buf = getSharedBuf(len);
+        while (buf.hasRemaining()) {
+            int sz;
+            if (offset < 0) {
+                sz = Os.read(fd, buf);
+            } else {
+                sz = Os.pread(fd, buf, offset + buf.position());
+            }
+            if (sz <= 0)
+                break;
+        }
+        return buf.position();
+    }
+
+    /**
+     * Write exactly len bytes from the beginning of the shared memory.
+     */
+    void sharedToFd(int len, long offset) throws ErrnoException, IOException {
+        if (fd == null)
+            throw new ClosedChannelException();
+        ByteBuffer buf = getSharedBuf(len);
+        while (buf.hasRemaining()) {
+            if (offset < 0) {
+                Os.write(fd, buf);
+            } else {
+                Os.pwrite(fd, buf, offset + buf.position());
+            }
+        }
+    }
+
     @SuppressLint("NewApi")
     int fdToPipe(int len, long offset) throws ErrnoException, IOException {
         if (fd == null || write == null)
@@ -0,0 +1,171 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.io;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * Attributes of the children of a directory, fetched in a single transaction by
+ * {@link IFileSystemService#listWithAttributes(String, int, int)}. Large directories are split into pages of at most
+ * {@link #MAX_PAGE_SIZE} children so that a page always fits in a Binder transaction.
+ */
+class FileStatList implements Parcelable {
+    /**
+     * Type, length and last modification time, as returned by {@link File#isFile()}, {@link File#isDirectory()},
+     * {@link File#length()} and {@link File#lastModified()}.
+     */
+    static final int ATTR_BASIC = 1;
+    /**
+     * Mode, UID and GID of the file itself (not the target of a symbolic link)
+     */
+    static final int ATTR_LSTAT = 1 << 1;
+    static final int ATTR_ALL = ATTR_BASIC | ATTR_LSTAT;
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    static final int FLAG_FILE = 1;
+    static final int FLAG_DIRECTORY = 1 << 1;
+    /**
+     * Mode, UID and GID are valid, i.e. lstat has succeeded
+     */
+    static final int FLAG_LSTAT = 1 << 2;
+
+    static final Creator<FileStatList> CREATOR = new Creator<FileStatList>() {
+        @Override
+        public FileStatList createFromParcel(Parcel in) {
+            return new FileStatList(in);
+        }
+
+        @Override
+        public FileStatList[] newArray(int size) {
+            return new FileStatList[size];
+        }
+    };
+
+    /**
+     * List a page of the children of the given directory along with the requested attributes.
+     *
+     * @param mask   Attributes to fetch, a combination of {@link #ATTR_BASIC} and {@link #ATTR_LSTAT}
+     * @param offset Index of the first child to include
+     */
+    @NonNull
+    static FileStatList list(@NonNull File dir, int mask, int offset) {
+        String[] names = dir.list();
+        if (names == null) {
+            return new FileStatList(mask, -1, 0);
+        }
+        int count = Math.max(0, Math.min(MAX_PAGE_SIZE, names.length - offset));
+        FileStatList list = new FileStatList(mask, names.length, count);
+        for (int i = 0; i < count; ++i) {
+            String name = names[offset + i];
+            File child = new File(dir, name);
+            int flags = 0;
+            list.names[i] = name;
+            if ((mask & ATTR_BASIC) != 0) {
+                if (child.isFile()) {
+                    flags |= FLAG_FILE;
+                } else if (child.isDirectory()) {
+                    flags |= FLAG_DIRECTORY;
+                }
+                list.lengths[i] = child.length();
+                list.lastModifiedTimes[i] = child.lastModified();
+            }
+            if ((mask & ATTR_LSTAT) != 0) {
+                try {
+                    StructStat stat = Os.lstat(child.getPath());
+                    list.modes[i] = stat.st_mode;
+                    list.uids[i] = stat.st_uid;
+                    list.gids[i] = stat.st_gid;
+                    flags |= FLAG_LSTAT;
+                } catch (ErrnoException ignore) {
+                }
+            }
+            list.flags[i] = flags;
+        }
+        return list;
+    }
+
+    final int mask;
+    /**
+     * Total number of children in the directory, {@code -1} if the directory could not be listed
+     */
+    final int total;
+    @NonNull
+    final String[] names;
+    @NonNull
+    final int[] flags;
+    @NonNull
+    final long[] lengths;
+    @NonNull
+    final long[] lastModifiedTimes;
+    @NonNull
+    final int[] modes;
+    @NonNull
+    final int[] uids;
+    @NonNull
+    final int[] gids;
+
+    private FileStatList(int mask, int total, int count) {
+        this.mask = mask;
+        this.total = total;
+        names = new String[count];
+        flags = new int[count];
+        lengths = new long[count];
+        lastModifiedTimes = new long[count];
+        modes = new int[count];
+        uids = new int[count];
+        gids = new int[count];
+    }
+
+    private FileStatList(@NonNull Parcel in) {
+        mask = in.readInt();
+        total = in.readInt();
+        names = in.createStringArray();
+        flags = in.createIntArray();
+        lengths = in.createLongArray();
+        lastModifiedTimes = in.createLongArray();
+        modes = in.createIntArray();
+        uids = in.createIntArray();
+        gids = in.createIntArray();
+    }
+
+    /**
+     * Number of children in this page
+     */
+    int size() {
+        return names.length;
+    }
+
+    boolean has(int index, int attr) {
+        if ((mask & attr) == 0) {
+            return false;
+        }
+        return attr != ATTR_LSTAT || (flags[index] & FLAG_LSTAT) != 0;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        dest.writeInt(mask);
+        dest.writeInt(total);
+        dest.writeStringArray(names);
+        dest.writeIntArray(this.flags);
+        dest.writeLongArray(lengths);
+        dest.writeLongArray(lastModifiedTimes);
+        dest.writeIntArray(modes);
+        dest.writeIntArray(uids);
+        dest.writeIntArray(gids);
+    }
+}
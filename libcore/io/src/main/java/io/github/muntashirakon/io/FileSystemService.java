@@ -14,6 +14,7 @@ import static android.system.OsConstants.SEEK_SET;
 
 import android.annotation.SuppressLint;
 import android.os.Binder;
+import android.os.Build;
 import android.os.IBinder;
 import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
@@ -129,6 +130,11 @@ class FileSystemService extends IFileSystemService.Stub {
         return mCache.get(path).list();
     }
 
+    @Override
+    public FileStatList listWithAttributes(String path, int mask, int offset) {
+        return FileStatList.list(mCache.get(path), mask, offset);
+    }
+
     @Override
     public boolean mkdir(String path) {
         return mCache.get(path).mkdir();
@@ -464,4 +470,56 @@ class FileSystemService extends IFileSystemService.Stub {
         }
         return values;
     }
+
+    // Shared memory APIs
+
+    @Override
+    public ParcelValues attachSharedMemory(int handle, ParcelValues memory) {
+        ParcelValues values = new ParcelValues();
+        values.add(null);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1) {
+            values.set(0, new UnsupportedOperationException("Shared memory requires API 27"));
+            return values;
+        }
+        try {
+            final FileHolder h = openFiles.get(handle);
+            synchronized (h) {
+                h.ensureOpen();
+                h.attachSharedMemory(memory.getTyped(0));
+            }
+        } catch (IOException | ErrnoException e) {
+            values.set(0, e);
+        }
+        return values;
+    }
+
+    @Override
+    public ParcelValues preadShared(int handle, int len, long offset) {
+        ParcelValues values = new ParcelValues();
+        values.add(null);
+        try {
+            final FileHolder h = openFiles.get(handle);
+            synchronized (h) {
+                values.add(h.fdToShared(len, offset));
+            }
+        } catch (IOException | ErrnoException | IllegalArgumentException e) {
+            values.set(0, e);
+        }
+        return values;
+    }
+
+    @Override
+    public ParcelValues pwriteShared(int handle, int len, long offset) {
+        ParcelValues values = new ParcelValues();
+        values.add(null);
+        try {
+            final FileHolder h = openFiles.get(handle);
+            synchronized (h) {
+                h.sharedToFd(len, offset);
+            }
+        } catch (IOException | ErrnoException | IllegalArgumentException e) {
+            values.set(0, e);
+        }
+        return values;
+    }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ package io.github.muntashirakon.io;
 
 import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.system.ErrnoException;
 import android.system.OsConstants;
 
@@ -14,13 +15,25 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 // Copyright 2022 John "topjohnwu" Wu
 // Copyright 2022 Muntashir Al-Islam
 class RemoteFile extends FileImpl<RemoteFile> {
+    /**
+     * Attributes fetched along with the listing of the parent are trusted for this long. This is enough for displaying
+     * and sorting a directory right after listing it without any further transactions.
+     */
+    private static final long STATS_TTL_MILLIS = 5000;
 
     private final IFileSystemService fs;
 
+    @Nullable
+    private FileStatList stats;
+    private int statsIndex;
+    private long statsTime;
+
     RemoteFile(IFileSystemService f, String path) {
         super(path);
         fs = f;
@@ -31,6 +44,34 @@ class RemoteFile extends FileImpl<RemoteFile> {
         fs = f;
     }
 
+    private RemoteFile(IFileSystemService f, String parent, @NonNull FileStatList stats, int index, long time) {
+        super(parent, stats.names[index]);
+        fs = f;
+        this.stats = stats;
+        statsIndex = index;
+        statsTime = time;
+    }
+
+    /**
+     * @return The cached attributes if they contain the given attribute and have not expired, {@code null} otherwise
+     */
+    @Nullable
+    private FileStatList getStats(int attr) {
+        FileStatList stats = this.stats;
+        if (stats == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - statsTime > STATS_TTL_MILLIS) {
+            this.stats = null;
+            return null;
+        }
+        return stats.has(statsIndex, attr) ? stats : null;
+    }
+
+    private void invalidateStats() {
+        stats = null;
+    }
+
     @Override
     protected RemoteFile create(String path) {
         return new RemoteFile(fs, path);
@@ -87,6 +128,10 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean isDirectory() {
+        FileStatList stats = getStats(FileStatList.ATTR_BASIC);
+        if (stats != null) {
+            return (stats.flags[statsIndex] & FileStatList.FLAG_DIRECTORY) != 0;
+        }
         try {
             return fs.isDirectory(getPath());
         } catch (RemoteException e) {
@@ -96,6 +141,10 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean isFile() {
+        FileStatList stats = getStats(FileStatList.ATTR_BASIC);
+        if (stats != null) {
+            return (stats.flags[statsIndex] & FileStatList.FLAG_FILE) != 0;
+        }
         try {
             return fs.isFile(getPath());
         } catch (RemoteException e) {
@@ -105,6 +154,10 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public int getMode() throws ErrnoException {
+        FileStatList stats = getStats(FileStatList.ATTR_LSTAT);
+        if (stats != null) {
+            return stats.modes[statsIndex];
+        }
         try {
             return FileUtils.tryErrnoAndGet(fs.getMode(getPath()));
         } catch (RemoteException e) {
@@ -114,6 +167,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean setMode(int mode) throws ErrnoException {
+        invalidateStats();
         try {
             FileUtils.checkErrnoException(fs.setMode(getPath(), mode));
             return true;
@@ -124,6 +178,10 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public UidGidPair getUidGid() throws ErrnoException {
+        FileStatList stats = getStats(FileStatList.ATTR_LSTAT);
+        if (stats != null) {
+            return new UidGidPair(stats.uids[statsIndex], stats.gids[statsIndex]);
+        }
         try {
             ParcelValues values = fs.getUidGid(getPath());
             FileUtils.checkErrnoException(values);
@@ -135,6 +193,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean setUidGid(int uid, int gid) throws ErrnoException {
+        invalidateStats();
         try {
             FileUtils.checkErrnoException(fs.setUidGid(getPath(), uid, gid));
             return true;
@@ -227,6 +286,10 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public long lastModified() {
+        FileStatList stats = getStats(FileStatList.ATTR_BASIC);
+        if (stats != null) {
+            return stats.lastModifiedTimes[statsIndex];
+        }
         try {
             return fs.lastModified(getPath());
         } catch (RemoteException e) {
@@ -254,6 +317,10 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public long length() {
+        FileStatList stats = getStats(FileStatList.ATTR_BASIC);
+        if (stats != null) {
+            return stats.lengths[statsIndex];
+        }
         try {
             return fs.length(getPath());
         } catch (RemoteException e) {
@@ -263,6 +330,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean createNewFile() throws IOException {
+        invalidateStats();
         try {
             return FileUtils.tryAndGet(fs.createNewFile(getPath()));
         } catch (RemoteException e) {
@@ -272,6 +340,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean createNewLink(String existing) throws IOException {
+        invalidateStats();
         try {
             return FileUtils.tryAndGet(fs.createLink(getPath(), existing, false));
         } catch (RemoteException e) {
@@ -281,6 +350,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean createNewSymlink(String target) throws IOException {
+        invalidateStats();
         try {
             return FileUtils.tryAndGet(fs.createLink(getPath(), target, true));
         } catch (RemoteException e) {
@@ -290,6 +360,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean delete() {
+        invalidateStats();
         try {
             return fs.delete(getPath());
         } catch (RemoteException e) {
@@ -311,8 +382,37 @@ class RemoteFile extends FileImpl<RemoteFile> {
         }
     }
 
+    /**
+     * List the children along with their attributes in as few transactions as possible. The attributes are cached by
+     * the children for a short while.
+     */
+    @Nullable
+    @Override
+    public RemoteFile[] listFiles() {
+        try {
+            List<RemoteFile> files = new ArrayList<>();
+            int offset = 0;
+            FileStatList stats;
+            do {
+                stats = fs.listWithAttributes(getPath(), FileStatList.ATTR_ALL, offset);
+                if (stats.total < 0) {
+                    return null;
+                }
+                long time = SystemClock.elapsedRealtime();
+                for (int i = 0; i < stats.size(); ++i) {
+                    files.add(new RemoteFile(fs, getPath(), stats, i, time));
+                }
+                offset += stats.size();
+            } while (stats.size() > 0 && offset < stats.total);
+            return files.toArray(createArray(0));
+        } catch (RemoteException e) {
+            return null;
+        }
+    }
+
     @Override
     public boolean mkdir() {
+        invalidateStats();
         try {
             return fs.mkdir(getPath());
         } catch (RemoteException e) {
@@ -322,6 +422,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean mkdirs() {
+        invalidateStats();
         try {
             return fs.mkdirs(getPath());
         } catch (RemoteException e) {
@@ -331,6 +432,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean renameTo(@NonNull File dest) {
+        invalidateStats();
         try {
             return fs.renameTo(getPath(), dest.getAbsolutePath());
         } catch (RemoteException e) {
@@ -340,6 +442,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean setLastModified(long time) {
+        invalidateStats();
         try {
             return fs.setLastModified(getPath(), time);
         } catch (RemoteException e) {
@@ -349,6 +452,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean setReadOnly() {
+        invalidateStats();
         try {
             return fs.setReadOnly(getPath());
         } catch (RemoteException e) {
@@ -358,6 +462,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean setWritable(boolean writable, boolean ownerOnly) {
+        invalidateStats();
         try {
             return fs.setWritable(getPath(), writable, ownerOnly);
         } catch (RemoteException e) {
@@ -367,6 +472,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean setReadable(boolean readable, boolean ownerOnly) {
+        invalidateStats();
         try {
             return fs.setReadable(getPath(), readable, ownerOnly);
         } catch (RemoteException e) {
@@ -376,6 +482,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
 
     @Override
     public boolean setExecutable(boolean executable, boolean ownerOnly) {
+        invalidateStats();
         try {
             return fs.setExecutable(getPath(), executable, ownerOnly);
         } catch (RemoteException e) {
@@ -428,6 +535,7 @@ class RemoteFile extends FileImpl<RemoteFile> {
     @NonNull
     @Override
     public FileOutputStream newOutputStream(boolean append) throws IOException {
+        invalidateStats();
         ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
         try {
             FileUtils.checkException(fs.openWriteStream(getPath(), pipe[0], append));
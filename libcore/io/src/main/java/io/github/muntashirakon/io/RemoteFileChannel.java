@@ -18,11 +18,16 @@
 
 package io.github.muntashirakon.io;
 
+import android.os.Build;
 import android.os.RemoteException;
+import android.os.SharedMemory;
 import android.system.ErrnoException;
 import android.system.Os;
 import android.system.OsConstants;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.IOException;
@@ -46,6 +51,10 @@ import static android.system.OsConstants.O_WRONLY;
 class RemoteFileChannel extends FileChannel {
 
     private static final int PIPE_CAPACITY = 16 * 4096;
+    /**
+     * Size of the shared memory window. Each pread/pwrite call moves up to this many bytes.
+     */
+    private static final int SHARED_CAPACITY = 1024 * 1024;
 
     private final IFileSystemService fs;
     private final int mode;
@@ -54,6 +63,11 @@ class RemoteFileChannel extends FileChannel {
     private final FileDescriptor read;
     private final FileDescriptor write;
     private final int handle;
+    // Shared memory transport, null if unavailable. In that case, the FIFO is used instead.
+    @Nullable
+    private final Object sharedMemory;
+    @Nullable
+    private final ByteBuffer sharedBuf;
 
     RemoteFileChannel(IFileSystemService fs, File file, int mode) throws IOException {
         this.fs = fs;
@@ -79,6 +93,55 @@ class RemoteFileChannel extends FileChannel {
             if (fifo != null)
                 fifo.delete();
         }
+        Object memory = null;
+        ByteBuffer buf = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            SharedMemory shm = attachSharedMemory();
+            if (shm != null) {
+                try {
+                    buf = shm.mapReadWrite();
+                    memory = shm;
+                } catch (ErrnoException e) {
+                    shm.close();
+                }
+            }
+        }
+        sharedMemory = memory;
+        sharedBuf = buf;
+    }
+
+    /**
+     * Share a memory region with the remote process so that large reads and writes need only one call per
+     * {@link #SHARED_CAPACITY} bytes, and the data does not have to go through the FIFO.
+     *
+     * @return The shared memory, or {@code null} if it could not be shared
+     */
+    @RequiresApi(Build.VERSION_CODES.O_MR1)
+    @Nullable
+    private SharedMemory attachSharedMemory() {
+        SharedMemory memory = null;
+        try {
+            memory = SharedMemory.create("RemoteFileChannel", SHARED_CAPACITY);
+            ParcelValues values = new ParcelValues();
+            values.add(memory);
+            FileUtils.checkException(fs.attachSharedMemory(handle, values));
+            return memory;
+        } catch (ErrnoException | IOException | RemoteException | RuntimeException e) {
+            // Fallback to FIFO
+            if (memory != null)
+                memory.close();
+            return null;
+        }
+    }
+
+    /**
+     * @return A view of the first len bytes of the shared memory
+     */
+    private ByteBuffer getSharedBuf(int len) {
+        ByteBuffer buf = sharedBuf.duplicate();
+        buf.clear();
+        buf.limit(len);
+        return buf;
     }
 
     private void ensureOpen() throws IOException {
@@ -107,6 +170,8 @@ class RemoteFileChannel extends FileChannel {
     }
 
     private int read0(ByteBuffer dst, long offset) throws IOException {
+        if (sharedBuf != null)
+            return readShared(dst, offset);
         begin();
         final int limit = dst.limit();
         final int initial = dst.position();
@@ -164,7 +229,38 @@ class RemoteFileChannel extends FileChannel {
         return sz;
     }
 
+    private int readShared(ByteBuffer dst, long offset) throws IOException {
+        begin();
+        final int initial = dst.position();
+        boolean success = false;
+        try {
+            while (dst.hasRemaining()) {
+                final int len;
+                synchronized (fdLock) {
+                    if (!isOpen() || Thread.interrupted())
+                        return -1;
+                    len = FileUtils.tryAndGet(fs.preadShared(handle, Math.min(dst.remaining(), SHARED_CAPACITY),
+                            offset));
+                    if (len == 0)
+                        break;
+                    dst.put(getSharedBuf(len));
+                }
+                if (offset >= 0) {
+                    offset += len;
+                }
+            }
+            success = true;
+            return dst.position() - initial;
+        } catch (RemoteException e) {
+            throw new IOException(e);
+        } finally {
+            end(success);
+        }
+    }
+
     private int write0(ByteBuffer src, long offset) throws IOException {
+        if (sharedBuf != null)
+            return writeShared(src, offset);
         begin();
         final int remaining = src.remaining();
         boolean success = false;
@@ -190,6 +286,35 @@ class RemoteFileChannel extends FileChannel {
         }
     }
 
+    private int writeShared(ByteBuffer src, long offset) throws IOException {
+        begin();
+        final int remaining = src.remaining();
+        boolean success = false;
+        try {
+            while (src.hasRemaining()) {
+                final int len = Math.min(src.remaining(), SHARED_CAPACITY);
+                synchronized (fdLock) {
+                    if (!isOpen() || Thread.interrupted())
+                        return -1;
+                    ByteBuffer chunk = src.duplicate();
+                    chunk.limit(chunk.position() + len);
+                    getSharedBuf(len).put(chunk);
+                    FileUtils.checkException(fs.pwriteShared(handle, len, offset));
+                }
+                src.position(src.position() + len);
+                if (offset >= 0) {
+                    offset += len;
+                }
+            }
+            success = true;
+            return remaining;
+        } catch (RemoteException e) {
+            throw new IOException(e);
+        } finally {
+            end(success);
+        }
+    }
+
     @Override
     public int write(ByteBuffer src) throws IOException {
         ensureOpen();
@@ -281,6 +406,8 @@ class RemoteFileChannel extends FileChannel {
             throw new NonReadableChannelException();
         if ((position < 0) || (count < 0))
             throw new IllegalArgumentException();
+        if (sharedBuf != null)
+            return transferToShared(position, count, target);
 
         ByteBuffer b = ByteBuffer.allocateDirect(PIPE_CAPACITY);
         long bytes = 0;
@@ -307,6 +434,8 @@ class RemoteFileChannel extends FileChannel {
             throw new NonWritableChannelException();
         if ((position < 0) || (count < 0))
             throw new IllegalArgumentException();
+        if (sharedBuf != null)
+            return transferFromShared(src, position, count);
 
         ByteBuffer b = ByteBuffer.allocateDirect(PIPE_CAPACITY);
         long bytes = 0;
@@ -324,6 +453,61 @@ class RemoteFileChannel extends FileChannel {
         return bytes;
     }
 
+    /**
+     * Same as {@link #transferTo(long, long, WritableByteChannel)} except that the target is written directly from the
+     * shared memory.
+     */
+    private long transferToShared(long position, long count, WritableByteChannel target) throws IOException {
+        long bytes = 0;
+        try {
+            while (count > bytes) {
+                int len;
+                synchronized (fdLock) {
+                    if (!isOpen() || Thread.interrupted())
+                        break;
+                    len = FileUtils.tryAndGet(fs.preadShared(handle, (int) Math.min(SHARED_CAPACITY, count - bytes),
+                            position));
+                    if (len <= 0)
+                        break;
+                    len = target.write(getSharedBuf(len));
+                }
+                if (len == 0)
+                    break;
+                position += len;
+                bytes += len;
+            }
+        } catch (RemoteException e) {
+            throw new IOException(e);
+        }
+        return bytes;
+    }
+
+    /**
+     * Same as {@link #transferFrom(ReadableByteChannel, long, long)} except that the source is read directly into the
+     * shared memory.
+     */
+    private long transferFromShared(ReadableByteChannel src, long position, long count) throws IOException {
+        long bytes = 0;
+        try {
+            while (count > bytes) {
+                int len;
+                synchronized (fdLock) {
+                    if (!isOpen() || Thread.interrupted())
+                        break;
+                    len = src.read(getSharedBuf((int) Math.min(SHARED_CAPACITY, count - bytes)));
+                    if (len <= 0)
+                        break;
+                    FileUtils.checkException(fs.pwriteShared(handle, len, position));
+                }
+                position += len;
+                bytes += len;
+            }
+        } catch (RemoteException e) {
+            throw new IOException(e);
+        }
+        return bytes;
+    }
+
     @Override
     public int read(ByteBuffer dst, long position) throws IOException {
         if (position < 0)
@@ -346,6 +530,10 @@ class RemoteFileChannel extends FileChannel {
         synchronized (fdLock) {
             try { Os.close(read); } catch (ErrnoException ignored) {}
             try { Os.close(write); } catch (ErrnoException ignored) {}
+            if (sharedMemory != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                SharedMemory.unmap(sharedBuf);
+                ((SharedMemory) sharedMemory).close();
+            }
         }
     }
 
@@ -4,6 +4,7 @@ package io.github.muntashirakon.AppManager.server.common;
 
 import android.util.Log;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -13,7 +14,16 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <code>DataTransmission</code> class handles the data sent and received by server or client.
@@ -22,8 +32,25 @@ import java.util.Objects;
 public final class DataTransmission implements Closeable {
     /**
      * Protocol version. Specification: <code>protocol-version,token</code>
+     * <p>
+     * Since 1.3.0, the server acknowledges the handshake by sending its protocol version, and every message after
+     * that carries a request ID: <code>length,request-id,message</code>. The client may send many requests without
+     * waiting for their responses, and the server may respond to them in any order.
      */
-    public static final String PROTOCOL_VERSION = "1.2.4";
+    public static final String PROTOCOL_VERSION = "1.3.0";
+    /**
+     * The last protocol version without request IDs, where each request has to wait for the response of the previous
+     * one. Still accepted by the server.
+     */
+    public static final String PROTOCOL_VERSION_SEQUENTIAL = "1.2.4";
+    /**
+     * Request ID of the messages sent using the sequential protocol
+     */
+    public static final int NO_REQUEST_ID = 0;
+    /**
+     * Maximum time a client waits for a response
+     */
+    public static final long RESPONSE_TIMEOUT_MILLIS = 1000 * 30;
 
     public enum Role {
         Server,
@@ -35,10 +62,21 @@ public final class DataTransmission implements Closeable {
     @NonNull
     private final DataInputStream mInputStream;
     private final boolean mAsync;
+    /**
+     * Request IDs start at a random value so that the late responses to an earlier client of the same server cannot
+     * be taken for responses to this one
+     */
+    private final AtomicInteger mNextRequestId = new AtomicInteger(new Random().nextInt());
+    @GuardedBy("mPendingResponses")
+    private final Map<Integer, PendingResponse> mPendingResponses = new HashMap<>();
 
     @Nullable
     private OnReceiveCallback mOnReceiveCallback;
-    private boolean mRunning = true;
+    private volatile boolean mRunning = true;
+    private volatile boolean mMultiplexed = false;
+    @GuardedBy("mPendingResponses")
+    @Nullable
+    private IOException mReadError;
 
     public DataTransmission(@NonNull OutputStream outputStream, @NonNull InputStream inputStream,
                             @Nullable OnReceiveCallback onReceiveCallback, boolean async) {
@@ -113,10 +151,28 @@ public final class DataTransmission implements Closeable {
      * @see #sendAndReceiveMessage(byte[])
      */
     public void sendMessage(@Nullable byte[] messageBytes) throws IOException {
+        sendMessage(NO_REQUEST_ID, messageBytes);
+    }
+
+    /**
+     * Send message as bytes in response to the given request. The request ID is ignored unless the connection is
+     * multiplexed.
+     *
+     * @param requestId    ID of the request as received by {@link OnReceiveCallback#onMessage(int, byte[])}
+     * @param messageBytes Bytes to be sent
+     * @throws IOException When it fails to send the message
+     */
+    public void sendMessage(int requestId, @Nullable byte[] messageBytes) throws IOException {
         if (messageBytes != null) {
-            mOutputStream.writeInt(messageBytes.length);
-            mOutputStream.write(messageBytes);
-            mOutputStream.flush();
+            // Messages can be sent from multiple threads
+            synchronized (mOutputStream) {
+                mOutputStream.writeInt(messageBytes.length);
+                if (mMultiplexed) {
+                    mOutputStream.writeInt(requestId);
+                }
+                mOutputStream.write(messageBytes);
+                mOutputStream.flush();
+            }
         }
     }
 
@@ -129,6 +185,11 @@ public final class DataTransmission implements Closeable {
     @NonNull
     private byte[] readMessage() throws IOException {
         int len = mInputStream.readInt();
+        return readMessage(len);
+    }
+
+    @NonNull
+    private byte[] readMessage(int len) throws IOException {
         byte[] bytes = new byte[len];
         mInputStream.readFully(bytes, 0, len);
         return bytes;
@@ -144,12 +205,48 @@ public final class DataTransmission implements Closeable {
      * @see #sendMessage(byte[])
      */
     @Nullable
-    public synchronized byte[] sendAndReceiveMessage(byte[] messageBytes) throws IOException {
-        if (messageBytes != null) {
-            sendMessage(messageBytes);
-            return readMessage();
+    public byte[] sendAndReceiveMessage(byte[] messageBytes) throws IOException {
+        if (messageBytes == null) {
+            return null;
+        }
+        if (!mMultiplexed) {
+            synchronized (this) {
+                sendMessage(messageBytes);
+                return readMessage();
+            }
+        }
+        // Requests from different threads are pipelined, and the responses are dispatched by the response reader
+        int requestId = nextRequestId();
+        PendingResponse response = new PendingResponse();
+        synchronized (mPendingResponses) {
+            if (mReadError != null) {
+                throw new IOException("Connection is closed.", mReadError);
+            }
+            mPendingResponses.put(requestId, response);
+        }
+        try {
+            sendMessage(requestId, messageBytes);
+            return response.await(RESPONSE_TIMEOUT_MILLIS);
+        } finally {
+            synchronized (mPendingResponses) {
+                mPendingResponses.remove(requestId);
+            }
         }
-        return null;
+    }
+
+    /**
+     * Whether the connection is multiplexed, i.e. requests are identified by their request IDs
+     */
+    public boolean isMultiplexed() {
+        return mMultiplexed;
+    }
+
+    /**
+     * Whether the data transmission is active. For a multiplexed client, it is no longer active once the response
+     * reader has failed.
+     */
+    public boolean isRunning() {
+        return mRunning;
     }
 
     /**
@@ -178,13 +275,25 @@ public final class DataTransmission implements Closeable {
             }
             // Check protocol version
             String protocolVersion = split[0];
-            if (!PROTOCOL_VERSION.equals(protocolVersion)) {
+            if (PROTOCOL_VERSION.equals(protocolVersion)) {
+                // Acknowledge the multiplexed protocol
+                sendMessage(PROTOCOL_VERSION);
+                mMultiplexed = true;
+            } else if (!PROTOCOL_VERSION_SEQUENTIAL.equals(protocolVersion)) {
                 throw new ProtocolVersionException("Client protocol version: " + protocolVersion + ", " +
                         "Server protocol version: " + PROTOCOL_VERSION);
             }
+            FLog.log("DataTransmission#shakeHands: Multiplexed: " + mMultiplexed);
         } else if (role == Role.Client) {
             Log.e("DataTransmission", "shakeHands: Token: " + token + ", Client protocol: " + PROTOCOL_VERSION);
             sendMessage(PROTOCOL_VERSION + "," + token);
+            String protocolVersion = new String(readMessage());
+            if (!PROTOCOL_VERSION.equals(protocolVersion)) {
+                throw new ProtocolVersionException("Client protocol version: " + PROTOCOL_VERSION + ", " +
+                        "Server protocol version: " + protocolVersion);
+            }
+            mMultiplexed = true;
+            startResponseReader();
         }
     }
 
@@ -197,21 +306,72 @@ public final class DataTransmission implements Closeable {
     public void handleReceive() throws IOException {
         if (!mAsync) return;
         while (mRunning) {
-            onReceiveMessage(readMessage());
+            int len = mInputStream.readInt();
+            int requestId = mMultiplexed ? mInputStream.readInt() : NO_REQUEST_ID;
+            onReceiveMessage(requestId, readMessage(len));
         }
     }
 
     /**
-     * Calls the callback function {@link OnReceiveCallback#onMessage(byte[])}.
+     * Calls the callback function {@link OnReceiveCallback#onMessage(int, byte[])}.
      *
-     * @param bytes Bytes that was received earlier
+     * @param requestId ID of the request, {@link #NO_REQUEST_ID} if the connection is not multiplexed
+     * @param bytes     Bytes that was received earlier
      */
-    private void onReceiveMessage(@NonNull byte[] bytes) {
+    private void onReceiveMessage(int requestId, @NonNull byte[] bytes) {
         if (mOnReceiveCallback != null) {
-            mOnReceiveCallback.onMessage(bytes);
+            mOnReceiveCallback.onMessage(requestId, bytes);
         }
     }
 
+    private int nextRequestId() {
+        int requestId = mNextRequestId.getAndIncrement();
+        if (requestId == NO_REQUEST_ID) {
+            // Overflowed
+            requestId = mNextRequestId.getAndIncrement();
+        }
+        return requestId;
+    }
+
+    /**
+     * Read the responses of a multiplexed connection and hand them over to the waiting requests. If reading fails,
+     * all the waiting requests fail as well.
+     */
+    private void startResponseReader() {
+        Thread thread = new Thread(() -> {
+            IOException error;
+            try {
+                while (mRunning) {
+                    int len = mInputStream.readInt();
+                    int requestId = mInputStream.readInt();
+                    byte[] bytes = readMessage(len);
+                    PendingResponse response;
+                    synchronized (mPendingResponses) {
+                        response = mPendingResponses.remove(requestId);
+                    }
+                    if (response != null) {
+                        response.setResponse(bytes);
+                    } // else the request has already timed out
+                }
+                error = new IOException("Connection is closed.");
+            } catch (IOException e) {
+                error = e;
+            }
+            mRunning = false;
+            List<PendingResponse> responses;
+            synchronized (mPendingResponses) {
+                mReadError = error;
+                responses = new ArrayList<>(mPendingResponses.values());
+                mPendingResponses.clear();
+            }
+            for (PendingResponse response : responses) {
+                response.setError(error);
+            }
+        }, "DataTransmission-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Stop data transmission, called when socket connection is being closed
      */
@@ -235,11 +395,51 @@ public final class DataTransmission implements Closeable {
      */
     public interface OnReceiveCallback {
         /**
-         * Implement this method to handle the received message
+         * Implement this method to handle the received message. The response must be sent using
+         * {@link #sendMessage(int, byte[])} with the same request ID. If the connection is multiplexed, the response
+         * can be sent from any thread.
          *
-         * @param bytes The message that was received
+         * @param requestId ID of the request, {@link #NO_REQUEST_ID} if the connection is not multiplexed
+         * @param bytes     The message that was received
          */
-        void onMessage(@NonNull byte[] bytes);
+        void onMessage(int requestId, @NonNull byte[] bytes);
+    }
+
+    /**
+     * A request waiting for its response
+     */
+    private static class PendingResponse {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        @Nullable
+        private volatile byte[] mResponse;
+        @Nullable
+        private volatile IOException mError;
+
+        void setResponse(@NonNull byte[] response) {
+            mResponse = response;
+            mLatch.countDown();
+        }
+
+        void setError(@NonNull IOException error) {
+            mError = error;
+            mLatch.countDown();
+        }
+
+        @NonNull
+        byte[] await(long timeoutMillis) throws IOException {
+            try {
+                if (!mLatch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new SocketTimeoutException("No response in " + timeoutMillis + " ms.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the response.", e);
+            }
+            if (mError != null) {
+                throw new IOException("Could not receive the response.", mError);
+            }
+            return Objects.requireNonNull(mResponse);
+        }
     }
 
     /**
@@ -26,14 +26,25 @@ public final class Shell {
         if (sShell == null) {
             synchronized (Shell.class) {
                 if (sShell == null) {
-                    sShell = new Shell("sh");
-                    sShell.exec("export PATH=" + path + ":$PATH");
+                    sShell = newShell(path);
                 }
             }
         }
         return sShell;
     }
 
+    /**
+     * Create a new shell that is not shared with {@link #getShell(String)}. Commands of a shell are run one after
+     * another, so a separate shell is needed to run commands concurrently. The shell must be closed when it is no
+     * longer needed.
+     */
+    @NonNull
+    public static Shell newShell(String path) throws IOException {
+        Shell shell = new Shell("sh");
+        shell.exec("export PATH=" + path + ":$PATH");
+        return shell;
+    }
+
     private final Process mProcess;
     private final BufferedReader mIn;
     private final OutputStream mOut;
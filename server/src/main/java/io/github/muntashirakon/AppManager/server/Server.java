@@ -111,10 +111,12 @@ class Server implements Closeable {
         }
     }
 
-    public void sendResult(byte[] bytes) throws IOException {
+    public void sendResult(int requestId, byte[] bytes) throws IOException {
         if (mRunning && mDataTransmission != null) {
-            LifecycleAgent.sServerInfo.txBytes += bytes.length;
-            mDataTransmission.sendMessage(bytes);
+            synchronized (LifecycleAgent.sServerInfo) {
+                LifecycleAgent.sServerInfo.txBytes += bytes.length;
+            }
+            mDataTransmission.sendMessage(requestId, bytes);
         }
     }
 
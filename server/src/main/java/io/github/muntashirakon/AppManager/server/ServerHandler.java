@@ -12,6 +12,10 @@ import androidx.annotation.NonNull;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import io.github.muntashirakon.AppManager.server.common.BaseCaller;
 import io.github.muntashirakon.AppManager.server.common.CallerResult;
@@ -27,12 +31,23 @@ class ServerHandler implements DataTransmission.OnReceiveCallback, Closeable {
     private static final int MSG_TIMEOUT = 1;
     private static final int DEFAULT_TIMEOUT = 1000 * 60; // 1 min
     private static final int BG_TIMEOUT = DEFAULT_TIMEOUT * 10; // 10 min
+    /**
+     * Number of requests of a multiplexed connection that are handled concurrently
+     */
+    private static final int WORKER_COUNT = 4;
 
     private final LifecycleAgent mLifecycleAgent;
     private final ConfigParams mConfigParams;
     private final Server mServer;
     private final boolean mRunInBackground;
 
+    private final ExecutorService mWorkers = Executors.newFixedThreadPool(WORKER_COUNT);
+    /**
+     * Each worker has its own shell since a shell runs its commands one after another
+     */
+    private final ThreadLocal<Shell> mWorkerShell = new ThreadLocal<>();
+    private final List<Shell> mWorkerShells = new ArrayList<>();
+
     private Handler mHandler;
     private volatile boolean mIsDead = false;
 
@@ -98,18 +113,26 @@ class ServerHandler implements DataTransmission.OnReceiveCallback, Closeable {
             e.printStackTrace();
             FLog.log(e);
         }
+        mWorkers.shutdown();
+        synchronized (mWorkerShells) {
+            for (Shell shell : mWorkerShells) {
+                shell.close();
+                shell.destroyShell();
+            }
+            mWorkerShells.clear();
+        }
     }
 
-    private void sendOpResult(Parcelable result) {
+    private void sendOpResult(int requestId, Parcelable result) {
         try {
-            mServer.sendResult(ParcelableUtil.marshall(result));
+            mServer.sendResult(requestId, ParcelableUtil.marshall(result));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     @Override
-    public void onMessage(@NonNull byte[] bytes) {
+    public void onMessage(int requestId, @NonNull byte[] bytes) {
         if (mHandler != null) {
             mHandler.removeCallbacksAndMessages(null);
             mHandler.removeMessages(MSG_TIMEOUT);
@@ -119,37 +142,66 @@ class ServerHandler implements DataTransmission.OnReceiveCallback, Closeable {
             if (!mRunInBackground && mHandler != null) {
                 mHandler.sendEmptyMessageDelayed(MSG_TIMEOUT, BG_TIMEOUT);
             }
-            LifecycleAgent.sServerInfo.rxBytes += bytes.length;
-            CallerResult result = null;
-            try {
-                BaseCaller baseCaller = ParcelableUtil.unmarshall(bytes, BaseCaller.CREATOR);
-                int type = baseCaller.getType();
-                switch (type) {
-                    case BaseCaller.TYPE_CLOSE:
-                        close();
-                        return;
-                    case BaseCaller.TYPE_SHELL:
-                        ShellCaller shellCaller = ParcelableUtil.unmarshall(baseCaller.getRawBytes(), ShellCaller.CREATOR);
-                        Shell shell = Shell.getShell("");
-                        Shell.Result shellResult = shell.exec(shellCaller.getCommand());
-                        result = new CallerResult();
-                        Parcel parcel = Parcel.obtain();
-                        parcel.writeValue(shellResult);
-                        result.setReply(parcel.marshall());
-                        parcel.recycle();
-                }
+            synchronized (LifecycleAgent.sServerInfo) {
+                LifecycleAgent.sServerInfo.rxBytes += bytes.length;
+            }
+            if (requestId == DataTransmission.NO_REQUEST_ID) {
+                // Sequential protocol: the response must be sent before reading the next request
+                handleMessage(requestId, bytes);
+            } else {
+                // Multiplexed protocol: keep reading requests while the previous ones are being handled
+                mWorkers.submit(() -> handleMessage(requestId, bytes));
+            }
+        }
+    }
+
+    private void handleMessage(int requestId, @NonNull byte[] bytes) {
+        CallerResult result = null;
+        try {
+            BaseCaller baseCaller = ParcelableUtil.unmarshall(bytes, BaseCaller.CREATOR);
+            int type = baseCaller.getType();
+            switch (type) {
+                case BaseCaller.TYPE_CLOSE:
+                    close();
+                    return;
+                case BaseCaller.TYPE_SHELL:
+                    ShellCaller shellCaller = ParcelableUtil.unmarshall(baseCaller.getRawBytes(), ShellCaller.CREATOR);
+                    Shell shell = requestId == DataTransmission.NO_REQUEST_ID ? Shell.getShell("") : getWorkerShell();
+                    Shell.Result shellResult = shell.exec(shellCaller.getCommand());
+                    result = new CallerResult();
+                    Parcel parcel = Parcel.obtain();
+                    parcel.writeValue(shellResult);
+                    result.setReply(parcel.marshall());
+                    parcel.recycle();
+            }
+            synchronized (LifecycleAgent.sServerInfo) {
                 LifecycleAgent.sServerInfo.successCount++;
-            } catch (Throwable e) {
-                FLog.log(e);
-                result = new CallerResult();
-                result.setThrowable(e);
+            }
+        } catch (Throwable e) {
+            FLog.log(e);
+            result = new CallerResult();
+            result.setThrowable(e);
+            synchronized (LifecycleAgent.sServerInfo) {
                 LifecycleAgent.sServerInfo.errorCount++;
-            } finally {
-                if (result == null) {
-                    result = new CallerResult();
-                }
-                sendOpResult(result);
+            }
+        } finally {
+            if (result == null) {
+                result = new CallerResult();
+            }
+            sendOpResult(requestId, result);
+        }
+    }
+
+    @NonNull
+    private Shell getWorkerShell() throws IOException {
+        Shell shell = mWorkerShell.get();
+        if (shell == null || shell.isClosed()) {
+            shell = Shell.newShell("");
+            mWorkerShell.set(shell);
+            synchronized (mWorkerShells) {
+                mWorkerShells.add(shell);
             }
         }
+        return shell;
     }
 }